@@ -0,0 +1,23 @@
+package android.graphics;
+
+/**
+ * Desktop stand-in for the android Canvas used by benchmarks. Draw calls do
+ * nothing, so benchmarks measure only the work done to prepare them.
+ */
+public class Canvas {
+  public int save() { return 0; }
+  public void restore() {}
+  public void translate(float dx, float dy) {}
+  public void rotate(float degrees) {}
+  public void scale(float sx, float sy) {}
+  public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {}
+  public void drawLines(float[] pts, int offset, int count, Paint paint) {}
+  public void drawLines(float[] pts, Paint paint) {}
+  public void drawPoint(float x, float y, Paint paint) {}
+  public void drawPoints(float[] pts, int offset, int count, Paint paint) {}
+  public void drawPoints(float[] pts, Paint paint) {}
+  public void drawPath(Path path, Paint paint) {}
+  public void drawCircle(float cx, float cy, float radius, Paint paint) {}
+  public void drawRect(float left, float top, float right, float bottom, Paint paint) {}
+  public void drawText(String text, float x, float y, Paint paint) {}
+}
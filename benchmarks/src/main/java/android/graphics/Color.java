@@ -0,0 +1,17 @@
+package android.graphics;
+
+/**
+ * Desktop stand-in for the android Color constants used by benchmarks.
+ */
+public class Color {
+  public static final int BLACK = 0xFF000000;
+  public static final int WHITE = 0xFFFFFFFF;
+  public static final int RED = 0xFFFF0000;
+  public static final int GREEN = 0xFF00FF00;
+  public static final int BLUE = 0xFF0000FF;
+  public static final int YELLOW = 0xFFFFFF00;
+  
+  public static int argb(int alpha, int red, int green, int blue) {
+    return (alpha << 24) | (red << 16) | (green << 8) | blue;
+  }
+}
@@ -0,0 +1,35 @@
+package android.graphics;
+
+/**
+ * Desktop stand-in for the android Paint used by benchmarks.
+ */
+public class Paint {
+  
+  public enum Style { FILL, STROKE, FILL_AND_STROKE }
+  
+  private int color;
+  private int alpha = 255;
+  private float strokeWidth;
+  private Style style = Style.FILL;
+  
+  public Paint() {}
+  
+  public Paint(Paint other) {
+    color = other.color;
+    alpha = other.alpha;
+    strokeWidth = other.strokeWidth;
+    style = other.style;
+  }
+  
+  public void setColor(int color) { this.color = color; }
+  public int getColor() { return color; }
+  public void setAlpha(int alpha) { this.alpha = alpha; }
+  public int getAlpha() { return alpha; }
+  public void setARGB(int a, int r, int g, int b) { alpha = a; color = Color.argb(a, r, g, b); }
+  public void setStrokeWidth(float width) { strokeWidth = width; }
+  public float getStrokeWidth() { return strokeWidth; }
+  public void setStyle(Style style) { this.style = style; }
+  public Style getStyle() { return style; }
+  public void setMaskFilter(Object filter) {}
+  public void setPathEffect(Object effect) {}
+}
@@ -0,0 +1,17 @@
+package android.graphics;
+
+/**
+ * Desktop stand-in for the android Path used by benchmarks. Paths are only
+ * built, never drawn, so nothing is recorded.
+ */
+public class Path {
+  
+  public enum Direction { CW, CCW }
+  
+  public void moveTo(float x, float y) {}
+  public void lineTo(float x, float y) {}
+  public void addCircle(float x, float y, float radius, Direction dir) {}
+  public void addRect(float left, float top, float right, float bottom, Direction dir) {}
+  public void close() {}
+  public void reset() {}
+}
@@ -0,0 +1,10 @@
+package android.os;
+
+/**
+ * Desktop stand-in for the android Debug methods used by the frame profiler.
+ */
+public class Debug {
+  public static void startAllocCounting() {}
+  public static void stopAllocCounting() {}
+  public static int getGlobalGcInvocationCount() { return 0; }
+}
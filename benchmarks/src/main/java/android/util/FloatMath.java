@@ -0,0 +1,12 @@
+package android.util;
+
+/**
+ * Desktop stand-in for android's FloatMath.
+ */
+public class FloatMath {
+  public static float sqrt(float value) { return (float) Math.sqrt(value); }
+  public static float sin(float angle) { return (float) Math.sin(angle); }
+  public static float cos(float angle) { return (float) Math.cos(angle); }
+  public static float floor(float value) { return (float) Math.floor(value); }
+  public static float ceil(float value) { return (float) Math.ceil(value); }
+}
@@ -0,0 +1,21 @@
+package android.util;
+
+/**
+ * Desktop stand-in for android's Log. Errors are printed, everything else is
+ * dropped so logging doesn't skew timings.
+ */
+public class Log {
+  public static int d(String tag, String msg) { return 0; }
+  public static int i(String tag, String msg) { return 0; }
+  public static int i(String tag, String msg, Throwable tr) { return 0; }
+  public static int w(String tag, String msg) { return 0; }
+  public static int e(String tag, String msg) {
+    System.err.println(tag + ": " + msg);
+    return 0;
+  }
+  public static int e(String tag, String msg, Throwable tr) {
+    System.err.println(tag + ": " + msg);
+    tr.printStackTrace();
+    return 0;
+  }
+}
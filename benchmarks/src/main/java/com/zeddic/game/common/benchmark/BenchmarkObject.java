@@ -0,0 +1,51 @@
+package com.zeddic.game.common.benchmark;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.Aabb;
+import com.zeddic.game.common.util.Bounds;
+import com.zeddic.game.common.util.Capsule;
+import com.zeddic.game.common.util.Circle;
+import com.zeddic.game.common.util.Shape;
+import com.zeddic.game.common.util.Vector2d;
+import com.zeddic.game.common.util.Polygon.PolygonBuilder;
+
+/**
+ * A physical object that counts collisions instead of reacting to them, so
+ * the world stays the same between benchmark invocations.
+ */
+public class BenchmarkObject extends PhysicalObject {
+  
+  public int collisions = 0;
+  
+  public BenchmarkObject(float x, float y, Shape shape) {
+    super(x, y);
+    bounds = new Bounds(shape);
+    bounds.transform(angle, scale);
+  }
+  
+  @Override
+  public void collide(PhysicalObject object, Vector2d avoidVector) {
+    collisions++;
+  }
+  
+  public static Shape createCircle() {
+    return new Circle(5);
+  }
+  
+  public static Shape createSquare() {
+    return new PolygonBuilder()
+        .add(-5, -5)
+        .add(5, -5)
+        .add(5, 5)
+        .add(-5, 5)
+        .build();
+  }
+  
+  public static Shape createBox() {
+    return new Aabb(10, 10);
+  }
+  
+  public static Shape createCapsule() {
+    return new Capsule(8, 1);
+  }
+}
@@ -0,0 +1,165 @@
+package com.zeddic.game.common.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.collision.AabbTree;
+import com.zeddic.game.common.collision.BroadPhase;
+import com.zeddic.game.common.collision.CastResult;
+import com.zeddic.game.common.collision.CollisionComponent;
+import com.zeddic.game.common.collision.CollisionGrid;
+import com.zeddic.game.common.collision.CollisionManager;
+import com.zeddic.game.common.collision.HierarchicalCollisionGrid;
+import com.zeddic.game.common.collision.PairList;
+import com.zeddic.game.common.collision.SparseCollisionGrid;
+import com.zeddic.game.common.collision.SpatialQuery;
+import com.zeddic.game.common.collision.SweepAndPrune;
+import com.zeddic.game.common.collision.TypeTags;
+import com.zeddic.game.common.util.SimpleList;
+
+/**
+ * Compares broad phases on a large, sparse world where every object moves a
+ * little each frame. Measures finding all candidate pairs at once,
+ * querying around each object one at a time, casting rays for the first
+ * object hit, and finding the closest object to a point.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadPhaseBenchmark {
+  
+  private static final float WORLD_SIZE = 4000;
+  private static final float GRID_SIZE = 25;
+  private static final int RAYS = 100;
+  
+  @Param({"grid", "sparse", "hierarchical", "sap", "tree"})
+  public String broadPhase;
+  
+  @Param({"500", "2000", "8000"})
+  public int objects;
+  
+  private BroadPhase phase;
+  private CollisionComponent[] components;
+  private PairList pairs = new PairList();
+  private SimpleList<PhysicalObject> nearby =
+      new SimpleList<PhysicalObject>(PhysicalObject.class);
+  private SimpleList<CollisionComponent> nearbyComponents =
+      new SimpleList<CollisionComponent>(CollisionComponent.class);
+  private CastResult hit = new CastResult(1);
+  private float[] rays = new float[RAYS * 4];
+  private SpatialQuery query = new SpatialQuery();
+  
+  @Setup
+  public void setup() {
+    CollisionManager manager = CollisionManager.setup(WORLD_SIZE, WORLD_SIZE);
+    if (broadPhase.equals("sap")) {
+      phase = new SweepAndPrune();
+    } else if (broadPhase.equals("tree")) {
+      phase = new AabbTree();
+    } else if (broadPhase.equals("sparse")) {
+      phase = new SparseCollisionGrid(GRID_SIZE);
+    } else if (broadPhase.equals("hierarchical")) {
+      phase = new HierarchicalCollisionGrid(WORLD_SIZE, WORLD_SIZE);
+    } else {
+      phase = new CollisionGrid(WORLD_SIZE, WORLD_SIZE, GRID_SIZE);
+    }
+    components = new CollisionComponent[objects];
+    
+    Random random = new Random(42);
+    for (int i = 0; i < objects; i++) {
+      BenchmarkObject object = new BenchmarkObject(
+          random.nextFloat() * WORLD_SIZE,
+          random.nextFloat() * WORLD_SIZE,
+          BenchmarkObject.createCircle());
+      object.setVelocityBySpeed(random.nextFloat() * 360, 10);
+      components[i] = new CollisionComponent(object, CollisionManager.TYPE_HIT_RECEIVE);
+      phase.addObject(components[i]);
+    }
+    manager.setBroadPhase(phase);
+    
+    // Rays a few hundred units long, like line of sight checks.
+    for (int i = 0; i < rays.length; i += 4) {
+      rays[i] = random.nextFloat() * WORLD_SIZE;
+      rays[i + 1] = random.nextFloat() * WORLD_SIZE;
+      rays[i + 2] = rays[i] + (random.nextFloat() - 0.5f) * 600;
+      rays[i + 3] = rays[i + 1] + (random.nextFloat() - 0.5f) * 600;
+    }
+  }
+  
+  @Benchmark
+  public PairList findPairs() {
+    move();
+    pairs.clear();
+    phase.findPairs(pairs);
+    return pairs;
+  }
+  
+  @Benchmark
+  public int getNearbyObjects() {
+    move();
+    int found = 0;
+    for (int i = 0; i < components.length; i++) {
+      nearby.clear();
+      nearbyComponents.clear();
+      phase.getNearbyObjects(components[i], nearby, nearbyComponents);
+      found += nearby.size;
+    }
+    return found;
+  }
+  
+  @Benchmark
+  public int raycast() {
+    CollisionManager manager = CollisionManager.get();
+    int hits = 0;
+    for (int i = 0; i < rays.length; i += 4) {
+      hits += manager.segmentCast(rays[i], rays[i + 1], rays[i + 2], rays[i + 3], hit);
+    }
+    return hits;
+  }
+  
+  @Benchmark
+  public int closest() {
+    int found = 0;
+    for (int i = 0; i < rays.length; i += 4) {
+      if (query.closest(rays[i], rays[i + 1], 300, TypeTags.ANY, null) != null) {
+        found++;
+      }
+    }
+    return found;
+  }
+  
+  /**
+   * Moves every object by its velocity, bouncing off the edges of the world.
+   */
+  private void move() {
+    for (int i = 0; i < components.length; i++) {
+      PhysicalObject object = components[i].object;
+      object.x += object.velocity.x;
+      object.y += object.velocity.y;
+      if (object.x < 0 || object.x >= WORLD_SIZE) {
+        object.velocity.x = -object.velocity.x;
+        object.x += object.velocity.x * 2;
+      }
+      if (object.y < 0 || object.y >= WORLD_SIZE) {
+        object.velocity.y = -object.velocity.y;
+        object.y += object.velocity.y * 2;
+      }
+    }
+  }
+}
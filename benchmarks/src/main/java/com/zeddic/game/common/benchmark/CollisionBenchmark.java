@@ -0,0 +1,100 @@
+package com.zeddic.game.common.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zeddic.game.common.collision.CollisionComponent;
+import com.zeddic.game.common.collision.CollisionManager;
+import com.zeddic.game.common.util.Shape;
+
+/**
+ * Measures a full round of collision checks, one per object, the way
+ * CollisionComponent.update drives them each frame. Covers each pairing of
+ * shapes at a few object densities in a 1000x1000 world.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+  
+  private static final float WORLD_SIZE = 1000;
+  private static final long FRAME_TIME = 16;
+  
+  @Param({"circle_circle", "circle_polygon", "polygon_polygon", "box_box", "capsule_box"})
+  public String shapes;
+  
+  @Param({"100", "500", "2000"})
+  public int objects;
+  
+  /** Threads used by step(). Has no effect on checkForCollision(). */
+  @Param({"1", "4"})
+  public int threads;
+  
+  private CollisionManager manager;
+  private CollisionComponent[] components;
+  
+  @Setup
+  public void setup() {
+    manager = CollisionManager.setup(WORLD_SIZE, WORLD_SIZE);
+    manager.setThreadCount(threads);
+    components = new CollisionComponent[objects];
+    
+    Random random = new Random(42);
+    for (int i = 0; i < objects; i++) {
+      BenchmarkObject object = new BenchmarkObject(
+          random.nextFloat() * WORLD_SIZE,
+          random.nextFloat() * WORLD_SIZE,
+          createShape(i));
+      object.setAngle(random.nextFloat() * 360);
+      object.setVelocityBySpeed(random.nextFloat() * 360, random.nextFloat() * 20);
+      
+      components[i] = new CollisionComponent(object, CollisionManager.TYPE_HIT_RECEIVE);
+      components[i].registerObject();
+    }
+  }
+  
+  /**
+   * Creates the shape of the i-th object. Mixed pairings alternate between
+   * the two shapes.
+   */
+  private Shape createShape(int i) {
+    boolean first = i % 2 == 0;
+    if (shapes.equals("circle_circle") || (shapes.equals("circle_polygon") && first)) {
+      return BenchmarkObject.createCircle();
+    } else if (shapes.equals("box_box") || (shapes.equals("capsule_box") && !first)) {
+      return BenchmarkObject.createBox();
+    } else if (shapes.equals("capsule_box")) {
+      return BenchmarkObject.createCapsule();
+    }
+    return BenchmarkObject.createSquare();
+  }
+  
+  @Benchmark
+  public CollisionComponent[] checkForCollision() {
+    for (int i = 0; i < components.length; i++) {
+      manager.checkForCollision(components[i], FRAME_TIME);
+    }
+    return components;
+  }
+  
+  @Benchmark
+  public CollisionManager step() {
+    manager.step(FRAME_TIME);
+    return manager;
+  }
+}
@@ -0,0 +1,72 @@
+package com.zeddic.game.common.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zeddic.game.common.collision.CollisionComponent;
+import com.zeddic.game.common.collision.CollisionGrid;
+import com.zeddic.game.common.collision.CollisionManager;
+
+/**
+ * Measures the cost of keeping the collision grid up to date when every
+ * object changes cell on every update. The world is kept small so cells are
+ * crowded, which is where removing an object from a cell is most expensive.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+  
+  private static final float WORLD_SIZE = 500;
+  private static final float GRID_SIZE = 25;
+  
+  @Param({"500", "2000", "8000"})
+  public int objects;
+  
+  private CollisionGrid grid;
+  private CollisionComponent[] components;
+  private float offset = GRID_SIZE;
+  
+  @Setup
+  public void setup() {
+    CollisionManager.setup(WORLD_SIZE, WORLD_SIZE);
+    grid = new CollisionGrid(WORLD_SIZE, WORLD_SIZE, GRID_SIZE);
+    components = new CollisionComponent[objects];
+    
+    Random random = new Random(42);
+    for (int i = 0; i < objects; i++) {
+      BenchmarkObject object = new BenchmarkObject(
+          GRID_SIZE + random.nextFloat() * (WORLD_SIZE - GRID_SIZE * 3),
+          GRID_SIZE + random.nextFloat() * (WORLD_SIZE - GRID_SIZE * 3),
+          BenchmarkObject.createCircle());
+      components[i] = new CollisionComponent(object, CollisionManager.TYPE_HIT_RECEIVE);
+      grid.addObject(components[i]);
+    }
+  }
+  
+  @Benchmark
+  public CollisionGrid updatePosition() {
+    // Alternate moving everything one cell right and one cell back.
+    for (int i = 0; i < components.length; i++) {
+      components[i].object.x += offset;
+      grid.updatePosition(components[i]);
+    }
+    offset = -offset;
+    return grid;
+  }
+}
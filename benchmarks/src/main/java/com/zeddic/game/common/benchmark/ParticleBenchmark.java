@@ -0,0 +1,84 @@
+package com.zeddic.game.common.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.graphics.Canvas;
+
+import com.zeddic.game.common.particle.Particle;
+import com.zeddic.game.common.particle.ParticleEmitter;
+import com.zeddic.game.common.particle.ParticleStore;
+import com.zeddic.game.common.particle.PixelParticle;
+import com.zeddic.game.common.particle.ParticleEmitter.ParticleEmitterBuilder;
+
+/**
+ * Measures updating and drawing an emitter that keeps all of its particles
+ * alive. Drawing uses a canvas that discards everything, so only the cost of
+ * preparing the draw calls is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParticleBenchmark {
+  
+  private static final long FRAME_TIME = 16;
+  
+  @Param({"line", "pixel"})
+  public String particle;
+  
+  @Param({"100", "1000", "5000"})
+  public int particles;
+  
+  private ParticleEmitter emitter;
+  private Canvas canvas;
+  
+  @Setup
+  public void setup() throws InterruptedException {
+    Class<? extends Particle> particleClass = 
+        particle.equals("pixel") ? PixelParticle.class : Particle.class;
+    
+    ParticleStore.setup(particles);
+    emitter = new ParticleEmitterBuilder()
+        .at(500, 500)
+        .withEmitMode(ParticleEmitter.MODE_OMNI)
+        .withEmitSpeedJitter(5)
+        .withParticleSpeed(10)
+        .withParticleLife(Float.MAX_VALUE)
+        .withMaxParticles(particles)
+        .withEmitRate(0)
+        .withParticleClass(particleClass)
+        .build();
+    canvas = new Canvas();
+    
+    // Emit everything up front. Emitters fire based on the wall clock, so
+    // let some time pass first.
+    Thread.sleep(FRAME_TIME);
+    emitter.update(FRAME_TIME);
+  }
+  
+  @Benchmark
+  public ParticleEmitter update() {
+    emitter.update(FRAME_TIME);
+    return emitter;
+  }
+  
+  @Benchmark
+  public ParticleEmitter draw() {
+    emitter.draw(canvas);
+    return emitter;
+  }
+}
@@ -0,0 +1,69 @@
+package com.zeddic.game.common.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zeddic.game.common.util.Polygon;
+import com.zeddic.game.common.util.Polygon.PolygonBuilder;
+
+/**
+ * Measures rotating and scaling a polygon, which happens whenever a physical
+ * object changes its angle or scale.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PolygonBenchmark {
+  
+  private Polygon square;
+  private Polygon squareTransformed;
+  private Polygon octagon;
+  private Polygon octagonTransformed;
+  private float angle = 0;
+  
+  @Setup
+  public void setup() {
+    square = new PolygonBuilder()
+        .add(-5, -5)
+        .add(5, -5)
+        .add(5, 5)
+        .add(-5, 5)
+        .build();
+    squareTransformed = (Polygon) square.copy();
+    
+    PolygonBuilder builder = new PolygonBuilder();
+    for (int i = 0; i < 8; i++) {
+      double radians = Math.PI * 2 * i / 8;
+      builder.add(10 * (float) Math.cos(radians), 10 * (float) Math.sin(radians));
+    }
+    octagon = builder.build();
+    octagonTransformed = (Polygon) octagon.copy();
+  }
+  
+  @Benchmark
+  public Polygon transformSquare() {
+    angle += 1.5f;
+    square.transform(angle, 1.5f, squareTransformed);
+    return squareTransformed;
+  }
+  
+  @Benchmark
+  public Polygon transformOctagon() {
+    angle += 1.5f;
+    octagon.transform(angle, 1.5f, octagonTransformed);
+    return octagonTransformed;
+  }
+}
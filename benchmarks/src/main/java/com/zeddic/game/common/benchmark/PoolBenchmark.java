@@ -0,0 +1,104 @@
+package com.zeddic.game.common.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zeddic.game.common.GameObject;
+import com.zeddic.game.common.util.ObjectPool;
+import com.zeddic.game.common.util.ObjectPoolManager;
+import com.zeddic.game.common.util.Vector2d;
+import com.zeddic.game.common.util.ObjectPool.ObjectBuilder;
+
+/**
+ * Measures taking and restoring objects from an {@link ObjectPool} and a
+ * full update pass of an {@link ObjectPoolManager} holding 10,000 objects,
+ * half of which are active and a few of which die each update.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoolBenchmark {
+  
+  private static final int POOL_SIZE = 1000;
+  private static final int MANAGED_OBJECTS = 10000;
+  private static final long FRAME_TIME = 16;
+  
+  private ObjectPool<Vector2d> pool;
+  private Vector2d[] taken;
+  private ObjectPoolManager<AgingObject> manager;
+  
+  @Setup
+  public void setup() {
+    pool = new ObjectPool<Vector2d>(Vector2d.class, POOL_SIZE, new ObjectBuilder<Vector2d>() {
+      @Override
+      public Vector2d get(int count) {
+        return new Vector2d(count, count);
+      }
+    });
+    taken = new Vector2d[POOL_SIZE];
+    
+    manager = new ObjectPoolManager<AgingObject>(AgingObject.class, MANAGED_OBJECTS);
+    for (int i = 0; i < MANAGED_OBJECTS / 2; i++) {
+      manager.take().enable();
+    }
+  }
+  
+  @Benchmark
+  public ObjectPool<Vector2d> takeAndRestore() {
+    for (int i = 0; i < POOL_SIZE; i++) {
+      taken[i] = pool.take();
+    }
+    for (int i = 0; i < POOL_SIZE; i++) {
+      pool.restore(taken[i]);
+    }
+    return pool;
+  }
+  
+  @Benchmark
+  public ObjectPoolManager<AgingObject> managerUpdate() {
+    manager.update(FRAME_TIME);
+    
+    // Replace whatever died so the number of active objects stays steady.
+    AgingObject object;
+    while (manager.pool.numLeft() > MANAGED_OBJECTS / 2 && (object = manager.take()) != null) {
+      object.enable();
+    }
+    return manager;
+  }
+  
+  /**
+   * An object that lives for a fixed number of milliseconds.
+   */
+  public static class AgingObject extends GameObject {
+    private static final long LIFE = 1000;
+    
+    public long age;
+    
+    @Override
+    public void enable() {
+      super.enable();
+      age = 0;
+    }
+    
+    @Override
+    public void update(long time) {
+      age += time;
+      if (age > LIFE) {
+        kill();
+      }
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.zeddic.game.common.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zeddic.game.common.collision.CollisionComponent;
+import com.zeddic.game.common.collision.CollisionManager;
+import com.zeddic.game.common.collision.StaticGeometry.StaticGeometryBuilder;
+import com.zeddic.game.common.util.Polygon.PolygonBuilder;
+
+/**
+ * Measures a collision step in a level crossed by walls, with the walls
+ * either added as stationary objects or baked into static geometry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WallBenchmark {
+  
+  private static final float WORLD_SIZE = 1000;
+  private static final float WALL_SPACING = 100;
+  private static final float WALL_THICKNESS = 4;
+  private static final long FRAME_TIME = 16;
+  
+  @Param({"stationary", "static"})
+  public String walls;
+  
+  @Param({"500", "2000"})
+  public int objects;
+  
+  private CollisionManager manager;
+  
+  @Setup
+  public void setup() {
+    manager = CollisionManager.setup(WORLD_SIZE, WORLD_SIZE);
+    manager.setMode(CollisionManager.MODE_STEP);
+    
+    // Walls every 100 units in each direction, each one cell of the maze
+    // long.
+    StaticGeometryBuilder builder = new StaticGeometryBuilder(50);
+    float half = WALL_SPACING / 2;
+    for (float a = WALL_SPACING; a < WORLD_SIZE; a += WALL_SPACING) {
+      for (float b = half; b < WORLD_SIZE; b += WALL_SPACING) {
+        if (walls.equals("static")) {
+          builder.addSegment(a, b - half, a, b + half);
+          builder.addSegment(b - half, a, b + half, a);
+        } else {
+          addWall(a, b, WALL_THICKNESS, WALL_SPACING);
+          addWall(b, a, WALL_SPACING, WALL_THICKNESS);
+        }
+      }
+    }
+    if (walls.equals("static")) {
+      manager.setStaticGeometry(builder.build());
+    }
+    
+    Random random = new Random(42);
+    for (int i = 0; i < objects; i++) {
+      BenchmarkObject object = new BenchmarkObject(
+          random.nextFloat() * WORLD_SIZE,
+          random.nextFloat() * WORLD_SIZE,
+          BenchmarkObject.createCircle());
+      object.setVelocityBySpeed(random.nextFloat() * 360, random.nextFloat() * 20);
+      new CollisionComponent(object, CollisionManager.TYPE_HIT_RECEIVE).registerObject();
+    }
+  }
+  
+  @Benchmark
+  public CollisionManager step() {
+    manager.step(FRAME_TIME);
+    return manager;
+  }
+  
+  private void addWall(float x, float y, float width, float height) {
+    BenchmarkObject wall = new BenchmarkObject(x, y, new PolygonBuilder()
+        .add(-width / 2, -height / 2)
+        .add(width / 2, -height / 2)
+        .add(width / 2, height / 2)
+        .add(-width / 2, height / 2)
+        .build());
+    new CollisionComponent(wall, CollisionManager.TYPE_STATIONARY).registerObject();
+  }
+}
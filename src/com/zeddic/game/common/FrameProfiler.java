@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2010 Zeddic Game Library
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zeddic.game.common;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Debug;
+
+/**
+ * Records how long each frame, and each phase within a frame, takes. Timings
+ * are kept in nanoseconds for the last few hundred frames in a preallocated
+ * ring buffer, and can be summarized as percentiles or drawn as an on-screen
+ * graph.
+ *
+ * <p>Recording never allocates, so turning the profiler on doesn't change the
+ * thing being measured. While disabled every call returns immediately.
+ *
+ * <p>Phases are timed by bracketing code with begin() and end():
+ * <code>
+ * FrameProfiler.get().begin(FrameProfiler.PHASE_COLLISION);
+ * ...
+ * FrameProfiler.get().end(FrameProfiler.PHASE_COLLISION);
+ * </code>
+ * A phase may be started and stopped many times in the same frame, in which
+ * case the times are summed. Recording is not thread safe; each thread
+ * recording frames should use its own instance. Only turning it on and off
+ * may be done from other threads.
+ *
+ * @author scott@zeddic.com
+ */
+public class FrameProfiler {
+
+  //// PHASES
+  // Update, draw and the canvas lock/unlock phases never overlap and make
+  // up the bulk of the frame. Collision and particles are measured inside
+  // of the update phase.
+
+  public static final int PHASE_UPDATE = 0;
+  public static final int PHASE_DRAW = 1;
+  public static final int PHASE_LOCK_CANVAS = 2;
+  public static final int PHASE_UNLOCK_CANVAS = 3;
+  public static final int PHASE_COLLISION = 4;
+  public static final int PHASE_PARTICLES = 5;
+  public static final int NUM_PHASES = 6;
+
+  /** The number of phases that are drawn stacked in the frame graph. */
+  private static final int NUM_GRAPHED_PHASES = 4;
+
+  /** How many frames are kept by default. */
+  private static final int DEFAULT_CAPACITY = 240;
+
+  /** The frame time to aim for, used to scale the graph. 60 fps. */
+  private static final long TARGET_FRAME_NANOS = 16666667;
+
+  private static final long NANOS_PER_MILLI = 1000000;
+
+  private static final int[] PHASE_COLORS = new int[] {
+      Color.GREEN, Color.BLUE, Color.YELLOW, Color.RED};
+
+  /** The shared profiler, used by the thread running game updates. */
+  private static final FrameProfiler singleton = new FrameProfiler(DEFAULT_CAPACITY);
+
+  /** Whether timings are being recorded. May be changed from any thread. */
+  private volatile boolean enabled = false;
+
+  /**
+   * Set when recording is turned on. The old frames are cleared by the
+   * recording thread when it next begins a frame, rather than while it may
+   * be writing them.
+   */
+  private volatile boolean clearPending = false;
+
+  /** The total time of each frame in the ring buffer. */
+  private final long[] frames;
+
+  /** The time of each phase, indexed by [phase][frame]. */
+  private final long[][] phases;
+
+  /** Whether a garbage collection ran during the frame. */
+  private final boolean[] gcFrames;
+
+  /** Where the next frame will be written in the ring buffer. */
+  private int head = 0;
+
+  /** How many frames are currently recorded, up to the capacity. */
+  private int count = 0;
+
+  //// STATE OF THE CURRENT FRAME
+  private long frameStart;
+  private int frameGcCount;
+  private final long[] phaseStart = new long[NUM_PHASES];
+  private final long[] phaseTotal = new long[NUM_PHASES];
+
+  //// REUSED OBJECTS FOR SUMMARIZING AND DRAWING
+  private final long[] sorted;
+  private final float[] lines;
+  private final Paint[] phasePaints;
+  private final Paint targetPaint;
+
+  /**
+   * Creates a new profiler that remembers the given number of frames.
+   */
+  public FrameProfiler(int capacity) {
+    frames = new long[capacity];
+    phases = new long[NUM_PHASES][capacity];
+    gcFrames = new boolean[capacity];
+    sorted = new long[capacity];
+    lines = new float[capacity * 4];
+
+    phasePaints = new Paint[NUM_GRAPHED_PHASES];
+    for (int i = 0; i < NUM_GRAPHED_PHASES; i++) {
+      phasePaints[i] = new Paint();
+      phasePaints[i].setColor(PHASE_COLORS[i]);
+    }
+    targetPaint = new Paint();
+    targetPaint.setColor(Color.WHITE);
+  }
+
+  /**
+   * Turns recording on or off. Turning it on clears any old frames once the
+   * next frame begins. May be called from any thread, such as the UI
+   * thread.
+   */
+  public void setEnabled(boolean enabled) {
+    if (enabled == this.enabled) {
+      return;
+    }
+
+    if (enabled) {
+      // Garbage collection counts are only tracked while allocation
+      // counting is active.
+      Debug.startAllocCounting();
+      clearPending = true;
+    } else {
+      Debug.stopAllocCounting();
+    }
+    this.enabled = enabled;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Removes all recorded frames. Must be called from the thread recording
+   * frames.
+   */
+  public void clear() {
+    head = 0;
+    count = 0;
+  }
+
+  /**
+   * Marks the start of a new frame.
+   */
+  public void beginFrame() {
+    if (!enabled) {
+      return;
+    }
+    if (clearPending) {
+      clearPending = false;
+      clear();
+    }
+
+    for (int i = 0; i < NUM_PHASES; i++) {
+      phaseTotal[i] = 0;
+    }
+    frameGcCount = Debug.getGlobalGcInvocationCount();
+    frameStart = System.nanoTime();
+  }
+
+  /**
+   * Marks the end of the current frame and stores its timings. A frame that
+   * began before recording was turned on is dropped.
+   */
+  public void endFrame() {
+    if (!enabled || clearPending) {
+      return;
+    }
+
+    frames[head] = System.nanoTime() - frameStart;
+    for (int i = 0; i < NUM_PHASES; i++) {
+      phases[i][head] = phaseTotal[i];
+    }
+    gcFrames[head] = Debug.getGlobalGcInvocationCount() != frameGcCount;
+
+    head = (head + 1) % frames.length;
+    if (count < frames.length) {
+      count++;
+    }
+  }
+
+  /**
+   * Starts timing a phase.
+   */
+  public void begin(int phase) {
+    if (!enabled) {
+      return;
+    }
+    phaseStart[phase] = System.nanoTime();
+  }
+
+  /**
+   * Stops timing a phase, adding the time since begin() to the phase's total
+   * for this frame.
+   */
+  public void end(int phase) {
+    if (!enabled) {
+      return;
+    }
+    phaseTotal[phase] += System.nanoTime() - phaseStart[phase];
+  }
+
+  /**
+   * Returns the maximum number of frames that are remembered.
+   */
+  public int getCapacity() {
+    return frames.length;
+  }
+
+  /**
+   * Returns how many frames are currently recorded.
+   */
+  public int getFrameCount() {
+    return count;
+  }
+
+  /**
+   * Returns the frame time, in nanoseconds, that the given fraction of
+   * recorded frames finished within. For example, 0.95 for the 95th
+   * percentile. Returns 0 if no frames have been recorded.
+   */
+  public long getFramePercentile(float percentile) {
+    return percentile(frames, percentile);
+  }
+
+  /**
+   * Returns the given percentile of the time, in nanoseconds, spent in a
+   * single phase per frame.
+   */
+  public long getPhasePercentile(int phase, float percentile) {
+    return percentile(phases[phase], percentile);
+  }
+
+  /**
+   * Returns the time, in nanoseconds, of the slowest recorded frame.
+   */
+  public long getWorstFrame() {
+    long worst = 0;
+    for (int i = 0; i < count; i++) {
+      worst = Math.max(worst, frames[i]);
+    }
+    return worst;
+  }
+
+  /**
+   * Returns the number of recorded frames that a garbage collection ran
+   * during.
+   */
+  public int getGcFrameCount() {
+    int hits = 0;
+    for (int i = 0; i < count; i++) {
+      if (gcFrames[i]) {
+        hits++;
+      }
+    }
+    return hits;
+  }
+
+  /**
+   * Returns the number of recorded frames that a garbage collection ran
+   * during and that went over the given frame time, in nanoseconds.
+   */
+  public int getGcStallCount(long frameBudget) {
+    int hits = 0;
+    for (int i = 0; i < count; i++) {
+      if (gcFrames[i] && frames[i] > frameBudget) {
+        hits++;
+      }
+    }
+    return hits;
+  }
+
+  /**
+   * Draws a graph of the recorded frames, oldest on the left. Each frame is
+   * drawn as a bar with the update, draw, lock and unlock phases stacked in
+   * green, blue, yellow and red. The white line marks a 60 fps frame, which
+   * is half of the graph's height.
+   */
+  public void draw(Canvas canvas, float x, float y, float width, float height) {
+    if (count == 0) {
+      return;
+    }
+
+    float barWidth = width / frames.length;
+    float nanoHeight = height / (TARGET_FRAME_NANOS * 2f);
+    float bottom = y + height;
+    int oldest = (head - count + frames.length) % frames.length;
+
+    // Each phase is drawn in a single call, with one line per frame stacked
+    // on top of the phases before it.
+    for (int phase = 0; phase < NUM_GRAPHED_PHASES; phase++) {
+      int index = 0;
+      for (int i = 0; i < count; i++) {
+        int frame = (oldest + i) % frames.length;
+
+        long below = 0;
+        for (int other = 0; other < phase; other++) {
+          below += phases[other][frame];
+        }
+
+        float barX = x + i * barWidth;
+        lines[index++] = barX;
+        lines[index++] = Math.max(y, bottom - below * nanoHeight);
+        lines[index++] = barX;
+        lines[index++] = Math.max(y, bottom - (below + phases[phase][frame]) * nanoHeight);
+      }
+      phasePaints[phase].setStrokeWidth(Math.max(1, barWidth));
+      canvas.drawLines(lines, 0, index, phasePaints[phase]);
+    }
+
+    float targetY = bottom - TARGET_FRAME_NANOS * nanoHeight;
+    canvas.drawLine(x, targetY, x + width, targetY, targetPaint);
+  }
+
+  /**
+   * Returns a short summary of frame times in milliseconds, such as
+   * "p50 16.1 p95 18.0 p99 22.3 max 40.2 gc 2". Allocates, so it should be
+   * called sparingly.
+   */
+  public String getSummary() {
+    return "p50 " + toMillis(getFramePercentile(0.5f)) +
+        " p95 " + toMillis(getFramePercentile(0.95f)) +
+        " p99 " + toMillis(getFramePercentile(0.99f)) +
+        " max " + toMillis(getWorstFrame()) +
+        " gc " + getGcFrameCount();
+  }
+
+  private static String toMillis(long nanos) {
+    return Float.toString(Math.round(nanos / (NANOS_PER_MILLI / 10f)) / 10f);
+  }
+
+  /**
+   * Finds a percentile by sorting a copy of the recorded values. A shell sort
+   * is done in place on a preallocated array to avoid any allocations.
+   */
+  private long percentile(long[] values, float percentile) {
+    if (count == 0) {
+      return 0;
+    }
+
+    System.arraycopy(values, 0, sorted, 0, count);
+    for (int gap = count / 2; gap > 0; gap /= 2) {
+      for (int i = gap; i < count; i++) {
+        long value = sorted[i];
+        int j = i;
+        while (j >= gap && sorted[j - gap] > value) {
+          sorted[j] = sorted[j - gap];
+          j -= gap;
+        }
+        sorted[j] = value;
+      }
+    }
+
+    int index = (int) Math.ceil(percentile * count) - 1;
+    return sorted[Math.max(0, Math.min(count - 1, index))];
+  }
+
+  /**
+   * Returns the shared profiler used by the thread that updates the game.
+   */
+  public static FrameProfiler get() {
+    return singleton;
+  }
+}
@@ -47,6 +47,37 @@ public class Game {
    */
   public void draw(Canvas canvas) {
     
+  }
+  
+  /**
+   * Renders the game scene. Called by the {@link Updater}, which runs updates
+   * at a fixed rate and draws independently of them. The interpolation is
+   * how far, from 0 to 1, the current time has progressed from the last
+   * update towards the next one, and may be used to smooth out movement.
+   * By default this ignores the interpolation and calls draw(Canvas).
+   */
+  public void draw(Canvas canvas, float interpolation) {
+    draw(canvas);
+  }
+  
+  /**
+   * Renders the game scene from a snapshot. Only used when the
+   * {@link Updater} draws on its own thread, in which case this is called
+   * from the render thread and must not touch live game objects. Everything
+   * needed should be read from the snapshot filled in by
+   * {@link #writeSnapshot(WorldSnapshot)}.
+   */
+  public void draw(Canvas canvas, WorldSnapshot snapshot, float interpolation) {
+    
+  }
+  
+  /**
+   * Writes the renderable state of the game into a snapshot. Only used when
+   * the {@link Updater} draws on its own thread. Called from the update thread
+   * after each round of updates with an empty snapshot.
+   */
+  public void writeSnapshot(WorldSnapshot snapshot) {
+    
   }
 
   /**
@@ -54,6 +85,7 @@ public class Game {
    * on the passed time.
    * 
    * @param time The number of milliseconds passed from the last update call.
+   *     When run by an {@link Updater} this is always the same fixed step.
    */
   public void update(long time) {
 
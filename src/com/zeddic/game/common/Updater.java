@@ -18,8 +18,6 @@ package com.zeddic.game.common;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 
 import android.graphics.Canvas;
 import android.graphics.Color;
@@ -32,6 +30,8 @@ import android.view.MotionEvent;
 import android.view.SurfaceHolder;
 
 import com.zeddic.game.common.GameSurface.GameSurfaceEventListener;
+import com.zeddic.game.common.collision.CollisionManager;
+import com.zeddic.game.common.util.TripleBuffer;
 
 /**
  * Manages a background thread to update and render a {@link Game}. The updater
@@ -69,25 +69,74 @@ import com.zeddic.game.common.GameSurface.GameSurfaceEventListener;
  */
 public class Updater implements GameSurfaceEventListener  {
 
+  //// THREADING MODES
+  
+  /** Updates and draws the game in turn on a single background thread. */
+  public static final int MODE_SINGLE_THREAD = 0;
+  
+  /**
+   * Updates the game on one thread and draws on another. After each round of
+   * updates the game writes its renderable state into a {@link WorldSnapshot}
+   * which the render thread then draws from. The game must implement
+   * {@link Game#writeSnapshot} and {@link Game#draw(Canvas, WorldSnapshot, float)}.
+   */
+  public static final int MODE_SEPARATE_RENDER_THREAD = 1;
+  
   // The game to render.
   public Game game = null;
   
-  // The target frames per second.
-  private static final int UPDATES_PER_SECOND = 60;
-  private final Timer timer;
+  // The default number of simulation updates per second.
+  private static final int DEFAULT_UPDATES_PER_SECOND = 60;
+  
+  // The default maximum amount of time, in milliseconds, that will be
+  // simulated for a single frame. 
+  private static final long DEFAULT_MAX_FRAME_TIME = 250;
+  
+  private static final long NANOS_PER_MILLI = 1000000;
+  
   private final GameSurface gameSurface;
   private final SurfaceHolder surfaceHolder; 
-  private boolean running = false;
+  private volatile boolean running = false;
   private boolean showFps = false;
   
-  private UpdateTask updateTask;
-  private long timestamp;
+  private UpdateThread updateThread;
+  private RenderThread renderThread;
+  
+  /** How updates and draws are split between threads. */
+  private int threadingMode = MODE_SINGLE_THREAD;
+  
+  /** Snapshots passed from the update thread to the render thread. */
+  private final TripleBuffer<WorldSnapshot> snapshots;
+  
+  /** 
+   * The length of a single simulation step. Set from the UI thread and read
+   * by the update and render threads.
+   */
+  private volatile long stepNanos;
+  
+  /**
+   * The part of the steps taken so far that is less than a millisecond, and
+   * so not yet passed to Game.update. Only used by the update thread.
+   */
+  private long stepCarryNanos = 0;
+  
+  /**
+   * Frames longer than this are clamped so a long stall (such as a GC or the
+   * app being paused) doesn't trigger a huge burst of catch-up updates.
+   */
+  private volatile long maxFrameNanos;
 
   private Paint paint;
   private int frameCount = 0;
   private int fps = 0;
   private long fpsTimestamp;
   
+  /** Records frames drawn by the render thread in separate render mode. */
+  private final FrameProfiler renderProfiler;
+  private volatile boolean showFrameGraph = false;
+  private String frameSummary = "";
+  private long frameSummaryTimestamp;
+  
   private boolean screenSizeKnown = false;
   private int screenWidth;
   private int screenHeight;
@@ -101,8 +150,12 @@ public class Updater implements GameSurfaceEventListener  {
    * GameSurface.
    */
   public Updater(GameSurface surface) {
-    this.timer = new Timer();
-    this.timestamp = System.currentTimeMillis();
+    setUpdatesPerSecond(DEFAULT_UPDATES_PER_SECOND);
+    setMaxFrameTime(DEFAULT_MAX_FRAME_TIME);
+    
+    this.snapshots = new TripleBuffer<WorldSnapshot>(
+        new WorldSnapshot(), new WorldSnapshot(), new WorldSnapshot());
+    this.renderProfiler = new FrameProfiler(FrameProfiler.get().getCapacity());
     
     this.eventHandlers = new HashMap<Integer, Handler>();
     
@@ -127,18 +180,51 @@ public class Updater implements GameSurfaceEventListener  {
     }
     
     running = true;
-    long updateInterval = 1000 / UPDATES_PER_SECOND;
-    updateTask = new UpdateTask();
-    timer.scheduleAtFixedRate(updateTask, 0, updateInterval);
+    updateThread = new UpdateThread();
+    updateThread.start();
+    
+    if (threadingMode == MODE_SEPARATE_RENDER_THREAD) {
+      renderThread = new RenderThread();
+      renderThread.start();
+    }
   }
   
   /**
-   * Stops the updater.
+   * Stops the updater. If called from outside of the updater's threads,
+   * blocks until they have finished their current frame so nothing else is
+   * drawn to the surface.
    */
   public void stop() {
     running = false;
-    updateTask.cancel();
-    timer.purge();
+    
+    join(updateThread);
+    join(renderThread);
+    renderThread = null;
+  }
+  
+  private void join(Thread thread) {
+    if (thread == null || thread == Thread.currentThread()) {
+      return;
+    }
+    
+    boolean retry = true;
+    while (retry) {
+      try {
+        thread.join();
+        retry = false;
+      } catch (InterruptedException e) {
+        // Keep waiting for the thread to finish.
+      }
+    }
+  }
+  
+  /**
+   * Sets whether the game should be drawn on the same thread that updates it
+   * ({@link #MODE_SINGLE_THREAD}, the default) or on its own thread
+   * ({@link #MODE_SEPARATE_RENDER_THREAD}). Takes effect on the next start().
+   */
+  public void setThreadingMode(int mode) {
+    this.threadingMode = mode;
   }
   
   /**
@@ -149,9 +235,28 @@ public class Updater implements GameSurfaceEventListener  {
   }
   
   /**
-   * Updates the game. Triggered via the updater.
+   * Sets how many times per second the game should be updated. Each update is
+   * passed the fixed step of time in whole milliseconds, with any remainder
+   * carried over to later updates so game time keeps pace with real time.
+   * Rendering is not tied to this rate.
+   */
+  public void setUpdatesPerSecond(int updatesPerSecond) {
+    stepNanos = Math.max(NANOS_PER_MILLI, 1000 * NANOS_PER_MILLI / updatesPerSecond);
+  }
+  
+  /**
+   * Sets the maximum amount of time, in milliseconds, that will be simulated
+   * for a single frame. Any time past this is dropped and the game will
+   * appear to slow down rather than stutter through many catch-up updates.
    */
-  private void update() {
+  public void setMaxFrameTime(long millis) {
+    maxFrameNanos = millis * NANOS_PER_MILLI;
+  }
+  
+  /**
+   * Updates the game by a single fixed step. Triggered via the updater.
+   */
+  private void update(long stepNanos) {
     if (game == null) {
       return;
     }
@@ -162,34 +267,68 @@ public class Updater implements GameSurfaceEventListener  {
       game.init(screenWidth, screenHeight);
     }
     
-    long now = System.currentTimeMillis();
-    long delta = now - timestamp;
-      
-    game.update(delta);
+    // At 60 updates a second this passes 16 or 17 milliseconds, averaging
+    // to the true step.
+    stepCarryNanos += stepNanos;
+    long stepMillis = stepCarryNanos / NANOS_PER_MILLI;
+    stepCarryNanos -= stepMillis * NANOS_PER_MILLI;
+    
+    FrameProfiler profiler = FrameProfiler.get();
+    profiler.begin(FrameProfiler.PHASE_UPDATE);
+    game.update(stepMillis);
+    
+    // When stepping, collisions are found once every object has moved.
+    CollisionManager collisionManager = CollisionManager.get();
+    if (collisionManager != null && collisionManager.getMode() == CollisionManager.MODE_STEP) {
+      collisionManager.step(stepMillis);
+    }
+    profiler.end(FrameProfiler.PHASE_UPDATE);
+  }
+  
+  /**
+   * Hands the latest state of the game to the render thread. The time is the
+   * System.nanoTime() that the state corresponds to.
+   */
+  private void publishSnapshot(long time) {
+    if (game == null || !game.initialized) {
+      return;
+    }
     
-    timestamp = now;
+    WorldSnapshot snapshot = snapshots.getWriteBuffer();
+    snapshot.clear();
+    game.writeSnapshot(snapshot);
+    snapshot.time = time;
+    snapshots.publish();
   }
   
   /**
-   * Obtains the game canvas and draws the game.
+   * Obtains the game canvas and draws the game. The interpolation is how far,
+   * from 0 to 1, the current time is between the last update and the next.
+   * If a snapshot is given the game is drawn from it, otherwise it is drawn
+   * directly. Timings are recorded in the given profiler. Returns true if the
+   * game could be drawn.
    */
-  private void draw() {
+  private boolean draw(WorldSnapshot snapshot, float interpolation, FrameProfiler profiler) {
     if (surfaceHolder == null || !gameSurface.isSurfaceReady()) {
       // Can't draw yet. The surface is still being created.
-      return;
+      return false;
     }
         
     if (game == null || !game.initialized) {
       // Can't draw yet. The game isn't available.
-      return;
+      return false;
     }
     
     Canvas c = null;
     try {
+      profiler.begin(FrameProfiler.PHASE_LOCK_CANVAS);
       c = surfaceHolder.lockCanvas(null);
+      profiler.end(FrameProfiler.PHASE_LOCK_CANVAS);
       
       synchronized (surfaceHolder) {
-        draw(c);
+        profiler.begin(FrameProfiler.PHASE_DRAW);
+        draw(c, snapshot, interpolation, profiler);
+        profiler.end(FrameProfiler.PHASE_DRAW);
       }
     } catch (Exception e) {
       Log.i(Updater.class.getName(), "Rendering Exception", e);
@@ -198,19 +337,30 @@ public class Updater implements GameSurfaceEventListener  {
       // during the above, we don't leave the Surface in an
       // inconsistent state
       if (c != null) {
+        profiler.begin(FrameProfiler.PHASE_UNLOCK_CANVAS);
         surfaceHolder.unlockCanvasAndPost(c);
+        profiler.end(FrameProfiler.PHASE_UNLOCK_CANVAS);
       }
     }
+    return true;
   }
   
   /**
    * Draws the game.
    */
-  private void draw(Canvas canvas) {
+  private void draw(
+      Canvas canvas,
+      WorldSnapshot snapshot,
+      float interpolation,
+      FrameProfiler profiler) {
     
     canvas.drawColor(Color.BLACK, Mode.SRC_IN);
     
-    game.draw(canvas);
+    if (snapshot != null) {
+      game.draw(canvas, snapshot, interpolation);
+    } else {
+      game.draw(canvas, interpolation);
+    }
     
     if (showFps) {
       frameCount++;
@@ -226,9 +376,31 @@ public class Updater implements GameSurfaceEventListener  {
       canvas.restore();
       
     }
+    
+    if (showFrameGraph) {
+      drawFrameGraph(canvas, profiler);
+    }
     canvas.restore();
   }
   
+  /**
+   * Draws a graph of recent frame times along the bottom of the screen along
+   * with a summary of frame time percentiles. The summary text is only
+   * rebuilt once a second.
+   */
+  private void drawFrameGraph(Canvas canvas, FrameProfiler profiler) {
+    long now = System.currentTimeMillis();
+    if (now - frameSummaryTimestamp > 1000) {
+      frameSummary = profiler.getSummary();
+      frameSummaryTimestamp = now;
+    }
+    
+    float graphHeight = screenHeight / 4f;
+    float graphTop = screenHeight - graphHeight;
+    profiler.draw(canvas, 0, graphTop, screenWidth, graphHeight);
+    canvas.drawText(frameSummary, 10, graphTop - 10, paint);
+  }
+  
   /**
    * Registers to recieve an event in the UI thread when it is published
    * by the background game thread.
@@ -299,18 +471,125 @@ public class Updater implements GameSurfaceEventListener  {
   }
   
   /**
-   * An updater that tries to update and draw the game on a timed basis. 
+   * Sets whether frames should be profiled and a graph of frame times drawn
+   * along the bottom of the screen. Defaults to false. Profiling results may
+   * also be read directly from {@link FrameProfiler#get()}.
+   */
+  public void showFrameGraph(boolean state) {
+    this.showFrameGraph = state;
+    FrameProfiler.get().setEnabled(state);
+    renderProfiler.setEnabled(state);
+  }
+  
+  /**
+   * Returns the profiler recording frames drawn by the render thread when
+   * running in {@link #MODE_SEPARATE_RENDER_THREAD}. In single threaded mode
+   * everything is recorded by {@link FrameProfiler#get()}.
    */
-  private class UpdateTask extends TimerTask {
+  public FrameProfiler getRenderProfiler() {
+    return renderProfiler;
+  }
+  
+  /**
+   * A background thread that updates the game at a fixed rate and draws it
+   * as often as the surface allows. Real time is measured each frame and
+   * added to an accumulator which is then consumed in fixed sized update
+   * steps. Whatever is left over is passed to the draw as an interpolation
+   * value so rendering can smooth between steps.
+   */
+  private class UpdateThread extends Thread {
+    
     @Override
     public void run() {
-      try {
-        update();
-        draw();
-      } catch (Exception e) {
-        Log.i("zeddic", "Update Exception", e);
+      long previous = System.nanoTime();
+      long accumulator = 0;
+      
+      FrameProfiler profiler = FrameProfiler.get();
+      
+      while (running) {
+        profiler.beginFrame();
+        
+        long now = System.nanoTime();
+        long frameTime = now - previous;
+        previous = now;
+        
+        // Read once so a change from the UI thread applies to whole frames.
+        long stepNanos = Updater.this.stepNanos;
+        long maxFrameNanos = Updater.this.maxFrameNanos;
+        if (frameTime > maxFrameNanos) {
+          frameTime = maxFrameNanos;
+        }
+        accumulator += frameTime;
+        
+        boolean drawn = false;
+        try {
+          int updates = 0;
+          while (accumulator >= stepNanos && running) {
+            update(stepNanos);
+            accumulator -= stepNanos;
+            updates++;
+          }
+          
+          if (threadingMode == MODE_SINGLE_THREAD) {
+            drawn = draw(null, (float) accumulator / stepNanos, profiler);
+          } else if (updates > 0) {
+            publishSnapshot(now - accumulator);
+          }
+        } catch (Exception e) {
+          Log.i("zeddic", "Update Exception", e);
+        }
+        
+        profiler.endFrame();
+        
+        // Normally locking the canvas throttles the loop. If nothing could be
+        // drawn, sleep until the next update is due instead of spinning.
+        if (!drawn && running) {
+          sleepQuietly((stepNanos - accumulator) / NANOS_PER_MILLI);
+        }
       }
-    }    
+    }
+  }
+  
+  /**
+   * A background thread that continually draws the latest snapshot published
+   * by the update thread. Used in {@link #MODE_SEPARATE_RENDER_THREAD}.
+   */
+  private class RenderThread extends Thread {
+    
+    @Override
+    public void run() {
+      while (running) {
+        renderProfiler.beginFrame();
+        WorldSnapshot snapshot = snapshots.getReadBuffer();
+        
+        boolean drawn = false;
+        if (snapshot.time != 0) {
+          float interpolation = (float) (System.nanoTime() - snapshot.time) / stepNanos;
+          interpolation = Math.max(0, Math.min(1, interpolation));
+          try {
+            drawn = draw(snapshot, interpolation, renderProfiler);
+          } catch (Exception e) {
+            Log.i("zeddic", "Render Exception", e);
+          }
+        }
+        renderProfiler.endFrame();
+        
+        if (!drawn && running) {
+          sleepQuietly(stepNanos / NANOS_PER_MILLI);
+        }
+      }
+    }
+  }
+  
+  private static void sleepQuietly(long millis) {
+    if (millis <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      // Simply resume early.
+    }
   }
   
   /// IMPLEMENTS GameSurfaceEventListener
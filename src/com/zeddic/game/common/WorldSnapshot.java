@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2010 Zeddic Game Library
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zeddic.game.common;
+
+import android.util.Log;
+
+/**
+ * A copy of everything needed to render the world at a single point in time.
+ * Used when the {@link Updater} draws on a separate thread from the one
+ * updating the game: the update thread writes the renderable state of each
+ * object into a snapshot and the render thread draws from it, never touching
+ * the live game objects.
+ * 
+ * <p>Entries are stored in parallel primitive arrays. Paint ids are defined
+ * by the game, typically as indexes into a table of Paints that is set up
+ * once during init and never changed.
+ * 
+ * @author scott@zeddic.com
+ */
+public class WorldSnapshot {
+  
+  private static final int INITIAL_CAPACITY = 256;
+  private static final int CAPACITY_GROWTH_RATE = 2;
+  
+  /** The number of entries in the snapshot. */
+  public int size;
+  
+  public float[] x;
+  public float[] y;
+  public float[] angle;
+  public float[] scale;
+  public float[] alpha;
+  public int[] paint;
+  
+  /** 
+   * The System.nanoTime() that the state in this snapshot represents. 
+   * 0 if nothing has been written to the snapshot yet.
+   */
+  public long time;
+  
+  public WorldSnapshot() {
+    this(INITIAL_CAPACITY);
+  }
+  
+  public WorldSnapshot(int capacity) {
+    x = new float[capacity];
+    y = new float[capacity];
+    angle = new float[capacity];
+    scale = new float[capacity];
+    alpha = new float[capacity];
+    paint = new int[capacity];
+  }
+  
+  /**
+   * Adds a new entry to the snapshot. Returns its index.
+   */
+  public int add(float x, float y, float angle, float scale, float alpha, int paint) {
+    if (size == this.x.length) {
+      grow();
+    }
+    
+    this.x[size] = x;
+    this.y[size] = y;
+    this.angle[size] = angle;
+    this.scale[size] = scale;
+    this.alpha[size] = alpha;
+    this.paint[size] = paint;
+    return size++;
+  }
+  
+  /**
+   * Adds the position, angle and scale of a physical object to the snapshot.
+   */
+  public int add(PhysicalObject object, float alpha, int paint) {
+    return add(object.x, object.y, object.angle, object.scale, alpha, paint);
+  }
+  
+  /**
+   * Clears the snapshot. The underlying arrays are kept for reuse.
+   */
+  public void clear() {
+    size = 0;
+  }
+  
+  private void grow() {
+    int newSize = x.length * CAPACITY_GROWTH_RATE;
+    
+    // Like SimpleList, growing means allocating at runtime. The initial
+    // capacity should be large enough that this rarely happens.
+    Log.d(WorldSnapshot.class.getName(), "Increasing snapshot from size " + 
+        x.length + " to " + newSize);
+    
+    x = grow(x, newSize);
+    y = grow(y, newSize);
+    angle = grow(angle, newSize);
+    scale = grow(scale, newSize);
+    alpha = grow(alpha, newSize);
+    
+    int[] newPaint = new int[newSize];
+    System.arraycopy(paint, 0, newPaint, 0, size);
+    paint = newPaint;
+  }
+  
+  private float[] grow(float[] array, int newSize) {
+    float[] newArray = new float[newSize];
+    System.arraycopy(array, 0, newArray, 0, size);
+    return newArray;
+  }
+}
@@ -0,0 +1,844 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.SimpleList;
+
+/**
+ * A {@link BroadPhase} that keeps objects in a dynamic tree of axis aligned
+ * bounding boxes. Each object is a leaf, and each inner node's box holds
+ * the boxes of both of its children, so any query only has to visit the
+ * parts of the tree that overlap it.
+ * 
+ * Unlike {@link CollisionGrid}, objects of any size are stored exactly once
+ * and nothing needs to be tuned to the size of the world or its objects.
+ * 
+ * Moving objects are stored with a 'fat' box: their bounds grown by a
+ * margin and stretched in the direction of their velocity. An object is
+ * only moved within the tree once its bounds, stretched by its velocity,
+ * leave its fat box, so small movements are nearly free. New leaves are
+ * placed next to the node that grows the tree's boxes the least, and the
+ * tree is rebalanced with rotations as it changes so queries stay fast.
+ * 
+ * Nodes are kept in parallel arrays and referred to by index to avoid
+ * creating objects as the tree changes. The layout follows the dynamic tree
+ * in Box2D.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public class AabbTree implements BroadPhase {
+
+  private static final int NULL_NODE = -1;
+  private static final int INITIAL_CAPACITY = 64;
+  private static final int CAPACITY_GROWTH_RATE = 2;
+  
+  /** How far, in world units, to grow the boxes of moving objects. */
+  private static final float FAT_MARGIN = 4;
+  
+  /** 
+   * How many milliseconds ahead of an object's velocity to stretch its
+   * box. A little longer than a frame.
+   */
+  private static final float LOOKAHEAD_TIME = 50;
+  
+  //// NODES
+  // The box of each node is stored in a single array, four values per node,
+  // so that checking a node's box during a query touches one cache line
+  // rather than four.
+  private static final int MIN_X = 0;
+  private static final int MIN_Y = 1;
+  private static final int MAX_X = 2;
+  private static final int MAX_Y = 3;
+  private static final int BOX_SIZE = 4;
+  
+  private float[] boxes;
+  
+  /** The parent of each node. For free nodes, the next free node. */
+  private int[] parent;
+  private int[] child1;
+  private int[] child2;
+  
+  /** Distance to the furthest leaf below. 0 for leaves, -1 if free. */
+  private int[] height;
+  
+  /** The component stored in each leaf. */
+  private CollisionComponent[] components;
+  
+  private int root = NULL_NODE;
+  private int freeList;
+  private int nodeCount = 0;
+  
+  /** Every object added with {@link #addObject}. */
+  private SimpleList<CollisionComponent> movers;
+  
+  /** Nodes waiting to be visited during a query. */
+  private int[] stack = new int[64];
+  
+  /** Pairs of nodes waiting to be checked while finding pairs. */
+  private int[] pairStack = new int[128];
+  
+  //// BOUNDS OF THE CURRENT QUERY OR LEAF
+  private float boundsMinX;
+  private float boundsMinY;
+  private float boundsMaxX;
+  private float boundsMaxY;
+  
+  public AabbTree() {
+    this(INITIAL_CAPACITY);
+  }
+  
+  public AabbTree(int initialCapacity) {
+    boxes = new float[initialCapacity * BOX_SIZE];
+    parent = new int[initialCapacity];
+    child1 = new int[initialCapacity];
+    child2 = new int[initialCapacity];
+    height = new int[initialCapacity];
+    components = new CollisionComponent[initialCapacity];
+    linkFreeNodes(0);
+    movers = new SimpleList<CollisionComponent>(CollisionComponent.class);
+  }
+  
+  /**
+   * Returns the height of the tree, or -1 if it is empty.
+   */
+  public int getHeight() {
+    return root == NULL_NODE ? -1 : height[root];
+  }
+  
+  /**
+   * Returns the number of nodes in use, both leaves and inner nodes.
+   */
+  public int getNodeCount() {
+    return nodeCount;
+  }
+  
+  public void addObject(CollisionComponent component) {
+    if (component.proxy != NULL_NODE) {
+      return;
+    }
+    
+    movers.add(component);
+    loadTightBounds(component);
+    fatten(component);
+    insert(component);
+  }
+  
+  public void addStationaryObject(CollisionComponent component) {
+    if (component.proxy != NULL_NODE) {
+      return;
+    }
+    
+    loadTightBounds(component);
+    insert(component);
+  }
+  
+  public void removeObject(CollisionComponent component) {
+    int leaf = component.proxy;
+    if (leaf == NULL_NODE) {
+      return;
+    }
+    
+    movers.remove(component);
+    removeLeaf(leaf);
+    freeNode(leaf);
+    component.proxy = NULL_NODE;
+  }
+  
+  /**
+   * Moves an object in the tree, but only if it has left its fat box. The
+   * distance it is about to travel must also fit in the box, as with the
+   * other broad phases, so a fast object near the edge of its box is still
+   * found by objects just past it.
+   */
+  public void updatePosition(CollisionComponent component) {
+    int leaf = component.proxy;
+    if (leaf == NULL_NODE || component.type == CollisionManager.TYPE_STATIONARY) {
+      return;
+    }
+    
+    loadTightBounds(component);
+    stretch(component);
+    int box = leaf * BOX_SIZE;
+    if (boxes[box + MIN_X] <= boundsMinX && boxes[box + MIN_Y] <= boundsMinY &&
+        boxes[box + MAX_X] >= boundsMaxX && boxes[box + MAX_Y] >= boundsMaxY) {
+      return;
+    }
+    
+    removeLeaf(leaf);
+    addMargin();
+    setBounds(leaf);
+    insertLeaf(leaf);
+  }
+  
+  public void getNearbyObjects(
+      CollisionComponent component,
+      SimpleList<PhysicalObject> nearby,
+      SimpleList<CollisionComponent> nearbyComponents) {
+    
+    int leaf = component.proxy;
+    if (leaf != NULL_NODE) {
+      updatePosition(component);
+      int box = leaf * BOX_SIZE;
+      boundsMinX = boxes[box + MIN_X];
+      boundsMinY = boxes[box + MIN_Y];
+      boundsMaxX = boxes[box + MAX_X];
+      boundsMaxY = boxes[box + MAX_Y];
+    } else {
+      loadTightBounds(component);
+    }
+    query(component, nearby, nearbyComponents);
+  }
+  
+  public void getObjectsInRegion(
+      float minX,
+      float minY,
+      float maxX,
+      float maxY,
+      SimpleList<PhysicalObject> results) {
+    
+    boundsMinX = minX;
+    boundsMinY = minY;
+    boundsMaxX = maxX;
+    boundsMaxY = maxY;
+    query(null, results, null);
+  }
+  
+  /**
+   * Places any objects whose boxes are crossed by the line segment from
+   * (x1, y1) to (x2, y2) into results.
+   */
+  public void getObjectsOnRay(
+      float x1,
+      float y1,
+      float x2,
+      float y2,
+      SimpleList<PhysicalObject> results) {
+    
+    if (root == NULL_NODE) {
+      return;
+    }
+    
+    float dX = x2 - x1;
+    float dY = y2 - y1;
+    int top = 0;
+    stack[top++] = root;
+    while (top > 0) {
+      int node = stack[--top];
+      if (segmentEntry(node, x1, y1, dX, dY, 0) > 1) {
+        continue;
+      }
+      
+      if (child1[node] == NULL_NODE) {
+        if (CollisionManager.canBeHit(components[node].type)) {
+          results.append(components[node].object);
+        }
+      } else {
+        top = push(top, child1[node]);
+        top = push(top, child2[node]);
+      }
+    }
+  }
+  
+  /**
+   * Reports objects whose boxes come within the distance of the segment,
+   * nearer subtrees first. Subtrees the segment only reaches past the
+   * callback's point of interest are skipped.
+   */
+  public void castSegment(
+      float x1,
+      float y1,
+      float x2,
+      float y2,
+      float distance,
+      CastCallback callback) {
+    
+    if (root == NULL_NODE) {
+      return;
+    }
+    
+    float dX = x2 - x1;
+    float dY = y2 - y1;
+    float maxFraction = 1;
+    int top = 0;
+    stack[top++] = root;
+    while (top > 0) {
+      int node = stack[--top];
+      if (segmentEntry(node, x1, y1, dX, dY, distance) > maxFraction) {
+        continue;
+      }
+      
+      if (child1[node] == NULL_NODE) {
+        CollisionComponent component = components[node];
+        if (CollisionManager.canBeHit(component.type)) {
+          maxFraction = callback.reportCandidate(component.object, component);
+        }
+      } else {
+        
+        // Push the nearer child last so it is visited first.
+        int near = child1[node];
+        int far = child2[node];
+        if (segmentEntry(far, x1, y1, dX, dY, distance) <
+            segmentEntry(near, x1, y1, dX, dY, distance)) {
+          near = child2[node];
+          far = child1[node];
+        }
+        top = push(top, far);
+        top = push(top, near);
+      }
+    }
+  }
+  
+  /**
+   * Finds pairs by walking the tree against itself: two subtrees are only
+   * opened if their boxes overlap, so most of the tree is ruled out a node
+   * pair at a time rather than once per object. Each pair of leaves is
+   * visited once, and two objects that can both hit each other are reported
+   * once, with the lower leaf first.
+   */
+  public void findPairs(PairList pairs) {
+    for (int i = 0; i < movers.size; i++) {
+      updatePosition(movers.items[i]);
+    }
+    
+    if (root == NULL_NODE || child1[root] == NULL_NODE) {
+      return;
+    }
+    
+    int top = pushPair(0, root, root);
+    while (top > 0) {
+      top -= 2;
+      int a = pairStack[top];
+      int b = pairStack[top + 1];
+      
+      // A node against itself: pairs are either both within one child or
+      // split across the two.
+      if (a == b) {
+        int c1 = child1[a];
+        int c2 = child2[a];
+        if (child1[c1] != NULL_NODE) {
+          top = pushPair(top, c1, c1);
+        }
+        if (child1[c2] != NULL_NODE) {
+          top = pushPair(top, c2, c2);
+        }
+        top = pushPair(top, c1, c2);
+        continue;
+      }
+      
+      int box = b * BOX_SIZE;
+      if (!overlaps(a,
+          boxes[box + MIN_X], boxes[box + MIN_Y], boxes[box + MAX_X], boxes[box + MAX_Y])) {
+        continue;
+      }
+      
+      boolean leafA = child1[a] == NULL_NODE;
+      boolean leafB = child1[b] == NULL_NODE;
+      if (leafA && leafB) {
+        addPair(pairs, Math.min(a, b), Math.max(a, b));
+      } else if (leafB || (!leafA && height[a] >= height[b])) {
+        top = pushPair(top, child1[a], b);
+        top = pushPair(top, child2[a], b);
+      } else {
+        top = pushPair(top, a, child1[b]);
+        top = pushPair(top, a, child2[b]);
+      }
+    }
+  }
+  
+  /**
+   * Reports two overlapping leaves as a pair if either can hit the other.
+   */
+  private void addPair(PairList pairs, int a, int b) {
+    CollisionComponent first = components[a];
+    CollisionComponent second = components[b];
+    if (!first.object.active || !second.object.active ||
+        !CollisionManager.canCollide(first, second)) {
+      return;
+    }
+    
+    if (CollisionManager.canHit(first.type) && CollisionManager.canBeHit(second.type)) {
+      pairs.add(first, second);
+    } else if (CollisionManager.canHit(second.type) && CollisionManager.canBeHit(first.type)) {
+      pairs.add(second, first);
+    }
+  }
+  
+  /**
+   * Finds every object that can be hit whose box overlaps the current
+   * bounds. If a filter is given, objects it can't collide with are skipped.
+   * Their components are also placed into resultComponents, if given.
+   */
+  private void query(
+      CollisionComponent filter,
+      SimpleList<PhysicalObject> results,
+      SimpleList<CollisionComponent> resultComponents) {
+    if (root == NULL_NODE) {
+      return;
+    }
+    
+    float queryMinX = boundsMinX;
+    float queryMinY = boundsMinY;
+    float queryMaxX = boundsMaxX;
+    float queryMaxY = boundsMaxY;
+    
+    int top = 0;
+    stack[top++] = root;
+    while (top > 0) {
+      int node = stack[--top];
+      if (!overlaps(node, queryMinX, queryMinY, queryMaxX, queryMaxY)) {
+        continue;
+      }
+      
+      if (child1[node] == NULL_NODE) {
+        CollisionComponent other = components[node];
+        if (CollisionManager.canBeHit(other.type) &&
+            (filter == null || CollisionManager.canCollide(filter, other))) {
+          results.append(other.object);
+        if (resultComponents != null) {
+          resultComponents.append(other);
+        }
+        }
+      } else {
+        top = push(top, child1[node]);
+        top = push(top, child2[node]);
+      }
+    }
+  }
+  
+  private boolean overlaps(int node, float left, float top, float right, float bottom) {
+    int box = node * BOX_SIZE;
+    return boxes[box + MIN_X] <= right && boxes[box + MAX_X] >= left &&
+        boxes[box + MIN_Y] <= bottom && boxes[box + MAX_Y] >= top;
+  }
+  
+  /**
+   * Returns how far along a segment it first comes within a distance of a
+   * node's box, or a value above 1 if it never does.
+   */
+  private float segmentEntry(int node, float x, float y, float dX, float dY, float distance) {
+    int box = node * BOX_SIZE;
+    return ShapeCast.segmentEntry(boxes[box + MIN_X], boxes[box + MIN_Y],
+        boxes[box + MAX_X], boxes[box + MAX_Y], x, y, dX, dY, distance);
+  }
+  
+  /**
+   * Pushes a node onto the query stack, growing it if needed. Returns the
+   * new top of the stack.
+   */
+  private int pushPair(int top, int a, int b) {
+    if (top + 2 > pairStack.length) {
+      int[] newStack = new int[pairStack.length * CAPACITY_GROWTH_RATE];
+      System.arraycopy(pairStack, 0, newStack, 0, pairStack.length);
+      pairStack = newStack;
+    }
+    pairStack[top] = a;
+    pairStack[top + 1] = b;
+    return top + 2;
+  }
+  
+  private int push(int top, int node) {
+    if (top == stack.length) {
+      int[] newStack = new int[stack.length * CAPACITY_GROWTH_RATE];
+      System.arraycopy(stack, 0, newStack, 0, stack.length);
+      stack = newStack;
+    }
+    stack[top] = node;
+    return top + 1;
+  }
+  
+  /**
+   * Loads the exact bounds of a component into the current bounds. Moving
+   * objects use a box around their radius, stationary objects their width
+   * and height.
+   */
+  private void loadTightBounds(CollisionComponent component) {
+    PhysicalObject object = component.object;
+    float halfWidth;
+    float halfHeight;
+    if (component.type == CollisionManager.TYPE_STATIONARY) {
+      halfWidth = object.bounds.shape.width / 2;
+      halfHeight = object.bounds.shape.height / 2;
+    } else {
+      halfWidth = object.bounds.shape.radius;
+      halfHeight = object.bounds.shape.radius;
+    }
+    boundsMinX = object.x - halfWidth;
+    boundsMinY = object.y - halfHeight;
+    boundsMaxX = object.x + halfWidth;
+    boundsMaxY = object.y + halfHeight;
+  }
+  
+  /**
+   * Grows the current bounds by the fat margin and the distance the
+   * component is about to travel.
+   */
+  private void fatten(CollisionComponent component) {
+    stretch(component);
+    addMargin();
+  }
+  
+  /**
+   * Stretches the current bounds by the distance the component is about to
+   * travel.
+   */
+  private void stretch(CollisionComponent component) {
+    PhysicalObject object = component.object;
+    float dX = object.velocity.x * LOOKAHEAD_TIME / PhysicalObject.TIME_SCALER;
+    float dY = object.velocity.y * LOOKAHEAD_TIME / PhysicalObject.TIME_SCALER;
+    boundsMinX += Math.min(0, dX);
+    boundsMinY += Math.min(0, dY);
+    boundsMaxX += Math.max(0, dX);
+    boundsMaxY += Math.max(0, dY);
+  }
+  
+  /**
+   * Grows the current bounds by the fat margin.
+   */
+  private void addMargin() {
+    boundsMinX -= FAT_MARGIN;
+    boundsMinY -= FAT_MARGIN;
+    boundsMaxX += FAT_MARGIN;
+    boundsMaxY += FAT_MARGIN;
+  }
+  
+  /**
+   * Creates a leaf with the current bounds for the component.
+   */
+  private void insert(CollisionComponent component) {
+    int leaf = allocateNode();
+    components[leaf] = component;
+    height[leaf] = 0;
+    setBounds(leaf);
+    component.proxy = leaf;
+    insertLeaf(leaf);
+  }
+  
+  private void setBounds(int node) {
+    boxes[node * BOX_SIZE + MIN_X] = boundsMinX;
+    boxes[node * BOX_SIZE + MIN_Y] = boundsMinY;
+    boxes[node * BOX_SIZE + MAX_X] = boundsMaxX;
+    boxes[node * BOX_SIZE + MAX_Y] = boundsMaxY;
+  }
+  
+  /**
+   * Adds a leaf to the tree next to whichever node makes the tree's boxes
+   * grow the least. Boxes are measured by their perimeter.
+   */
+  private void insertLeaf(int leaf) {
+    if (root == NULL_NODE) {
+      root = leaf;
+      parent[leaf] = NULL_NODE;
+      return;
+    }
+    
+    // Find the best sibling for the new leaf.
+    int leafBox = leaf * BOX_SIZE;
+    float leafMinX = boxes[leafBox + MIN_X];
+    float leafMinY = boxes[leafBox + MIN_Y];
+    float leafMaxX = boxes[leafBox + MAX_X];
+    float leafMaxY = boxes[leafBox + MAX_Y];
+    int index = root;
+    while (child1[index] != NULL_NODE) {
+      int c1 = child1[index];
+      int c2 = child2[index];
+      
+      int box = index * BOX_SIZE;
+      float area = perimeter(
+          boxes[box + MIN_X], boxes[box + MIN_Y], boxes[box + MAX_X], boxes[box + MAX_Y]);
+      float combinedArea = perimeter(
+          Math.min(boxes[box + MIN_X], leafMinX), Math.min(boxes[box + MIN_Y], leafMinY),
+          Math.max(boxes[box + MAX_X], leafMaxX), Math.max(boxes[box + MAX_Y], leafMaxY));
+      
+      // Cost of creating a new parent for this node and the new leaf.
+      float cost = 2 * combinedArea;
+      
+      // Minimum cost of pushing the leaf further down the tree.
+      float inheritanceCost = 2 * (combinedArea - area);
+      float cost1 = descendCost(c1, leafMinX, leafMinY, leafMaxX, leafMaxY) + inheritanceCost;
+      float cost2 = descendCost(c2, leafMinX, leafMinY, leafMaxX, leafMaxY) + inheritanceCost;
+      
+      if (cost < cost1 && cost < cost2) {
+        break;
+      }
+      index = cost1 < cost2 ? c1 : c2;
+    }
+    int sibling = index;
+    
+    // Create a new parent for the sibling and the leaf.
+    int oldParent = parent[sibling];
+    int newParent = allocateNode();
+    parent[newParent] = oldParent;
+    components[newParent] = null;
+    height[newParent] = height[sibling] + 1;
+    combine(newParent, sibling, leaf);
+    
+    if (oldParent != NULL_NODE) {
+      if (child1[oldParent] == sibling) {
+        child1[oldParent] = newParent;
+      } else {
+        child2[oldParent] = newParent;
+      }
+    } else {
+      root = newParent;
+    }
+    child1[newParent] = sibling;
+    child2[newParent] = leaf;
+    parent[sibling] = newParent;
+    parent[leaf] = newParent;
+    
+    refit(parent[leaf]);
+  }
+  
+  /**
+   * Returns the cost of placing a leaf somewhere below the given node.
+   */
+  private float descendCost(int node, float left, float top, float right, float bottom) {
+    int box = node * BOX_SIZE;
+    float combined = perimeter(
+        Math.min(boxes[box + MIN_X], left), Math.min(boxes[box + MIN_Y], top),
+        Math.max(boxes[box + MAX_X], right), Math.max(boxes[box + MAX_Y], bottom));
+    if (child1[node] == NULL_NODE) {
+      return combined;
+    }
+    return combined - perimeter(
+        boxes[box + MIN_X], boxes[box + MIN_Y], boxes[box + MAX_X], boxes[box + MAX_Y]);
+  }
+  
+  /**
+   * Removes a leaf from the tree, replacing its parent with its sibling.
+   * The leaf's node is not freed.
+   */
+  private void removeLeaf(int leaf) {
+    if (leaf == root) {
+      root = NULL_NODE;
+      return;
+    }
+    
+    int oldParent = parent[leaf];
+    int grandParent = parent[oldParent];
+    int sibling = child1[oldParent] == leaf ? child2[oldParent] : child1[oldParent];
+    
+    if (grandParent != NULL_NODE) {
+      if (child1[grandParent] == oldParent) {
+        child1[grandParent] = sibling;
+      } else {
+        child2[grandParent] = sibling;
+      }
+      parent[sibling] = grandParent;
+      freeNode(oldParent);
+      refit(grandParent);
+    } else {
+      root = sibling;
+      parent[sibling] = NULL_NODE;
+      freeNode(oldParent);
+    }
+  }
+  
+  /**
+   * Walks from the given node up to the root, rebalancing and fixing the
+   * height and box of each node along the way.
+   */
+  private void refit(int index) {
+    while (index != NULL_NODE) {
+      index = balance(index);
+      
+      int c1 = child1[index];
+      int c2 = child2[index];
+      height[index] = 1 + Math.max(height[c1], height[c2]);
+      combine(index, c1, c2);
+      
+      index = parent[index];
+    }
+  }
+  
+  /**
+   * If one child of node a is more than one level taller than the other,
+   * rotates the taller child up into a's place. Returns the index of the
+   * node now in a's place.
+   */
+  private int balance(int a) {
+    if (child1[a] == NULL_NODE || height[a] < 2) {
+      return a;
+    }
+    
+    int b = child1[a];
+    int c = child2[a];
+    int balance = height[c] - height[b];
+    
+    // Rotate c up.
+    if (balance > 1) {
+      int f = child1[c];
+      int g = child2[c];
+      
+      child1[c] = a;
+      parent[c] = parent[a];
+      parent[a] = c;
+      replaceChild(parent[c], a, c);
+      
+      if (height[f] > height[g]) {
+        child2[c] = f;
+        child2[a] = g;
+        parent[g] = a;
+        combine(a, b, g);
+        combine(c, a, f);
+        height[a] = 1 + Math.max(height[b], height[g]);
+        height[c] = 1 + Math.max(height[a], height[f]);
+      } else {
+        child2[c] = g;
+        child2[a] = f;
+        parent[f] = a;
+        combine(a, b, f);
+        combine(c, a, g);
+        height[a] = 1 + Math.max(height[b], height[f]);
+        height[c] = 1 + Math.max(height[a], height[g]);
+      }
+      return c;
+    }
+    
+    // Rotate b up.
+    if (balance < -1) {
+      int d = child1[b];
+      int e = child2[b];
+      
+      child1[b] = a;
+      parent[b] = parent[a];
+      parent[a] = b;
+      replaceChild(parent[b], a, b);
+      
+      if (height[d] > height[e]) {
+        child2[b] = d;
+        child1[a] = e;
+        parent[e] = a;
+        combine(a, c, e);
+        combine(b, a, d);
+        height[a] = 1 + Math.max(height[c], height[e]);
+        height[b] = 1 + Math.max(height[a], height[d]);
+      } else {
+        child2[b] = e;
+        child1[a] = d;
+        parent[d] = a;
+        combine(a, c, d);
+        combine(b, a, e);
+        height[a] = 1 + Math.max(height[c], height[d]);
+        height[b] = 1 + Math.max(height[a], height[e]);
+      }
+      return b;
+    }
+    
+    return a;
+  }
+  
+  /**
+   * Points the given parent at a new child in place of an old one. A parent
+   * of NULL_NODE means the new child becomes the root.
+   */
+  private void replaceChild(int node, int oldChild, int newChild) {
+    if (node == NULL_NODE) {
+      root = newChild;
+    } else if (child1[node] == oldChild) {
+      child1[node] = newChild;
+    } else {
+      child2[node] = newChild;
+    }
+  }
+  
+  /**
+   * Sets the box of a node to hold the boxes of nodes a and b.
+   */
+  private void combine(int node, int a, int b) {
+    int box = node * BOX_SIZE;
+    int boxA = a * BOX_SIZE;
+    int boxB = b * BOX_SIZE;
+    boxes[box + MIN_X] = Math.min(boxes[boxA + MIN_X], boxes[boxB + MIN_X]);
+    boxes[box + MIN_Y] = Math.min(boxes[boxA + MIN_Y], boxes[boxB + MIN_Y]);
+    boxes[box + MAX_X] = Math.max(boxes[boxA + MAX_X], boxes[boxB + MAX_X]);
+    boxes[box + MAX_Y] = Math.max(boxes[boxA + MAX_Y], boxes[boxB + MAX_Y]);
+  }
+  
+  private static float perimeter(float left, float top, float right, float bottom) {
+    return 2 * ((right - left) + (bottom - top));
+  }
+  
+  private int allocateNode() {
+    if (freeList == NULL_NODE) {
+      grow();
+    }
+    
+    int node = freeList;
+    freeList = parent[node];
+    parent[node] = NULL_NODE;
+    child1[node] = NULL_NODE;
+    child2[node] = NULL_NODE;
+    height[node] = 0;
+    nodeCount++;
+    return node;
+  }
+  
+  private void freeNode(int node) {
+    parent[node] = freeList;
+    height[node] = -1;
+    components[node] = null;
+    freeList = node;
+    nodeCount--;
+  }
+  
+  /**
+   * Chains together all nodes from the given index onward into the free
+   * list.
+   */
+  private void linkFreeNodes(int start) {
+    int capacity = parent.length;
+    for (int i = start; i < capacity - 1; i++) {
+      parent[i] = i + 1;
+      height[i] = -1;
+    }
+    parent[capacity - 1] = NULL_NODE;
+    height[capacity - 1] = -1;
+    freeList = start;
+  }
+  
+  private void grow() {
+    int oldSize = parent.length;
+    int newSize = oldSize * CAPACITY_GROWTH_RATE;
+    
+    boxes = grow(boxes, newSize * BOX_SIZE);
+    parent = grow(parent, newSize);
+    child1 = grow(child1, newSize);
+    child2 = grow(child2, newSize);
+    height = grow(height, newSize);
+    
+    CollisionComponent[] newComponents = new CollisionComponent[newSize];
+    System.arraycopy(components, 0, newComponents, 0, oldSize);
+    components = newComponents;
+    
+    linkFreeNodes(oldSize);
+  }
+  
+  private static float[] grow(float[] values, int newSize) {
+    float[] newValues = new float[newSize];
+    System.arraycopy(values, 0, newValues, 0, values.length);
+    return newValues;
+  }
+  
+  private static int[] grow(int[] values, int newSize) {
+    int[] newValues = new int[newSize];
+    System.arraycopy(values, 0, newValues, 0, values.length);
+    return newValues;
+  }
+}
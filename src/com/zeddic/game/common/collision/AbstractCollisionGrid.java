@@ -0,0 +1,569 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.SimpleList;
+
+/**
+ * The parts of a grid broad phase that don't depend on how its spots are
+ * stored. The world is divided into square spots, and moving objects are
+ * placed in every spot their bounds cover, stretched by how far they are
+ * about to move. Queries, casts and pair finding walk the spots an object
+ * or segment covers, reporting each object once.
+ * 
+ * Subclasses look spots up with {@link #getSpot}, which returns null for
+ * spots that don't exist, and create them with {@link #obtainSpot}. See
+ * {@link CollisionGrid} and {@link SparseCollisionGrid}.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+abstract class AbstractCollisionGrid implements BroadPhase {
+
+  /**
+   * How many milliseconds of an object's velocity to include in the spots
+   * it covers. A little longer than a frame.
+   */
+  private static final float LOOKAHEAD_TIME = 50;
+  
+  /** 
+   * The size, in world dimensions, that a single grid region should contain.
+   */
+  public float gridSize;
+  
+  /** Every object added with {@link #addObject}, in the order added. */
+  private SimpleList<CollisionComponent> movers =
+      new SimpleList<CollisionComponent>(CollisionComponent.class);
+  
+  //// THE SPOTS THAT MAY EXIST
+  // Inclusive. Walks around a spot are clamped to these.
+  private final int minSpotX;
+  private final int minSpotY;
+  private final int maxSpotX;
+  private final int maxSpotY;
+  
+  //// THE RANGE OF SPOTS COVERED BY AN OBJECT
+  // Set by loadRange(). Inclusive, and empty when the minimum is past the
+  // maximum.
+  int rangeMinX;
+  int rangeMinY;
+  int rangeMaxX;
+  int rangeMaxY;
+  
+  /** Marks the spots visited by the current query. */
+  private int queryStamp = 0;
+  
+  AbstractCollisionGrid(
+      float gridSize,
+      int minSpotX,
+      int minSpotY,
+      int maxSpotX,
+      int maxSpotY) {
+    this.gridSize = gridSize;
+    this.minSpotX = minSpotX;
+    this.minSpotY = minSpotY;
+    this.maxSpotX = maxSpotX;
+    this.maxSpotY = maxSpotY;
+  }
+  
+  /**
+   * Returns the spot at the given position, or null if it doesn't exist.
+   */
+  abstract GridSpot getSpot(int x, int y);
+  
+  /**
+   * Returns the spot at the given position, creating it if needed. Returns
+   * null for positions that can never hold a spot.
+   */
+  abstract GridSpot obtainSpot(int x, int y);
+  
+  /**
+   * Called once an object has been removed from a spot.
+   */
+  void releaseSpot(GridSpot spot) { }
+  
+  /**
+   * Sets the current range to the spots covering the given world bounds.
+   */
+  abstract void loadRange(float minX, float minY, float maxX, float maxY);
+  
+  /**
+   * Adds a movable object to the grid. It is placed in every spot its
+   * bounds cover. Objects that can't be hit
+   * ({@link CollisionManager#TYPE_HIT_ONLY}) are tracked so they can look
+   * for collisions, but aren't placed in the grid.
+   */
+  public void addObject(CollisionComponent component) {
+    movers.add(component);
+    updatePosition(component);
+  }
+  
+  /**
+   * Adds a stationary object to the grid. A stationary object will have a
+   * reference added to every grid spot that its width and height touches,
+   * and is never moved.
+   */
+  public void addStationaryObject(CollisionComponent component) {
+    PhysicalObject object = component.object;
+    int minX = toSpot(object.x - object.bounds.shape.width / 2);
+    int maxX = toSpot(object.x + object.bounds.shape.width / 2);
+    int minY = toSpot(object.y - object.bounds.shape.height / 2);
+    int maxY = toSpot(object.y + object.bounds.shape.height / 2);
+    for (int x = minX; x <= maxX; x++) {
+      for (int y = minY; y <= maxY; y++) {
+        GridSpot spot = obtainSpot(x, y);
+        if (spot != null) {
+          spot.add(component);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Removes an object from the grid entirely.
+   */
+  public void removeObject(CollisionComponent component) {
+    movers.remove(component);
+    
+    if (component.type == CollisionManager.TYPE_STATIONARY) {
+      PhysicalObject object = component.object;
+      int minX = toSpot(object.x - object.bounds.shape.width / 2);
+      int maxX = toSpot(object.x + object.bounds.shape.width / 2);
+      int minY = toSpot(object.y - object.bounds.shape.height / 2);
+      int maxY = toSpot(object.y + object.bounds.shape.height / 2);
+      for (int x = minX; x <= maxX; x++) {
+        for (int y = minY; y <= maxY; y++) {
+          GridSpot spot = getSpot(x, y);
+          if (spot != null) {
+            spot.remove(object);
+            releaseSpot(spot);
+          }
+        }
+      }
+    } else {
+      while (component.gridSpotCount > 0) {
+        GridSpot spot = component.gridSpot;
+        spot.remove(component);
+        releaseSpot(spot);
+      }
+      component.gridMinX = 0;
+      component.gridMinY = 0;
+      component.gridMaxX = -1;
+      component.gridMaxY = -1;
+    }
+  }
+  
+  /**
+   * Updates an objects position in the grid.
+   */
+  public void updatePosition(CollisionComponent component) {
+    loadRange(component);
+    place(component);
+  }
+  
+  /**
+   * Updates the grid spots of every moving object that is awake.
+   */
+  void updatePositions() {
+    for (int i = 0; i < movers.size; i++) {
+      if (!movers.items[i].sleeping) {
+        updatePosition(movers.items[i]);
+      }
+    }
+  }
+  
+  /**
+   * Returns the spot at a world position, or null if nothing is there.
+   */
+  public GridSpot getObjectsAtWorldPosition(float mapX, float mapY) {
+    return getSpot(toSpot(mapX), toSpot(mapY));
+  }
+  
+  /**
+   * Places objects from the grid spots the component covers into nearby,
+   * and their components into nearbyComponents. Objects whose layers don't
+   * allow them to collide with the component are left out.
+   */
+  public void getNearbyObjects(
+      CollisionComponent component,
+      SimpleList<PhysicalObject> nearby,
+      SimpleList<CollisionComponent> nearbyComponents) {
+    
+    loadRange(component);
+    place(component);
+    addNearbyObjects(component, nearby, nearbyComponents);
+  }
+  
+  /**
+   * Places objects from the spots the component covers that its layers
+   * allow it to collide with into nearby, and their components into
+   * nearbyComponents, without updating the component's own position in
+   * this grid.
+   */
+  void getObjectsAround(
+      CollisionComponent component,
+      SimpleList<PhysicalObject> nearby,
+      SimpleList<CollisionComponent> nearbyComponents) {
+    loadRange(component);
+    addNearbyObjects(component, nearby, nearbyComponents);
+  }
+  
+  private void addNearbyObjects(
+      CollisionComponent component,
+      SimpleList<PhysicalObject> nearby,
+      SimpleList<CollisionComponent> nearbyComponents) {
+    
+    int stamp = CollisionComponent.newQueryStamp();
+    for (int x = rangeMinX; x <= rangeMaxX; x++) {
+      for (int y = rangeMinY; y <= rangeMaxY; y++) {
+        GridSpot spot = getSpot(x, y);
+        if (spot == null) {
+          continue;
+        }
+        for (int j = 0; j < spot.items.size; j++) {
+          CollisionComponent other = spot.components.items[j];
+          if (other != null) {
+            if (other.queryStamp == stamp || !CollisionManager.canCollide(component, other)) {
+              continue;
+            }
+            other.queryStamp = stamp;
+          }
+          nearby.append(spot.items.items[j]);
+          nearbyComponents.append(other);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Places the objects in a spot into results, leaving out any already
+   * found by the query with the given stamp.
+   */
+  static void appendAll(GridSpot spot, int stamp, SimpleList<PhysicalObject> results) {
+    for (int j = 0; j < spot.items.size; j++) {
+      CollisionComponent component = spot.components.items[j];
+      if (component != null) {
+        if (component.queryStamp == stamp) {
+          continue;
+        }
+        component.queryStamp = stamp;
+      }
+      results.append(spot.items.items[j]);
+    }
+  }
+  
+  /**
+   * Walks the spots the segment passes through, in order, using a DDA line
+   * traversal. At each spot the objects in the spots around it are reported,
+   * reaching as far as the distance of the cast. Objects are in every spot
+   * they cover, so any the segment touches are in a spot it passes through.
+   * Once the segment enters a spot past
+   * the callback's point of interest, nothing nearer can be left to find,
+   * so the walk stops.
+   */
+  public void castSegment(
+      float x1,
+      float y1,
+      float x2,
+      float y2,
+      float distance,
+      CastCallback callback) {
+    
+    queryStamp++;
+    int stamp = CollisionComponent.newQueryStamp();
+    int reach = (int) Math.ceil(distance / gridSize);
+    float dX = x2 - x1;
+    float dY = y2 - y1;
+    
+    int x = toSpot(x1);
+    int y = toSpot(y1);
+    int endX = toSpot(x2);
+    int endY = toSpot(y2);
+    int stepX = dX > 0 ? 1 : -1;
+    int stepY = dY > 0 ? 1 : -1;
+    
+    // How far along the segment it crosses the next spot edge on each axis,
+    // and how far it travels between edges.
+    float nextX = Float.MAX_VALUE;
+    float nextY = Float.MAX_VALUE;
+    float deltaX = Float.MAX_VALUE;
+    float deltaY = Float.MAX_VALUE;
+    if (dX != 0) {
+      nextX = ((dX > 0 ? x + 1 : x) * gridSize - x1) / dX;
+      deltaX = gridSize / Math.abs(dX);
+    }
+    if (dY != 0) {
+      nextY = ((dY > 0 ? y + 1 : y) * gridSize - y1) / dY;
+      deltaY = gridSize / Math.abs(dY);
+    }
+    
+    float entry = 0;
+    float maxFraction = 1;
+    while (entry <= maxFraction) {
+      maxFraction = reportAround(x, y, reach, stamp, maxFraction, callback);
+      if (x == endX && y == endY) {
+        return;
+      }
+      if (nextX < nextY) {
+        entry = nextX;
+        nextX += deltaX;
+        x += stepX;
+      } else {
+        entry = nextY;
+        nextY += deltaY;
+        y += stepY;
+      }
+      if (entry > 1) {
+        return;
+      }
+    }
+  }
+  
+  /**
+   * Reports the objects in every spot within reach of a spot that haven't
+   * already been reported by the current query. Returns the callback's
+   * point of interest.
+   */
+  private float reportAround(
+      int centerX,
+      int centerY,
+      int reach,
+      int stamp,
+      float maxFraction,
+      CastCallback callback) {
+    
+    int startX = Math.max(minSpotX, centerX - reach);
+    int endX = Math.min(maxSpotX, centerX + reach);
+    int startY = Math.max(minSpotY, centerY - reach);
+    int endY = Math.min(maxSpotY, centerY + reach);
+    for (int x = startX; x <= endX; x++) {
+      for (int y = startY; y <= endY; y++) {
+        GridSpot spot = getSpot(x, y);
+        if (spot == null || spot.queryStamp == queryStamp) {
+          continue;
+        }
+        spot.queryStamp = queryStamp;
+        for (int j = 0; j < spot.items.size; j++) {
+          CollisionComponent component = spot.components.items[j];
+          if (component != null) {
+            if (component.queryStamp == stamp) {
+              continue;
+            }
+            component.queryStamp = stamp;
+          }
+          maxFraction = callback.reportCandidate(spot.items.items[j], component);
+        }
+      }
+    }
+    return maxFraction;
+  }
+  
+  /**
+   * Finds pairs by checking each object that can hit others against the
+   * objects in the grid spots it covers. Two objects that can both hit each
+   * other are only reported once. Sleeping objects don't look for pairs,
+   * so while objects may sleep, objects that can't hit others look for the
+   * sleeping objects that can hit them instead.
+   */
+  public void findPairs(PairList pairs) {
+    updatePositions();
+    boolean canSleep = CollisionManager.canSleep();
+    for (int i = 0; i < movers.size; i++) {
+      CollisionComponent component = movers.items[i];
+      if (!component.object.active || component.sleeping) {
+        continue;
+      }
+      
+      // Objects that were just placed already know the spots they cover.
+      if (component.type == CollisionManager.TYPE_HIT_RECEIVE) {
+        rangeMinX = component.gridMinX;
+        rangeMinY = component.gridMinY;
+        rangeMaxX = component.gridMaxX;
+        rangeMaxY = component.gridMaxY;
+        addPairsInRange(component, pairs);
+      } else if (component.type == CollisionManager.TYPE_HIT_ONLY) {
+        loadRange(component);
+        addPairsInRange(component, pairs);
+      } else if (canSleep) {
+        rangeMinX = component.gridMinX;
+        rangeMinY = component.gridMinY;
+        rangeMaxX = component.gridMaxX;
+        rangeMaxY = component.gridMaxY;
+        addSleepingPairsInRange(component, pairs);
+      }
+    }
+  }
+  
+  /**
+   * Adds a pair for every object in the spots the component covers that it
+   * can hit. The component itself doesn't need to be in this grid, and its
+   * position in the grid isn't updated.
+   */
+  void addPairs(CollisionComponent component, PairList pairs) {
+    loadRange(component);
+    addPairsInRange(component, pairs);
+  }
+  
+  /**
+   * Adds a pair for every object in the spots of the current range that the
+   * component can hit.
+   */
+  private void addPairsInRange(CollisionComponent component, PairList pairs) {
+    boolean canBeHit = CollisionManager.canBeHit(component.type);
+    int stamp = CollisionComponent.newQueryStamp();
+    for (int x = rangeMinX; x <= rangeMaxX; x++) {
+      for (int y = rangeMinY; y <= rangeMaxY; y++) {
+        GridSpot spot = getSpot(x, y);
+        if (spot == null) {
+          continue;
+        }
+        for (int j = 0; j < spot.components.size; j++) {
+          CollisionComponent other = spot.components.items[j];
+          if (other == null || other == component || other.queryStamp == stamp) {
+            continue;
+          }
+          other.queryStamp = stamp;
+          if (!other.object.active || !CollisionManager.canCollide(component, other)) {
+            continue;
+          }
+          
+          // Neighbourhoods are symmetric, so when both objects can hit each
+          // other the one with the lower id reports the pair, unless it is
+          // asleep.
+          if (canBeHit && CollisionManager.canHit(other.type) &&
+              other.id < component.id && !other.sleeping) {
+            continue;
+          }
+          pairs.add(component, other);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Adds a pair for every sleeping object in the spots the component covers
+   * that can hit it. The component's position in the grid isn't updated.
+   */
+  void addSleepingPairs(CollisionComponent component, PairList pairs) {
+    loadRange(component);
+    addSleepingPairsInRange(component, pairs);
+  }
+  
+  /**
+   * Adds a pair for every sleeping object in the spots of the current range
+   * that can hit the component.
+   */
+  private void addSleepingPairsInRange(CollisionComponent component, PairList pairs) {
+    int stamp = CollisionComponent.newQueryStamp();
+    for (int x = rangeMinX; x <= rangeMaxX; x++) {
+      for (int y = rangeMinY; y <= rangeMaxY; y++) {
+        GridSpot spot = getSpot(x, y);
+        if (spot == null) {
+          continue;
+        }
+        for (int j = 0; j < spot.components.size; j++) {
+          CollisionComponent other = spot.components.items[j];
+          if (other == null || !other.sleeping || other.queryStamp == stamp) {
+            continue;
+          }
+          other.queryStamp = stamp;
+          if (other.object.active && CollisionManager.canCollide(component, other)) {
+            pairs.add(other, component);
+          }
+        }
+      }
+    }
+  }
+  
+  /**
+   * Moves an object that can be hit into the spots of the current range.
+   * Only the spots it has left or entered since it was last placed are
+   * changed, so an object that stays within the same spots costs nothing.
+   */
+  void place(CollisionComponent component) {
+    if (component.type != CollisionManager.TYPE_HIT_RECEIVE &&
+        component.type != CollisionManager.TYPE_RECEIVE_ONLY) {
+      return;
+    }
+    
+    int oldMinX = component.gridMinX;
+    int oldMinY = component.gridMinY;
+    int oldMaxX = component.gridMaxX;
+    int oldMaxY = component.gridMaxY;
+    if (rangeMinX == oldMinX && rangeMinY == oldMinY &&
+        rangeMaxX == oldMaxX && rangeMaxY == oldMaxY) {
+      return;
+    }
+    
+    // Most objects are smaller than a spot, so just move between two.
+    if (oldMinX == oldMaxX && oldMinY == oldMaxY &&
+        rangeMinX == rangeMaxX && rangeMinY == rangeMaxY) {
+      GridSpot from = getSpot(oldMinX, oldMinY);
+      from.move(component, obtainSpot(rangeMinX, rangeMinY));
+      releaseSpot(from);
+      component.gridMinX = component.gridMaxX = rangeMinX;
+      component.gridMinY = component.gridMaxY = rangeMinY;
+      return;
+    }
+    
+    for (int x = oldMinX; x <= oldMaxX; x++) {
+      for (int y = oldMinY; y <= oldMaxY; y++) {
+        if (x < rangeMinX || x > rangeMaxX || y < rangeMinY || y > rangeMaxY) {
+          GridSpot spot = getSpot(x, y);
+          spot.remove(component);
+          releaseSpot(spot);
+        }
+      }
+    }
+    for (int x = rangeMinX; x <= rangeMaxX; x++) {
+      for (int y = rangeMinY; y <= rangeMaxY; y++) {
+        if (x < oldMinX || x > oldMaxX || y < oldMinY || y > oldMaxY) {
+          obtainSpot(x, y).add(component);
+        }
+      }
+    }
+    
+    component.gridMinX = rangeMinX;
+    component.gridMinY = rangeMinY;
+    component.gridMaxX = rangeMaxX;
+    component.gridMaxY = rangeMaxY;
+  }
+  
+  /**
+   * Finds the range of spots covered by a moving object's bounds, stretched
+   * by how far it is about to move.
+   */
+  void loadRange(CollisionComponent component) {
+    PhysicalObject object = component.object;
+    float radius = object.bounds.shape.radius;
+    float dX = object.velocity.x * LOOKAHEAD_TIME / PhysicalObject.TIME_SCALER;
+    float dY = object.velocity.y * LOOKAHEAD_TIME / PhysicalObject.TIME_SCALER;
+    loadRange(
+        object.x - radius + Math.min(0, dX),
+        object.y - radius + Math.min(0, dY),
+        object.x + radius + Math.max(0, dX),
+        object.y + radius + Math.max(0, dY));
+  }
+  
+  /**
+   * Returns the spot a world position falls in.
+   */
+  int toSpot(float value) {
+    return (int) Math.floor(value / gridSize);
+  }
+}
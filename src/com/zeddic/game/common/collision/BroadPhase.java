@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.SimpleList;
+
+/**
+ * The 'broad' phase of collision detection. A broad phase keeps track of
+ * where objects are in the world and can quickly rule out objects that are
+ * too far apart to be touching, leaving the {@link CollisionManager} to do
+ * the expensive 'narrow' checks only on objects that might be.
+ * 
+ * Results may include objects that turn out not to touch, but must never
+ * leave out objects that do.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public interface BroadPhase {
+
+  /**
+   * Adds an object that moves around the world.
+   */
+  public void addObject(CollisionComponent component);
+  
+  /**
+   * Adds a large object that does not move.
+   */
+  public void addStationaryObject(CollisionComponent component);
+  
+  /**
+   * Removes an object entirely.
+   */
+  public void removeObject(CollisionComponent component);
+  
+  /**
+   * Updates an object's position after it has moved.
+   */
+  public void updatePosition(CollisionComponent component);
+  
+  /**
+   * Updates the component's position and places any objects that it might
+   * be colliding with into nearby. The results may include the component's
+   * own object, inactive objects, or the same object more than once. Each
+   * object's component is placed at the same index of nearbyComponents, or
+   * null if the object was added without one.
+   */
+  public void getNearbyObjects(
+      CollisionComponent component,
+      SimpleList<PhysicalObject> nearby,
+      SimpleList<CollisionComponent> nearbyComponents);
+  
+  /**
+   * Places any objects whose bounds might overlap the given region into
+   * results. The results may include inactive objects or the same object
+   * more than once.
+   */
+  public void getObjectsInRegion(
+      float minX,
+      float minY,
+      float maxX,
+      float maxY,
+      SimpleList<PhysicalObject> results);
+  
+  /**
+   * Reports any objects that might come within a distance of the line
+   * segment from (x1, y1) to (x2, y2) to the callback. Objects that can't
+   * be hit may be left out. Broad phases that can should report objects in
+   * order along the segment, and stop once the callback is no longer
+   * interested.
+   */
+  public void castSegment(
+      float x1,
+      float y1,
+      float x2,
+      float y2,
+      float distance,
+      CastCallback callback);
+  
+  /**
+   * Updates the position of every moving object, then finds all pairs of
+   * objects that might be colliding and adds them to pairs. The first
+   * component of each pair is always able to hit the second, based on
+   * their collision types.
+   */
+  public void findPairs(PairList pairs);
+}
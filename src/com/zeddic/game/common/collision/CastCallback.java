@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+
+/**
+ * Receives the objects a {@link BroadPhase} finds near a line segment, such
+ * as during a raycast. Candidates are only those that might be near the
+ * segment, and may be reported more than once.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public interface CastCallback {
+  
+  /**
+   * Called for each candidate near the segment. The component may be null
+   * for objects added to a grid spot without one. Returns the fraction of
+   * the segment, from 0 to 1, that is still of interest. Broad phases may
+   * skip candidates that can only be touched past that point.
+   */
+  public float reportCandidate(PhysicalObject object, CollisionComponent component);
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+
+/**
+ * A caller supplied buffer to receive the objects hit by a raycast, segment
+ * cast or shape cast. The buffer holds a fixed number of hits, sorted by how
+ * far along the cast they are. A buffer that holds one hit finds just the
+ * first object hit, which lets the cast stop early.
+ * 
+ * Nothing is allocated after the buffer is created, so one buffer can be
+ * kept and reused for every cast.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public class CastResult {
+  
+  /** The objects hit, closest first. */
+  public final PhysicalObject[] objects;
+  
+  /** How far along the cast each object was hit, from 0 to 1. */
+  public final float[] fraction;
+  
+  /**
+   * Where the start of the cast had moved to when it hit each object. For
+   * a ray this is the point hit.
+   */
+  public final float[] hitX;
+  public final float[] hitY;
+  
+  /** The surface direction of each object where it was hit. */
+  public final float[] normalX;
+  public final float[] normalY;
+  
+  /** The number of objects hit. */
+  public int hits;
+  
+  /**
+   * Only objects in these collision layers are hit. Objects without a
+   * collision component are always checked. Defaults to every layer.
+   */
+  public int mask = -1;
+  
+  /** An object to never hit, such as the one doing the casting. */
+  public PhysicalObject ignore;
+  
+  /**
+   * Creates a buffer for the given number of hits.
+   */
+  public CastResult(int maxHits) {
+    objects = new PhysicalObject[maxHits];
+    fraction = new float[maxHits];
+    hitX = new float[maxHits];
+    hitY = new float[maxHits];
+    normalX = new float[maxHits];
+    normalY = new float[maxHits];
+  }
+  
+  /**
+   * Removes every hit.
+   */
+  public void clear() {
+    for (int i = 0; i < hits; i++) {
+      objects[i] = null;
+    }
+    hits = 0;
+  }
+  
+  /**
+   * Returns true if the buffer can't hold any more hits.
+   */
+  public boolean isFull() {
+    return hits == objects.length;
+  }
+  
+  /**
+   * Returns how far along the cast a new hit must be to be kept. Once the
+   * buffer is full, only hits closer than the furthest one are.
+   */
+  public float getMaxFraction() {
+    return isFull() ? fraction[hits - 1] : 1;
+  }
+  
+  /**
+   * Adds a hit in order of how far along the cast it is. The hit is dropped
+   * if the object was already hit, or if the buffer is full of closer hits.
+   */
+  void add(PhysicalObject object, float at, float x, float y, float nX, float nY) {
+    for (int i = 0; i < hits; i++) {
+      if (objects[i] == object) {
+        return;
+      }
+    }
+    
+    int index = hits;
+    if (isFull()) {
+      if (at >= fraction[hits - 1]) {
+        return;
+      }
+      index--;
+    } else {
+      hits++;
+    }
+    
+    // Shift further hits down to make room.
+    while (index > 0 && fraction[index - 1] > at) {
+      objects[index] = objects[index - 1];
+      fraction[index] = fraction[index - 1];
+      hitX[index] = hitX[index - 1];
+      hitY[index] = hitY[index - 1];
+      normalX[index] = normalX[index - 1];
+      normalY[index] = normalY[index - 1];
+      index--;
+    }
+    
+    objects[index] = object;
+    fraction[index] = at;
+    hitX[index] = x;
+    hitY[index] = y;
+    normalX[index] = nX;
+    normalY[index] = nY;
+  }
+}
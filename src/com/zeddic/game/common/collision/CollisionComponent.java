@@ -19,6 +19,7 @@ package com.zeddic.game.common.collision;
 import android.util.Log;
 
 import com.zeddic.game.common.Component;
+import com.zeddic.game.common.FrameProfiler;
 import com.zeddic.game.common.PhysicalObject;
 
 /**
@@ -38,6 +39,18 @@ import com.zeddic.game.common.PhysicalObject;
  */
 public class CollisionComponent extends Component {
   
+  /** The id given to the next component created. */
+  private static int nextId = 0;
+  
+  /** The stamp given to the next query, see {@link #queryStamp}. */
+  private static int nextQueryStamp = 0;
+  
+  /**
+   * A number unique to this component. Used to handle collisions in the
+   * same order each frame.
+   */
+  public final int id = nextId++;
+  
   /** The object to do collisions for. */
   public PhysicalObject object;
   
@@ -46,15 +59,98 @@ public class CollisionComponent extends Component {
   
   public float weight;
   
+  /**
+   * The layers this component belongs to, as a bitfield. Defaults to the
+   * first layer.
+   */
+  public int category = 1;
+  
+  /**
+   * The layers this component may collide with, as a bitfield. Two
+   * components only collide if each one's mask includes the other's
+   * category. Defaults to every layer.
+   */
+  public int mask = -1;
+  
+  /**
+   * Whether to use continuous collision detection, which finds exactly when
+   * this object first touches others. Fast objects such as bullets then
+   * can't pass through what they hit, and don't pay for stepping along
+   * their velocity. See {@link NarrowPhase#sweep}.
+   */
+  public boolean continuous = false;
+  
+  /** The object's {@link TypeTags}, cached for spatial queries. */
+  int tags;
+  int tagsVersion = -1;
+  
   /** True if registered to be tracked in the collision system. */
   public boolean inCollisionSystem = false;
   
-  /** 
-   * The current grid position that this object is contained in within
-   * the collision grid.
+  /**
+   * True while the object is at rest and skips its own collision checks.
+   * See {@link CollisionManager#setSleepThreshold}.
+   */
+  public boolean sleeping = false;
+  
+  /** How many updates in a row the object has been slow enough to sleep. */
+  private int stillFrames = 0;
+  
+  //// WHERE THE OBJECT FELL ASLEEP
+  // It wakes if moved from here.
+  private float sleepX;
+  private float sleepY;
+  
+  /**
+   * The first grid spot a moving object is in. Objects are placed in every
+   * spot their bounds cover, so large or fast objects may be in several.
+   * Any others are kept in {@link #gridSpots}.
    */
   public GridSpot gridSpot;
   
+  /**
+   * Where the object is stored within its first grid spot, so it can be
+   * removed without searching.
+   */
+  public int gridSlot = -1;
+  
+  /**
+   * The grid spots a moving object is in after its first, and where it is
+   * stored within each. Null until an object is in more than one spot.
+   */
+  public GridSpot[] gridSpots;
+  public int[] gridSlots;
+  
+  /** How many grid spots the object is in. */
+  public int gridSpotCount = 0;
+  
+  //// THE RANGE OF SPOTS THE OBJECT WAS LAST PLACED IN
+  // Inclusive. Empty when the minimum is past the maximum.
+  int gridMinX = 0;
+  int gridMinY = 0;
+  int gridMaxX = -1;
+  int gridMaxY = -1;
+  
+  /**
+   * The last query to find this component. Lets queries that reach it
+   * through more than one grid spot report it only once.
+   */
+  int queryStamp;
+  
+  /**
+   * Where the component is stored within broad phases that keep their own
+   * arrays, such as {@link SweepAndPrune}, or the level it is placed in by a
+   * {@link HierarchicalCollisionGrid}. -1 if not stored.
+   */
+  public int proxy = -1;
+  
+  /**
+   * Returns a new stamp for a query, see {@link #queryStamp}.
+   */
+  static int newQueryStamp() {
+    return ++nextQueryStamp;
+  }
+  
   public CollisionComponent(
       PhysicalObject parent,
       int type) {
@@ -72,6 +168,16 @@ public class CollisionComponent extends Component {
     this.weight = weight;
   }
   
+  /**
+   * Wakes the object if it is asleep, so it checks for collisions again.
+   * Should be called after moving a sleeping object in ways the collision
+   * system can't see, such as changing its bounds.
+   */
+  public void wake() {
+    sleeping = false;
+    stillFrames = 0;
+  }
+  
   /**
    * Registers the object with the collision management system so other
    * objects may collide with it.
@@ -80,7 +186,10 @@ public class CollisionComponent extends Component {
     if (inCollisionSystem)
       return;
     
-    if (type == CollisionManager.TYPE_HIT_RECEIVE || 
+    wake();
+    
+    if (type == CollisionManager.TYPE_HIT_ONLY ||
+        type == CollisionManager.TYPE_HIT_RECEIVE || 
         type == CollisionManager.TYPE_RECEIVE_ONLY) {
       CollisionManager.get().addObject(this);
     } else if (type == CollisionManager.TYPE_STATIONARY) {
@@ -109,9 +218,20 @@ public class CollisionComponent extends Component {
           registerObject();
         }
         
-        if (type == CollisionManager.TYPE_HIT_ONLY || 
+        // Nothing new can be found for an object that hasn't moved.
+        if (updateSleep(CollisionManager.get())) {
+          return;
+        }
+        
+        if (CollisionManager.get().getMode() == CollisionManager.MODE_STEP &&
+            type != CollisionManager.TYPE_STATIONARY) {
+          // Collisions are found for every object at once by step().
+          CollisionManager.get().updatePosition(this);
+        } else if (type == CollisionManager.TYPE_HIT_ONLY || 
             type == CollisionManager.TYPE_HIT_RECEIVE) {
-          CollisionManager.get().checkForCollision(this, time); 
+          FrameProfiler.get().begin(FrameProfiler.PHASE_COLLISION);
+          CollisionManager.get().checkForCollision(this, time);
+          FrameProfiler.get().end(FrameProfiler.PHASE_COLLISION);
         } else if (type == CollisionManager.TYPE_RECEIVE_ONLY) {
           CollisionManager.get().updatePosition(this);
         }
@@ -120,4 +240,39 @@ public class CollisionComponent extends Component {
       Log.e(CollisionComponent.class.getName(),"Error detecting collision:", e);
     }
   }
+  
+  /**
+   * Puts the object to sleep once it has been slow for long enough,
+   * stopping it, and wakes it if it speeds up or has been moved. Returns
+   * true if the object is asleep.
+   */
+  private boolean updateSleep(CollisionManager manager) {
+    int frames = manager.getSleepFrames();
+    if (frames == 0 || type != CollisionManager.TYPE_HIT_RECEIVE) {
+      if (sleeping) {
+        wake();
+      }
+      return false;
+    }
+    
+    float speed = manager.getSleepSpeed();
+    float vX = object.velocity.x;
+    float vY = object.velocity.y;
+    if (vX * vX + vY * vY > speed * speed ||
+        (sleeping && (object.x != sleepX || object.y != sleepY))) {
+      wake();
+      return false;
+    }
+    
+    // Stop any drift left below the sleep speed, or the object would move
+    // and so wake again on the next update.
+    if (!sleeping && ++stillFrames >= frames) {
+      sleeping = true;
+      object.velocity.x = 0;
+      object.velocity.y = 0;
+      sleepX = object.x;
+      sleepY = object.y;
+    }
+    return sleeping;
+  }
 }
@@ -17,6 +17,7 @@
 package com.zeddic.game.common.collision;
 
 import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.SimpleList;
 
 /**
  * A matrix of regions that keeps track of objects that share similar space
@@ -30,20 +31,21 @@ import com.zeddic.game.common.PhysicalObject;
  * collision detection on the specific nearby objects. This can dramatically
  * boost performance.
  * 
- * This grid keeps track of objects based on their center x/y position. 
- * PhysicalObjects are assumed not to be bigger than 2 grid positions.
- * Objects that are 'stationary', and do not move may, will be placed in
- * multiple grid positions.
+ * Moving objects are placed in every grid position their bounds cover,
+ * stretched by how far they are about to move. Objects of any size or speed
+ * can then collide, so the grid size can be chosen for speed alone. Objects
+ * that only overlap each other through a shared position are found, and
+ * each object is only reported once per query. When an object moves, only
+ * the positions it has left or entered are updated. Objects that are
+ * 'stationary', and do not move, are placed in every grid position their
+ * width and height cover.
+ * 
+ * This is the default {@link BroadPhase} used by the {@link CollisionManager}.
  * 
  * @author baileys (Scott Bailey)
  */
-public class CollisionGrid {
+public class CollisionGrid extends AbstractCollisionGrid {
 
-  /** 
-   * The size, in world dimensions, that a single grid region should contain.
-   */
-  public float gridSize;
-  
   /**
    * How many grid spots in the x direction.
    */
@@ -64,10 +66,10 @@ public class CollisionGrid {
    * is chopped up into regions based on the size of gridSize.
    */
   public CollisionGrid(float mapWidth, float mapHeight, float gridSize) {
-    this.gridSize = gridSize;
-    int width = (int) Math.ceil(mapWidth / gridSize);
-    int height = (int) Math.ceil(mapHeight / gridSize);
-    createGrid(width, height);
+    super(gridSize, 0, 0,
+        (int) Math.ceil(mapWidth / gridSize) - 1,
+        (int) Math.ceil(mapHeight / gridSize) - 1);
+    createGrid((int) Math.ceil(mapWidth / gridSize), (int) Math.ceil(mapHeight / gridSize));
   }
   
   /**
@@ -87,67 +89,27 @@ public class CollisionGrid {
   }
   
   /**
-   * Adds a stationary object to the grid. A stationary object, unlike
-   * regular objects, will have a reference added to every grid spot
-   * that its width and height touches.
-   */
-  public void addStationaryObject(CollisionComponent component) {
-    PhysicalObject object = component.object;
-    int minX = convertMapToGridValue(object.x - object.bounds.shape.width / 2);
-    int maxX = convertMapToGridValue(object.x + object.bounds.shape.width / 2);
-    int minY = convertMapToGridValue(object.y - object.bounds.shape.height / 2);
-    int maxY = convertMapToGridValue(object.y + object.bounds.shape.height / 2);
-    for ( int x = minX ; x <= maxX ; x++) {
-      for ( int y = minY ; y <= maxY ; y++) {
-        add(object, x, y);
-      }
-    }
-    component.gridSpot = null;
-  }
-  
-  /**
-   * Adds a movable object to the grid. Only its center point will
-   * be used to place it in the grid.
+   * Updates the object's position in the grid and places the spots it
+   * covers into nearby, as many as fit. Any entries left over are set to
+   * null. Returns the number of spots the object covers.
    */
-  public void addObject(CollisionComponent component) {
-    PhysicalObject object = component.object;
-    int x = convertMapToGridValue(object.x);
-    int y = convertMapToGridValue(object.y);
-    component.gridSpot = add(object, x, y);
-  }
-  
-  /**
-   * Returns an array of Grid positions of all the spots around the given
-   * object. Note that some grid spots may be null (if it is out of bounds).
-   * Returned spots will be placed in the provided nearby[] array.
-   */
-  public void getNearbyGridSpots(CollisionComponent component, GridSpot[] nearby) {
-    int x = (int) (component.object.x / gridSize);
-    int y = (int) (component.object.y / gridSize);
+  public int getNearbyGridSpots(CollisionComponent component, GridSpot[] nearby) {
+    loadRange(component);
+    place(component);
     
-    if (x < 0 || x >= width || y < 0 || y >= height ) {
-      nearby[1] = null;
-      nearby[2] = null;
-      nearby[3] = null;
-      nearby[4] = null;
-      return;
+    int count = 0;
+    for (int x = rangeMinX; x <= rangeMaxX; x++) {
+      for (int y = rangeMinY; y <= rangeMaxY; y++) {
+        if (count < nearby.length) {
+          nearby[count] = grid[x][y];
+        }
+        count++;
+      }
     }
- 
-    GridSpot here = grid[x][y];
-    if (component.type == CollisionManager.TYPE_HIT_RECEIVE ||
-        component.type == CollisionManager.TYPE_RECEIVE_ONLY) {
-      updatePosition(component, here);
+    for (int i = count; i < nearby.length; i++) {
+      nearby[i] = null;
     }
-    
-    nearby[0] = here;
-    /*nearby[1] = null;
-    nearby[2] = null;
-    nearby[3] = null;
-    nearby[4] = null;*/
-    nearby[1] = x - 1 >= 0 ? grid[x - 1][y] : null;
-    nearby[2] = y - 1>= 0 ? grid[x][y - 1] : null;
-    nearby[3] = x + 1 < width ? grid[x + 1][y] : null;
-    nearby[4] = y + 1< height ? grid[x][y + 1] : null;
+    return count;
   }
   
   /**
@@ -174,7 +136,7 @@ public class CollisionGrid {
     int hits = 0;
     for (int x = minX; x <= maxX; x++) {
       for (int y = minY; y <= maxY; y++) {
-        spot = get(x, y);
+        spot = getSpot(x, y);
         if (spot != null) {
           nearby[hits] = spot;
           hits++;
@@ -186,68 +148,55 @@ public class CollisionGrid {
   }
   
   /**
-   * Removes an object from the grid entirely.
-   */
-  public void removeObject(CollisionComponent component) {
-    int x = (int) (component.object.x / gridSize);
-    int y = (int) (component.object.y / gridSize);
- 
-    GridSpot newSpot = get(x, y);
-    newSpot.remove(component.object);
-  }
-  
-  /**
-   * Updates an objects position in the grid.
+   * Places objects from every grid spot the region touches into results.
+   * Objects in more than one of the spots are only placed once.
    */
-  public void updatePosition(CollisionComponent component) {
-    int x = (int) (component.object.x / gridSize);
-    int y = (int) (component.object.y / gridSize);
- 
-    GridSpot newSpot = get(x, y);
-    updatePosition(component, newSpot);
-  }
-  
-  /**
-   * Updates an objects position in the grid.
-   */
-  private void updatePosition(CollisionComponent component, GridSpot newSpot) {
-    if (component.type == CollisionManager.TYPE_HIT_RECEIVE ||
-        component.type == CollisionManager.TYPE_RECEIVE_ONLY) {
-      if (newSpot != component.gridSpot) {
-        if (component.gridSpot != null) {
-          component.gridSpot.remove(component.object);
-        }
-        if (newSpot != null) {
-          newSpot.add(component.object);
-        }
-        component.gridSpot = newSpot;
-      } 
+  public void getObjectsInRegion(
+      float minX,
+      float minY,
+      float maxX,
+      float maxY,
+      SimpleList<PhysicalObject> results) {
+    
+    int startX = Math.max(0, toSpot(minX));
+    int endX = Math.min(width - 1, toSpot(maxX));
+    int startY = Math.max(0, toSpot(minY));
+    int endY = Math.min(height - 1, toSpot(maxY));
+    int stamp = CollisionComponent.newQueryStamp();
+    for (int x = startX; x <= endX; x++) {
+      for (int y = startY; y <= endY; y++) {
+        appendAll(grid[x][y], stamp, results);
+      }
     }
   }
   
   /**
-   * Returns the grid represented by the world position.
+   * Finds the range of spots covering the bounds. Spots outside the grid
+   * are left out. Positions are rounded towards zero, so the first spots
+   * also hold objects just before the edge of the world.
    */
-  public GridSpot getObjectsAtWorldPosition(float mapX, float mapY) {
-    int x = (int) Math.floor(mapX / gridSize);
-    int y = (int) Math.floor(mapY / gridSize);
-    return get(x, y);
-  }
-  
-  private int convertMapToGridValue(float rawValue) {
-    return (int) Math.floor(rawValue / gridSize);
+  void loadRange(float minX, float minY, float maxX, float maxY) {
+    rangeMinX = Math.max(0, (int) (minX / gridSize));
+    rangeMinY = Math.max(0, (int) (minY / gridSize));
+    rangeMaxX = Math.min(width - 1, (int) (maxX / gridSize));
+    rangeMaxY = Math.min(height - 1, (int) (maxY / gridSize));
+    
+    // Keep empty ranges in one form, so they always match.
+    if (rangeMinX > rangeMaxX || rangeMinY > rangeMaxY) {
+      rangeMinX = 0;
+      rangeMinY = 0;
+      rangeMaxX = -1;
+      rangeMaxY = -1;
+    }
   }
   
-  private GridSpot get(int x, int y) {
+  GridSpot getSpot(int x, int y) {
     if ( x < 0 || x >= width || y < 0 || y >= height)
       return null;
     return grid[x][y];
   }
   
-  private GridSpot add(PhysicalObject object, int x, int y) {
-    if ( x < 0 || x > width || y < 0 || y > height)
-      return null;
-    grid[x][y].add(object);
-    return grid[x][y];
+  GridSpot obtainSpot(int x, int y) {
+    return getSpot(x, y);
   }
 }
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zeddic.game.common.collision;
+
+/**
+ * Receives gameplay events from the {@link CollisionManager}, such as to
+ * play a sound or deal damage when two objects collide.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public interface CollisionListener {
+  
+  /**
+   * Called after two objects have collided, been pushed apart, and had their
+   * collide methods called. The contact is reused after this returns.
+   */
+  public void onCollision(Contact contact);
+}
@@ -16,26 +16,59 @@
 
 package com.zeddic.game.common.collision;
 
-import android.util.FloatMath;
-
+import com.zeddic.game.common.FrameProfiler;
 import com.zeddic.game.common.PhysicalObject;
-import com.zeddic.game.common.util.Circle;
-import com.zeddic.game.common.util.Polygon;
-import com.zeddic.game.common.util.Span;
+import com.zeddic.game.common.util.Shape;
+import com.zeddic.game.common.util.SimpleList;
 import com.zeddic.game.common.util.Vector2d;
 
 /**
  * Performs collision detection for objects in the world. 
  * 
- * The bulk of this class is determining 'narrow' based collision detection.
- * That is, checking whether two very specific objects currently touch
- * or overlap. This detection is done using the Seperating Axis Therom.
+ * 'Narrow' based collision detection, checking whether two very specific
+ * objects currently touch or overlap, is done by a {@link NarrowPhase}.
+ * The manager decides which objects to check and notifies them when they
+ * collide.
  * 
- * The CollisionManager makes use of a {@link CollisionGrid} to do 'broad'
+ * The CollisionManager makes use of a {@link BroadPhase} to do 'broad'
  * based collision detection. When checking whether an object has collided
- * the manager asks the grid of nearby objects, which it can then do 'narrow'
- * checks against. This increases processing speed by reducing the detailed
- * collision calculations that need to be done.
+ * the manager asks the broad phase of nearby objects, which it can then do
+ * 'narrow' checks against. This increases processing speed by reducing the
+ * detailed collision calculations that need to be done. By default a
+ * {@link CollisionGrid} is used. Other broad phases, such as
+ * {@link SweepAndPrune} or {@link AabbTree}, may be swapped in with
+ * {@link #setBroadPhase}. Worlds without bounds use a
+ * {@link SparseCollisionGrid}, see {@link #setupUnbounded}.
+ * 
+ * By default each object checks for its own collisions as it updates. An
+ * object it hits is only notified if that object won't check for itself, so
+ * each is told of a collision once. In {@link #MODE_STEP} collisions are
+ * instead found for the whole world at once by {@link #step}, after every
+ * object has moved. Each pair of objects is then only checked once and
+ * collisions are handled in the same order regardless of the order objects
+ * were updated in. Every pair is checked before any object is notified,
+ * so the checks may be split across several threads with
+ * {@link #setThreadCount}.
+ * 
+ * Checking for collisions never changes an object. Collisions are recorded
+ * in a {@link ContactBuffer} and handled afterwards: both objects are pushed
+ * apart by their weights, their collide methods called, and any
+ * {@link CollisionListener} told. By default, an object hit that will run
+ * its own check instead takes its push when it does, while the object
+ * checking takes the whole push now.
+ * 
+ * Objects that have come to rest may be put to sleep, see
+ * {@link #setSleepThreshold}. Sleeping objects don't look for collisions
+ * themselves, but are still found by objects moving into them.
+ * 
+ * The walls of a level may be kept apart from other objects as
+ * {@link StaticGeometry}, see {@link #setStaticGeometry}. Objects that can
+ * hit others are checked against the walls after other collisions, are
+ * stopped at walls in the way of their move, and are always pushed out of
+ * them in full.
+ * 
+ * The world can also be queried along a line with {@link #raycast},
+ * {@link #segmentCast} and {@link #shapeCast}. Casts hit the walls too.
  * 
  * @author baileys (Scott Bailey)
  */
@@ -71,65 +104,235 @@ public class CollisionManager {
    * objects in the world.
    */
   public static final int TYPE_STATIONARY = 4;
+  
+  // When collision detection is done.
+  
+  /**
+   * Each object checks for collisions with the objects near it during its
+   * own update. Objects that can hit each other are checked twice, once by
+   * each of them.
+   */
+  public static final int MODE_PER_OBJECT = 1;
+  
+  /**
+   * All collisions are found at once by {@link #step} after objects have
+   * been updated. The {@link com.zeddic.game.common.Updater} calls step()
+   * after each game update.
+   */
+  public static final int MODE_STEP = 2;
 
   /**  The one and only collision manager. */
   public static CollisionManager singleton;
   
+  /** How many walls an object may be pushed out of in one check. */
+  private static final int MAX_WALL_PUSHES = 4;
+  
   /** The default world size to use for a grid. */
   private static final int DEFAULT_GRID_SIZE = 25;
   
-  /** The default distance to travel before rechecking for collisions. */
-  private static final float DEFAULT_DISTANCE_PER_CHECK = 5;
-  
   /** The grid for broad base collision detect. */
   private CollisionGrid grid; 
   
-  /** Array to receive nearby objects when doing a collision query. */
-  GridSpot[] nearby = new GridSpot[5];
+  /** The broad phase in use. The grid, unless another has been set. */
+  private BroadPhase broadPhase;
+  
+  /** The walls of the level. Null if there are none. */
+  private StaticGeometry staticGeometry;
+  
+  /** Every object registered that can hit others, for checking walls. */
+  private SimpleList<CollisionComponent> hitters =
+      new SimpleList<CollisionComponent>(CollisionComponent.class);
+  
+  /** List to receive nearby objects when doing a collision query. */
+  private SimpleList<PhysicalObject> nearby =
+      new SimpleList<PhysicalObject>(PhysicalObject.class);
+  
+  /** The component of each nearby object, or null if it has none. */
+  private SimpleList<CollisionComponent> nearbyComponents =
+      new SimpleList<CollisionComponent>(CollisionComponent.class);
+  
+  /** Pairs of objects that might be touching, found during a step. */
+  private PairList pairs = new PairList();
+  
+  /** When collision detection is done. */
+  private int mode = MODE_PER_OBJECT;
+  
+  //// WHEN OBJECTS FALL ASLEEP
+  // Objects slower than the speed for the number of updates fall asleep.
+  // Never, while the number of updates is 0.
+  private float sleepSpeed = 0;
+  private int sleepFrames = 0;
   
   /** Any game specific collision check optimizations. */
   private CustomCollisionCheck customCollisionCheck;
   
-  /**
-   * Maximum distance that an object can move before rechecking for collision.
-   * This prevents objects with very high velocities from 'skipping' over 
-   * other objects in a single frame.
-   */
-  private float distancePerCheck = DEFAULT_DISTANCE_PER_CHECK;
+  /** Told of every collision once it has been handled. */
+  private CollisionListener collisionListener;
+  
+  /** Checks whether two specific objects collide. */
+  private NarrowPhase narrowPhase = new NarrowPhase();
+  
+  /** Collisions found during a step, waiting to be handled. */
+  private ContactBuffer contacts = new ContactBuffer();
+  
+  /** Checks pairs on several threads during a step. Null if not in use. */
+  private ParallelNarrowPhase parallelNarrowPhase;
+  
+  /** Moves rays and shapes through the world for casts. */
+  private ShapeCast shapeCast = new ShapeCast();
   
   /**
    * Creates a new collision manager for a world of the specific size.
    */
   private CollisionManager(float width, float height, int gridSize) {
     grid = new CollisionGrid(width + gridSize * 2, height + gridSize * 2, gridSize);
+    broadPhase = grid;
+  }
+  
+  /**
+   * Creates a new collision manager that uses the given broad phase, with
+   * no grid.
+   */
+  private CollisionManager(BroadPhase broadPhase) {
+    this.broadPhase = broadPhase;
   }
   
   /**
    * Adds an object that should be tracked by the collision system.
    */
   public void addObject(CollisionComponent object) {
-    grid.addObject(object);
+    broadPhase.addObject(object);
+    if (canHit(object.type)) {
+      hitters.add(object);
+    }
   }
   
   /**
    * Removes an object from the grid.
    */
   public void removeObject(CollisionComponent object) {
-    grid.removeObject(object);
+    broadPhase.removeObject(object);
+    if (canHit(object.type)) {
+      hitters.remove(object);
+    }
   }
   
   /**
    * Adds a stationary obstacle to be tracked by the collion system.
    */
   public void addStationaryObject(CollisionComponent object) {
-    grid.addStationaryObject(object);
+    broadPhase.addStationaryObject(object);
   }
   
   /**
    * Updates a objects position within the collision system.
    */
   public void updatePosition(CollisionComponent src) {
-    grid.updatePosition(src);
+    broadPhase.updatePosition(src);
+  }
+  
+  /**
+   * Changes the broad phase used to find nearby objects. Objects that are
+   * already registered are not moved over, so this should be called before
+   * any objects are added.
+   */
+  public void setBroadPhase(BroadPhase broadPhase) {
+    this.broadPhase = broadPhase;
+  }
+  
+  /**
+   * Returns the broad phase used to find nearby objects.
+   */
+  public BroadPhase getBroadPhase() {
+    return broadPhase;
+  }
+  
+  /**
+   * Sets the walls of the level, replacing any set before. Null to remove
+   * them.
+   */
+  public void setStaticGeometry(StaticGeometry staticGeometry) {
+    this.staticGeometry = staticGeometry;
+  }
+  
+  public StaticGeometry getStaticGeometry() {
+    return staticGeometry;
+  }
+  
+  /**
+   * Sets when collision detection is done. Either {@link #MODE_PER_OBJECT}
+   * or {@link #MODE_STEP}.
+   */
+  public void setMode(int mode) {
+    this.mode = mode;
+  }
+  
+  public int getMode() {
+    return mode;
+  }
+  
+  /**
+   * Lets objects that have been slower than a speed for a number of updates
+   * in a row fall asleep. Only {@link #TYPE_HIT_RECEIVE} objects sleep, and
+   * their velocity is set to 0 as they do. A sleeping object skips its own
+   * collision checks and isn't moved in the broad phase, until it speeds up,
+   * is moved, hits something, or {@link CollisionComponent#wake} is called.
+   * Objects that can hit a sleeping object still find it. In
+   * {@link #MODE_STEP}, so do moving {@link #TYPE_RECEIVE_ONLY} objects. Pass
+   * 0 updates to stop objects from sleeping, which is the default.
+   */
+  public void setSleepThreshold(float speed, int frames) {
+    this.sleepSpeed = speed;
+    this.sleepFrames = frames;
+  }
+  
+  public float getSleepSpeed() {
+    return sleepSpeed;
+  }
+  
+  public int getSleepFrames() {
+    return sleepFrames;
+  }
+  
+  /**
+   * Returns true if objects may fall asleep in the current manager.
+   */
+  static boolean canSleep() {
+    return singleton != null && singleton.sleepFrames > 0;
+  }
+  
+  /**
+   * Sets how many threads check pairs for collisions during a step,
+   * including the thread calling {@link #step}. With more than one, any
+   * {@link CustomCollisionCheck} is still only called from the stepping
+   * thread. Defaults to 1.
+   */
+  public void setThreadCount(int threads) {
+    if (parallelNarrowPhase != null) {
+      parallelNarrowPhase.shutdown();
+      parallelNarrowPhase = null;
+    }
+    if (threads > 1) {
+      parallelNarrowPhase = new ParallelNarrowPhase(threads);
+      parallelNarrowPhase.copyRoutines(narrowPhase);
+    }
+  }
+  
+  public int getThreadCount() {
+    return parallelNarrowPhase == null ? 1 : parallelNarrowPhase.getThreadCount();
+  }
+  
+  /**
+   * Sets the routine used when an object with one kind of shape is checked
+   * against an object with another. Applies to every thread checking pairs,
+   * including any started by a later {@link #setThreadCount}, so with more
+   * than one thread the routine may be called from several at once.
+   */
+  public void setRoutine(int srcKind, int destKind, CollisionRoutine routine) {
+    narrowPhase.setRoutine(srcKind, destKind, routine);
+    if (parallelNarrowPhase != null) {
+      parallelNarrowPhase.setRoutine(srcKind, destKind, routine);
+    }
   }
   
   /**
@@ -142,7 +345,16 @@ public class CollisionManager {
   }
   
   /**
-   * Returns a reference to the underlying grid.
+   * Sets a listener to be told of every collision, after both objects have
+   * been pushed apart and notified. Null to stop listening.
+   */
+  public void setCollisionListener(CollisionListener listener) {
+    this.collisionListener = listener;
+  }
+  
+  /**
+   * Returns a reference to the underlying grid. The grid is only populated
+   * while it is the broad phase in use, and is null for unbounded worlds.
    */
   public CollisionGrid getGrid() {
     return grid;
@@ -153,320 +365,373 @@ public class CollisionManager {
    * Objects that collide will be notified by calling their collide method.
    */
   public void checkForCollision(CollisionComponent src, long time) {
-    // Ask the grid for a set of lists that represent objects in 
-    // in nearby grid positions. Some lists may be null if there are 
-    // no objects in that grid position currently.
-
-    grid.getNearbyGridSpots(src, nearby);
-    GridSpot spot; 
+    // Ask the broad phase for objects that might be touching this one.
+    nearby.clear();
+    nearbyComponents.clear();
+    broadPhase.getNearbyObjects(src, nearby, nearbyComponents);
+    
     PhysicalObject object;
-    int numGridSpots = nearby.length;
-    int numObjects;
-    for ( int i = 0 ; i < numGridSpots ; i++) {
-      spot = nearby[i];
-      if ( spot != null) {
-        numObjects = spot.items.size;
-        
-        for (int j = 0 ; j < numObjects ; j++) {
-          object = spot.items.items[j];
-          
-          if (src.object == object || object.active == false) {
-            continue;
-          }
-          checkForCollision(src.object, object, time);
+    int numObjects = nearby.size;
+    contacts.clear();
+    for (int j = 0 ; j < numObjects ; j++) {
+      object = nearby.items[j];
+      
+      if (src.object == object || object.active == false) {
+        continue;
+      }
+      
+      // Check for any custom collision checking.
+      if (customCollisionCheck != null &&
+          customCollisionCheck.shouldSkipCollisionCheck(src.object, object, time)) {
+        continue;
+      }
+      
+      if (narrowPhase.collide(src.object, object, time, src.continuous)) {
+        contacts.add(j, narrowPhase.normal.x, narrowPhase.normal.y,
+            narrowPhase.depth, narrowPhase.timeOfImpact);
+      }
+    }
+    
+    // An object hit that will run its own check this update is left to
+    // find the collision itself, so each is only told once, and the src
+    // object takes the whole push. Otherwise both are pushed apart by their
+    // weights and notified now.
+    for (int i = 0; i < contacts.size; i++) {
+      object = nearby.items[contacts.pairs[i]];
+      if (!src.object.active) {
+        break;
+      }
+      if (!object.active) {
+        continue;
+      }
+      CollisionComponent dest = nearbyComponents.items[contacts.pairs[i]];
+      if (dest == null) {
+        resolve(src.object, object, 1, 0, i, true);
+      } else if (canHit(dest.type) && !dest.sleeping) {
+        resolve(src.object, object, 1, 0, i, false);
+      } else {
+        float share = getShare(src, dest);
+        if (share < 1) {
+          dest.wake();
         }
+        resolve(src.object, object, share, 1 - share, i, true);
       }
     }
+    
+    if (staticGeometry != null && src.object.active) {
+      collideWithWalls(src, time, false);
+    }
   }
   
-
-  // Vectors and objects used in the checkForCollision method. 
-  // They are created once and reused to prevent them from being instantiated
-  // and causing GC to be run.
-  Vector2d axis = new Vector2d(0, 0);  
-  Span spanA = new Span(0, 0);
-  Span spanB = new Span(0, 0);
-  Span velocitySpan = new Span(0, 0);
-  Vector2d scaledVelocityVector = new Vector2d(0, 0);
-  Vector2d translationVector = new Vector2d(0, 0);
-  Vector2d objectsSeperationVector = new Vector2d(0, 0);
-  Vector2d srcTranslation = new Vector2d(0, 0);
-  Vector2d destTranslation = new Vector2d(0, 0);
-  
-  /**
-   * Check for a collision between the two objects using the separating axis
-   * theorem. 
-   */
-  private void checkForCollision(PhysicalObject src, PhysicalObject dest, long time) {
-
-    // Check for any custom collision checking.
-    if (customCollisionCheck != null &&
-        customCollisionCheck.shouldSkipCollisionCheck(src, dest, time)) {
-      return;
-    }
+  /**
+   * Checks for collisions between every object in the world. Pairs of
+   * objects that might touch are found by the broad phase, sorted by
+   * component id, and then each pair is checked once. Once every pair is
+   * checked, the objects that collided are pushed apart by their weights and
+   * notified in the same order. Used in {@link #MODE_STEP}.
+   */
+  public void step(long time) {
+    FrameProfiler.get().begin(FrameProfiler.PHASE_COLLISION);
     
-    // Shortcut: If two circles are colliding, rely on the simple Circle
-    // collision check to handle everything, including notifying objects
-    // of collisions.
-    if (src.bounds.shape instanceof Circle && dest.bounds.shape instanceof Circle) {
-      simpleCircleCollision(src, dest, time, true);
-      return;
+    pairs.clear();
+    broadPhase.findPairs(pairs);
+    
+    // Broad phases may find a pair that can hit each other from both sides.
+    // Put the lower id first so both copies sort next to each other.
+    for (int i = 0; i < pairs.size; i++) {
+      CollisionComponent a = pairs.first[i];
+      CollisionComponent b = pairs.second[i];
+      if (b.id < a.id && canHit(b.type) && canBeHit(a.type)) {
+        pairs.first[i] = b;
+        pairs.second[i] = a;
+      }
     }
+    pairs.sort();
     
-    // Check for the possibility of a collision by comparing two object's
-    // general radius. This can quickly rule out cases where collisions
-    // are not possible before trying the full, heavy, seperating axis
-    // theorem.
-    if (!simpleCircleCollision(src, dest, time, false)) {
-      return;
+    // Drop repeated pairs, pairs of sleeping objects that can't have moved
+    // into each other, and any the game wants skipped, before checking.
+    int size = 0;
+    for (int i = 0; i < pairs.size; i++) {
+      CollisionComponent a = pairs.first[i];
+      CollisionComponent b = pairs.second[i];
+      if (size > 0 && a == pairs.first[size - 1] && b == pairs.second[size - 1]) {
+        continue;
+      }
+      if (a.sleeping && b.sleeping) {
+        continue;
+      }
+      if (customCollisionCheck != null &&
+          customCollisionCheck.shouldSkipCollisionCheck(a.object, b.object, time)) {
+        continue;
+      }
+      pairs.first[size] = a;
+      pairs.second[size] = b;
+      size++;
     }
-
-    float minDistanceBetween = Float.MAX_VALUE;
-    float minDistanceWeight = Float.MAX_VALUE;
+    pairs.size = size;
     
-    // Assume that the polygons intersect until proved otherwise.
-    boolean intersect = true;
-    boolean willIntersect = true;
-    float velocityProjection = 0;
+    contacts.clear();
+    if (parallelNarrowPhase != null) {
+      parallelNarrowPhase.findContacts(pairs, time, contacts);
+    } else {
+      narrowPhase.findContacts(pairs, 0, pairs.size, time, contacts);
+    }
     
-    int numSrcAxis = getNumAxis(src, dest);
-    int numDestAxis = getNumAxis(dest, src);
-    int totalAxis = numSrcAxis + numDestAxis;
-
-    // Iterate through each edge and see if there is space between them.
-    // This is an implementation of the separating axis theorem. 
-    for (int edgeIndex = 0; edgeIndex < totalAxis; edgeIndex++) {
-      // Determine the edge to test.
-      if (edgeIndex < numSrcAxis) {
-        getAxis(src, dest, edgeIndex, axis);
-      } else {
-        getAxis(dest, src, edgeIndex - numSrcAxis, axis);
-      }
+    for (int i = 0; i < contacts.size; i++) {
+      CollisionComponent a = pairs.first[contacts.pairs[i]];
+      CollisionComponent b = pairs.second[contacts.pairs[i]];
       
-      // Project both polygons onto the axis
-      src.bounds.shape.projectOnAxis(src.x, src.y, axis, spanA);
-      dest.bounds.shape.projectOnAxis(dest.x, dest.y, axis, spanB);
-      
-      // If there is any space between the projected shadows, you know they
-      // aren't touching.
-      float distanceBetween = spanA.distanceBetween(spanB);
-      float distanceWeight = distanceBetween;
-      if (distanceBetween >= 0) {
-        intersect = false;
+      // Objects may have been removed by an earlier collision this step.
+      if (!a.object.active || !b.object.active) {
+        continue;
       }
       
-      // Now to determine if the objects _will_ collide.
-      
-      // Note that objects may be moving very fast, so we can't just project
-      // the velocity vector. That may cause it to 'skip' the object it is
-      // checking against or even collide with the wrong face. Instead,
-      // incrementally test the velocity in steps of the largest possible
-      // movement. 
+      a.wake();
+      b.wake();
       
-      // The total velocity that is requested.
-      float totalVx = src.velocity.x * time / 200;
-      float totalVy = src.velocity.y * time / 200;
-      int steps = (int) (Math.ceil(
-            FloatMath.sqrt(totalVx * totalVx + totalVy * totalVy)
-            / distancePerCheck ));
-
-      // Figure how much each velocity step should project on the axis
-      // being tested
-      scaledVelocityVector.x = totalVx / steps;
-      scaledVelocityVector.y = totalVy / steps;
-      velocityProjection = axis.dotProduct(scaledVelocityVector);
-      velocitySpan.loadValues(spanA);
-
-      for (int i = 0; i < steps; i++) {
-        
-        addVelocityToSpan(velocitySpan, velocityProjection);
-
-        // See if they intersect now.
-        distanceBetween = velocitySpan.distanceBetween(spanB);
-        if (distanceBetween >= 0) {
-          willIntersect = false;
-        } else {
-          willIntersect = true;
-          addVelocityToSpan(spanA, velocityProjection * steps);
-          distanceWeight = 0;
-          distanceBetween = spanA.distanceBetween(spanB);
-          break;
+      float share = getShare(a, b);
+      resolve(a.object, b.object, share, 1 - share, i, true);
+    }
+    
+    // Walls go last so nothing is left pushed into one.
+    if (staticGeometry != null) {
+      for (int i = 0; i < hitters.size; i++) {
+        if (hitters.items[i].object.active && !hitters.items[i].sleeping) {
+          collideWithWalls(hitters.items[i], time, true);
         }
       }
-
-      // If the polygons are not intersecting and won't intersect, exit the loop
-      if (!intersect && !willIntersect)
-        break;
-
-      // Next keep track of the axis that represented the smallest distance
-      // from not colliding. This is used to create a translation Vector, which
-      // represents the smallest possible distance the src object needs to move
-      // to no longer be colliding. Note that this may not always be the 'smallest'
-      // offset vector in cases of very fast moving src objects. If they collide
-      // past the middle of the a dest vector they are still forced to move back
-      // to the side they originally collided with.
-
-      distanceBetween = Math.abs(distanceBetween);
-      distanceWeight = Math.abs(distanceWeight);
-  
-      if (distanceWeight < minDistanceWeight) {
-        
-        // New minimum distance
-        minDistanceBetween = distanceBetween;
-        minDistanceWeight = distanceWeight;
-        translationVector.x = axis.x;
-        translationVector.y = axis.y;
-        
-        objectsSeperationVector.x = src.x - dest.x;
-        objectsSeperationVector.y = src.y - dest.y;
-        if (objectsSeperationVector.dotProduct(translationVector) < 0) {
-          translationVector.x *= -1;
-          translationVector.y *= -1;
-        }
-        
-      }     
     }
     
-    if (intersect || willIntersect) {
-      splitTranslationVector(src, dest, translationVector, minDistanceBetween);
-    }
+    FrameProfiler.get().end(FrameProfiler.PHASE_COLLISION);
   }
   
-  private void addVelocityToSpan(Span span, float velocityProjection) {
-    if (velocityProjection < 0) {
-      span.min += velocityProjection;
-    } else {
-      span.max += velocityProjection;
+  /**
+   * Casts a ray from a point in a direction, up to a maximum distance. The
+   * objects hit, closest first, are placed in the result, which also
+   * decides how many hits to find. Returns the number of objects hit.
+   */
+  public int raycast(
+      float x,
+      float y,
+      float directionX,
+      float directionY,
+      float distance,
+      CastResult result) {
+    
+    float length = (float) Math.sqrt(directionX * directionX + directionY * directionY);
+    if (length == 0) {
+      result.clear();
+      return 0;
     }
+    float scale = distance / length;
+    return segmentCast(x, y, x + directionX * scale, y + directionY * scale, result);
+  }
+  
+  /**
+   * Finds the objects crossed by the line segment from (x1, y1) to (x2, y2),
+   * such as for a line of sight check or hitscan weapon. See
+   * {@link #raycast}.
+   */
+  public int segmentCast(float x1, float y1, float x2, float y2, CastResult result) {
+    return shapeCast.castSegment(broadPhase, staticGeometry, x1, y1, x2, y2, result);
+  }
+  
+  /**
+   * Finds the objects a shape would hit if it moved from (x1, y1) to
+   * (x2, y2), such as to check whether an object fits through a gap. Each
+   * hit's position is where the shape's center was when it first touched.
+   * See {@link #raycast}.
+   */
+  public int shapeCast(
+      Shape shape,
+      float x1,
+      float y1,
+      float x2,
+      float y2,
+      CastResult result) {
+    return shapeCast.castShape(broadPhase, staticGeometry, shape, x1, y1, x2, y2, result);
+  }
+  
+  /**
+   * Returns true if objects of the given collision type can hit others.
+   */
+  public static boolean canHit(int type) {
+    return type == TYPE_HIT_ONLY || type == TYPE_HIT_RECEIVE;
+  }
+  
+  /**
+   * Returns true if the layers of two components allow them to collide.
+   * Checked by broad phases before pairs or nearby objects are reported.
+   */
+  public static boolean canCollide(CollisionComponent a, CollisionComponent b) {
+    return (a.mask & b.category) != 0 && (b.mask & a.category) != 0;
   }
   
+  /**
+   * Returns true if objects of the given collision type can be hit.
+   */
+  public static boolean canBeHit(int type) {
+    return type == TYPE_HIT_RECEIVE ||
+        type == TYPE_RECEIVE_ONLY ||
+        type == TYPE_STATIONARY;
+  }
+  
+
+  // Used when notifying objects of collisions. They are created once and
+  // reused to prevent them from being instantiated and causing GC to be run.
+  private Vector2d srcTranslation = new Vector2d(0, 0);
+  private Vector2d destTranslation = new Vector2d(0, 0);
+  private Vector2d wallPush = new Vector2d(0, 0);
+  private Contact contact = new Contact();
+  
   /**
    * Gets the combined number of axis that should be tested for the 
    * src polygon, given that it will be tested against the dest polygon.
-   * Knowing the dest polygon that will be tested against is needed for cases
-   * where the collision might test between a circle and a polygon, in which
-   * the axis don't represent a 1-to-1 relationship with polygon edges.
+   * See {@link NarrowPhase#getNumAxis}.
    */
   public int getNumAxis(PhysicalObject src, PhysicalObject dest) {
-    
-    // When polygons are tested against polygons, edges are used
-    // to determine test axis
-    if (src.bounds.shape instanceof Polygon) {
-      return ((Polygon) src.bounds.shape).edges.length;
-    } else if (src.bounds.shape instanceof Circle) {
-      
-      // If testing between two circles, you only have 1 axis to test against:
-      // the axis separating their centers.
-      if (dest.bounds.shape instanceof Circle) {
-        return 1;
-      } 
-      
-      // If testing between a polygon and a circle, you must test
-      // all axis between the polygon points and the circle center.
-      else if (dest.bounds.shape instanceof Polygon) {
-        return ((Polygon) dest.bounds.shape).points.length;
-      }
-    }
-    return 0;
+    return narrowPhase.getNumAxis(src, dest);
   }
   
   /**
    * Retrieves a specified axis of the src polygon, given that it will be
-   * tested against the dest polygon for a collision. Returns the axis
-   * specified by i and places the vector values into the axis parameter.
+   * tested against the dest polygon for a collision. See
+   * {@link NarrowPhase#getAxis}.
    */
   public void getAxis(PhysicalObject src, PhysicalObject dest, int i, Vector2d axis) {
-    if (src.bounds.shape instanceof Polygon) {
-      Vector2d edge = ((Polygon) src.bounds.shape).edges[i];
-      axis.x = -edge.y;
-      axis.y = edge.x;
-    } else if (src.bounds.shape instanceof Circle) {
-      if (dest.bounds.shape instanceof Circle) {
-        axis.x = dest.x - src.x;
-        axis.y = dest.y - src.y;
-      } else if (dest.bounds.shape instanceof Polygon) {
-        Vector2d point = ((Polygon) dest.bounds.shape).points[i];
-        axis.x = point.x - src.x;
-        axis.y = point.y - src.y;
-      }
+    narrowPhase.getAxis(src, dest, i, axis);
+  }
+  
+  /**
+   * Returns how much of the push apart src takes when it collides with
+   * dest. Each object is pushed in proportion to the other's weight, so
+   * heavier objects move less. Stationary objects never move.
+   */
+  private static float getShare(CollisionComponent src, CollisionComponent dest) {
+    if (dest.type == TYPE_STATIONARY) {
+      return 1;
+    } else if (src.weight + dest.weight > 0) {
+      return dest.weight / (src.weight + dest.weight);
     } else {
-      axis.x = 1;
-      axis.y = 0;
+      return 0.5f;
     }
-    axis.normalize();
   }
   
   /**
-   * Performs a simple version of collision checking by checking if
-   * the bounding circle of two objects intersect. This check is very quick
-   * compared to the separating axis theorem. Returns true if a collision is
-   * possible, false otherwise. If requested, this method can also be told to
-   * notify the src and dest objects if they collide. This should be set to
-   * true if this collision detection is the only collision detection
-   * used between two objects.
+   * Pushes apart two objects for a contact in the contact buffer, then
+   * notifies src, dest if asked, and the listener. Each object is moved by
+   * its share of the contact's depth, src along the normal and dest against
+   * it.
    */
-  private boolean simpleCircleCollision(
+  private void resolve(
       PhysicalObject src,
       PhysicalObject dest,
-      long time,
-      boolean notifyObjectsOnCollide) {
+      float srcShare,
+      float destShare,
+      int index,
+      boolean notifyDest) {
     
-    // Are they colliding now?
-    float dX = src.x - dest.x;
-    float dY = src.y - dest.y;
-    float minDistance = src.bounds.shape.radius + dest.bounds.shape.radius;
-    boolean collide = dX * dX + dY * dY < minDistance * minDistance;
+    float normalX = contacts.normalX[index];
+    float normalY = contacts.normalY[index];
+    float depth = contacts.depth[index];
     
-    // Will they collide?
-    dX = (src.x + src.velocity.x * time / PhysicalObject.TIME_SCALER) - dest.x; 
-    dY = (src.y + src.velocity.y * time / PhysicalObject.TIME_SCALER) - dest.y;
-    boolean willCollide = dX * dX + dY * dY < minDistance * minDistance;
+    srcTranslation.x = normalX * depth * srcShare;
+    srcTranslation.y = normalY * depth * srcShare;
+    destTranslation.x = -normalX * depth * destShare;
+    destTranslation.y = -normalY * depth * destShare;
     
-    
-    if (notifyObjectsOnCollide && (collide || willCollide)) {
-      
-      // Find the distance needed to make it so these two circles are not
-      // touching. This distance will be turned into a vector and split
-      // between the two objects, so they are both pushed back.
-      float seperationNeeded = minDistance - FloatMath.sqrt(dX * dX + dY * dY);
-      translationVector.x = dX;
-      translationVector.y = dY;
-      if (translationVector.x == 0 && translationVector.y == 0)
-        translationVector.x = 1;
-      translationVector.normalize();
-      
-      splitTranslationVector(src, dest, translationVector, seperationNeeded);
+    src.collide(dest, srcTranslation);
+    if (notifyDest) {
+      dest.collide(src, destTranslation);
     }
     
-    return collide || willCollide;
+    if (collisionListener != null) {
+      contact.first = src;
+      contact.second = dest;
+      contact.normalX = normalX;
+      contact.normalY = normalY;
+      contact.depth = depth;
+      contact.timeOfImpact = contacts.timeOfImpact[index];
+      collisionListener.onCollision(contact);
+      contact.first = null;
+      contact.second = null;
+    }
   }
   
   /**
-   * Takes a translation vector (a vector that when applied to either of the 
-   * objects would make them no longer collide), and splits it between the 
-   * two objects based on their relative sizes.
+   * Stops an object at the first walls in the way of its move, then pushes
+   * it out of any walls it overlaps, and notifies it and the listener once
+   * with the total push. The move is the one just made if the object has
+   * already moved, as in a step, or else the one it is about to make. An
+   * object that hits a wall ends up where it first touched it, slid along
+   * the wall by the rest of its move. The walls are given as the object
+   * that was hit. Objects are checked as circles, see
+   * {@link StaticGeometry}.
    */
-  private void splitTranslationVector(
-      PhysicalObject src,
-      PhysicalObject dest,
-      Vector2d translation,
-      float seperationNeeded) {
+  private void collideWithWalls(CollisionComponent component, long time, boolean moved) {
+    if ((component.mask & staticGeometry.category) == 0) {
+      return;
+    }
     
-    float areaA = ((float) Math.PI) * src.bounds.shape.radius * src.bounds.shape.radius;
-    float areaB = ((float) Math.PI) * dest.bounds.shape.radius * dest.bounds.shape.radius;
-    float totalArea = areaA + areaB; 
-    float aDistance = areaA / totalArea * seperationNeeded; 
-    float bDistance = areaB / totalArea * seperationNeeded;
+    PhysicalObject object = component.object;
+    float radius = object.bounds.shape.radius;
+    float moveX = object.velocity.x * time / PhysicalObject.TIME_SCALER;
+    float moveY = object.velocity.y * time / PhysicalObject.TIME_SCALER;
+    float timeOfImpact = 0;
     
-    srcTranslation.x = translation.x * seperationNeeded;
-    srcTranslation.y = translation.y * seperationNeeded;
+    // Follow the move, sliding along each wall hit, to where it ends.
+    float x = moved ? object.x - moveX : object.x;
+    float y = moved ? object.y - moveY : object.y;
+    float endX = x + moveX;
+    float endY = y + moveY;
+    float restX = moveX;
+    float restY = moveY;
+    for (int i = 0; i < MAX_WALL_PUSHES && (restX != 0 || restY != 0); i++) {
+      float at = staticGeometry.sweep(x, y, radius, restX, restY, wallPush);
+      if (at < 0) {
+        break;
+      }
+      if (i == 0) {
+        timeOfImpact = at;
+      }
+      x += restX * at;
+      y += restY * at;
+      restX *= 1 - at;
+      restY *= 1 - at;
+      float into = restX * wallPush.x + restY * wallPush.y;
+      restX -= wallPush.x * into;
+      restY -= wallPush.y * into;
+    }
+    float pushX = x + restX - endX;
+    float pushY = y + restY - endY;
     
-    destTranslation.x = translation.x * aDistance * -1;
-    destTranslation.y = translation.y * aDistance * -1;
+    for (int i = 0; i < MAX_WALL_PUSHES; i++) {
+      if (!staticGeometry.collide(object.x + pushX, object.y + pushY, radius, wallPush)) {
+        break;
+      }
+      pushX += wallPush.x;
+      pushY += wallPush.y;
+    }
+    if (pushX == 0 && pushY == 0) {
+      return;
+    }
     
-    src.collide(dest, srcTranslation);
-    //dest.collide(src, destTranslation);
+    srcTranslation.x = pushX;
+    srcTranslation.y = pushY;
+    object.collide(staticGeometry.object, srcTranslation);
     
+    if (collisionListener != null) {
+      float depth = (float) Math.sqrt(pushX * pushX + pushY * pushY);
+      contact.first = object;
+      contact.second = staticGeometry.object;
+      contact.normalX = pushX / depth;
+      contact.normalY = pushY / depth;
+      contact.depth = depth;
+      contact.timeOfImpact = timeOfImpact;
+      collisionListener.onCollision(contact);
+      contact.first = null;
+      contact.second = null;
+    }
   }
   
   public static CollisionManager setup(float width, float height) {
@@ -474,15 +739,37 @@ public class CollisionManager {
   }
   
   public static CollisionManager setup(float width, float height, float gridSize) {
+    shutdown();
     singleton = new CollisionManager(width, height, DEFAULT_GRID_SIZE);
     return singleton;
   }
   
   public static CollisionManager setup(float width, float height, int gridSize) {
+    shutdown();
     singleton = new CollisionManager(width, height, gridSize);
     return singleton;
   }
   
+  /**
+   * Sets up a collision manager for a world without bounds. Objects are
+   * tracked by a {@link SparseCollisionGrid}, which only uses memory for
+   * the parts of the world that hold objects.
+   */
+  public static CollisionManager setupUnbounded(float gridSize) {
+    shutdown();
+    singleton = new CollisionManager(new SparseCollisionGrid(gridSize));
+    return singleton;
+  }
+  
+  /**
+   * Stops any threads used by the current manager.
+   */
+  private static void shutdown() {
+    if (singleton != null) {
+      singleton.setThreadCount(1);
+    }
+  }
+  
   public static CollisionManager get() { 
     return singleton;
   }
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+
+/**
+ * Checks for a collision between two objects with specific kinds of shape,
+ * such as two circles. A {@link NarrowPhase} keeps a routine for every pair
+ * of {@link com.zeddic.game.common.util.Shape#kind}s, see
+ * {@link NarrowPhase#setRoutine} and {@link CollisionManager#setRoutine}.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public interface CollisionRoutine {
+
+  /**
+   * Returns true if the src object touches the dest object or will touch it
+   * after moving for the given time. If so the push needed to separate them
+   * must be left in the narrow phase's normal and depth, and when they
+   * first touch in its timeOfImpact. See
+   * {@link NarrowPhase#collide(PhysicalObject, PhysicalObject, long)}.
+   */
+  public boolean collide(
+      NarrowPhase narrowPhase,
+      PhysicalObject src,
+      PhysicalObject dest,
+      long time);
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+
+/**
+ * A collision between two objects, as handed to a {@link CollisionListener}.
+ * The first object is the one that hit the second. The normal points from
+ * the second object towards the first, and the depth is how far they had to
+ * be pushed apart along it.
+ * 
+ * The collision manager reuses a single contact, so listeners should copy
+ * out anything they want to keep.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public class Contact {
+  
+  public PhysicalObject first;
+  public PhysicalObject second;
+  
+  public float normalX;
+  public float normalY;
+  public float depth;
+  
+  /** How far through the update the objects first touched, from 0 to 1. */
+  public float timeOfImpact;
+}
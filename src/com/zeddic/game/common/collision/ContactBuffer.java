@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zeddic.game.common.collision;
+
+import android.util.Log;
+
+/**
+ * A growable list of contacts found by a {@link NarrowPhase}, kept in
+ * parallel arrays. Each contact refers to a pair by its index in the list
+ * of pairs or objects that was checked, and holds the push needed to move
+ * the first object of the pair clear of the second.
+ * 
+ * Contacts are only recorded while checking for collisions. Objects are
+ * pushed apart and notified afterwards, so checking has no side effects.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public class ContactBuffer {
+
+  private static final int INITIAL_CAPACITY = 64;
+  private static final int CAPACITY_GROWTH_RATE = 2;
+  
+  /** The index of each contact's pair within the list that was checked. */
+  public int[] pairs;
+  
+  /** The direction to push the first object of the pair. */
+  public float[] normalX;
+  public float[] normalY;
+  
+  /** How far to push the first object along the normal. */
+  public float[] depth;
+  
+  /** How far through the check's time the objects first touch, 0 to 1. */
+  public float[] timeOfImpact;
+  
+  /** The number of contacts in the buffer. */
+  public int size;
+  
+  public ContactBuffer() {
+    this(INITIAL_CAPACITY);
+  }
+  
+  public ContactBuffer(int initialCapacity) {
+    pairs = new int[initialCapacity];
+    normalX = new float[initialCapacity];
+    normalY = new float[initialCapacity];
+    depth = new float[initialCapacity];
+    timeOfImpact = new float[initialCapacity];
+  }
+  
+  /**
+   * Adds a new contact to the end of the buffer.
+   */
+  public void add(int pair, float x, float y, float distance, float time) {
+    if (size == pairs.length) {
+      grow();
+    }
+    pairs[size] = pair;
+    normalX[size] = x;
+    normalY[size] = y;
+    depth[size] = distance;
+    timeOfImpact[size] = time;
+    size++;
+  }
+  
+  /**
+   * Adds a contact copied from another buffer.
+   */
+  public void add(ContactBuffer other, int index) {
+    add(other.pairs[index],
+        other.normalX[index],
+        other.normalY[index],
+        other.depth[index],
+        other.timeOfImpact[index]);
+  }
+  
+  /**
+   * Clears the buffer, keeping the underlying arrays.
+   */
+  public void clear() {
+    size = 0;
+  }
+  
+  private void grow() {
+    int newSize = pairs.length * CAPACITY_GROWTH_RATE;
+    Log.d(ContactBuffer.class.getCanonicalName(), "Increasing contact buffer from size " + 
+        pairs.length + " to " + newSize);
+    
+    pairs = grow(pairs, newSize);
+    normalX = grow(normalX, newSize);
+    normalY = grow(normalY, newSize);
+    depth = grow(depth, newSize);
+    timeOfImpact = grow(timeOfImpact, newSize);
+  }
+  
+  private int[] grow(int[] array, int newSize) {
+    int[] newArray = new int[newSize];
+    System.arraycopy(array, 0, newArray, 0, size);
+    return newArray;
+  }
+  
+  private float[] grow(float[] array, int newSize) {
+    float[] newArray = new float[newSize];
+    System.arraycopy(array, 0, newArray, 0, size);
+    return newArray;
+  }
+}
@@ -23,12 +23,25 @@ import com.zeddic.game.common.util.SimpleList;
  * Represents a single position within the {@link CollisionGrid}. Contains
  * a list of PhysicalObjects that are currently residing within that position.
  * 
+ * The component of a moving object remembers each spot it is in and where
+ * in that spot it is stored, {@link CollisionComponent#gridSlot}. It can
+ * then be added, removed or moved to another spot without searching the
+ * spot. Removing an object moves the last object into its place rather
+ * than shifting every later object down.
+ * 
  * @author baileys (Scott Bailey)
  */
 public class GridSpot {
   
   private static int INITIAL_CAPACITY = 40;
   
+  /**
+   * When true, every spot checks that the slots of its objects are correct
+   * after each change, throwing an IllegalStateException if not. This is
+   * slow and only meant for tests and debugging.
+   */
+  public static boolean validate = false;
+  
   /**
    * A list of lists that contains a reference to every object inside this
    * grid. Each inner list contains only objects of the same primitive
@@ -36,6 +49,21 @@ public class GridSpot {
    */
   public SimpleList<PhysicalObject> items;
   
+  /**
+   * The collision component of each object in {@link items}, at the same
+   * index. May be null for objects that were added without one.
+   */
+  public SimpleList<CollisionComponent> components;
+  
+  /**
+   * The last query to visit this spot. Lets queries that may reach a spot
+   * more than once skip it after the first time.
+   */
+  int queryStamp;
+  
+  /** Where the spot is stored in a {@link SparseCollisionGrid}. */
+  long key;
+  
   /**
    * A list of the corresponding types of each object list.
    */
@@ -49,7 +77,13 @@ public class GridSpot {
   
   
   public GridSpot() {
-    items = new SimpleList<PhysicalObject>(PhysicalObject.class, INITIAL_CAPACITY);
+    this(INITIAL_CAPACITY);
+  }
+  
+  public GridSpot(int initialCapacity) {
+    items = new SimpleList<PhysicalObject>(PhysicalObject.class, initialCapacity);
+    components = new SimpleList<CollisionComponent>(
+        CollisionComponent.class, initialCapacity);
     //lists = new SimpleList<SimpleList<PhysicalObject>>(SimpleList.class, INITIAL_CAPACITY);
     //types = new SimpleList<Class<? extends PhysicalObject>>(Class.class, INITIAL_CAPACITY);
     //typeToList = new HashMap<Class<? extends PhysicalObject>, Integer>();
@@ -60,7 +94,26 @@ public class GridSpot {
    * Adds a new object to this grid position.
    */
   public void add(PhysicalObject object) {
-    items.add(object);
+    if (items.contains(object))
+      return;
+    items.append(object);
+    components.append(null);
+  }
+  
+  /**
+   * Adds the object of a collision component to this grid position. The
+   * caller must make sure the component isn't already here. A moving
+   * object's component records its slot in this spot.
+   */
+  public void add(CollisionComponent component) {
+    if (component.type != CollisionManager.TYPE_STATIONARY) {
+      track(component, items.size);
+    }
+    items.append(component.object);
+    components.append(component);
+    if (validate) {
+      validate();
+    }
   }
   
   
@@ -72,6 +125,176 @@ public class GridSpot {
    * Removes an object from the grid spot.
    */
   public void remove(PhysicalObject object) {
-    items.remove(object);
+    int index = items.indexOf(object);
+    if (index != -1) {
+      removeIndex(index);
+    }
+  }
+  
+  /**
+   * Removes the object of a collision component from the spot. Moving
+   * objects are found by their slot, others are searched for.
+   */
+  public void remove(CollisionComponent component) {
+    int entry = -1;
+    int index = -1;
+    if (component.type != CollisionManager.TYPE_STATIONARY) {
+      entry = entryOf(component, this);
+      index = slotAt(component, entry);
+    }
+    if (index < 0 || index >= items.size || components.items[index] != component) {
+      index = items.indexOf(component.object);
+    }
+    if (index != -1) {
+      removeIndex(index);
+    }
+    if (entry != -1) {
+      untrack(component, entry);
+    }
+  }
+  
+  /**
+   * Moves a moving object from this spot to another.
+   */
+  public void move(CollisionComponent component, GridSpot to) {
+    remove(component);
+    to.add(component);
+  }
+  
+  /**
+   * Removes the object at an index by moving the last object into its
+   * place, and updates the moved object's slot.
+   */
+  private void removeIndex(int index) {
+    items.swapRemove(index);
+    components.swapRemove(index);
+    if (index < components.size) {
+      CollisionComponent moved = components.items[index];
+      if (moved != null && moved.type != CollisionManager.TYPE_STATIONARY) {
+        if (moved.gridSpot == this) {
+          moved.gridSlot = index;
+        } else {
+          int entry = entryOf(moved, this);
+          if (entry > 0) {
+            moved.gridSlots[entry - 1] = index;
+          }
+        }
+      }
+    }
+    if (validate) {
+      validate();
+    }
+  }
+  
+  //// THE SPOTS OF A COMPONENT
+  // Entry 0 is the component's first spot, kept in plain fields since most
+  // objects are only in one. Later entries are kept in arrays.
+  
+  /**
+   * Records that a component is in this spot at the given slot.
+   */
+  private void track(CollisionComponent component, int slot) {
+    int count = component.gridSpotCount++;
+    if (count == 0) {
+      component.gridSpot = this;
+      component.gridSlot = slot;
+      return;
+    }
+    
+    if (component.gridSpots == null) {
+      component.gridSpots = new GridSpot[4];
+      component.gridSlots = new int[4];
+    } else if (count > component.gridSpots.length) {
+      GridSpot[] spots = new GridSpot[count * 2];
+      int[] slots = new int[count * 2];
+      System.arraycopy(component.gridSpots, 0, spots, 0, count - 1);
+      System.arraycopy(component.gridSlots, 0, slots, 0, count - 1);
+      component.gridSpots = spots;
+      component.gridSlots = slots;
+    }
+    component.gridSpots[count - 1] = this;
+    component.gridSlots[count - 1] = slot;
+  }
+  
+  /**
+   * Forgets one of the spots a component is in, moving its last spot into
+   * the gap.
+   */
+  private static void untrack(CollisionComponent component, int entry) {
+    int last = --component.gridSpotCount;
+    if (last == 0) {
+      component.gridSpot = null;
+      component.gridSlot = -1;
+      return;
+    }
+    
+    GridSpot spot = component.gridSpots[last - 1];
+    int slot = component.gridSlots[last - 1];
+    component.gridSpots[last - 1] = null;
+    if (entry == 0) {
+      component.gridSpot = spot;
+      component.gridSlot = slot;
+    } else if (entry != last) {
+      component.gridSpots[entry - 1] = spot;
+      component.gridSlots[entry - 1] = slot;
+    }
+  }
+  
+  /**
+   * Returns which of a component's spots is the given spot, or -1 if it
+   * isn't in it. Objects are only in a few spots, so a search is quick.
+   */
+  private static int entryOf(CollisionComponent component, GridSpot spot) {
+    if (component.gridSpot == spot && component.gridSpotCount > 0) {
+      return 0;
+    }
+    for (int i = 1; i < component.gridSpotCount; i++) {
+      if (component.gridSpots[i - 1] == spot) {
+        return i;
+      }
+    }
+    return -1;
+  }
+  
+  /**
+   * Returns where a component is stored within one of its spots, or -1 if
+   * there is no such spot.
+   */
+  private static int slotAt(CollisionComponent component, int entry) {
+    if (entry == -1) {
+      return -1;
+    }
+    return entry == 0 ? component.gridSlot : component.gridSlots[entry - 1];
+  }
+  
+  /**
+   * Checks that every moving object's slot is where it is stored, and that
+   * the object and component lists match.
+   */
+  public void validate() {
+    if (items.size != components.size) {
+      throw new IllegalStateException(
+          "Spot has " + items.size + " objects but " + components.size + " components.");
+    }
+    for (int i = 0; i < components.size; i++) {
+      CollisionComponent component = components.items[i];
+      if (component == null) {
+        continue;
+      }
+      if (component.object != items.items[i]) {
+        throw new IllegalStateException("Component at slot " + i + " has the wrong object.");
+      }
+      if (component.type == CollisionManager.TYPE_STATIONARY) {
+        continue;
+      }
+      int slot = slotAt(component, entryOf(component, this));
+      if (slot == -1) {
+        throw new IllegalStateException("Component " + component.id + " doesn't know it is here.");
+      }
+      if (slot != i) {
+        throw new IllegalStateException("Component " + component.id + " thinks it is at slot " +
+            slot + " but is at " + i + ".");
+      }
+    }
   }
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.SimpleList;
+
+/**
+ * A broad phase that keeps several {@link CollisionGrid}s of the same world,
+ * each with a larger grid size than the last. Each object is placed only in
+ * the grid whose spots fit its bounds, so tiny bullets sit in small spots
+ * with few neighbours while large walls sit in a handful of big spots
+ * rather than hundreds of small ones. Queries look through every level.
+ * 
+ * An object uses the first level whose grid size is at least the width of
+ * its bounds, or the last level if none are large enough. The level is
+ * chosen when the object is added and kept until it is removed.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public class HierarchicalCollisionGrid implements BroadPhase {
+
+  /** The grid sizes used when none are given. */
+  public static final float[] DEFAULT_GRID_SIZES = {25, 100, 400};
+  
+  /** One grid per level, smallest grid size first. */
+  private final CollisionGrid[] levels;
+  
+  /** How many objects are placed in each level. Empty levels are skipped. */
+  private final int[] counts;
+  
+  /** Every object added with {@link #addObject}, in the order added. */
+  private final SimpleList<CollisionComponent> movers;
+  
+  /**
+   * Creates levels covering the given world size with the default grid
+   * sizes.
+   */
+  public HierarchicalCollisionGrid(float mapWidth, float mapHeight) {
+    this(mapWidth, mapHeight, DEFAULT_GRID_SIZES);
+  }
+  
+  /**
+   * Creates one level for each grid size, which must be in increasing
+   * order. Every level covers the given world size.
+   */
+  public HierarchicalCollisionGrid(float mapWidth, float mapHeight, float[] gridSizes) {
+    levels = new CollisionGrid[gridSizes.length];
+    counts = new int[gridSizes.length];
+    for (int i = 0; i < gridSizes.length; i++) {
+      levels[i] = new CollisionGrid(mapWidth, mapHeight, gridSizes[i]);
+    }
+    movers = new SimpleList<CollisionComponent>(CollisionComponent.class);
+  }
+  
+  /**
+   * Returns the grid used for a level.
+   */
+  public CollisionGrid getLevel(int level) {
+    return levels[level];
+  }
+  
+  public int getNumLevels() {
+    return levels.length;
+  }
+  
+  /**
+   * Returns the level that fits an object's bounds.
+   */
+  public int getLevel(CollisionComponent component) {
+    float width = component.object.bounds.shape.radius * 2;
+    for (int i = 0; i < levels.length - 1; i++) {
+      if (width <= levels[i].gridSize) {
+        return i;
+      }
+    }
+    return levels.length - 1;
+  }
+  
+  public void addObject(CollisionComponent component) {
+    movers.add(component);
+    levels[track(component)].addObject(component);
+  }
+
+  public void addStationaryObject(CollisionComponent component) {
+    levels[track(component)].addStationaryObject(component);
+  }
+  
+  public void removeObject(CollisionComponent component) {
+    if (component.proxy == -1) {
+      return;
+    }
+    movers.remove(component);
+    levels[component.proxy].removeObject(component);
+    counts[component.proxy]--;
+    component.proxy = -1;
+  }
+
+  public void updatePosition(CollisionComponent component) {
+    if (component.proxy == -1) {
+      return;
+    }
+    levels[component.proxy].updatePosition(component);
+  }
+  
+  public void getNearbyObjects(
+      CollisionComponent component,
+      SimpleList<PhysicalObject> nearby,
+      SimpleList<CollisionComponent> nearbyComponents) {
+    
+    updatePosition(component);
+    for (int i = 0; i < levels.length; i++) {
+      if (counts[i] > 0) {
+        levels[i].getObjectsAround(component, nearby, nearbyComponents);
+      }
+    }
+  }
+
+  public void getObjectsInRegion(
+      float minX,
+      float minY,
+      float maxX,
+      float maxY,
+      SimpleList<PhysicalObject> results) {
+    
+    for (int i = 0; i < levels.length; i++) {
+      if (counts[i] > 0) {
+        levels[i].getObjectsInRegion(minX, minY, maxX, maxY, results);
+      }
+    }
+  }
+  
+  /**
+   * Casts through every level in turn, so objects are not reported in order
+   * along the segment across levels.
+   */
+  public void castSegment(
+      float x1,
+      float y1,
+      float x2,
+      float y2,
+      float distance,
+      CastCallback callback) {
+    
+    for (int i = 0; i < levels.length; i++) {
+      if (counts[i] > 0) {
+        levels[i].castSegment(x1, y1, x2, y2, distance, callback);
+      }
+    }
+  }
+  
+  /**
+   * Finds pairs by checking each object that can hit others against the
+   * spots it covers in every level. Each object is in only one level, so
+   * pairs that can hit each other are reported once, just like a single
+   * grid.
+   * Sleeping objects are found as in {@link CollisionGrid#findPairs}.
+   */
+  public void findPairs(PairList pairs) {
+    for (int i = 0; i < levels.length; i++) {
+      levels[i].updatePositions();
+    }
+    
+    boolean canSleep = CollisionManager.canSleep();
+    for (int i = 0; i < movers.size; i++) {
+      CollisionComponent component = movers.items[i];
+      if (!component.object.active || component.sleeping) {
+        continue;
+      }
+      boolean canHit = CollisionManager.canHit(component.type);
+      if (!canHit && !canSleep) {
+        continue;
+      }
+      for (int l = 0; l < levels.length; l++) {
+        if (counts[l] == 0) {
+          continue;
+        }
+        if (canHit) {
+          levels[l].addPairs(component, pairs);
+        } else {
+          levels[l].addSleepingPairs(component, pairs);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Records the level a component is placed in as its proxy, counts it
+   * against the level and returns the level.
+   */
+  private int track(CollisionComponent component) {
+    component.proxy = getLevel(component);
+    counts[component.proxy]++;
+    return component.proxy;
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.SimpleList;
+
+/**
+ * A broad phase that keeps a separate {@link CollisionGrid} for each
+ * collision layer. A component is placed in the grid of the lowest bit of
+ * its {@link CollisionComponent#category}, and only looks through the grids
+ * holding layers that its {@link CollisionComponent#mask} accepts. Objects
+ * that are never allowed to collide, such as bullets fired by the same
+ * side, never see each other at all, even when crowded into the same spot.
+ * 
+ * Categories past the last layer all share the last grid.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public class LayeredCollisionGrid implements BroadPhase {
+
+  /** One grid per layer. */
+  private final CollisionGrid[] layers;
+  
+  /**
+   * The categories of every component ever placed in each layer. A
+   * component only looks in a layer if its mask shares a bit with these.
+   */
+  private final int[] layerCategories;
+  
+  /** Every object added with {@link #addObject}, in the order added. */
+  private final SimpleList<CollisionComponent> movers;
+  
+  /**
+   * Creates a set of grids that each cover the given world size.
+   */
+  public LayeredCollisionGrid(float mapWidth, float mapHeight, float gridSize, int numLayers) {
+    layers = new CollisionGrid[numLayers];
+    layerCategories = new int[numLayers];
+    for (int i = 0; i < numLayers; i++) {
+      layers[i] = new CollisionGrid(mapWidth, mapHeight, gridSize);
+    }
+    movers = new SimpleList<CollisionComponent>(CollisionComponent.class);
+  }
+  
+  /**
+   * Returns the grid used for a layer.
+   */
+  public CollisionGrid getLayer(int layer) {
+    return layers[layer];
+  }
+  
+  public int getNumLayers() {
+    return layers.length;
+  }
+  
+  /**
+   * Returns the layer a component is placed in.
+   */
+  public int getLayer(CollisionComponent component) {
+    int layer = Integer.numberOfTrailingZeros(component.category);
+    return Math.min(layer, layers.length - 1);
+  }
+  
+  public void addObject(CollisionComponent component) {
+    movers.add(component);
+    layers[track(component)].addObject(component);
+  }
+
+  public void addStationaryObject(CollisionComponent component) {
+    layers[track(component)].addStationaryObject(component);
+  }
+  
+  public void removeObject(CollisionComponent component) {
+    movers.remove(component);
+    layers[getLayer(component)].removeObject(component);
+  }
+
+  public void updatePosition(CollisionComponent component) {
+    layers[getLayer(component)].updatePosition(component);
+  }
+  
+  public void getNearbyObjects(
+      CollisionComponent component,
+      SimpleList<PhysicalObject> nearby,
+      SimpleList<CollisionComponent> nearbyComponents) {
+    
+    updatePosition(component);
+    for (int i = 0; i < layers.length; i++) {
+      if ((component.mask & layerCategories[i]) != 0) {
+        layers[i].getObjectsAround(component, nearby, nearbyComponents);
+      }
+    }
+  }
+
+  public void getObjectsInRegion(
+      float minX,
+      float minY,
+      float maxX,
+      float maxY,
+      SimpleList<PhysicalObject> results) {
+    
+    for (int i = 0; i < layers.length; i++) {
+      layers[i].getObjectsInRegion(minX, minY, maxX, maxY, results);
+    }
+  }
+  
+  /**
+   * Casts through every layer in turn. Callers limit which layers they hit
+   * by checking each candidate's category.
+   */
+  public void castSegment(
+      float x1,
+      float y1,
+      float x2,
+      float y2,
+      float distance,
+      CastCallback callback) {
+    
+    for (int i = 0; i < layers.length; i++) {
+      layers[i].castSegment(x1, y1, x2, y2, distance, callback);
+    }
+  }
+  
+  /**
+   * Finds pairs by checking each object that can hit others against the
+   * grids of the layers it collides with. A component sees an object in
+   * another layer only if the object also sees it, so pairs that can hit
+   * each other are reported once, just like a single grid.
+   * Sleeping objects are found as in {@link CollisionGrid#findPairs}.
+   */
+  public void findPairs(PairList pairs) {
+    for (int i = 0; i < layers.length; i++) {
+      layers[i].updatePositions();
+    }
+    
+    boolean canSleep = CollisionManager.canSleep();
+    for (int i = 0; i < movers.size; i++) {
+      CollisionComponent component = movers.items[i];
+      if (!component.object.active || component.sleeping) {
+        continue;
+      }
+      boolean canHit = CollisionManager.canHit(component.type);
+      if (!canHit && !canSleep) {
+        continue;
+      }
+      for (int l = 0; l < layers.length; l++) {
+        if ((component.mask & layerCategories[l]) == 0) {
+          continue;
+        }
+        if (canHit) {
+          layers[l].addPairs(component, pairs);
+        } else {
+          layers[l].addSleepingPairs(component, pairs);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Records the component's category against its layer and returns the
+   * layer.
+   */
+  private int track(CollisionComponent component) {
+    int layer = getLayer(component);
+    layerCategories[layer] |= component.category;
+    return layer;
+  }
+}
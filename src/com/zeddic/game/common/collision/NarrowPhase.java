@@ -0,0 +1,1221 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zeddic.game.common.collision;
+
+import android.util.FloatMath;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.Aabb;
+import com.zeddic.game.common.util.Capsule;
+import com.zeddic.game.common.util.Polygon;
+import com.zeddic.game.common.util.Shape;
+import com.zeddic.game.common.util.Span;
+import com.zeddic.game.common.util.Vector2d;
+
+/**
+ * Checks whether two specific objects touch, or are about to touch, using
+ * the Seperating Axis Therom. When they do, the narrow phase also finds the
+ * smallest push that would move the first object clear of the second.
+ *
+ * Each pair of {@link Shape#kind}s has its own {@link CollisionRoutine},
+ * looked up in a table rather than by checking the shapes' classes. Two
+ * circles only need their distance compared. Boxes, circles and capsules
+ * find their overlap with each other directly from the closest points
+ * between them. Any other pair uses the separating axis theorem.
+ * Routines for new kinds of shape may be added with {@link #setRoutine}, or
+ * with {@link CollisionManager#setRoutine} to change every narrow phase a
+ * manager uses at once.
+ *
+ * The narrow phase only reads the objects it checks and never notifies
+ * them. All vectors it needs are created once and reused, so an instance
+ * must only be used by one thread at a time. Each thread checking for
+ * collisions should have its own.
+ *
+ * @author baileys (Scott Bailey)
+ */
+public class NarrowPhase {
+
+  /** Checks two circles by the distance between them. */
+  private static final CollisionRoutine CIRCLES = new CollisionRoutine() {
+    public boolean collide(
+        NarrowPhase narrowPhase,
+        PhysicalObject src,
+        PhysicalObject dest,
+        long time) {
+      return narrowPhase.circleCollision(src, dest, time);
+    }
+  };
+  
+  /** Checks any two shapes with the separating axis theorem. */
+  private static final CollisionRoutine SEPARATING_AXES = new CollisionRoutine() {
+    public boolean collide(
+        NarrowPhase narrowPhase,
+        PhysicalObject src,
+        PhysicalObject dest,
+        long time) {
+      return narrowPhase.separatingAxisCollision(src, dest, time);
+    }
+  };
+  
+  /** Checks two boxes by how far they overlap along x and y. */
+  private static final CollisionRoutine BOXES = new OverlapRoutine() {
+    boolean overlap(
+        NarrowPhase narrowPhase,
+        PhysicalObject src,
+        PhysicalObject dest,
+        float x,
+        float y) {
+      return narrowPhase.boxOverlap(
+          x, y, (Aabb) src.bounds.shape,
+          dest.x, dest.y, (Aabb) dest.bounds.shape);
+    }
+  };
+  
+  /** Checks a circle against a box by the closest point in the box. */
+  private static final CollisionRoutine CIRCLE_BOX = new OverlapRoutine() {
+    boolean overlap(
+        NarrowPhase narrowPhase,
+        PhysicalObject src,
+        PhysicalObject dest,
+        float x,
+        float y) {
+      return narrowPhase.circleBoxOverlap(
+          x, y, src.bounds.shape.radius,
+          dest.x, dest.y, (Aabb) dest.bounds.shape, 1);
+    }
+  };
+  
+  /** Checks a box against a circle by the closest point in the box. */
+  private static final CollisionRoutine BOX_CIRCLE = new OverlapRoutine() {
+    boolean overlap(
+        NarrowPhase narrowPhase,
+        PhysicalObject src,
+        PhysicalObject dest,
+        float x,
+        float y) {
+      return narrowPhase.circleBoxOverlap(
+          dest.x, dest.y, dest.bounds.shape.radius,
+          x, y, (Aabb) src.bounds.shape, -1);
+    }
+  };
+  
+  /** Checks a capsule against a box by the closest points between them. */
+  private static final CollisionRoutine CAPSULE_BOX = new OverlapRoutine() {
+    boolean overlap(
+        NarrowPhase narrowPhase,
+        PhysicalObject src,
+        PhysicalObject dest,
+        float x,
+        float y) {
+      return narrowPhase.capsuleBoxOverlap(
+          x, y, (Capsule) src.bounds.shape,
+          dest.x, dest.y, (Aabb) dest.bounds.shape, 1);
+    }
+  };
+  
+  /** Checks a box against a capsule by the closest points between them. */
+  private static final CollisionRoutine BOX_CAPSULE = new OverlapRoutine() {
+    boolean overlap(
+        NarrowPhase narrowPhase,
+        PhysicalObject src,
+        PhysicalObject dest,
+        float x,
+        float y) {
+      return narrowPhase.capsuleBoxOverlap(
+          dest.x, dest.y, (Capsule) dest.bounds.shape,
+          x, y, (Aabb) src.bounds.shape, -1);
+    }
+  };
+  
+  /**
+   * Checks circles and capsules against each other by the distance between
+   * their lines. A circle is treated as a capsule with a line of no length.
+   */
+  private static final CollisionRoutine CAPSULES = new OverlapRoutine() {
+    boolean overlap(
+        NarrowPhase narrowPhase,
+        PhysicalObject src,
+        PhysicalObject dest,
+        float x,
+        float y) {
+      return narrowPhase.capsuleOverlap(x, y, src.bounds.shape, dest.x, dest.y, dest.bounds.shape);
+    }
+  };
+  
+  /**
+   * Lines closer than this to parallel, by one minus the square of the
+   * cosine between them, are treated as parallel.
+   */
+  private static final float PARALLEL_TOLERANCE = 0.0001f;
+
+  /** The default distance to travel before rechecking for collisions. */
+  private static final float DEFAULT_DISTANCE_PER_CHECK = 5;
+
+  /**
+   * Maximum distance that an object can move before rechecking for collision.
+   * This prevents objects with very high velocities from 'skipping' over
+   * other objects in a single frame.
+   */
+  private float distancePerCheck = DEFAULT_DISTANCE_PER_CHECK;
+
+  /**
+   * After a collision is found, the direction the first object should move
+   * to get clear of the second.
+   */
+  public final Vector2d normal = new Vector2d(0, 0);
+
+  /** After a collision is found, how far along the normal to move. */
+  public float depth;
+
+  /**
+   * After a collision is found, how far through the check's time the
+   * objects first touch, from 0 to 1. 0 if they already overlap.
+   */
+  public float timeOfImpact;
+
+  // Vectors and objects used in the collide method. They are created once
+  // and reused to prevent them from being instantiated and causing GC to be
+  // run.
+  private Vector2d axis = new Vector2d(0, 0);
+  private Span spanA = new Span(0, 0);
+  private Span spanB = new Span(0, 0);
+  private Span velocitySpan = new Span(0, 0);
+  private Vector2d scaledVelocityVector = new Vector2d(0, 0);
+  private Vector2d objectsSeperationVector = new Vector2d(0, 0);
+  private Vector2d firstAxis = new Vector2d(0, 0);
+  private Vector2d pointA = new Vector2d(0, 0);
+  private Vector2d pointB = new Vector2d(0, 0);
+  private Vector2d pointC = new Vector2d(0, 0);
+
+  /**
+   * The routine for each pair of shape kinds, by src kind then dest kind.
+   * Grows when a routine is set for a new kind.
+   */
+  private CollisionRoutine[][] routines = createRoutines(Shape.NUM_KINDS);
+
+  public NarrowPhase() {
+    routines[Shape.CIRCLE][Shape.CIRCLE] = CIRCLES;
+    routines[Shape.AABB][Shape.AABB] = BOXES;
+    routines[Shape.CIRCLE][Shape.AABB] = CIRCLE_BOX;
+    routines[Shape.AABB][Shape.CIRCLE] = BOX_CIRCLE;
+    routines[Shape.CAPSULE][Shape.CAPSULE] = CAPSULES;
+    routines[Shape.CAPSULE][Shape.CIRCLE] = CAPSULES;
+    routines[Shape.CIRCLE][Shape.CAPSULE] = CAPSULES;
+    routines[Shape.CAPSULE][Shape.AABB] = CAPSULE_BOX;
+    routines[Shape.AABB][Shape.CAPSULE] = BOX_CAPSULE;
+  }
+
+  /**
+   * Sets the routine used when a src object with one kind of shape is
+   * checked against a dest object with another. A new kind of shape may
+   * use any kind from {@link Shape#NUM_KINDS} up. Until it is given
+   * routines of its own, it is checked with the separating axis theorem.
+   */
+  public void setRoutine(int srcKind, int destKind, CollisionRoutine routine) {
+    if (srcKind < 0 || destKind < 0) {
+      throw new IllegalArgumentException("Only shape kinds from 0 up may have routines.");
+    }
+
+    int size = Math.max(srcKind, destKind) + 1;
+    if (size > routines.length) {
+      CollisionRoutine[][] grown = createRoutines(size);
+      for (int i = 0; i < routines.length; i++) {
+        System.arraycopy(routines[i], 0, grown[i], 0, routines.length);
+      }
+      routines = grown;
+    }
+    routines[srcKind][destKind] = routine;
+  }
+
+  /**
+   * Uses the same routines as another narrow phase.
+   */
+  void copyRoutines(NarrowPhase other) {
+    int size = other.routines.length;
+    routines = createRoutines(size);
+    for (int i = 0; i < size; i++) {
+      System.arraycopy(other.routines[i], 0, routines[i], 0, size);
+    }
+  }
+
+  /**
+   * Creates a table of routines for the given number of kinds, all using
+   * the separating axis theorem.
+   */
+  private static CollisionRoutine[][] createRoutines(int size) {
+    CollisionRoutine[][] table = new CollisionRoutine[size][size];
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        table[i][j] = SEPARATING_AXES;
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Checks every pair in a range of the list, adding a contact to the
+   * buffer for each pair that collides.
+   */
+  public void findContacts(
+      PairList pairs,
+      int start,
+      int end,
+      long time,
+      ContactBuffer contacts) {
+    for (int i = start; i < end; i++) {
+      CollisionComponent a = pairs.first[i];
+      CollisionComponent b = pairs.second[i];
+      if (collide(a.object, b.object, time, a.continuous || b.continuous)) {
+        contacts.add(i, normal.x, normal.y, depth, timeOfImpact);
+      }
+    }
+  }
+
+  /**
+   * Checks for a collision, using a continuous check if requested. See
+   * {@link #collide(PhysicalObject, PhysicalObject, long)} and
+   * {@link #sweep}.
+   */
+  public boolean collide(
+      PhysicalObject src,
+      PhysicalObject dest,
+      long time,
+      boolean continuous) {
+    return continuous ? sweep(src, dest, time) : collide(src, dest, time);
+  }
+
+  /**
+   * Returns true if the src object touches the dest object or will touch it
+   * after moving for the given time. If so the push needed to separate them
+   * is left in {@link #normal} and {@link #depth}, and when they first touch
+   * in {@link #timeOfImpact}.
+   */
+  public boolean collide(PhysicalObject src, PhysicalObject dest, long time) {
+    int srcKind = src.bounds.shape.kind;
+    int destKind = dest.bounds.shape.kind;
+    int size = routines.length;
+    if (srcKind < 0 || srcKind >= size || destKind < 0 || destKind >= size) {
+      return SEPARATING_AXES.collide(this, src, dest, time);
+    }
+    return routines[srcKind][destKind].collide(this, src, dest, time);
+  }
+
+  /**
+   * Checks for a collision with the separating axis theorem, which works
+   * for any pair of convex shapes. See
+   * {@link #collide(PhysicalObject, PhysicalObject, long)}.
+   */
+  private boolean separatingAxisCollision(PhysicalObject src, PhysicalObject dest, long time) {
+
+    // Check for the possibility of a collision by comparing two object's
+    // general radius. This can quickly rule out cases where collisions
+    // are not possible before trying the full, heavy, seperating axis
+    // theorem.
+    if (!boundingCirclesCollide(src, dest, time)) {
+      return false;
+    }
+
+    float minDistanceBetween = Float.MAX_VALUE;
+    float minDistanceWeight = Float.MAX_VALUE;
+    
+    // The objects first touch once they overlap on every axis.
+    float entry = 0;
+
+    // Assume that the polygons intersect until proved otherwise.
+    boolean intersect = true;
+    boolean willIntersect = true;
+    float velocityProjection = 0;
+
+    int numSrcAxis = getNumAxis(src, dest);
+    int numDestAxis = getNumAxis(dest, src);
+    int totalAxis = numSrcAxis + numDestAxis;
+
+    // Iterate through each edge and see if there is space between them.
+    // This is an implementation of the separating axis theorem.
+    for (int edgeIndex = 0; edgeIndex < totalAxis; edgeIndex++) {
+      // Determine the edge to test.
+      if (edgeIndex < numSrcAxis) {
+        getAxis(src, dest, edgeIndex, axis);
+      } else {
+        getAxis(dest, src, edgeIndex - numSrcAxis, axis);
+      }
+
+      // Project both polygons onto the axis
+      src.bounds.shape.projectOnAxis(src.x, src.y, axis, spanA);
+      dest.bounds.shape.projectOnAxis(dest.x, dest.y, axis, spanB);
+
+      // If there is any space between the projected shadows, you know they
+      // aren't touching.
+      float distanceBetween = spanA.distanceBetween(spanB);
+      float distanceWeight = distanceBetween;
+      if (distanceBetween >= 0) {
+        intersect = false;
+      }
+
+      // Now to determine if the objects _will_ collide.
+
+      // Note that objects may be moving very fast, so we can't just project
+      // the velocity vector. That may cause it to 'skip' the object it is
+      // checking against or even collide with the wrong face. Instead,
+      // incrementally test the velocity in steps of the largest possible
+      // movement.
+
+      // The total velocity that is requested.
+      float totalVx = src.velocity.x * time / 200;
+      float totalVy = src.velocity.y * time / 200;
+      int steps = (int) (Math.ceil(
+            FloatMath.sqrt(totalVx * totalVx + totalVy * totalVy)
+            / distancePerCheck ));
+
+      // Figure how much each velocity step should project on the axis
+      // being tested
+      scaledVelocityVector.x = totalVx / steps;
+      scaledVelocityVector.y = totalVy / steps;
+      velocityProjection = axis.dotProduct(scaledVelocityVector);
+      velocitySpan.loadValues(spanA);
+
+      // An object that isn't moving only collides if it already overlaps.
+      willIntersect = false;
+
+      for (int i = 0; i < steps; i++) {
+
+        addVelocityToSpan(velocitySpan, velocityProjection);
+
+        // See if they intersect now.
+        distanceBetween = velocitySpan.distanceBetween(spanB);
+        if (distanceBetween >= 0) {
+          willIntersect = false;
+        } else {
+          willIntersect = true;
+          if (distanceWeight >= 0) {
+            entry = Math.max(entry, (i + 1) / (float) steps);
+          }
+          addVelocityToSpan(spanA, velocityProjection * steps);
+          distanceWeight = 0;
+          distanceBetween = spanA.distanceBetween(spanB);
+          break;
+        }
+      }
+
+      // If the polygons are not intersecting and won't intersect, exit the loop
+      if (!intersect && !willIntersect)
+        break;
+
+      // Next keep track of the axis that represented the smallest distance
+      // from not colliding. This is used to create a translation Vector, which
+      // represents the smallest possible distance the src object needs to move
+      // to no longer be colliding. Note that this may not always be the 'smallest'
+      // offset vector in cases of very fast moving src objects. If they collide
+      // past the middle of the a dest vector they are still forced to move back
+      // to the side they originally collided with.
+
+      distanceBetween = Math.abs(distanceBetween);
+      distanceWeight = Math.abs(distanceWeight);
+
+      if (distanceWeight < minDistanceWeight) {
+
+        // New minimum distance
+        minDistanceBetween = distanceBetween;
+        minDistanceWeight = distanceWeight;
+        normal.x = axis.x;
+        normal.y = axis.y;
+
+        objectsSeperationVector.x = src.x - dest.x;
+        objectsSeperationVector.y = src.y - dest.y;
+        if (objectsSeperationVector.dotProduct(normal) < 0) {
+          normal.x *= -1;
+          normal.y *= -1;
+        }
+
+      }
+    }
+
+    depth = minDistanceBetween;
+    timeOfImpact = intersect ? 0 : entry;
+    return intersect || willIntersect;
+  }
+
+  /**
+   * Checks for a collision with a routine that finds the overlap of two
+   * shapes directly. If they don't overlap now, the src object is stepped
+   * along its velocity, as with the separating axis theorem, until they
+   * do. See {@link #collide(PhysicalObject, PhysicalObject, long)}.
+   */
+  private boolean overlapCollision(
+      OverlapRoutine routine,
+      PhysicalObject src,
+      PhysicalObject dest,
+      long time) {
+    if (!boundingCirclesCollide(src, dest, time)) {
+      return false;
+    }
+
+    if (routine.overlap(this, src, dest, src.x, src.y)) {
+      timeOfImpact = 0;
+      return true;
+    }
+
+    float moveX = src.velocity.x * time / PhysicalObject.TIME_SCALER;
+    float moveY = src.velocity.y * time / PhysicalObject.TIME_SCALER;
+    int steps = (int) (Math.ceil(
+        FloatMath.sqrt(moveX * moveX + moveY * moveY) / distancePerCheck));
+    for (int i = 1; i <= steps; i++) {
+      float t = i / (float) steps;
+      if (routine.overlap(this, src, dest, src.x + moveX * t, src.y + moveY * t)) {
+
+        // Push back by however far the rest of the movement would carry it,
+        // so it stops against the dest object.
+        float remaining = (moveX * normal.x + moveY * normal.y) * (1 - t);
+        if (remaining < 0) {
+          depth -= remaining;
+        }
+        timeOfImpact = t;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Finds whether a box at (ax, ay) overlaps a box at (bx, by). If so, the
+   * push is along whichever of x or y they overlap least.
+   */
+  private boolean boxOverlap(float ax, float ay, Aabb a, float bx, float by, Aabb b) {
+    float dX = ax - bx;
+    float dY = ay - by;
+    float overlapX = a.halfWidth + b.halfWidth - Math.abs(dX);
+    float overlapY = a.halfHeight + b.halfHeight - Math.abs(dY);
+    if (overlapX <= 0 || overlapY <= 0) {
+      return false;
+    }
+
+    if (overlapX < overlapY) {
+      normal.x = dX < 0 ? -1 : 1;
+      normal.y = 0;
+      depth = overlapX;
+    } else {
+      normal.x = 0;
+      normal.y = dY < 0 ? -1 : 1;
+      depth = overlapY;
+    }
+    return true;
+  }
+
+  /**
+   * Finds whether a circle at (cx, cy) overlaps a box at (bx, by). The push
+   * moves the circle away from the box, or the box away from the circle if
+   * direction is -1.
+   */
+  private boolean circleBoxOverlap(
+      float cx,
+      float cy,
+      float radius,
+      float bx,
+      float by,
+      Aabb box,
+      float direction) {
+    float dX = cx - bx;
+    float dY = cy - by;
+    float closestX = Math.max(-box.halfWidth, Math.min(box.halfWidth, dX));
+    float closestY = Math.max(-box.halfHeight, Math.min(box.halfHeight, dY));
+
+    if (closestX == dX && closestY == dY) {
+
+      // The center is inside the box, so push it out the nearest side.
+      float outX = box.halfWidth - Math.abs(dX);
+      float outY = box.halfHeight - Math.abs(dY);
+      if (outX < outY) {
+        normal.x = dX < 0 ? -1 : 1;
+        normal.y = 0;
+        depth = outX + radius;
+      } else {
+        normal.x = 0;
+        normal.y = dY < 0 ? -1 : 1;
+        depth = outY + radius;
+      }
+    } else {
+      float outX = dX - closestX;
+      float outY = dY - closestY;
+      float distanceSquared = outX * outX + outY * outY;
+      if (distanceSquared >= radius * radius) {
+        return false;
+      }
+      float distance = FloatMath.sqrt(distanceSquared);
+      normal.x = outX / distance;
+      normal.y = outY / distance;
+      depth = radius - distance;
+    }
+
+    normal.x *= direction;
+    normal.y *= direction;
+    return true;
+  }
+
+  /**
+   * Finds whether a circle or capsule at (ax, ay) overlaps another at
+   * (bx, by), by finding the closest points between their lines.
+   */
+  private boolean capsuleOverlap(float ax, float ay, Shape a, float bx, float by, Shape b) {
+    float aDirectionX = 1;
+    float aDirectionY = 0;
+    float aHalfLength = 0;
+    float aRadius = a.radius;
+    if (a.kind == Shape.CAPSULE) {
+      Capsule capsule = (Capsule) a;
+      aDirectionX = capsule.directionX;
+      aDirectionY = capsule.directionY;
+      aHalfLength = capsule.halfLength;
+      aRadius = capsule.capRadius;
+    }
+
+    float bDirectionX = 1;
+    float bDirectionY = 0;
+    float bHalfLength = 0;
+    float bRadius = b.radius;
+    if (b.kind == Shape.CAPSULE) {
+      Capsule capsule = (Capsule) b;
+      bDirectionX = capsule.directionX;
+      bDirectionY = capsule.directionY;
+      bHalfLength = capsule.halfLength;
+      bRadius = capsule.capRadius;
+    }
+
+    // Each point on a line is its center plus some distance along its
+    // direction. Find the distances of the closest points, first as if the
+    // lines went on forever, then clamped to their lengths.
+    float dX = ax - bx;
+    float dY = ay - by;
+    float cosine = aDirectionX * bDirectionX + aDirectionY * bDirectionY;
+    float alongA = aDirectionX * dX + aDirectionY * dY;
+    float alongB = bDirectionX * dX + bDirectionY * dY;
+    float denominator = 1 - cosine * cosine;
+
+    float distanceA = 0;
+    if (denominator > PARALLEL_TOLERANCE) {
+      distanceA = clamp((cosine * alongB - alongA) / denominator, aHalfLength);
+    }
+    float distanceB = clamp(alongB + distanceA * cosine, bHalfLength);
+    distanceA = clamp(distanceB * cosine - alongA, aHalfLength);
+
+    float outX = dX + aDirectionX * distanceA - bDirectionX * distanceB;
+    float outY = dY + aDirectionY * distanceA - bDirectionY * distanceB;
+    float minDistance = aRadius + bRadius;
+    float distanceSquared = outX * outX + outY * outY;
+    if (distanceSquared >= minDistance * minDistance) {
+      return false;
+    }
+
+    float distance = FloatMath.sqrt(distanceSquared);
+    depth = minDistance - distance;
+    if (distance == 0) {
+      normal.x = 1;
+      normal.y = 0;
+    } else {
+      normal.x = outX / distance;
+      normal.y = outY / distance;
+    }
+    return true;
+  }
+
+  /**
+   * Finds whether a capsule at (cx, cy) overlaps a box at (bx, by). The push
+   * moves the capsule away from the box, or the box away from the capsule
+   * if direction is -1.
+   */
+  private boolean capsuleBoxOverlap(
+      float cx,
+      float cy,
+      Capsule capsule,
+      float bx,
+      float by,
+      Aabb box,
+      float direction) {
+    float dX = cx - bx;
+    float dY = cy - by;
+    float directionX = capsule.directionX;
+    float directionY = capsule.directionY;
+    float halfLength = capsule.halfLength;
+    float radius = capsule.capRadius;
+
+    // If the capsule's line crosses the box, the smallest push is along x,
+    // y or the line's normal, whichever they overlap least on.
+    float overlapX = Math.abs(directionX) * halfLength + box.halfWidth - Math.abs(dX);
+    float overlapY = Math.abs(directionY) * halfLength + box.halfHeight - Math.abs(dY);
+    float alongNormal = dY * directionX - dX * directionY;
+    float overlapNormal = Math.abs(directionY) * box.halfWidth
+        + Math.abs(directionX) * box.halfHeight - Math.abs(alongNormal);
+    if (overlapX > 0 && overlapY > 0 && overlapNormal > 0) {
+      if (overlapX <= overlapY && overlapX <= overlapNormal) {
+        normal.x = dX < 0 ? -1 : 1;
+        normal.y = 0;
+        depth = overlapX + radius;
+      } else if (overlapY <= overlapNormal) {
+        normal.x = 0;
+        normal.y = dY < 0 ? -1 : 1;
+        depth = overlapY + radius;
+      } else {
+        float sign = alongNormal < 0 ? 1 : -1;
+        normal.x = directionY * sign;
+        normal.y = -directionX * sign;
+        depth = overlapNormal + radius;
+      }
+      normal.x *= direction;
+      normal.y *= direction;
+      return true;
+    }
+
+    // Otherwise the closest points are at one of the line's ends or one of
+    // the box's corners.
+    float minDistanceSquared = Float.MAX_VALUE;
+    float outX = 0;
+    float outY = 0;
+    for (int i = 0; i < 2; i++) {
+      float end = i == 0 ? -halfLength : halfLength;
+      float pointX = dX + directionX * end;
+      float pointY = dY + directionY * end;
+      float offsetX = pointX - Math.max(-box.halfWidth, Math.min(box.halfWidth, pointX));
+      float offsetY = pointY - Math.max(-box.halfHeight, Math.min(box.halfHeight, pointY));
+      float distanceSquared = offsetX * offsetX + offsetY * offsetY;
+      if (distanceSquared < minDistanceSquared) {
+        minDistanceSquared = distanceSquared;
+        outX = offsetX;
+        outY = offsetY;
+      }
+    }
+    for (int i = 0; i < 4; i++) {
+      float cornerX = (i & 1) == 0 ? -box.halfWidth : box.halfWidth;
+      float cornerY = (i & 2) == 0 ? -box.halfHeight : box.halfHeight;
+      float end = clamp(
+          directionX * (cornerX - dX) + directionY * (cornerY - dY), halfLength);
+      float offsetX = dX + directionX * end - cornerX;
+      float offsetY = dY + directionY * end - cornerY;
+      float distanceSquared = offsetX * offsetX + offsetY * offsetY;
+      if (distanceSquared < minDistanceSquared) {
+        minDistanceSquared = distanceSquared;
+        outX = offsetX;
+        outY = offsetY;
+      }
+    }
+
+    if (minDistanceSquared >= radius * radius) {
+      return false;
+    }
+    float distance = FloatMath.sqrt(minDistanceSquared);
+    depth = radius - distance;
+    if (distance == 0) {
+      normal.x = direction;
+      normal.y = 0;
+    } else {
+      normal.x = outX / distance * direction;
+      normal.y = outY / distance * direction;
+    }
+    return true;
+  }
+
+  /**
+   * Clamps a value to between -limit and limit.
+   */
+  private static float clamp(float value, float limit) {
+    return Math.max(-limit, Math.min(limit, value));
+  }
+
+  /**
+   * A continuous collision check. Rather than stepping the src object along
+   * its velocity, finds the exact time that the two objects first touch as
+   * they move, so fast objects can't pass through each other. Both objects'
+   * velocities are used.
+   *
+   * On each axis the projected shapes overlap during a single window of
+   * time. The objects collide if the windows of every axis overlap within
+   * the check's time, and first touch when the last window opens. If they
+   * will touch, the push moves the src object back along the axis it hit
+   * to where they touched. If they already overlap, the push is the
+   * smallest that separates them, as with a normal check.
+   *
+   * The axes between a circle and a polygon's corners turn as the circle
+   * moves, so for that pairing the axes only rule out a hit. A circle that
+   * will touch a polygon is then cast against the polygon's sides and
+   * corners to find the exact time.
+   */
+  public boolean sweep(PhysicalObject src, PhysicalObject dest, long time) {
+    float moveX = (src.velocity.x - dest.velocity.x) * time / PhysicalObject.TIME_SCALER;
+    float moveY = (src.velocity.y - dest.velocity.y) * time / PhysicalObject.TIME_SCALER;
+    return sweep(src, dest, moveX, moveY);
+  }
+
+  /**
+   * A continuous check where the src object moves by the given amount and
+   * the dest object stays still. The time of impact is the fraction of the
+   * movement made before they first touch. See
+   * {@link #sweep(PhysicalObject, PhysicalObject, long)}.
+   */
+  public boolean sweep(PhysicalObject src, PhysicalObject dest, float moveX, float moveY) {
+    if (src.bounds.shape.kind == Shape.CIRCLE && dest.bounds.shape.kind == Shape.CIRCLE) {
+      return sweepCircles(src, dest, moveX, moveY);
+    }
+
+    float first = -Float.MAX_VALUE;
+    float last = Float.MAX_VALUE;
+    float firstProjection = 0;
+    float minOverlap = Float.MAX_VALUE;
+
+    int numSrcAxis = getNumAxis(src, dest);
+    int numDestAxis = getNumAxis(dest, src);
+    int totalAxis = numSrcAxis + numDestAxis;
+    for (int edgeIndex = 0; edgeIndex < totalAxis; edgeIndex++) {
+      if (edgeIndex < numSrcAxis) {
+        getAxis(src, dest, edgeIndex, axis);
+      } else {
+        getAxis(dest, src, edgeIndex - numSrcAxis, axis);
+      }
+      src.bounds.shape.projectOnAxis(src.x, src.y, axis, spanA);
+      dest.bounds.shape.projectOnAxis(dest.x, dest.y, axis, spanB);
+
+      // The window of time the spans overlap while moving.
+      float projection = axis.x * moveX + axis.y * moveY;
+      float enter;
+      float exit;
+      if (projection == 0) {
+        if (spanA.max <= spanB.min || spanA.min >= spanB.max) {
+          return false;
+        }
+        enter = -Float.MAX_VALUE;
+        exit = Float.MAX_VALUE;
+      } else if (projection > 0) {
+        enter = (spanB.min - spanA.max) / projection;
+        exit = (spanB.max - spanA.min) / projection;
+      } else {
+        enter = (spanB.max - spanA.min) / projection;
+        exit = (spanB.min - spanA.max) / projection;
+      }
+
+      if (enter > first) {
+        first = enter;
+        firstProjection = projection;
+        firstAxis.x = axis.x;
+        firstAxis.y = axis.y;
+      }
+      last = Math.min(last, exit);
+      if (first > last || first > 1 || last < 0) {
+        return false;
+      }
+
+      // Remember the smallest push in case they already overlap.
+      float overlap = Math.min(spanA.max - spanB.min, spanB.max - spanA.min);
+      if (overlap < minOverlap) {
+        minOverlap = overlap;
+        normal.x = axis.x;
+        normal.y = axis.y;
+      }
+    }
+
+    if (first <= 0) {
+      if (normal.x * (src.x - dest.x) + normal.y * (src.y - dest.y) < 0) {
+        normal.x *= -1;
+        normal.y *= -1;
+      }
+      depth = minOverlap;
+      timeOfImpact = 0;
+    } else if (isCorneredShape(src.bounds.shape) &&
+        dest.bounds.shape.kind == Shape.CIRCLE) {
+      return sweepCirclePolygon(dest, src, -moveX, -moveY, -1);
+    } else if (src.bounds.shape.kind == Shape.CIRCLE &&
+        isCorneredShape(dest.bounds.shape)) {
+      return sweepCirclePolygon(src, dest, moveX, moveY, 1);
+    } else {
+      float direction = firstProjection > 0 ? -1 : 1;
+      normal.x = firstAxis.x * direction;
+      normal.y = firstAxis.y * direction;
+      depth = Math.abs(firstProjection) * (1 - first);
+      timeOfImpact = first;
+    }
+    return true;
+  }
+
+  /**
+   * Returns true for shapes made only of corners and straight sides.
+   */
+  private static boolean isCorneredShape(Shape shape) {
+    return shape.kind == Shape.POLYGON || shape.kind == Shape.AABB;
+  }
+
+  /**
+   * A continuous check between a circle moving by the given amount and a
+   * still polygon that it doesn't yet overlap. The circle's center is cast
+   * against the polygon grown by the circle's radius: each side pushed out
+   * by the radius, and a circle of the radius around each corner. The
+   * normal points from the polygon to the circle, and is flipped by sign
+   * when the polygon is the src object.
+   */
+  private boolean sweepCirclePolygon(
+      PhysicalObject circle,
+      PhysicalObject polygon,
+      float moveX,
+      float moveY,
+      float sign) {
+    float radius = circle.bounds.shape.radius;
+    int numPoints = getNumPoints(polygon.bounds.shape);
+    float t = Float.MAX_VALUE;
+
+    for (int i = 0; i < numPoints; i++) {
+      getCorner(polygon, i, pointA);
+      getCorner(polygon, (i + 1) % numPoints, pointB);
+      getCorner(polygon, (i + 2) % numPoints, pointC);
+      float edgeX = pointB.x - pointA.x;
+      float edgeY = pointB.y - pointA.y;
+      float edgeLengthSquared = edgeX * edgeX + edgeY * edgeY;
+      if (edgeLengthSquared == 0) {
+        continue;
+      }
+
+      // The side, pushed out by the radius. Its normal faces away from the
+      // rest of the polygon.
+      float edgeLength = FloatMath.sqrt(edgeLengthSquared);
+      float sideX = edgeY / edgeLength;
+      float sideY = -edgeX / edgeLength;
+      if (sideX * (pointC.x - pointA.x) + sideY * (pointC.y - pointA.y) > 0) {
+        sideX = -sideX;
+        sideY = -sideY;
+      }
+      float distance = sideX * (circle.x - pointA.x) + sideY * (circle.y - pointA.y) - radius;
+      float approach = sideX * moveX + sideY * moveY;
+      if (distance >= 0 && approach < 0 && distance < -approach * t) {
+        float hit = distance / -approach;
+        float along = (circle.x + moveX * hit - pointA.x) * edgeX +
+            (circle.y + moveY * hit - pointA.y) * edgeY;
+        if (along >= 0 && along <= edgeLengthSquared) {
+          t = hit;
+          normal.x = sideX;
+          normal.y = sideY;
+        }
+      }
+
+      // The circle around the corner.
+      float dX = circle.x - pointA.x;
+      float dY = circle.y - pointA.y;
+      float a = moveX * moveX + moveY * moveY;
+      float b = 2 * (dX * moveX + dY * moveY);
+      float c = dX * dX + dY * dY - radius * radius;
+      float discriminant = b * b - 4 * a * c;
+      if (a > 0 && c >= 0 && discriminant >= 0) {
+        float hit = (-b - FloatMath.sqrt(discriminant)) / (2 * a);
+        if (hit >= 0 && hit < t) {
+          t = hit;
+          normal.x = dX + moveX * hit;
+          normal.y = dY + moveY * hit;
+          normal.normalize();
+        }
+      }
+    }
+
+    if (t > 1) {
+      return false;
+    }
+    depth = -(moveX * normal.x + moveY * normal.y) * (1 - t);
+    normal.x *= sign;
+    normal.y *= sign;
+    timeOfImpact = t;
+    return true;
+  }
+
+  /**
+   * Places a corner of a polygon or box into point in world coordinates,
+   * in order around the shape.
+   */
+  private static void getCorner(PhysicalObject object, int i, Vector2d point) {
+    if (object.bounds.shape.kind == Shape.AABB) {
+      // Box corners are numbered by side, so walk them 0, 1, 3, 2.
+      i ^= i >> 1;
+    }
+    getPoint(object, i, point);
+  }
+
+  /**
+   * A continuous check between two circles, solving for when the distance
+   * between their centers equals the sum of their radii.
+   */
+  private boolean sweepCircles(
+      PhysicalObject src,
+      PhysicalObject dest,
+      float moveX,
+      float moveY) {
+    float dX = src.x - dest.x;
+    float dY = src.y - dest.y;
+    float minDistance = src.bounds.shape.radius + dest.bounds.shape.radius;
+    float c = dX * dX + dY * dY - minDistance * minDistance;
+
+    if (c < 0) {
+      depth = minDistance - FloatMath.sqrt(dX * dX + dY * dY);
+      timeOfImpact = 0;
+      normal.x = dX;
+      normal.y = dY;
+      if (normal.x == 0 && normal.y == 0)
+        normal.x = 1;
+      normal.normalize();
+      return true;
+    }
+
+    float a = moveX * moveX + moveY * moveY;
+    float b = 2 * (dX * moveX + dY * moveY);
+    float discriminant = b * b - 4 * a * c;
+    if (a == 0 || discriminant < 0) {
+      return false;
+    }
+    float t = (-b - FloatMath.sqrt(discriminant)) / (2 * a);
+    if (t < 0 || t > 1) {
+      return false;
+    }
+
+    // Push back along the normal at the point of impact, by however far
+    // the rest of the movement would have carried it.
+    normal.x = dX + moveX * t;
+    normal.y = dY + moveY * t;
+    normal.normalize();
+    depth = -(moveX * normal.x + moveY * normal.y) * (1 - t);
+    timeOfImpact = t;
+    return true;
+  }
+
+  private void addVelocityToSpan(Span span, float velocityProjection) {
+    if (velocityProjection < 0) {
+      span.min += velocityProjection;
+    } else {
+      span.max += velocityProjection;
+    }
+  }
+
+  /**
+   * Gets the combined number of axis that should be tested for the
+   * src polygon, given that it will be tested against the dest polygon.
+   * Knowing the dest polygon that will be tested against is needed for cases
+   * where the collision might test between a circle and a polygon, in which
+   * the axis don't represent a 1-to-1 relationship with polygon edges.
+   *
+   * Flat sides add their normals. Rounded shapes, circles and capsules, add
+   * the axes between each of their centers and each point of the dest shape.
+   */
+  public int getNumAxis(PhysicalObject src, PhysicalObject dest) {
+    Shape shape = src.bounds.shape;
+    int numAxis = getNumSideAxes(shape);
+    if (shape.kind == Shape.CIRCLE || shape.kind == Shape.CAPSULE) {
+      numAxis += getNumPoints(shape) * getNumPoints(dest.bounds.shape);
+    }
+    return numAxis;
+  }
+
+  /**
+   * Retrieves a specified axis of the src polygon, given that it will be
+   * tested against the dest polygon for a collision. Returns the axis
+   * specified by i and places the vector values into the axis parameter.
+   * The axes of polygons are kept by the polygon, so are only copied.
+   */
+  public void getAxis(PhysicalObject src, PhysicalObject dest, int i, Vector2d axis) {
+    Shape shape = src.bounds.shape;
+    int numSideAxes = getNumSideAxes(shape);
+    if (i < numSideAxes) {
+      getSideAxis(shape, i, axis);
+      return;
+    }
+
+    i -= numSideAxes;
+    int numDestPoints = getNumPoints(dest.bounds.shape);
+    getPoint(src, i / numDestPoints, pointA);
+    getPoint(dest, i % numDestPoints, pointB);
+    axis.x = pointB.x - pointA.x;
+    axis.y = pointB.y - pointA.y;
+    if (axis.x == 0 && axis.y == 0) {
+      axis.x = 1;
+    }
+    axis.normalize();
+  }
+
+  /**
+   * Returns how many axes the flat sides of a shape add.
+   */
+  private static int getNumSideAxes(Shape shape) {
+    switch (shape.kind) {
+      case Shape.POLYGON:
+        return ((Polygon) shape).numAxes;
+      case Shape.AABB:
+        return 2;
+      case Shape.CAPSULE:
+        return 1;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Places the unit length normal of one of a shape's flat sides into axis.
+   */
+  private static void getSideAxis(Shape shape, int i, Vector2d axis) {
+    if (shape.kind == Shape.POLYGON) {
+      Vector2d polygonAxis = ((Polygon) shape).axes[i];
+      axis.x = polygonAxis.x;
+      axis.y = polygonAxis.y;
+    } else if (shape.kind == Shape.CAPSULE) {
+      Capsule capsule = (Capsule) shape;
+      axis.x = -capsule.directionY;
+      axis.y = capsule.directionX;
+    } else {
+      axis.x = i == 0 ? 1 : 0;
+      axis.y = i == 0 ? 0 : 1;
+    }
+  }
+
+  /**
+   * Returns how many points a shape has: its corners, or the centers of a
+   * circle or a capsule's ends.
+   */
+  private static int getNumPoints(Shape shape) {
+    switch (shape.kind) {
+      case Shape.POLYGON:
+        return ((Polygon) shape).points.length;
+      case Shape.AABB:
+        return 4;
+      case Shape.CAPSULE:
+        return 2;
+      default:
+        return 1;
+    }
+  }
+
+  /**
+   * Places one of an object's points, see {@link #getNumPoints}, into point
+   * in world coordinates.
+   */
+  private static void getPoint(PhysicalObject object, int i, Vector2d point) {
+    Shape shape = object.bounds.shape;
+    point.x = object.x;
+    point.y = object.y;
+    if (shape.kind == Shape.POLYGON) {
+      Vector2d polygonPoint = ((Polygon) shape).points[i];
+      point.x += polygonPoint.x;
+      point.y += polygonPoint.y;
+    } else if (shape.kind == Shape.AABB) {
+      Aabb box = (Aabb) shape;
+      point.x += (i & 1) == 0 ? -box.halfWidth : box.halfWidth;
+      point.y += (i & 2) == 0 ? -box.halfHeight : box.halfHeight;
+    } else if (shape.kind == Shape.CAPSULE) {
+      Capsule capsule = (Capsule) shape;
+      float end = i == 0 ? -capsule.halfLength : capsule.halfLength;
+      point.x += capsule.directionX * end;
+      point.y += capsule.directionY * end;
+    }
+  }
+
+  /**
+   * Checks whether the bounding circles of two objects touch now, or will
+   * after the src object moves for the given time. This check is very quick
+   * compared to the separating axis theorem, and is used to rule out
+   * collisions before doing a full check.
+   */
+  private boolean boundingCirclesCollide(PhysicalObject src, PhysicalObject dest, long time) {
+
+    // Are they colliding now?
+    float dX = src.x - dest.x;
+    float dY = src.y - dest.y;
+    float minDistance = src.bounds.shape.radius + dest.bounds.shape.radius;
+    if (dX * dX + dY * dY < minDistance * minDistance) {
+      return true;
+    }
+
+    // Will they collide?
+    dX = (src.x + src.velocity.x * time / PhysicalObject.TIME_SCALER) - dest.x;
+    dY = (src.y + src.velocity.y * time / PhysicalObject.TIME_SCALER) - dest.y;
+    return dX * dX + dY * dY < minDistance * minDistance;
+  }
+
+  /**
+   * Checks for a collision between two circles. This is all that is needed
+   * when both objects are circles.
+   */
+  private boolean circleCollision(PhysicalObject src, PhysicalObject dest, long time) {
+    if (!boundingCirclesCollide(src, dest, time)) {
+      return false;
+    }
+
+    // Find the distance needed to make it so these two circles are not
+    // touching, measured from where the src object is moving to.
+    float dX = (src.x + src.velocity.x * time / PhysicalObject.TIME_SCALER) - dest.x;
+    float dY = (src.y + src.velocity.y * time / PhysicalObject.TIME_SCALER) - dest.y;
+    float minDistance = src.bounds.shape.radius + dest.bounds.shape.radius;
+    depth = minDistance - FloatMath.sqrt(dX * dX + dY * dY);
+    timeOfImpact = circleTimeOfImpact(src, dest, time, minDistance);
+    normal.x = dX;
+    normal.y = dY;
+    if (normal.x == 0 && normal.y == 0)
+      normal.x = 1;
+    normal.normalize();
+    return true;
+  }
+
+  /**
+   * Finds how far through its movement the src circle first touches the dest
+   * circle, by solving for when the distance between their centers equals
+   * the sum of their radii.
+   */
+  private float circleTimeOfImpact(
+      PhysicalObject src,
+      PhysicalObject dest,
+      long time,
+      float minDistance) {
+    float dX = src.x - dest.x;
+    float dY = src.y - dest.y;
+    float c = dX * dX + dY * dY - minDistance * minDistance;
+    if (c < 0) {
+      return 0;
+    }
+
+    float vX = src.velocity.x * time / PhysicalObject.TIME_SCALER;
+    float vY = src.velocity.y * time / PhysicalObject.TIME_SCALER;
+    float a = vX * vX + vY * vY;
+    float b = 2 * (dX * vX + dY * vY);
+    float discriminant = b * b - 4 * a * c;
+    if (a == 0 || discriminant < 0) {
+      return 1;
+    }
+    float t = (-b - FloatMath.sqrt(discriminant)) / (2 * a);
+    return Math.max(0, Math.min(1, t));
+  }
+
+  /**
+   * A routine for shapes whose overlap can be found directly. See
+   * {@link NarrowPhase#overlapCollision}.
+   */
+  private abstract static class OverlapRoutine implements CollisionRoutine {
+    public boolean collide(
+        NarrowPhase narrowPhase,
+        PhysicalObject src,
+        PhysicalObject dest,
+        long time) {
+      return narrowPhase.overlapCollision(this, src, dest, time);
+    }
+
+    /**
+     * Returns true if the shapes overlap with the src object at (x, y),
+     * leaving the push in {@link NarrowPhase#normal} and
+     * {@link NarrowPhase#depth}.
+     */
+    abstract boolean overlap(
+        NarrowPhase narrowPhase,
+        PhysicalObject src,
+        PhysicalObject dest,
+        float x,
+        float y);
+  }
+}
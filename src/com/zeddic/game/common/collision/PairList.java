@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.collision;
+
+import android.util.Log;
+
+/**
+ * A growable list of pairs of collision components, kept in two parallel
+ * arrays. The pair at index i is (first[i], second[i]).
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public class PairList {
+
+  private static final int INITIAL_CAPACITY = 64;
+  private static final int CAPACITY_GROWTH_RATE = 2;
+  
+  /** Ranges this small are finished with an insertion sort. */
+  private static final int INSERTION_SORT_SIZE = 8;
+  
+  public CollisionComponent[] first;
+  public CollisionComponent[] second;
+  
+  /** The number of pairs in the list. */
+  public int size;
+  
+  /** The ids of each pair packed together, used while sorting. */
+  private long[] keys;
+  
+  public PairList() {
+    this(INITIAL_CAPACITY);
+  }
+  
+  public PairList(int initialCapacity) {
+    first = new CollisionComponent[initialCapacity];
+    second = new CollisionComponent[initialCapacity];
+    keys = new long[initialCapacity];
+  }
+  
+  /**
+   * Adds a new pair to the end of the list.
+   */
+  public void add(CollisionComponent a, CollisionComponent b) {
+    if (size == first.length) {
+      grow();
+    }
+    first[size] = a;
+    second[size] = b;
+    size++;
+  }
+  
+  /**
+   * Sorts the pairs by the id of their first component, then their second.
+   * Each pair's ids are packed into a single long so the sort only compares
+   * primitives.
+   */
+  public void sort() {
+    for (int i = 0; i < size; i++) {
+      keys[i] = ((long) first[i].id << 32) | second[i].id;
+    }
+    sort(0, size - 1);
+  }
+  
+  /**
+   * Quicksorts a range of the list, finishing small ranges with an insertion
+   * sort. Only the smaller half is recursed into so the stack stays shallow.
+   */
+  private void sort(int low, int high) {
+    while (high - low > INSERTION_SORT_SIZE) {
+      long pivot = keys[(low + high) >>> 1];
+      int i = low;
+      int j = high;
+      while (i <= j) {
+        while (keys[i] < pivot) {
+          i++;
+        }
+        while (keys[j] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          swap(i, j);
+          i++;
+          j--;
+        }
+      }
+      
+      if (j - low < high - i) {
+        sort(low, j);
+        low = i;
+      } else {
+        sort(i, high);
+        high = j;
+      }
+    }
+    
+    for (int i = low + 1; i <= high; i++) {
+      for (int j = i; j > low && keys[j - 1] > keys[j]; j--) {
+        swap(j - 1, j);
+      }
+    }
+  }
+  
+  private void swap(int i, int j) {
+    long key = keys[i];
+    keys[i] = keys[j];
+    keys[j] = key;
+    
+    CollisionComponent component = first[i];
+    first[i] = first[j];
+    first[j] = component;
+    
+    component = second[i];
+    second[i] = second[j];
+    second[j] = component;
+  }
+  
+  /**
+   * Clears the list, keeping the underlying arrays.
+   */
+  public void clear() {
+    size = 0;
+  }
+  
+  private void grow() {
+    int newSize = first.length * CAPACITY_GROWTH_RATE;
+    Log.d(PairList.class.getCanonicalName(), "Increasing pair list from size " + 
+        first.length + " to " + newSize);
+    
+    CollisionComponent[] newFirst = new CollisionComponent[newSize];
+    CollisionComponent[] newSecond = new CollisionComponent[newSize];
+    System.arraycopy(first, 0, newFirst, 0, size);
+    System.arraycopy(second, 0, newSecond, 0, size);
+    first = newFirst;
+    second = newSecond;
+    keys = new long[newSize];
+  }
+}
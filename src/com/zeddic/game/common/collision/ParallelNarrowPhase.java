@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zeddic.game.common.collision;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+/**
+ * Checks a list of pairs for collisions using several threads at once.
+ *
+ * The thread calling {@link #findContacts} works alongside a fixed set of
+ * helper threads that are started once and then wait between frames. The
+ * pairs are split into small chunks which each thread claims in turn, so a
+ * thread that finishes early takes more of the work. Each thread has its
+ * own {@link NarrowPhase} and contact buffer. Once all of the pairs are
+ * checked the buffers are merged in pair order, so the contacts found are
+ * exactly those a single thread would have found.
+ *
+ * Only the objects' positions, velocities and shapes are read while
+ * checking, and nothing is allocated once the buffers have grown.
+ *
+ * @author baileys (Scott Bailey)
+ */
+public class ParallelNarrowPhase {
+
+  /** How many pairs a thread claims at a time. */
+  private static final int CHUNK_SIZE = 32;
+
+  /** Per thread state. The first is used by the calling thread. */
+  private final NarrowPhase[] narrowPhases;
+  private final ContactBuffer[] buffers;
+
+  /** Where each buffer is up to while merging. */
+  private final int[] mergeIndexes;
+
+  private final Thread[] helpers;
+
+  /** Releases the helpers to start checking pairs. */
+  private final CyclicBarrier start;
+
+  /** Waits for every thread to finish checking pairs. */
+  private final CyclicBarrier finish;
+
+  /** The next chunk of pairs to be claimed. */
+  private final AtomicInteger nextChunk = new AtomicInteger();
+
+  //// THE CURRENT JOB
+  // Set before the helpers are released by the start barrier, which makes
+  // them visible to the helper threads.
+  private PairList pairs;
+  private long time;
+
+  private volatile boolean stopped = false;
+
+  /**
+   * Creates a parallel narrow phase that uses the given number of threads,
+   * including the thread that calls findContacts().
+   */
+  public ParallelNarrowPhase(int threads) {
+    narrowPhases = new NarrowPhase[threads];
+    buffers = new ContactBuffer[threads];
+    mergeIndexes = new int[threads];
+    for (int i = 0; i < threads; i++) {
+      narrowPhases[i] = new NarrowPhase();
+      buffers[i] = new ContactBuffer();
+    }
+
+    start = new CyclicBarrier(threads);
+    finish = new CyclicBarrier(threads);
+    helpers = new Thread[threads - 1];
+    for (int i = 0; i < helpers.length; i++) {
+      helpers[i] = new Helper(i + 1);
+      helpers[i].setDaemon(true);
+      helpers[i].start();
+    }
+  }
+
+  /**
+   * Returns the number of threads used, including the calling thread.
+   */
+  public int getThreadCount() {
+    return narrowPhases.length;
+  }
+
+  /**
+   * Sets the routine used by every thread when a src object with one kind
+   * of shape is checked against a dest object with another. Must not be
+   * called while pairs are being checked.
+   */
+  public void setRoutine(int srcKind, int destKind, CollisionRoutine routine) {
+    for (int i = 0; i < narrowPhases.length; i++) {
+      narrowPhases[i].setRoutine(srcKind, destKind, routine);
+    }
+  }
+
+  /**
+   * Makes every thread use the same routines as the given narrow phase.
+   */
+  void copyRoutines(NarrowPhase other) {
+    for (int i = 0; i < narrowPhases.length; i++) {
+      narrowPhases[i].copyRoutines(other);
+    }
+  }
+
+  /**
+   * Checks every pair in the list, adding a contact to the buffer for each
+   * pair that collides. Contacts are added in the order of their pairs.
+   */
+  public void findContacts(PairList pairs, long time, ContactBuffer contacts) {
+
+    // Not worth waking the helpers for.
+    if (pairs.size <= CHUNK_SIZE || stopped) {
+      narrowPhases[0].findContacts(pairs, 0, pairs.size, time, contacts);
+      return;
+    }
+
+    this.pairs = pairs;
+    this.time = time;
+    nextChunk.set(0);
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i].clear();
+    }
+
+    // If the helpers can't be released they have given up, and would never
+    // reach the finish. Check the pairs alone from now on.
+    if (!await(start)) {
+      stopped = true;
+      this.pairs = null;
+      narrowPhases[0].findContacts(pairs, 0, pairs.size, time, contacts);
+      return;
+    }
+    work(0);
+
+    // If the finish broke, a helper may not have finished its chunks. Drop
+    // what the threads found and check the pairs alone from now on.
+    if (!await(finish)) {
+      stopped = true;
+      this.pairs = null;
+      narrowPhases[0].findContacts(pairs, 0, pairs.size, time, contacts);
+      return;
+    }
+
+    this.pairs = null;
+    merge(contacts);
+  }
+
+  /**
+   * Stops the helper threads. Any later calls are done by the calling thread
+   * alone.
+   */
+  public void shutdown() {
+    stopped = true;
+    for (int i = 0; i < helpers.length; i++) {
+      helpers[i].interrupt();
+    }
+  }
+
+  /**
+   * Checks chunks of pairs until none are left. Anything thrown while
+   * checking a chunk is logged rather than allowed to kill the thread, which
+   * would leave the others waiting at the barriers forever.
+   */
+  private void work(int thread) {
+    NarrowPhase narrowPhase = narrowPhases[thread];
+    ContactBuffer buffer = buffers[thread];
+    PairList pairs = this.pairs;
+    int size = pairs.size;
+
+    int chunkStart;
+    while ((chunkStart = nextChunk.getAndIncrement() * CHUNK_SIZE) < size) {
+      int chunkEnd = Math.min(chunkStart + CHUNK_SIZE, size);
+      try {
+        narrowPhase.findContacts(pairs, chunkStart, chunkEnd, time, buffer);
+      } catch (Throwable e) {
+        Log.e(ParallelNarrowPhase.class.getName(), "Error detecting collision:", e);
+      }
+    }
+  }
+
+  /**
+   * Merges the buffers of every thread into one. Chunks are claimed in
+   * order, so each buffer is already sorted by pair.
+   */
+  private void merge(ContactBuffer contacts) {
+    for (int i = 0; i < buffers.length; i++) {
+      mergeIndexes[i] = 0;
+    }
+
+    while (true) {
+      int next = -1;
+      int nextPair = Integer.MAX_VALUE;
+      for (int i = 0; i < buffers.length; i++) {
+        int index = mergeIndexes[i];
+        if (index < buffers[i].size && buffers[i].pairs[index] < nextPair) {
+          next = i;
+          nextPair = buffers[i].pairs[index];
+        }
+      }
+
+      if (next == -1) {
+        return;
+      }
+      contacts.add(buffers[next], mergeIndexes[next]);
+      mergeIndexes[next]++;
+    }
+  }
+
+  /**
+   * Waits for all threads to reach a barrier. Returns false if the wait was
+   * interrupted.
+   */
+  private boolean await(CyclicBarrier barrier) {
+    try {
+      barrier.await();
+      return true;
+    } catch (InterruptedException e) {
+      return false;
+    } catch (BrokenBarrierException e) {
+      return false;
+    }
+  }
+
+  /**
+   * A helper thread. Waits to be released, checks chunks of pairs alongside
+   * the calling thread, then waits for the next frame.
+   */
+  private class Helper extends Thread {
+
+    private final int thread;
+
+    public Helper(int thread) {
+      super("ParallelNarrowPhase-" + thread);
+      this.thread = thread;
+    }
+
+    @Override
+    public void run() {
+      while (!stopped) {
+        if (!await(start) || stopped) {
+          return;
+        }
+
+        // Always reach the finish, or the calling thread would wait there
+        // forever.
+        boolean finished;
+        try {
+          work(thread);
+        } finally {
+          finished = await(finish);
+        }
+        if (!finished) {
+          return;
+        }
+      }
+    }
+  }
+}
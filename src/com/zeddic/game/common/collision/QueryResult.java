@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+
+/**
+ * A caller supplied buffer to receive the objects found by a
+ * {@link SpatialQuery}. The buffer holds a fixed number of objects. When
+ * more are found, the closest are kept. Once the query is done the objects
+ * are sorted closest first.
+ * 
+ * While a query runs the objects are kept as a max heap on distance, so the
+ * furthest object kept is always first and can be swapped out cheaply.
+ * Nothing is allocated after the buffer is created.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public class QueryResult {
+
+  /** The objects found, closest first. */
+  public final PhysicalObject[] objects;
+  
+  /** The squared distance from the query point to each object's center. */
+  public final float[] distanceSquared;
+  
+  /** The number of objects found. */
+  public int hits;
+  
+  /**
+   * Only objects with one of these {@link TypeTags} are found. Defaults to
+   * {@link TypeTags#ANY}.
+   */
+  public int types = TypeTags.ANY;
+  
+  /** An object to never find, such as the one doing the query. */
+  public PhysicalObject exclude;
+  
+  /**
+   * Creates a buffer for the given number of objects.
+   */
+  public QueryResult(int maxHits) {
+    objects = new PhysicalObject[maxHits];
+    distanceSquared = new float[maxHits];
+  }
+  
+  /**
+   * Removes every object found.
+   */
+  public void clear() {
+    for (int i = 0; i < hits; i++) {
+      objects[i] = null;
+    }
+    hits = 0;
+  }
+  
+  /**
+   * Returns true if the buffer can't hold any more objects.
+   */
+  public boolean isFull() {
+    return hits == objects.length;
+  }
+  
+  /**
+   * Returns how close a new object must be to be kept. Once the buffer is
+   * full, only objects closer than the furthest one kept are.
+   */
+  float getMaxDistanceSquared() {
+    return isFull() ? distanceSquared[0] : Float.MAX_VALUE;
+  }
+  
+  /**
+   * Returns true if the object has already been found.
+   */
+  boolean contains(PhysicalObject object) {
+    for (int i = 0; i < hits; i++) {
+      if (objects[i] == object) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * Keeps an object if there is room, or if it is closer than the furthest
+   * object kept, which it then replaces.
+   */
+  void offer(PhysicalObject object, float distance) {
+    if (!isFull()) {
+      int index = hits++;
+      while (index > 0) {
+        int parent = (index - 1) >> 1;
+        if (distanceSquared[parent] >= distance) {
+          break;
+        }
+        objects[index] = objects[parent];
+        distanceSquared[index] = distanceSquared[parent];
+        index = parent;
+      }
+      objects[index] = object;
+      distanceSquared[index] = distance;
+    } else if (distance < distanceSquared[0]) {
+      siftDown(object, distance, hits);
+    }
+  }
+  
+  /**
+   * Sorts the objects closest first. The buffer is no longer a heap after.
+   */
+  void sort() {
+    for (int end = hits - 1; end > 0; end--) {
+      PhysicalObject furthest = objects[0];
+      float furthestDistance = distanceSquared[0];
+      siftDown(objects[end], distanceSquared[end], end);
+      objects[end] = furthest;
+      distanceSquared[end] = furthestDistance;
+    }
+  }
+  
+  /**
+   * Places an object at the top of the heap made of the first size
+   * entries, then moves it down until the heap is in order again.
+   */
+  private void siftDown(PhysicalObject object, float distance, int size) {
+    int index = 0;
+    while (true) {
+      int child = index * 2 + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && distanceSquared[child + 1] > distanceSquared[child]) {
+        child++;
+      }
+      if (distanceSquared[child] <= distance) {
+        break;
+      }
+      objects[index] = objects[child];
+      distanceSquared[index] = distanceSquared[child];
+      index = child;
+    }
+    objects[index] = object;
+    distanceSquared[index] = distance;
+  }
+}
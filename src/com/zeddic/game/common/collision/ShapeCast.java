@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.Circle;
+import com.zeddic.game.common.util.Shape;
+import com.zeddic.game.common.util.Vector2d;
+
+/**
+ * Moves a shape along a line segment through the world and records the
+ * objects it hits in a {@link CastResult}. The broad phase reports objects
+ * near the segment, and each is checked with the same continuous check
+ * used for fast moving objects, {@link NarrowPhase#sweep}. A ray is cast
+ * as a circle with no radius. Any {@link StaticGeometry} is checked first,
+ * with the shape as a circle, and the nearest wall hit is recorded as its
+ * object.
+ * 
+ * Everything needed is created once and reused, so casting allocates
+ * nothing. Used by the {@link CollisionManager}.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+class ShapeCast implements CastCallback {
+
+  /** The shape cast for rays and segments. */
+  private final Circle point = new Circle(0);
+  
+  /** Stands in for the shape being cast during the narrow check. */
+  private final PhysicalObject caster = new PhysicalObject();
+  
+  private final NarrowPhase narrowPhase = new NarrowPhase();
+  
+  /** The normal of a wall hit. */
+  private final Vector2d wallNormal = new Vector2d();
+  
+  //// THE CURRENT CAST
+  private CastResult result;
+  private float startX;
+  private float startY;
+  private float moveX;
+  private float moveY;
+  
+  /**
+   * Casts a ray from one point to another. Returns the number of hits.
+   * The walls may be null.
+   */
+  public int castSegment(
+      BroadPhase broadPhase,
+      StaticGeometry walls,
+      float x1,
+      float y1,
+      float x2,
+      float y2,
+      CastResult result) {
+    return castShape(broadPhase, walls, point, x1, y1, x2, y2, result);
+  }
+  
+  /**
+   * Moves a shape from one point to another. Returns the number of hits.
+   * The walls may be null.
+   */
+  public int castShape(
+      BroadPhase broadPhase,
+      StaticGeometry walls,
+      Shape shape,
+      float x1,
+      float y1,
+      float x2,
+      float y2,
+      CastResult result) {
+    
+    result.clear();
+    this.result = result;
+    startX = x1;
+    startY = y1;
+    moveX = x2 - x1;
+    moveY = y2 - y1;
+    caster.x = x1;
+    caster.y = y1;
+    caster.bounds.shape = shape;
+    
+    // Walls first, so a near wall can cut the walk through the broad phase
+    // short.
+    if (walls != null && walls.object != result.ignore && (walls.category & result.mask) != 0) {
+      float at = walls.sweep(x1, y1, shape.radius, moveX, moveY, wallNormal);
+      if (at >= 0) {
+        result.add(walls.object, at, x1 + moveX * at, y1 + moveY * at,
+            wallNormal.x, wallNormal.y);
+      }
+    }
+    
+    broadPhase.castSegment(x1, y1, x2, y2, shape.radius, this);
+    
+    this.result = null;
+    caster.bounds.shape = point;
+    return result.hits;
+  }
+  
+  public float reportCandidate(PhysicalObject object, CollisionComponent component) {
+    if (!object.active || object == result.ignore) {
+      return result.getMaxFraction();
+    }
+    if (component != null &&
+        (!CollisionManager.canBeHit(component.type) || (component.category & result.mask) == 0)) {
+      return result.getMaxFraction();
+    }
+    
+    if (narrowPhase.sweep(caster, object, moveX, moveY)) {
+      float at = narrowPhase.timeOfImpact;
+      result.add(
+          object,
+          at,
+          startX + moveX * at,
+          startY + moveY * at,
+          narrowPhase.normal.x,
+          narrowPhase.normal.y);
+    }
+    return result.getMaxFraction();
+  }
+  
+  /**
+   * Returns how far along a segment it first comes within a distance of a
+   * box, from 0 to 1. Returns a value above 1 if it never does.
+   */
+  static float segmentEntry(
+      float minX,
+      float minY,
+      float maxX,
+      float maxY,
+      float x,
+      float y,
+      float dX,
+      float dY,
+      float distance) {
+    
+    minX -= distance;
+    minY -= distance;
+    maxX += distance;
+    maxY += distance;
+    float tMin = 0;
+    float tMax = 1;
+    
+    if (dX == 0) {
+      if (x < minX || x > maxX) {
+        return Float.MAX_VALUE;
+      }
+    } else {
+      float t1 = (minX - x) / dX;
+      float t2 = (maxX - x) / dX;
+      tMin = Math.max(tMin, Math.min(t1, t2));
+      tMax = Math.min(tMax, Math.max(t1, t2));
+    }
+    
+    if (dY == 0) {
+      if (y < minY || y > maxY) {
+        return Float.MAX_VALUE;
+      }
+    } else {
+      float t1 = (minY - y) / dY;
+      float t2 = (maxY - y) / dY;
+      tMin = Math.max(tMin, Math.min(t1, t2));
+      tMax = Math.min(tMax, Math.max(t1, t2));
+    }
+    
+    return tMin <= tMax ? tMin : Float.MAX_VALUE;
+  }
+}
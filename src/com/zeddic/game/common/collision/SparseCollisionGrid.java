@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.SimpleList;
+
+/**
+ * A {@link CollisionGrid} for worlds without bounds, or too large to cover
+ * with a grid up front. The world is divided into the same square spots,
+ * but only spots that hold objects exist. They are kept in a hash table
+ * keyed by their packed x and y, and taken from a pool as objects move
+ * into them, then returned once empty. Memory grows with the number of
+ * occupied spots rather than the size of the world.
+ * 
+ * The table uses open addressing with linear probing, so looking up a spot
+ * is a few array reads with no allocation. Only how spots are stored
+ * differs from a CollisionGrid: objects are placed, queried and paired by
+ * the same {@link AbstractCollisionGrid} code.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public class SparseCollisionGrid extends AbstractCollisionGrid {
+
+  private static final int INITIAL_CAPACITY = 256;
+  
+  /** How many objects a new spot has room for. */
+  private static final int SPOT_CAPACITY = 8;
+  
+  //// THE HASH TABLE
+  // A slot is empty if its spot is null. The table is kept at most half
+  // full so probes stay short.
+  private long[] keys;
+  private GridSpot[] spots;
+  private int mask;
+  private int count = 0;
+  
+  /** Empty spots waiting to be reused. */
+  private SimpleList<GridSpot> pool;
+  
+  public SparseCollisionGrid(float gridSize) {
+    super(gridSize, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    keys = new long[INITIAL_CAPACITY];
+    spots = new GridSpot[INITIAL_CAPACITY];
+    mask = INITIAL_CAPACITY - 1;
+    pool = new SimpleList<GridSpot>(GridSpot.class);
+  }
+  
+  /**
+   * Returns the number of spots that currently hold objects.
+   */
+  public int getSpotCount() {
+    return count;
+  }
+  
+  /**
+   * Places objects from every spot the region touches into results. Large
+   * regions walk the occupied spots rather than every spot in the region.
+   */
+  public void getObjectsInRegion(
+      float minX,
+      float minY,
+      float maxX,
+      float maxY,
+      SimpleList<PhysicalObject> results) {
+    
+    int startX = toSpot(minX);
+    int endX = toSpot(maxX);
+    int startY = toSpot(minY);
+    int endY = toSpot(maxY);
+    long area = ((long) endX - startX + 1) * ((long) endY - startY + 1);
+    int stamp = CollisionComponent.newQueryStamp();
+    
+    if (area > count) {
+      for (int i = 0; i < spots.length; i++) {
+        GridSpot spot = spots[i];
+        if (spot == null) {
+          continue;
+        }
+        int x = unpackX(keys[i]);
+        int y = unpackY(keys[i]);
+        if (x >= startX && x <= endX && y >= startY && y <= endY) {
+          appendAll(spot, stamp, results);
+        }
+      }
+      return;
+    }
+    
+    for (int x = startX; x <= endX; x++) {
+      for (int y = startY; y <= endY; y++) {
+        GridSpot spot = getSpot(x, y);
+        if (spot != null) {
+          appendAll(spot, stamp, results);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Finds the range of spots covering the bounds.
+   */
+  void loadRange(float minX, float minY, float maxX, float maxY) {
+    rangeMinX = toSpot(minX);
+    rangeMinY = toSpot(minY);
+    rangeMaxX = toSpot(maxX);
+    rangeMaxY = toSpot(maxY);
+  }
+  
+  //// HASH TABLE OPERATIONS
+  
+  private static long pack(int x, int y) {
+    return ((long) x << 32) | (y & 0xffffffffL);
+  }
+  
+  private static int unpackX(long key) {
+    return (int) (key >> 32);
+  }
+  
+  private static int unpackY(long key) {
+    return (int) key;
+  }
+  
+  /**
+   * Returns the slot a key would be stored in if nothing else was there.
+   */
+  private int home(long key) {
+    int hash = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+  
+  /**
+   * Returns the spot at the given position, or null if it holds nothing.
+   */
+  GridSpot getSpot(int x, int y) {
+    long key = pack(x, y);
+    for (int i = home(key); spots[i] != null; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return spots[i];
+      }
+    }
+    return null;
+  }
+  
+  /**
+   * Returns the spot at the given position, taking one from the pool if
+   * it doesn't exist yet.
+   */
+  GridSpot obtainSpot(int x, int y) {
+    long key = pack(x, y);
+    int i = home(key);
+    for (; spots[i] != null; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return spots[i];
+      }
+    }
+    
+    GridSpot spot;
+    if (pool.size > 0) {
+      spot = pool.items[--pool.size];
+      pool.items[pool.size] = null;
+    } else {
+      spot = new GridSpot(SPOT_CAPACITY);
+    }
+    spot.key = key;
+    keys[i] = key;
+    spots[i] = spot;
+    count++;
+    
+    if (count * 2 > spots.length) {
+      grow();
+    }
+    return spot;
+  }
+  
+  /**
+   * Removes a spot from the table once it holds nothing, and returns it to
+   * the pool. Later entries are shifted back into the gap so probes never
+   * need to skip over removed slots.
+   */
+  void releaseSpot(GridSpot spot) {
+    if (spot.items.size > 0) {
+      return;
+    }
+    
+    int i = home(spot.key);
+    while (spots[i] != spot) {
+      i = (i + 1) & mask;
+    }
+    spots[i] = null;
+    count--;
+    pool.append(spot);
+    
+    for (int j = (i + 1) & mask; spots[j] != null; j = (j + 1) & mask) {
+      
+      // An entry can fill the gap unless its home is between the gap and
+      // where it is now.
+      int home = home(keys[j]);
+      boolean stays = i <= j ? (home > i && home <= j) : (home > i || home <= j);
+      if (!stays) {
+        keys[i] = keys[j];
+        spots[i] = spots[j];
+        spots[j] = null;
+        i = j;
+      }
+    }
+  }
+  
+  /**
+   * Doubles the size of the table.
+   */
+  private void grow() {
+    long[] oldKeys = keys;
+    GridSpot[] oldSpots = spots;
+    keys = new long[oldKeys.length * 2];
+    spots = new GridSpot[oldSpots.length * 2];
+    mask = spots.length - 1;
+    
+    for (int i = 0; i < oldSpots.length; i++) {
+      if (oldSpots[i] != null) {
+        int j = home(oldKeys[i]);
+        while (spots[j] != null) {
+          j = (j + 1) & mask;
+        }
+        keys[j] = oldKeys[i];
+        spots[j] = oldSpots[i];
+      }
+    }
+  }
+}
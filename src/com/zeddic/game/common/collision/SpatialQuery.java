@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.SimpleList;
+
+/**
+ * Finds the objects nearest to a point, such as for AI picking a target.
+ * Objects are filtered by {@link TypeTags} rather than by class, and the
+ * closest are kept in a {@link QueryResult} supplied by the caller.
+ * 
+ * When the broad phase is a {@link CollisionGrid}, spots are searched in
+ * rings spreading out from the query point. Once the result is full and
+ * the next ring is further away than the furthest object kept, nothing
+ * closer can be left to find, so the search stops. Queries for a single
+ * nearby target usually only look at a few spots. Other broad phases are
+ * searched with a single region query.
+ * 
+ * Nothing is allocated while querying, so a query should only be used by
+ * one thread at a time.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public class SpatialQuery {
+
+  /** Objects found by a region query, for broad phases other than grids. */
+  private SimpleList<PhysicalObject> candidates =
+      new SimpleList<PhysicalObject>(PhysicalObject.class, 1000);
+  
+  /** Receives the result of {@link #closest}. */
+  private QueryResult closest = new QueryResult(1);
+  
+  /**
+   * Finds the objects closest to a point, up to a maximum distance between
+   * the point and their centers. As many objects are found as the result
+   * holds, closest first. Returns the number found.
+   */
+  public int nearest(float x, float y, float maxDistance, QueryResult result) {
+    result.clear();
+    
+    BroadPhase broadPhase = CollisionManager.get().getBroadPhase();
+    if (broadPhase instanceof CollisionGrid) {
+      searchGrid((CollisionGrid) broadPhase, x, y, maxDistance, result);
+    } else if (broadPhase instanceof LayeredCollisionGrid) {
+      LayeredCollisionGrid layered = (LayeredCollisionGrid) broadPhase;
+      for (int i = 0; i < layered.getNumLayers(); i++) {
+        searchGrid(layered.getLayer(i), x, y, maxDistance, result);
+      }
+    } else if (broadPhase instanceof HierarchicalCollisionGrid) {
+      HierarchicalCollisionGrid hierarchical = (HierarchicalCollisionGrid) broadPhase;
+      for (int i = 0; i < hierarchical.getNumLevels(); i++) {
+        searchGrid(hierarchical.getLevel(i), x, y, maxDistance, result);
+      }
+    } else {
+      searchRegion(broadPhase, x, y, maxDistance, result);
+    }
+    
+    result.sort();
+    return result.hits;
+  }
+  
+  /**
+   * Returns the closest object with one of the given tags, or null if there
+   * are none within the distance.
+   */
+  public PhysicalObject closest(
+      float x,
+      float y,
+      float maxDistance,
+      int types,
+      PhysicalObject exclude) {
+    
+    closest.types = types;
+    closest.exclude = exclude;
+    nearest(x, y, maxDistance, closest);
+    
+    PhysicalObject target = closest.hits > 0 ? closest.objects[0] : null;
+    closest.clear();
+    closest.exclude = null;
+    return target;
+  }
+  
+  /**
+   * Searches the spots of a grid in rings around the query point.
+   */
+  private void searchGrid(
+      CollisionGrid grid,
+      float x,
+      float y,
+      float maxDistance,
+      QueryResult result) {
+    
+    float gridSize = grid.gridSize;
+    float maxDistanceSquared = maxDistance * maxDistance;
+    int centerX = (int) (x / gridSize);
+    int centerY = (int) (y / gridSize);
+    
+    for (int ring = 0; ; ring++) {
+      int minX = centerX - ring;
+      int maxX = centerX + ring;
+      int minY = centerY - ring;
+      int maxY = centerY + ring;
+      
+      // Every spot in the ring is outside the square made by the rings
+      // before it, so no object found here can be closer than its edge.
+      if (ring > 0) {
+        float edge = Math.min(
+            Math.min(x - (minX + 1) * gridSize, spotStart(maxX, gridSize) - x),
+            Math.min(y - (minY + 1) * gridSize, spotStart(maxY, gridSize) - y));
+        if (edge > maxDistance || edge * edge > result.getMaxDistanceSquared()) {
+          return;
+        }
+      }
+      
+      if (ring == 0) {
+        searchSpot(grid, centerX, centerY, x, y, maxDistanceSquared, result);
+      } else {
+        for (int spotX = Math.max(minX, 0); spotX <= Math.min(maxX, grid.width - 1); spotX++) {
+          searchSpot(grid, spotX, minY, x, y, maxDistanceSquared, result);
+          searchSpot(grid, spotX, maxY, x, y, maxDistanceSquared, result);
+        }
+        int endY = Math.min(maxY - 1, grid.height - 1);
+        for (int spotY = Math.max(minY + 1, 0); spotY <= endY; spotY++) {
+          searchSpot(grid, minX, spotY, x, y, maxDistanceSquared, result);
+          searchSpot(grid, maxX, spotY, x, y, maxDistanceSquared, result);
+        }
+      }
+      
+      // Stop once the rings cover the whole grid.
+      if (minX <= 0 && minY <= 0 && maxX >= grid.width - 1 && maxY >= grid.height - 1) {
+        return;
+      }
+    }
+  }
+  
+  /**
+   * Returns the world position where a column or row of spots starts. The
+   * grid rounds positions towards zero, so the first spot also holds
+   * objects just before the edge of the world.
+   */
+  private float spotStart(int spot, float gridSize) {
+    return spot == 0 ? -gridSize : spot * gridSize;
+  }
+  
+  /**
+   * Offers the objects in a single grid spot to the result.
+   */
+  private void searchSpot(
+      CollisionGrid grid,
+      int spotX,
+      int spotY,
+      float x,
+      float y,
+      float maxDistanceSquared,
+      QueryResult result) {
+    
+    if (spotX < 0 || spotX >= grid.width || spotY < 0 || spotY >= grid.height) {
+      return;
+    }
+    
+    GridSpot spot = grid.grid[spotX][spotY];
+    for (int j = 0; j < spot.items.size; j++) {
+      PhysicalObject object = spot.items.items[j];
+      CollisionComponent component = spot.components.items[j];
+      if (!object.active || object == result.exclude ||
+          !TypeTags.matches(TypeTags.of(object, component), result.types)) {
+        continue;
+      }
+      
+      float dX = x - object.x;
+      float dY = y - object.y;
+      float distance = dX * dX + dY * dY;
+      if (distance > maxDistanceSquared || distance >= result.getMaxDistanceSquared()) {
+        continue;
+      }
+      
+      // Objects are in every spot they cover, so large ones may be found
+      // more than once.
+      if ((component == null || component.type == CollisionManager.TYPE_STATIONARY ||
+          component.gridSpotCount > 1) && result.contains(object)) {
+        continue;
+      }
+      result.offer(object, distance);
+    }
+  }
+  
+  /**
+   * Searches every object in the square around the query point.
+   */
+  private void searchRegion(
+      BroadPhase broadPhase,
+      float x,
+      float y,
+      float maxDistance,
+      QueryResult result) {
+    
+    float maxDistanceSquared = maxDistance * maxDistance;
+    candidates.clear();
+    broadPhase.getObjectsInRegion(
+        x - maxDistance, y - maxDistance, x + maxDistance, y + maxDistance, candidates);
+    
+    for (int j = 0; j < candidates.size; j++) {
+      PhysicalObject object = candidates.items[j];
+      if (!object.active || object == result.exclude ||
+          !TypeTags.matches(TypeTags.of(object), result.types)) {
+        continue;
+      }
+      
+      float dX = x - object.x;
+      float dY = y - object.y;
+      float distance = dX * dX + dY * dY;
+      if (distance > maxDistanceSquared || distance >= result.getMaxDistanceSquared() ||
+          result.contains(object)) {
+        continue;
+      }
+      result.offer(object, distance);
+    }
+    candidates.clear();
+  }
+}
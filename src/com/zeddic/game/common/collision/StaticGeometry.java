@@ -0,0 +1,495 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.Polygon;
+import com.zeddic.game.common.util.Vector2d;
+
+/**
+ * The walls of a level, baked once into a read-only index of line
+ * segments. Walls kept here are not {@link CollisionManager#TYPE_STATIONARY}
+ * objects, so they never share grid spots with moving objects, are never
+ * checked against each other, and skip the full narrow phase.
+ * 
+ * The area covered by the walls is divided into square cells. Each cell
+ * holds the segments that cross it, in order, packed together in a single
+ * array: the segments of cell i are at cellStarts[i] up to
+ * cellStarts[i + 1]. Finding the walls near an object only reads the cells
+ * its bounds cover.
+ * 
+ * Moving objects are treated as circles the size of their bounds' radius.
+ * Fast objects are swept along their move, see {@link #sweep}, so they
+ * stop at the first wall in their way. Nothing is changed or allocated
+ * while checking, so the geometry may be checked from several threads at
+ * once.
+ * 
+ * Geometry is created with a {@link StaticGeometryBuilder} and handed to
+ * {@link CollisionManager#setStaticGeometry}.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public class StaticGeometry {
+  
+  /**
+   * The object given to objects that hit a wall, in place of the object
+   * they hit.
+   */
+  public final PhysicalObject object;
+  
+  /** The layers the walls belong to, as a bitfield. */
+  public final int category;
+  
+  //// THE SEGMENTS
+  // Each runs from (startX, startY) along (deltaX, deltaY).
+  private final float[] startX;
+  private final float[] startY;
+  private final float[] deltaX;
+  private final float[] deltaY;
+  
+  /** One over the squared length of each segment, 0 for a single point. */
+  private final float[] inverseLengthSquared;
+  
+  //// THE CELLS
+  private final float cellSize;
+  private final float originX;
+  private final float originY;
+  private final int width;
+  private final int height;
+  private final int[] cellStarts;
+  private final int[] cellSegments;
+  
+  private StaticGeometry(StaticGeometryBuilder builder) {
+    object = builder.object != null ? builder.object : new PhysicalObject(0, 0);
+    category = builder.category;
+    cellSize = builder.cellSize;
+    
+    int count = builder.count;
+    startX = new float[count];
+    startY = new float[count];
+    deltaX = new float[count];
+    deltaY = new float[count];
+    inverseLengthSquared = new float[count];
+    
+    float minX = Float.MAX_VALUE;
+    float minY = Float.MAX_VALUE;
+    float maxX = -Float.MAX_VALUE;
+    float maxY = -Float.MAX_VALUE;
+    for (int i = 0; i < count; i++) {
+      float x1 = builder.coords[i * 4];
+      float y1 = builder.coords[i * 4 + 1];
+      float x2 = builder.coords[i * 4 + 2];
+      float y2 = builder.coords[i * 4 + 3];
+      startX[i] = x1;
+      startY[i] = y1;
+      deltaX[i] = x2 - x1;
+      deltaY[i] = y2 - y1;
+      float lengthSquared = deltaX[i] * deltaX[i] + deltaY[i] * deltaY[i];
+      inverseLengthSquared[i] = lengthSquared > 0 ? 1 / lengthSquared : 0;
+      
+      minX = Math.min(minX, Math.min(x1, x2));
+      minY = Math.min(minY, Math.min(y1, y2));
+      maxX = Math.max(maxX, Math.max(x1, x2));
+      maxY = Math.max(maxY, Math.max(y1, y2));
+    }
+    
+    if (count == 0) {
+      minX = minY = maxX = maxY = 0;
+    }
+    originX = minX;
+    originY = minY;
+    width = (int) ((maxX - minX) / cellSize) + 1;
+    height = (int) ((maxY - minY) / cellSize) + 1;
+    
+    // Count the segments crossing each cell, turn the counts into starting
+    // positions, then fill each cell in segment order.
+    cellStarts = new int[width * height + 1];
+    for (int i = 0; i < count; i++) {
+      addToCells(i, null);
+    }
+    int total = 0;
+    for (int cell = 0; cell < width * height; cell++) {
+      int cellCount = cellStarts[cell];
+      cellStarts[cell] = total;
+      total += cellCount;
+    }
+    cellStarts[width * height] = total;
+    
+    cellSegments = new int[total];
+    int[] filled = new int[width * height];
+    for (int i = 0; i < count; i++) {
+      addToCells(i, filled);
+    }
+  }
+  
+  /**
+   * Returns the number of segments.
+   */
+  public int getNumSegments() {
+    return startX.length;
+  }
+  
+  /**
+   * Returns the number of cells the walls are divided into.
+   */
+  public int getNumCells() {
+    return width * height;
+  }
+  
+  /**
+   * Returns how many segments cross the cell containing a point.
+   */
+  public int getNumSegmentsAt(float x, float y) {
+    int cellX = (int) Math.floor((x - originX) / cellSize);
+    int cellY = (int) Math.floor((y - originY) / cellSize);
+    if (cellX < 0 || cellY < 0 || cellX >= width || cellY >= height) {
+      return 0;
+    }
+    int cell = cellY * width + cellX;
+    return cellStarts[cell + 1] - cellStarts[cell];
+  }
+  
+  /**
+   * Checks a circle against the walls. If it overlaps any, the shortest
+   * move that takes it out of the deepest wall is placed into push and true
+   * is returned. The push points along the wall's normal, and its length is
+   * the depth.
+   */
+  public boolean collide(float x, float y, float radius, Vector2d push) {
+    int minX = Math.max(0, (int) Math.floor((x - radius - originX) / cellSize));
+    int minY = Math.max(0, (int) Math.floor((y - radius - originY) / cellSize));
+    int maxX = Math.min(width - 1, (int) Math.floor((x + radius - originX) / cellSize));
+    int maxY = Math.min(height - 1, (int) Math.floor((y + radius - originY) / cellSize));
+    
+    float radiusSquared = radius * radius;
+    float deepest = -1;
+    int deepestSegment = -1;
+    for (int cellY = minY; cellY <= maxY; cellY++) {
+      for (int cellX = minX; cellX <= maxX; cellX++) {
+        int cell = cellY * width + cellX;
+        int end = cellStarts[cell + 1];
+        for (int j = cellStarts[cell]; j < end; j++) {
+          
+          // Segments crossing several cells are seen more than once, which
+          // only repeats the check.
+          int i = cellSegments[j];
+          float distanceSquared = distanceSquared(i, x, y);
+          if (distanceSquared < radiusSquared && radiusSquared - distanceSquared > deepest) {
+            deepest = radiusSquared - distanceSquared;
+            deepestSegment = i;
+          }
+        }
+      }
+    }
+    
+    if (deepestSegment == -1) {
+      return false;
+    }
+    
+    int i = deepestSegment;
+    float t = closest(i, x, y);
+    float dX = x - (startX[i] + deltaX[i] * t);
+    float dY = y - (startY[i] + deltaY[i] * t);
+    float distance = (float) Math.sqrt(dX * dX + dY * dY);
+    float depth = radius - distance;
+    if (distance > 0) {
+      push.x = dX / distance * depth;
+      push.y = dY / distance * depth;
+    } else {
+      // The center is on the wall, so push out to its left.
+      float length = (float) Math.sqrt(deltaX[i] * deltaX[i] + deltaY[i] * deltaY[i]);
+      if (length > 0) {
+        push.x = -deltaY[i] / length * depth;
+        push.y = deltaX[i] / length * depth;
+      } else {
+        push.x = 0;
+        push.y = -depth;
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Moves a circle from (x, y) by (moveX, moveY) and finds the first wall
+   * it touches, so a circle can't pass through a wall thinner than its
+   * move. Returns how far along the move it first touches, from 0 to 1, and
+   * places the wall's normal, facing the circle, into normal. Returns -1 if
+   * it touches nothing. Walls the circle already overlaps are left to
+   * {@link #collide}.
+   */
+  public float sweep(
+      float x,
+      float y,
+      float radius,
+      float moveX,
+      float moveY,
+      Vector2d normal) {
+    
+    float endX = x + moveX;
+    float endY = y + moveY;
+    int minX = Math.max(0, (int) Math.floor((Math.min(x, endX) - radius - originX) / cellSize));
+    int minY = Math.max(0, (int) Math.floor((Math.min(y, endY) - radius - originY) / cellSize));
+    int maxX = Math.min(width - 1,
+        (int) Math.floor((Math.max(x, endX) + radius - originX) / cellSize));
+    int maxY = Math.min(height - 1,
+        (int) Math.floor((Math.max(y, endY) + radius - originY) / cellSize));
+    
+    float first = Float.MAX_VALUE;
+    for (int cellY = minY; cellY <= maxY; cellY++) {
+      for (int cellX = minX; cellX <= maxX; cellX++) {
+        int cell = cellY * width + cellX;
+        int end = cellStarts[cell + 1];
+        for (int j = cellStarts[cell]; j < end; j++) {
+          first = sweepSegment(cellSegments[j], x, y, radius, moveX, moveY, first, normal);
+        }
+      }
+    }
+    return first <= 1 ? first : -1;
+  }
+  
+  /**
+   * Finds when a moving circle first touches a segment: either its side,
+   * pushed out by the radius, or a circle of the radius around either end.
+   * Returns the earlier of that and first, placing the normal of the
+   * earlier hit into normal.
+   */
+  private float sweepSegment(
+      int i,
+      float x,
+      float y,
+      float radius,
+      float moveX,
+      float moveY,
+      float first,
+      Vector2d normal) {
+    
+    if (distanceSquared(i, x, y) < radius * radius) {
+      return first;
+    }
+    
+    if (inverseLengthSquared[i] > 0) {
+      float scale = (float) Math.sqrt(inverseLengthSquared[i]);
+      float nX = -deltaY[i] * scale;
+      float nY = deltaX[i] * scale;
+      float side = nX * (x - startX[i]) + nY * (y - startY[i]);
+      if (side < 0) {
+        nX = -nX;
+        nY = -nY;
+        side = -side;
+      }
+      float approach = nX * moveX + nY * moveY;
+      if (side >= radius && approach < 0 && side - radius < -approach * first) {
+        float t = (side - radius) / -approach;
+        float along = ((x + moveX * t - startX[i]) * deltaX[i] +
+            (y + moveY * t - startY[i]) * deltaY[i]) * inverseLengthSquared[i];
+        if (along >= 0 && along <= 1) {
+          first = t;
+          normal.x = nX;
+          normal.y = nY;
+        }
+      }
+    }
+    
+    // A ray can only touch an end through the side.
+    if (radius > 0) {
+      first = sweepPoint(startX[i], startY[i], x, y, radius, moveX, moveY, first, normal);
+      first = sweepPoint(startX[i] + deltaX[i], startY[i] + deltaY[i],
+          x, y, radius, moveX, moveY, first, normal);
+    }
+    return first;
+  }
+  
+  /**
+   * Finds when a moving circle first touches a point, returning the
+   * earlier of that and first. See {@link #sweepSegment}.
+   */
+  private static float sweepPoint(
+      float pointX,
+      float pointY,
+      float x,
+      float y,
+      float radius,
+      float moveX,
+      float moveY,
+      float first,
+      Vector2d normal) {
+    
+    float dX = x - pointX;
+    float dY = y - pointY;
+    float a = moveX * moveX + moveY * moveY;
+    float halfB = dX * moveX + dY * moveY;
+    float c = dX * dX + dY * dY - radius * radius;
+    float discriminant = halfB * halfB - a * c;
+    if (a == 0 || halfB >= 0 || c < 0 || discriminant < 0) {
+      return first;
+    }
+    float t = (-halfB - (float) Math.sqrt(discriminant)) / a;
+    if (t >= first) {
+      return first;
+    }
+    normal.x = (dX + moveX * t) / radius;
+    normal.y = (dY + moveY * t) / radius;
+    return t;
+  }
+  
+  /**
+   * Returns how far along a segment, from 0 to 1, the point closest to
+   * (x, y) is.
+   */
+  private float closest(int i, float x, float y) {
+    float t = ((x - startX[i]) * deltaX[i] + (y - startY[i]) * deltaY[i])
+        * inverseLengthSquared[i];
+    return t < 0 ? 0 : (t > 1 ? 1 : t);
+  }
+  
+  /**
+   * Returns the squared distance from (x, y) to a segment.
+   */
+  private float distanceSquared(int i, float x, float y) {
+    float t = closest(i, x, y);
+    float dX = x - (startX[i] + deltaX[i] * t);
+    float dY = y - (startY[i] + deltaY[i] * t);
+    return dX * dX + dY * dY;
+  }
+  
+  /**
+   * Adds a segment to every cell it crosses. While counting, filled is null
+   * and the count of each cell is kept in cellStarts.
+   */
+  private void addToCells(int i, int[] filled) {
+    float x1 = startX[i];
+    float y1 = startY[i];
+    float x2 = x1 + deltaX[i];
+    float y2 = y1 + deltaY[i];
+    int minX = Math.min(width - 1, (int) ((Math.min(x1, x2) - originX) / cellSize));
+    int minY = Math.min(height - 1, (int) ((Math.min(y1, y2) - originY) / cellSize));
+    int maxX = Math.min(width - 1, (int) ((Math.max(x1, x2) - originX) / cellSize));
+    int maxY = Math.min(height - 1, (int) ((Math.max(y1, y2) - originY) / cellSize));
+    
+    for (int cellY = minY; cellY <= maxY; cellY++) {
+      for (int cellX = minX; cellX <= maxX; cellX++) {
+        if (!crossesCell(i, cellX, cellY)) {
+          continue;
+        }
+        int cell = cellY * width + cellX;
+        if (filled == null) {
+          cellStarts[cell]++;
+        } else {
+          cellSegments[cellStarts[cell] + filled[cell]] = i;
+          filled[cell]++;
+        }
+      }
+    }
+  }
+  
+  /**
+   * Returns true unless every corner of a cell lies strictly on the same
+   * side of a segment's line. Only called for cells within the segment's
+   * bounding box.
+   */
+  private boolean crossesCell(int i, int cellX, int cellY) {
+    float left = originX + cellX * cellSize;
+    float top = originY + cellY * cellSize;
+    int above = 0;
+    int below = 0;
+    for (int corner = 0; corner < 4; corner++) {
+      float cornerX = left + (corner & 1) * cellSize - startX[i];
+      float cornerY = top + (corner >> 1) * cellSize - startY[i];
+      float side = deltaX[i] * cornerY - deltaY[i] * cornerX;
+      if (side > 0) {
+        above++;
+      } else if (side < 0) {
+        below++;
+      }
+    }
+    return above < 4 && below < 4;
+  }
+  
+  /**
+   * Collects the walls of a level and bakes them into static geometry.
+   */
+  public static class StaticGeometryBuilder {
+    
+    float cellSize;
+    PhysicalObject object;
+    int category = 1;
+    
+    /** The ends of every segment, four values each. */
+    float[] coords = new float[64];
+    int count = 0;
+    
+    /**
+     * Creates a builder for geometry divided into cells of the given size.
+     */
+    public StaticGeometryBuilder(float cellSize) {
+      this.cellSize = cellSize;
+    }
+    
+    /**
+     * Sets the object handed to objects that hit a wall. Defaults to a
+     * plain PhysicalObject.
+     */
+    public StaticGeometryBuilder setObject(PhysicalObject object) {
+      this.object = object;
+      return this;
+    }
+    
+    /**
+     * Sets the layers the walls belong to. Objects only hit the walls if
+     * their mask includes the category. Defaults to the first layer.
+     */
+    public StaticGeometryBuilder setCategory(int category) {
+      this.category = category;
+      return this;
+    }
+    
+    /**
+     * Adds a wall from (x1, y1) to (x2, y2).
+     */
+    public StaticGeometryBuilder addSegment(float x1, float y1, float x2, float y2) {
+      if (count * 4 == coords.length) {
+        float[] grown = new float[coords.length * 2];
+        System.arraycopy(coords, 0, grown, 0, coords.length);
+        coords = grown;
+      }
+      coords[count * 4] = x1;
+      coords[count * 4 + 1] = y1;
+      coords[count * 4 + 2] = x2;
+      coords[count * 4 + 3] = y2;
+      count++;
+      return this;
+    }
+    
+    /**
+     * Adds a wall along every edge of a polygon centered at (x, y).
+     */
+    public StaticGeometryBuilder addPolygon(float x, float y, Polygon polygon) {
+      Vector2d[] points = polygon.points;
+      for (int i = 0; i < points.length; i++) {
+        Vector2d from = points[i];
+        Vector2d to = points[(i + 1) % points.length];
+        addSegment(x + from.x, y + from.y, x + to.x, y + to.y);
+      }
+      return this;
+    }
+    
+    public StaticGeometry build() {
+      return new StaticGeometry(this);
+    }
+  }
+}
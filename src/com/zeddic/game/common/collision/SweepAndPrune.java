@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.SimpleList;
+
+/**
+ * A {@link BroadPhase} that keeps the bounds of every object sorted by their
+ * left edge. Objects whose bounds overlap on the x axis are found by walking
+ * forward through the sorted list from each object until the left edges
+ * pass its right edge, then checked for overlap on the y axis.
+ * 
+ * Objects tend to move only a little between frames, so the list stays
+ * nearly sorted. An insertion sort is used to fix it up, which takes close
+ * to linear time on a nearly sorted list. Unlike {@link CollisionGrid}, the
+ * world doesn't need to be divided up ahead of time, so this works well for
+ * large, sparse worlds and objects of any size.
+ * 
+ * Bounds are boxes around each object's radius, stretched in the direction
+ * of the object's velocity so that objects about to collide are found.
+ * Stationary objects use their width and height instead.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public class SweepAndPrune implements BroadPhase {
+
+  private static final int INITIAL_CAPACITY = 64;
+  private static final int CAPACITY_GROWTH_RATE = 2;
+  
+  /** 
+   * How many milliseconds ahead of an object's velocity to include in its
+   * bounds. A little longer than a frame.
+   */
+  private static final float LOOKAHEAD_TIME = 50;
+  
+  /** Components sorted by the left edge of their bounds. */
+  private CollisionComponent[] components;
+  
+  //// BOUNDS OF EACH COMPONENT, AT THE SAME INDEX
+  private float[] minX;
+  private float[] maxX;
+  private float[] minY;
+  private float[] maxY;
+  
+  /** The number of components. */
+  private int count = 0;
+  
+  /**
+   * The widest bounds on the x axis. Queries start looking this far to the
+   * left of their own bounds so wide objects aren't missed.
+   */
+  private float maxWidth = 0;
+  
+  //// BOUNDS OF THE CURRENT QUERY
+  private float queryMinX;
+  private float queryMaxX;
+  private float queryMinY;
+  private float queryMaxY;
+  
+  public SweepAndPrune() {
+    this(INITIAL_CAPACITY);
+  }
+  
+  public SweepAndPrune(int initialCapacity) {
+    components = new CollisionComponent[initialCapacity];
+    minX = new float[initialCapacity];
+    maxX = new float[initialCapacity];
+    minY = new float[initialCapacity];
+    maxY = new float[initialCapacity];
+  }
+  
+  /**
+   * Returns the number of objects being tracked.
+   */
+  public int size() {
+    return count;
+  }
+  
+  public void addObject(CollisionComponent component) {
+    if (component.proxy != -1) {
+      return;
+    }
+    
+    if (count == components.length) {
+      grow();
+    }
+    
+    int index = count++;
+    components[index] = component;
+    component.proxy = index;
+    updateBounds(index);
+    sort(index);
+  }
+  
+  public void addStationaryObject(CollisionComponent component) {
+    addObject(component);
+  }
+  
+  public void removeObject(CollisionComponent component) {
+    int index = component.proxy;
+    if (index == -1) {
+      return;
+    }
+    
+    // Shift everything after down to keep the list sorted.
+    for (int i = index; i < count - 1; i++) {
+      move(i + 1, i);
+    }
+    count--;
+    components[count] = null;
+    component.proxy = -1;
+  }
+  
+  public void updatePosition(CollisionComponent component) {
+    int index = component.proxy;
+    if (index == -1) {
+      return;
+    }
+    updateBounds(index);
+    sort(index);
+  }
+  
+  public void getNearbyObjects(
+      CollisionComponent component,
+      SimpleList<PhysicalObject> nearby,
+      SimpleList<CollisionComponent> nearbyComponents) {
+    
+    int index = component.proxy;
+    if (index != -1) {
+      updatePosition(component);
+      index = component.proxy;
+      queryMinX = minX[index];
+      queryMaxX = maxX[index];
+      queryMinY = minY[index];
+      queryMaxY = maxY[index];
+    } else {
+      loadQueryBounds(component);
+    }
+    
+    query(component, nearby, nearbyComponents);
+  }
+  
+  public void getObjectsInRegion(
+      float minX,
+      float minY,
+      float maxX,
+      float maxY,
+      SimpleList<PhysicalObject> results) {
+    
+    queryMinX = minX;
+    queryMaxX = maxX;
+    queryMinY = minY;
+    queryMaxY = maxY;
+    query(null, results, null);
+  }
+  
+  /**
+   * Reports every object whose bounds come within the distance of the
+   * segment. Objects are sorted by their left edge rather than along the
+   * segment, so only those the segment reaches past the callback's point of
+   * interest are skipped.
+   */
+  public void castSegment(
+      float x1,
+      float y1,
+      float x2,
+      float y2,
+      float distance,
+      CastCallback callback) {
+    
+    float dX = x2 - x1;
+    float dY = y2 - y1;
+    float left = Math.min(x1, x2) - distance;
+    float right = Math.max(x1, x2) + distance;
+    float maxFraction = 1;
+    
+    int start = firstIndexAtOrAfter(left - maxWidth);
+    for (int i = start; i < count && minX[i] <= right; i++) {
+      CollisionComponent other = components[i];
+      if (!CollisionManager.canBeHit(other.type)) {
+        continue;
+      }
+      float entry = ShapeCast.segmentEntry(
+          minX[i], minY[i], maxX[i], maxY[i], x1, y1, dX, dY, distance);
+      if (entry <= maxFraction) {
+        maxFraction = callback.reportCandidate(other.object, other);
+      }
+    }
+  }
+  
+  public void findPairs(PairList pairs) {
+    
+    // Refresh all bounds, then restore the order with an insertion sort.
+    maxWidth = 0;
+    for (int i = 0; i < count; i++) {
+      updateBounds(i);
+    }
+    for (int i = 1; i < count; i++) {
+      sortDown(i);
+    }
+    
+    // Sweep: each object can only overlap objects that start before it ends.
+    for (int i = 0; i < count; i++) {
+      CollisionComponent a = components[i];
+      if (!a.object.active) {
+        continue;
+      }
+      
+      float right = maxX[i];
+      for (int j = i + 1; j < count && minX[j] <= right; j++) {
+        if (minY[j] > maxY[i] || maxY[j] < minY[i]) {
+          continue;
+        }
+        
+        CollisionComponent b = components[j];
+        if (!b.object.active || !CollisionManager.canCollide(a, b)) {
+          continue;
+        }
+        
+        if (CollisionManager.canHit(a.type) && CollisionManager.canBeHit(b.type)) {
+          pairs.add(a, b);
+        } else if (CollisionManager.canHit(b.type) && CollisionManager.canBeHit(a.type)) {
+          pairs.add(b, a);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Finds every object that can be hit whose bounds overlap the query
+   * bounds. Only objects whose left edge is within maxWidth of the
+   * query's left edge, and not past its right edge, can overlap, so binary
+   * searches narrow down where to look. If a filter is given, objects it
+   * can't collide with are skipped. Their components are also placed into
+   * resultComponents, if given.
+   */
+  private void query(
+      CollisionComponent filter,
+      SimpleList<PhysicalObject> results,
+      SimpleList<CollisionComponent> resultComponents) {
+    int start = firstIndexAtOrAfter(queryMinX - maxWidth);
+    for (int i = start; i < count && minX[i] <= queryMaxX; i++) {
+      if (maxX[i] < queryMinX || minY[i] > queryMaxY || maxY[i] < queryMinY) {
+        continue;
+      }
+      CollisionComponent other = components[i];
+      if (CollisionManager.canBeHit(other.type) &&
+          (filter == null || CollisionManager.canCollide(filter, other))) {
+        results.append(other.object);
+        if (resultComponents != null) {
+          resultComponents.append(other);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Returns the first index whose left edge is at or after the given value.
+   */
+  private int firstIndexAtOrAfter(float value) {
+    int low = 0;
+    int high = count;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (minX[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+  
+  /**
+   * Recalculates the bounds of the component at the given index.
+   */
+  private void updateBounds(int index) {
+    loadQueryBounds(components[index]);
+    minX[index] = queryMinX;
+    maxX[index] = queryMaxX;
+    minY[index] = queryMinY;
+    maxY[index] = queryMaxY;
+    maxWidth = Math.max(maxWidth, queryMaxX - queryMinX);
+  }
+  
+  /**
+   * Calculates the bounds of a component into the query bounds.
+   */
+  private void loadQueryBounds(CollisionComponent component) {
+    PhysicalObject object = component.object;
+    
+    if (component.type == CollisionManager.TYPE_STATIONARY) {
+      float halfWidth = object.bounds.shape.width / 2;
+      float halfHeight = object.bounds.shape.height / 2;
+      queryMinX = object.x - halfWidth;
+      queryMaxX = object.x + halfWidth;
+      queryMinY = object.y - halfHeight;
+      queryMaxY = object.y + halfHeight;
+      return;
+    }
+    
+    float radius = object.bounds.shape.radius;
+    float dX = object.velocity.x * LOOKAHEAD_TIME / PhysicalObject.TIME_SCALER;
+    float dY = object.velocity.y * LOOKAHEAD_TIME / PhysicalObject.TIME_SCALER;
+    queryMinX = object.x - radius + Math.min(0, dX);
+    queryMaxX = object.x + radius + Math.max(0, dX);
+    queryMinY = object.y - radius + Math.min(0, dY);
+    queryMaxY = object.y + radius + Math.max(0, dY);
+  }
+  
+  /**
+   * Moves the component at the given index left or right until the list is
+   * sorted again.
+   */
+  private void sort(int index) {
+    index = sortDown(index);
+    while (index < count - 1 && minX[index + 1] < minX[index]) {
+      swap(index, index + 1);
+      index++;
+    }
+  }
+  
+  /**
+   * Moves the component at the given index left until it is not before
+   * a component with a smaller left edge. Returns its new index.
+   */
+  private int sortDown(int index) {
+    while (index > 0 && minX[index - 1] > minX[index]) {
+      swap(index - 1, index);
+      index--;
+    }
+    return index;
+  }
+  
+  private void swap(int a, int b) {
+    CollisionComponent component = components[a];
+    float left = minX[a];
+    float right = maxX[a];
+    float top = minY[a];
+    float bottom = maxY[a];
+    
+    move(b, a);
+    
+    components[b] = component;
+    component.proxy = b;
+    minX[b] = left;
+    maxX[b] = right;
+    minY[b] = top;
+    maxY[b] = bottom;
+  }
+  
+  /**
+   * Copies the component at index from into index to.
+   */
+  private void move(int from, int to) {
+    components[to] = components[from];
+    components[to].proxy = to;
+    minX[to] = minX[from];
+    maxX[to] = maxX[from];
+    minY[to] = minY[from];
+    maxY[to] = maxY[from];
+  }
+  
+  private void grow() {
+    int newSize = components.length * CAPACITY_GROWTH_RATE;
+    
+    CollisionComponent[] newComponents = new CollisionComponent[newSize];
+    System.arraycopy(components, 0, newComponents, 0, count);
+    components = newComponents;
+    minX = grow(minX, newSize);
+    maxX = grow(maxX, newSize);
+    minY = grow(minY, newSize);
+    maxY = grow(maxY, newSize);
+  }
+  
+  private float[] grow(float[] values, int newSize) {
+    float[] newValues = new float[newSize];
+    System.arraycopy(values, 0, newValues, 0, count);
+    return newValues;
+  }
+}
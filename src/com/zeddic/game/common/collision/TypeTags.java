@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+
+/**
+ * Gives each type of object that spatial queries look for its own bit, so
+ * queries can filter objects by comparing ints rather than calling
+ * Class.isInstance() on every object they pass. Types should be registered
+ * once when a game starts:
+ * 
+ * <pre>
+ * public static final int ENEMY = TypeTags.register(Enemy.class);
+ * </pre>
+ * 
+ * An object's tags include the bit of every registered type it is an
+ * instance of. They are worked out once per class, and cached on each
+ * {@link CollisionComponent}, so only registering a new type causes any
+ * reflection.
+ * 
+ * @author baileys (Scott Bailey)
+ */
+public class TypeTags {
+
+  /** Matches objects of any type. */
+  public static final int ANY = 0;
+  
+  /** One type for each bit of an int. */
+  private static final int MAX_TYPES = 32;
+  
+  private static final Class<?>[] types = new Class<?>[MAX_TYPES];
+  private static int numTypes = 0;
+  
+  /** Changes whenever a type is registered, making cached tags stale. */
+  static int version = 0;
+  
+  //// THE TAGS OF EACH CLASS SEEN SO FAR
+  private static Class<?>[] classes = new Class<?>[16];
+  private static int[] classTags = new int[16];
+  private static int numClasses = 0;
+  
+  /**
+   * Registers a type of object and returns its tag. Registering the same
+   * type again returns the same tag.
+   */
+  public static int register(Class<?> type) {
+    for (int i = 0; i < numTypes; i++) {
+      if (types[i] == type) {
+        return 1 << i;
+      }
+    }
+    
+    if (numTypes == MAX_TYPES) {
+      throw new IllegalStateException("No more than " + MAX_TYPES + " types may be registered.");
+    }
+    
+    types[numTypes] = type;
+    numClasses = 0;
+    version++;
+    return 1 << numTypes++;
+  }
+  
+  /**
+   * Returns the tags of every registered type the object is an instance of.
+   */
+  public static int of(PhysicalObject object) {
+    Class<?> type = object.getClass();
+    for (int i = 0; i < numClasses; i++) {
+      if (classes[i] == type) {
+        return classTags[i];
+      }
+    }
+    
+    int tags = 0;
+    for (int i = 0; i < numTypes; i++) {
+      if (types[i].isAssignableFrom(type)) {
+        tags |= 1 << i;
+      }
+    }
+    
+    if (numClasses == classes.length) {
+      Class<?>[] newClasses = new Class<?>[numClasses * 2];
+      int[] newTags = new int[numClasses * 2];
+      System.arraycopy(classes, 0, newClasses, 0, numClasses);
+      System.arraycopy(classTags, 0, newTags, 0, numClasses);
+      classes = newClasses;
+      classTags = newTags;
+    }
+    classes[numClasses] = type;
+    classTags[numClasses] = tags;
+    numClasses++;
+    return tags;
+  }
+  
+  /**
+   * Returns the tags of a component's object, cached on the component. The
+   * component may be null.
+   */
+  static int of(PhysicalObject object, CollisionComponent component) {
+    if (component == null) {
+      return of(object);
+    }
+    if (component.tagsVersion != version) {
+      component.tags = of(object);
+      component.tagsVersion = version;
+    }
+    return component.tags;
+  }
+  
+  /**
+   * Returns true if an object with the given tags is wanted by a query for
+   * the given types.
+   */
+  static boolean matches(int tags, int types) {
+    return types == ANY || (tags & types) != 0;
+  }
+}
@@ -19,11 +19,12 @@ package com.zeddic.game.common.particle;
 import java.util.Random;
 
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.util.Log;
 
+import com.zeddic.game.common.FrameProfiler;
 import com.zeddic.game.common.PhysicalObject;
-import com.zeddic.game.common.util.ObjectPoolManager;
-import com.zeddic.game.common.util.ObjectPool.ObjectBuilder;
+import com.zeddic.game.common.util.Vector2d;
 
 /**
  * Spawns particles with particular properties to create animations. 
@@ -32,6 +33,14 @@ import com.zeddic.game.common.util.ObjectPool.ObjectBuilder;
  * wall. The emmitter handles the life of individual particles and 
  * inserting a sufficient amount of randomness into the spawn patterns.
  * 
+ * Particles are stored in slots leased from the shared {@link ParticleStore}.
+ * Plain {@link Particle} and {@link PixelParticle} particles are updated
+ * together in a single loop rather than as individual objects, and drawn in
+ * batches, one draw call per level of transparency. Any other particle class
+ * may change how particles behave, so each of its particles is kept as its
+ * own instance that is emitted, updated and drawn through its own methods,
+ * with its state copied into the store.
+ * 
  * Emitters may be build using a {@link EmitterBuilder}.
  * 
  * @author scott (scott@zeddic.com)
@@ -49,6 +58,24 @@ public class ParticleEmitter extends PhysicalObject {
   /** Spawns particles in a 360 degree circle around the particle emitter. */
   public static int MODE_OMNI = 1;
   
+  //// DRAW MODES
+  
+  /** Each particle is its own instance, which updates and draws itself. */
+  private static final int DRAW_OBJECTS = 0;
+  
+  /** Particles are drawn as a batch of line segments. */
+  private static final int DRAW_LINES = 1;
+  
+  /** Particles are drawn as a batch of points. */
+  private static final int DRAW_POINTS = 2;
+  
+  /** 
+   * Batched particles are grouped by their alpha shifted by this amount,
+   * giving 16 levels of transparency.
+   */
+  private static final int ALPHA_BUCKET_SHIFT = 4;
+  private static final int NUM_ALPHA_BUCKETS = 256 >> ALPHA_BUCKET_SHIFT;
+  
   //// EMITTER PROPERTIES
   
   /** How particles should be spawned. */
@@ -96,8 +123,42 @@ public class ParticleEmitter extends PhysicalObject {
   /** Creates randomness when jitter is requested. */
   private Random random;
   
-  /** A pool of particles that can be reused as needed .*/
-  ObjectPoolManager<Particle> poolManager;
+  /** Holds the state of all particles. */
+  ParticleStore store;
+  
+  /** The store slots of this emitter's live particles. */
+  int[] slots;
+  
+  /** The number of live particles. */
+  int slotCount;
+  
+  /**
+   * An instance of the particle class whose paint draws every batched
+   * particle.
+   */
+  private Particle template;
+  
+  /**
+   * When drawing particles as their own instances, the instance of each live
+   * particle, in the same order as the slots. Null otherwise.
+   */
+  private Particle[] particles;
+  
+  /** The time fraction of the last update, used to draw particle trails. */
+  private float lastTimeFraction;
+  
+  /** How particles should be drawn, based on the particle class. */
+  private int drawMode;
+  
+  //// REUSED OBJECTS BETWEEN FUNCTION CALLS TO SAVE MEMORY
+  /** A gravity force vector applied by the gravity well. */
+  private final Vector2d gravityVector = new Vector2d();
+  
+  /** The number of particles in each alpha bucket. */
+  private final int[] bucketCounts = new int[NUM_ALPHA_BUCKETS];
+  
+  /** Where the next particle in each alpha bucket is written in the batch. */
+  private final int[] bucketOffsets = new int[NUM_ALPHA_BUCKETS];
   
 
   //// PROPERTIES FOR EMITTED PARTICLES
@@ -163,39 +224,63 @@ public class ParticleEmitter extends PhysicalObject {
   }
   
   /**
-   * Sets up the life and object pool for the emitter.
+   * Sets up the life and particle buffer for the emitter.
    */
   public void init() {
     // Activate.
     reset();
     setEmitRate(emitRate);
     
-    // Create a pool of particles, each particle of the specified class.
-    // Don't set particle properties until they are actually emitted.
-    poolManager = new ObjectPoolManager<Particle>(
-        Particle.class,
-        maxParticles,
-        new ObjectBuilder<Particle>() {
-          @Override
-          public Particle get(int count) {
-            Particle particle = null;
-            try {
-              particle = pClass.newInstance();
-              particle.active = false;
-            } catch (IllegalAccessException e) {
-              Log.e(this.getClass().toString(), "Error creating particle", e);
-            } catch (InstantiationException e) {
-              Log.e(this.getClass().toString(), "Error creating particle", e);
-            }
-            return particle;
-          }
-        });
+    store = ParticleStore.get();
+    slots = new int[maxParticles];
+    slotCount = 0;
+    
+    // Create the particle whose paint draws all others. The basic particles
+    // only use the particle data for their paint, so it only needs to be
+    // handed over once.
+    template = createParticle();
+    
+    // Only the basic particles are known to draw a single line or point
+    // with their paint, so only they can be batched. Any others get an
+    // instance for each particle, created up front like an object pool.
+    if (template.getClass() == Particle.class) {
+      drawMode = DRAW_LINES;
+      template.onEmit(pData);
+    } else if (template.getClass() == PixelParticle.class) {
+      drawMode = DRAW_POINTS;
+      template.onEmit(pData);
+    } else {
+      drawMode = DRAW_OBJECTS;
+      particles = new Particle[maxParticles];
+      for (int k = 0; k < maxParticles; k++) {
+        particles[k] = createParticle();
+      }
+    }
+  }
+  
+  /**
+   * Creates an instance of the particle class, or a basic particle if it
+   * can't be created.
+   */
+  private Particle createParticle() {
+    try {
+      return pClass.newInstance();
+    } catch (IllegalAccessException e) {
+      Log.e(this.getClass().toString(), "Error creating particle", e);
+    } catch (InstantiationException e) {
+      Log.e(this.getClass().toString(), "Error creating particle", e);
+    }
+    return new Particle();
   }
   
   /**
-   * Resets the state of the emitter as if it had just been created.
+   * Resets the state of the emitter as if it had just been created. Any live
+   * particles are removed and their slots returned to the store.
    */
   public void reset() {
+    if (store != null) {
+      clearParticles();
+    }
     enable();
     life = 0;
     spawnCount = 0;
@@ -215,25 +300,22 @@ public class ParticleEmitter extends PhysicalObject {
    * Emits a new particle.
    */
   public boolean emmit() {
-    // Get a particle from the pool. Give up if we are 
+    // Lease a slot for the particle. Give up if we are 
     // out of particles.
-    Particle particle = poolManager.take();
-    if (particle == null)
+    if (slotCount == maxParticles)
+      return false;
+    int i = store.lease(this);
+    if (i == -1)
       return false;
+    store.ownerIndexes[i] = slotCount;
+    slots[slotCount++] = i;
     
     // Set all the particle properties
-    particle.enable();
-    particle.life = 0;
-    particle.maxLife = pLife;
-    particle.acceleration = pAcceleration;
-    particle.maxSpeed = pMaxSpeed;
-    particle.alpha = pAlpha;
-    particle.alphaRate = pAlphaRate;
-    particle.gravityWell = pGravityWell;
-    particle.gravityWellForce = pGravityWellForce;
-    particle.gravityWellMaxDistance = pGravityWellMaxDistance;
-    particle.gravityWellDespawnDistance = pGravityWellDespawnDistance;
-    particle.gravityWellCollide = pGravityWellCollide;
+    ParticleStore p = store;
+    p.life[i] = 0;
+    p.maxLife[i] = pLife;
+    p.alpha[i] = pAlpha;
+    p.alphaRate[i] = pAlphaRate;
     
     // Determine the direction the particle should be fired at.
     if (emitMode == MODE_DIRECTIONAL) {
@@ -243,31 +325,203 @@ public class ParticleEmitter extends PhysicalObject {
     }
     
     //  Offset the particles spawn distance as needed.
+    double radians = Math.toRadians(emitAngle);
     if (emitSpawnDistance > 0) {
-      double radians = Math.toRadians(emitAngle);
-      particle.x = x + emitSpawnDistance * (float) Math.cos(radians);
-      particle.y = y + emitSpawnDistance * (float) Math.sin(radians);
+      p.x[i] = x + emitSpawnDistance * (float) Math.cos(radians);
+      p.y[i] = y + emitSpawnDistance * (float) Math.sin(radians);
     } else {
-      particle.x = x;
-      particle.y = y;
+      p.x[i] = x;
+      p.y[i] = y;
     }
     
     // Determine the speed that the particle should be fired at.
     float emitSpeed = pSpeed + -emitSpeedJitter + random.nextFloat() * emitSpeedJitter * 2;
     
     // EMIT! GO GO GO!!!!
-    particle.setVelocityBySpeed(emitAngle, emitSpeed);
-    particle.onEmit(pData);
+    p.vx[i] = emitSpeed * (float) Math.cos(radians);
+    p.vy[i] = emitSpeed * (float) Math.sin(radians);
+    
+    if (particles != null) {
+      emitObject(particles[slotCount - 1], i, emitSpeed);
+    }
     
     return true;
   }
   
+  /**
+   * Sets up the instance of a particle just emitted into the given slot.
+   */
+  private void emitObject(Particle particle, int i, float emitSpeed) {
+    ParticleStore p = store;
+    particle.enable();
+    particle.life = 0;
+    particle.maxLife = pLife;
+    particle.acceleration = pAcceleration;
+    particle.maxSpeed = pMaxSpeed;
+    particle.alpha = pAlpha;
+    particle.alphaRate = pAlphaRate;
+    particle.gravityWell = pGravityWell;
+    particle.gravityWellForce = pGravityWellForce;
+    particle.gravityWellMaxDistance = pGravityWellMaxDistance;
+    particle.gravityWellDespawnDistance = pGravityWellDespawnDistance;
+    particle.gravityWellCollide = pGravityWellCollide;
+    particle.x = p.x[i];
+    particle.y = p.y[i];
+    particle.setVelocityBySpeed(emitAngle, emitSpeed);
+    particle.onEmit(pData);
+  }
+  
   /**
    * Draws all particles that have been spawned. The emitter itself
    * is not visible.
    */
   public void draw(Canvas canvas) {
-    poolManager.draw(canvas);
+    if (drawMode == DRAW_OBJECTS) {
+      for (int k = 0; k < slotCount; k++) {
+        particles[k].draw(canvas);
+      }
+    } else {
+      drawBatched(canvas);
+    }
+  }
+  
+  /**
+   * Draws all particles with one drawLines() or drawPoints() call per alpha
+   * bucket. Particles are first counted per bucket, then written into the
+   * batch so that each bucket's coordinates are contiguous. Lines are drawn
+   * from the particle's position to where it was a frame ago, matching
+   * {@link Particle#draw(Canvas)}.
+   */
+  private void drawBatched(Canvas canvas) {
+    ParticleStore p = store;
+    float[] batch = store.batch;
+    boolean lines = drawMode == DRAW_LINES;
+    int stride = lines ? 4 : 2;
+    
+    for (int b = 0; b < NUM_ALPHA_BUCKETS; b++) {
+      bucketCounts[b] = 0;
+    }
+    for (int k = 0; k < slotCount; k++) {
+      int bucket = getAlphaBucket(p.alpha[slots[k]]);
+      if (bucket != -1) {
+        bucketCounts[bucket]++;
+      }
+    }
+    
+    int offset = 0;
+    for (int b = 0; b < NUM_ALPHA_BUCKETS; b++) {
+      bucketOffsets[b] = offset;
+      offset += bucketCounts[b] * stride;
+    }
+    
+    for (int k = 0; k < slotCount; k++) {
+      int i = slots[k];
+      int bucket = getAlphaBucket(p.alpha[i]);
+      if (bucket == -1) {
+        continue;
+      }
+      
+      int index = bucketOffsets[bucket];
+      batch[index] = p.x[i];
+      batch[index + 1] = p.y[i];
+      if (lines) {
+        batch[index + 2] = p.x[i] - p.vx[i] * lastTimeFraction;
+        batch[index + 3] = p.y[i] - p.vy[i] * lastTimeFraction;
+      }
+      bucketOffsets[bucket] = index + stride;
+    }
+    
+    Paint paint = template.paint;
+    if (!lines) {
+      paint.setStrokeWidth(1);
+    }
+    
+    offset = 0;
+    for (int b = 0; b < NUM_ALPHA_BUCKETS; b++) {
+      if (bucketCounts[b] == 0) {
+        continue;
+      }
+      
+      // Draw with the most opaque alpha in the bucket so that fully
+      // opaque particles stay fully opaque.
+      paint.setAlpha(((b + 1) << ALPHA_BUCKET_SHIFT) - 1);
+      int length = bucketCounts[b] * stride;
+      if (lines) {
+        canvas.drawLines(batch, offset, length, paint);
+      } else {
+        canvas.drawPoints(batch, offset, length, paint);
+      }
+      offset += length;
+    }
+  }
+  
+  /**
+   * Returns the alpha bucket a particle should be drawn in, or -1 if it is
+   * completely transparent.
+   */
+  private static int getAlphaBucket(float alpha) {
+    int value = (int) alpha;
+    if (value <= 0) {
+      return -1;
+    }
+    return Math.min(value, 255) >> ALPHA_BUCKET_SHIFT;
+  }
+  
+  /**
+   * Returns the number of particles that are currently alive.
+   */
+  public int getParticleCount() {
+    return slotCount;
+  }
+  
+  /**
+   * Removes the particle at the given index of the slot list and returns its
+   * slot to the store.
+   */
+  private void removeParticle(int index) {
+    store.release(slots[index]);
+    onCulled(index);
+  }
+  
+  /**
+   * Removes the particle at the given index of the slot list by moving the
+   * last particle into its place. Called by the store when it takes the slot
+   * to give to another particle.
+   */
+  void onCulled(int index) {
+    int last = --slotCount;
+    if (index != last) {
+      slots[index] = slots[last];
+      store.ownerIndexes[slots[index]] = index;
+      
+      // Swap rather than copy so every instance stays in use.
+      if (particles != null) {
+        Particle particle = particles[index];
+        particles[index] = particles[last];
+        particles[last] = particle;
+      }
+    }
+  }
+  
+  /**
+   * Stops the emitter. Any live particles are removed and their slots
+   * returned to the store, so an emitter that is discarded doesn't keep
+   * holding part of the budget.
+   */
+  @Override
+  public void kill() {
+    super.kill();
+    clearParticles();
+  }
+  
+  /**
+   * Removes all particles, returning their slots to the store.
+   */
+  private void clearParticles() {
+    for (int k = 0; k < slotCount; k++) {
+      store.release(slots[k]);
+    }
+    slotCount = 0;
   }
   
   /**
@@ -305,18 +559,135 @@ public class ParticleEmitter extends PhysicalObject {
       emmitNeededParticles(time);
     } else {
       kill();
-      poolManager.reclaimPool();
     }
     
     // If we have a limited number of particles to supply, and all of them 
     // have been used, go ahead and kill the emitter.
     if (!emitCycleParticles &&
         spawnCount >= maxParticles &&
-        poolManager.pool.numLeft() == poolManager.pool.items.length) {
+        slotCount == 0) {
       kill();
     }
     
-    poolManager.update(time);
+    FrameProfiler.get().begin(FrameProfiler.PHASE_PARTICLES);
+    if (particles != null) {
+      updateObjects(time);
+    } else {
+      updateParticles(time);
+    }
+    FrameProfiler.get().end(FrameProfiler.PHASE_PARTICLES);
+  }
+  
+  /**
+   * Updates each particle instance with its own update method, removing any
+   * that have died, and copies their state into the store.
+   */
+  private void updateObjects(long time) {
+    ParticleStore p = store;
+    lastTimeFraction = (float) time / PhysicalObject.TIME_SCALER;
+    
+    int k = 0;
+    while (k < slotCount) {
+      Particle particle = particles[k];
+      particle.update(time);
+      if (!particle.active) {
+        removeParticle(k);
+        continue;
+      }
+      
+      int i = slots[k];
+      p.x[i] = particle.x;
+      p.y[i] = particle.y;
+      p.vx[i] = particle.velocity.x;
+      p.vy[i] = particle.velocity.y;
+      p.life[i] = particle.life;
+      p.alpha[i] = particle.alpha;
+      k++;
+    }
+  }
+  
+  /**
+   * Moves all live particles and removes any that have died. Matches the
+   * behavior of {@link Particle#update(long)}, including moving by the
+   * velocity both before and after gravity and speed limits are applied.
+   */
+  private void updateParticles(long time) {
+    ParticleStore p = store;
+    float timeFraction = (float) time / PhysicalObject.TIME_SCALER;
+    lastTimeFraction = timeFraction;
+    
+    int k = 0;
+    while (k < slotCount) {
+      int i = slots[k];
+      boolean dead = false;
+      
+      // Check to see if the particle should be dead.
+      p.life[i] += time;
+      if (p.life[i] > p.maxLife[i]) {
+        dead = true;
+      }
+      
+      // Update transparency.
+      p.alpha[i] += p.alphaRate[i];
+      
+      float vx = p.vx[i];
+      float vy = p.vy[i];
+      float startVx = vx;
+      float startVy = vy;
+      
+      // Update any gravity well effects
+      if (pGravityWell != null) {
+        float dX = pGravityWell.x - p.x[i];
+        float dY = pGravityWell.y - p.y[i];
+        float distanceSquared = dX * dX + dY * dY;
+        
+        if (pGravityWellMaxDistance == 0 ||
+            distanceSquared <= pGravityWellMaxDistance * pGravityWellMaxDistance) {
+          
+          // If we are within the gravity well's despawn point, kill the particle.
+          if (pGravityWellDespawnDistance > 0 &&
+              distanceSquared < pGravityWellDespawnDistance * pGravityWellDespawnDistance) {
+            dead = true;
+            if (pGravityWellCollide) {
+              template.x = p.x[i];
+              template.y = p.y[i];
+              pGravityWell.collide(template, gravityVector);
+            }
+          }
+          
+          gravityVector.x = dX;
+          gravityVector.y = dY;
+          gravityVector.normalize();
+          gravityVector.x *= pGravityWellForce / (distanceSquared / 50000);
+          gravityVector.y *= pGravityWellForce / (distanceSquared / 50000);
+          
+          vx += gravityVector.x * timeFraction;
+          vy += gravityVector.y * timeFraction;
+        }
+      }
+      
+      // Throttle back if needed. Maxspeed = 0 is special for no limit.
+      if (pMaxSpeed != 0) {
+        float speedSquared = vx * vx + vy * vy;
+        if (speedSquared > pMaxSpeed * pMaxSpeed) {
+          float speed = (float) Math.sqrt(speedSquared);
+          vx = vx / speed * pMaxSpeed;
+          vy = vy / speed * pMaxSpeed;
+        }
+      }
+      
+      if (dead) {
+        removeParticle(k);
+        continue;
+      }
+      
+      // Apply velocity.
+      p.vx[i] = vx;
+      p.vy[i] = vy;
+      p.x[i] += (startVx + vx) * timeFraction;
+      p.y[i] += (startVy + vy) * timeFraction;
+      k++;
+    }
   }
   
   /**
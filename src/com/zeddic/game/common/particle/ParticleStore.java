@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.particle;
+
+/**
+ * A single, fixed size store for the particles of every emitter. The store
+ * has a total budget of particles that emitters lease slots from as they
+ * emit, so the memory used by particles is bounded no matter how many
+ * emitters exist.
+ * 
+ * The state of the particle in slot i is described by x[i], y[i], vx[i],
+ * and so on. Each emitter keeps its own list of the slots it has leased.
+ * 
+ * When the budget is used up, a new lease takes the slot of an existing
+ * particle, preferring particles that are near the end of their life or
+ * nearly transparent. Only a small window of slots is looked at for each
+ * lease so the cost stays constant; the window moves through the store
+ * so every particle is eventually considered.
+ * 
+ * The store should be set up with {@link #setup(int)} before any emitters
+ * are built. Emitters keep using the store that existed when they were
+ * built.
+ * 
+ * @author scott@zeddic.com
+ */
+public class ParticleStore {
+
+  /** The number of particles that can be alive at once by default. */
+  public static final int DEFAULT_BUDGET = 2000;
+  
+  /** How many slots are compared when choosing a particle to cull. */
+  private static final int CULL_WINDOW = 16;
+  
+  private static ParticleStore singleton = new ParticleStore(DEFAULT_BUDGET);
+  
+  /** Position in the game world. */
+  public final float[] x;
+  public final float[] y;
+  
+  /** Speed + direction of movement. */
+  public final float[] vx;
+  public final float[] vy;
+  
+  /** The current life of the particle in milliseconds. */
+  public final float[] life;
+  
+  /** How many milliseconds the particle should be rendered for. */
+  public final float[] maxLife;
+  
+  /** The alpha visibility of the particle. */
+  public final float[] alpha;
+  
+  /** The rate at which the alpha transparency should change. */
+  public final float[] alphaRate;
+  
+  /** The emitter that has leased each slot, or null if the slot is free. */
+  private final ParticleEmitter[] owners;
+  
+  /** Where each slot is stored in its owner's list of slots. */
+  final int[] ownerIndexes;
+  
+  /** 
+   * Space for emitters to write line or point coordinates into while
+   * drawing. Shared since emitters are drawn one at a time.
+   */
+  final float[] batch;
+  
+  /** A stack of slots that are not leased. */
+  private final int[] free;
+  private int freeCount;
+  
+  /** The first slot of the next window to look at when culling. */
+  private int cullCursor = 0;
+  
+  /** How many particles have been culled to make room for others. */
+  private int culled = 0;
+  
+  /**
+   * Creates a new store that can hold up to the given number of particles.
+   */
+  public ParticleStore(int budget) {
+    x = new float[budget];
+    y = new float[budget];
+    vx = new float[budget];
+    vy = new float[budget];
+    life = new float[budget];
+    maxLife = new float[budget];
+    alpha = new float[budget];
+    alphaRate = new float[budget];
+    owners = new ParticleEmitter[budget];
+    ownerIndexes = new int[budget];
+    batch = new float[budget * 4];
+    
+    free = new int[budget];
+    freeCount = budget;
+    for (int i = 0; i < budget; i++) {
+      free[i] = budget - i - 1;
+    }
+  }
+  
+  /**
+   * Returns the total number of particles that can be alive at once.
+   */
+  public int getBudget() {
+    return x.length;
+  }
+  
+  /**
+   * Returns how many slots are currently leased.
+   */
+  public int getUsed() {
+    return x.length - freeCount;
+  }
+  
+  /**
+   * Returns how many particles have been culled to make room for new ones.
+   */
+  public int getCulledCount() {
+    return culled;
+  }
+  
+  /**
+   * Leases a slot to an emitter, culling another particle if there are no
+   * free slots. The emitter must record where it keeps the slot in its
+   * slot list in {@link #ownerIndexes}. The values in the slot are left
+   * over from whatever used it last and should all be set by the caller.
+   * Returns -1 if the store has no slots at all.
+   */
+  int lease(ParticleEmitter emitter) {
+    int slot;
+    if (freeCount > 0) {
+      slot = free[--freeCount];
+    } else {
+      slot = cull();
+      if (slot == -1) {
+        return -1;
+      }
+    }
+    
+    owners[slot] = emitter;
+    return slot;
+  }
+  
+  /**
+   * Returns a slot to the store.
+   */
+  void release(int slot) {
+    owners[slot] = null;
+    free[freeCount++] = slot;
+  }
+  
+  /**
+   * Takes the slot of the particle in the next window that is furthest
+   * through its life or most transparent, removing it from its emitter.
+   */
+  private int cull() {
+    int budget = x.length;
+    if (budget == 0) {
+      return -1;
+    }
+    
+    int victim = -1;
+    float worst = -Float.MAX_VALUE;
+    int window = Math.min(CULL_WINDOW, budget);
+    for (int n = 0; n < window; n++) {
+      int slot = (cullCursor + n) % budget;
+      float priority = getCullPriority(slot);
+      if (priority > worst) {
+        worst = priority;
+        victim = slot;
+      }
+    }
+    cullCursor = (cullCursor + window) % budget;
+    
+    owners[victim].onCulled(ownerIndexes[victim]);
+    owners[victim] = null;
+    culled++;
+    return victim;
+  }
+  
+  /**
+   * Returns how willing we are to cull a particle. Both the fraction of
+   * its life used and how transparent it is add to the priority.
+   */
+  private float getCullPriority(int slot) {
+    float age = maxLife[slot] > 0 ? life[slot] / maxLife[slot] : 1;
+    float transparency = 1 - alpha[slot] / 255;
+    return age + transparency;
+  }
+  
+  /**
+   * Replaces the shared store with one of the given budget. Emitters built
+   * after this call will use the new store.
+   */
+  public static ParticleStore setup(int budget) {
+    singleton = new ParticleStore(budget);
+    return singleton;
+  }
+  
+  public static ParticleStore get() {
+    return singleton;
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.util;
+
+import android.graphics.Path;
+import android.graphics.Path.Direction;
+
+/**
+ * A box that stays aligned with the x and y axes, centered on its object.
+ * Overlaps with other boxes and circles are found directly, without the
+ * separating axis theorem, which makes it a cheap choice for walls and
+ * other rectangular objects that don't turn.
+ */
+public class Aabb extends Shape {
+  
+  public float halfWidth;
+  public float halfHeight;
+  
+  /**
+   * Creates a new box with a given width and height.
+   */
+  public Aabb(float width, float height) {
+    super(AABB);
+    setSize(width, height);
+    buildPath();
+  }
+  
+  private void setSize(float width, float height) {
+    this.width = width;
+    this.height = height;
+    halfWidth = width / 2;
+    halfHeight = height / 2;
+    radius = (float) Math.sqrt(halfWidth * halfWidth + halfHeight * halfHeight);
+  }
+  
+  /**
+   * Scales the box. The box always stays aligned with the axes, so the
+   * rotation is ignored.
+   */
+  @Override
+  public void transform(float rotation, float scale, Shape otherShape) {
+    
+    if (otherShape == null)
+      return;
+    
+    if (otherShape.kind != AABB)
+      return;
+    
+    Aabb other = (Aabb) otherShape;
+    float newWidth = width * scale;
+    float newHeight = height * scale;
+    if (newWidth != other.width || newHeight != other.height) {
+      other.setSize(newWidth, newHeight);
+    }
+  }
+  
+  @Override
+  public Shape copy() {
+    return new Aabb(width, height);
+  }
+  
+  @Override
+  public void buildPath() {
+    path = new Path();
+    path.addRect(-halfWidth, -halfHeight, halfWidth, halfHeight, Direction.CW);
+  }
+  
+  @Override
+  public void projectOnAxis(
+      float xOffset,
+      float yOffset,
+      Vector2d axis,
+      Span span) {
+    
+    // The corner furthest along the axis sets how far the box reaches.
+    float dotProduct = axis.x * xOffset + axis.y * yOffset;
+    float reach = Math.abs(axis.x) * halfWidth + Math.abs(axis.y) * halfHeight;
+    span.max = dotProduct + reach;
+    span.min = dotProduct - reach;
+  }
+}
@@ -18,15 +18,17 @@ package com.zeddic.game.common.util;
 
 /**
  * Represents a bounding box surrounding some object. The bounds of
- * an object are represented by some shape, such as a Polygon or 
- * a Circle.
+ * an object are represented by some shape, such as a Polygon, a Circle,
+ * an Aabb or a Capsule.
  */
 public class Bounds {
   
-  public static final int POLYGON = 1;
-  public static final int CIRCLE = 1;
+  public static final int POLYGON = Shape.POLYGON;
+  public static final int CIRCLE = Shape.CIRCLE;
+  public static final int AABB = Shape.AABB;
+  public static final int CAPSULE = Shape.CAPSULE;
   
-  /** The shape of the bounds. */
+  /** The kind of shape of the bounds. See {@link Shape#kind}. */
   public int type;
   
   /**
@@ -43,11 +45,7 @@ public class Bounds {
   public Shape shape;
   
   public Bounds(Shape shape) {
-    if (shape instanceof Circle) {
-      type = CIRCLE;
-    } else {
-      type = POLYGON;
-    }
+    type = shape.kind;
     this.raw = shape;
     this.shape = shape.copy();
   }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zeddic.game.common.util;
+
+import android.graphics.Path;
+import android.graphics.Path.Direction;
+import android.util.FloatMath;
+
+/**
+ * A line with rounded ends, centered on its object: every point within
+ * capRadius of the line is inside the capsule. Suits long, thin objects
+ * such as bullets and beams, whose overlaps with circles and other
+ * capsules are found directly from the distance between their lines.
+ *
+ * Unrotated, the line lies along the x axis.
+ */
+public class Capsule extends Shape {
+  
+  /** Half the length of the line between the centers of the ends. */
+  public float halfLength;
+  
+  /** The radius of the rounded ends, and so the capsule's thickness. */
+  public float capRadius;
+  
+  //// THE UNIT LENGTH DIRECTION OF THE LINE
+  public float directionX = 1;
+  public float directionY = 0;
+  
+  /**
+   * Creates a new capsule whose line is the given length, not counting
+   * the rounded ends.
+   */
+  public Capsule(float length, float capRadius) {
+    super(CAPSULE);
+    this.halfLength = length / 2;
+    this.capRadius = capRadius;
+    buildSize();
+    buildPath();
+  }
+  
+  /**
+   * Updates the width, height and radius to fit the line's length and
+   * direction.
+   */
+  private void buildSize() {
+    radius = halfLength + capRadius;
+    width = 2 * (Math.abs(directionX) * halfLength + capRadius);
+    height = 2 * (Math.abs(directionY) * halfLength + capRadius);
+  }
+  
+  @Override
+  public void transform(float rotation, float scale, Shape otherShape) {
+    
+    if (otherShape == null)
+      return;
+    
+    if (otherShape.kind != CAPSULE)
+      return;
+    
+    Capsule other = (Capsule) otherShape;
+    float rotationRadians = (float) Math.toRadians((double) rotation);
+    float cosRotation = FloatMath.cos(rotationRadians);
+    float sinRotation = FloatMath.sin(rotationRadians);
+    other.directionX = cosRotation * directionX - sinRotation * directionY;
+    other.directionY = sinRotation * directionX + cosRotation * directionY;
+    other.halfLength = halfLength * scale;
+    other.capRadius = capRadius * scale;
+    other.buildSize();
+  }
+  
+  @Override
+  public Shape copy() {
+    Capsule copy = new Capsule(halfLength * 2, capRadius);
+    copy.directionX = directionX;
+    copy.directionY = directionY;
+    copy.buildSize();
+    copy.buildPath();
+    return copy;
+  }
+  
+  @Override
+  public void buildPath() {
+    float endX = directionX * halfLength;
+    float endY = directionY * halfLength;
+    float sideX = -directionY * capRadius;
+    float sideY = directionX * capRadius;
+    
+    path = new Path();
+    path.moveTo(-endX + sideX, -endY + sideY);
+    path.lineTo(endX + sideX, endY + sideY);
+    path.lineTo(endX - sideX, endY - sideY);
+    path.lineTo(-endX - sideX, -endY - sideY);
+    path.close();
+    path.addCircle(-endX, -endY, capRadius, Direction.CCW);
+    path.addCircle(endX, endY, capRadius, Direction.CCW);
+  }
+  
+  @Override
+  public void projectOnAxis(
+      float xOffset,
+      float yOffset,
+      Vector2d axis,
+      Span span) {
+    
+    // The line projects to a span around the midpoint, which the rounded
+    // ends widen by their radius.
+    float dotProduct = axis.x * xOffset + axis.y * yOffset;
+    float reach = Math.abs(axis.x * directionX + axis.y * directionY) * halfLength
+        + capRadius;
+    span.max = dotProduct + reach;
+    span.min = dotProduct - reach;
+  }
+}
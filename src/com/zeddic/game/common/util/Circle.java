@@ -30,6 +30,7 @@ public class Circle extends Shape {
    * Creates a new circle with a given radius.
    */
   public Circle(float radius) {
+    super(CIRCLE);
     this.radius = radius;
     this.diameter = radius * 2;
     this.width = diameter;
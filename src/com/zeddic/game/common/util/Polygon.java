@@ -24,13 +24,33 @@ import android.util.FloatMath;
 
 public class Polygon extends Shape {
 
+  /**
+   * Parallel edges are no closer than this to having a cross product of 0,
+   * once made unit length.
+   */
+  private static final float PARALLEL_TOLERANCE = 0.0001f;
+  
   public Vector2d[] edges;
   public Vector2d[] points;
   
+  /**
+   * The unit length normals of the edges used by the separating axis
+   * theorem, with only one kept for each set of parallel edges. Only the
+   * first numAxes are in use. Kept up to date with the edges.
+   */
+  public Vector2d[] axes;
+  public int numAxes;
+  
   protected Polygon(Vector2d[] points) {
+    super(POLYGON);
     this.points = points;
     edges = new Vector2d[points.length];
+    axes = new Vector2d[points.length];
+    for (int i = 0; i < axes.length; i++) {
+      axes[i] = new Vector2d();
+    }
     buildEdges();
+    buildAxes();
     buildPath();
     buildWidthHeight();
   }
@@ -88,6 +108,40 @@ public class Polygon extends Shape {
       edge.y = point.y - prev.y;
       prev = point;
     }
+    buildAxes();
+  }
+  
+  /**
+   * Rebuilds the axes from the edges. Edges of no length, or parallel to an
+   * earlier edge, such as the opposite sides of a rectangle, don't add an
+   * axis.
+   */
+  public void buildAxes() {
+    numAxes = 0;
+    Vector2d edge;
+    Vector2d axis;
+    for (int i = 0; i < edges.length; i++) {
+      edge = edges[i];
+      if (edge.x == 0 && edge.y == 0) {
+        continue;
+      }
+      axis = axes[numAxes];
+      axis.x = -edge.y;
+      axis.y = edge.x;
+      axis.normalize();
+      
+      boolean parallel = false;
+      for (int j = 0; j < numAxes; j++) {
+        float cross = axes[j].x * axis.y - axes[j].y * axis.x;
+        if (cross < PARALLEL_TOLERANCE && cross > -PARALLEL_TOLERANCE) {
+          parallel = true;
+          break;
+        }
+      }
+      if (!parallel) {
+        numAxes++;
+      }
+    }
   }
   
   @Override
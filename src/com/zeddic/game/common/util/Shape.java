@@ -23,11 +23,44 @@ import android.graphics.Path;
  */
 public class Shape {
 
+  // The kinds of shape. Collision checks use these to pick a routine for
+  // each pair of shapes without checking their classes.
+  public static final int CIRCLE = 0;
+  public static final int POLYGON = 1;
+  public static final int AABB = 2;
+  public static final int CAPSULE = 3;
+  
+  /** How many kinds of shape there are. */
+  public static final int NUM_KINDS = 4;
+  
+  /**
+   * Any other kind of shape. Collision checks use the separating axis
+   * theorem for it, as they do for any kind without a routine of its own.
+   */
+  public static final int OTHER = -1;
+  
+  /** The kind of shape, set when it is created. */
+  public final int kind;
+  
   public float width = 0;
   public float height = 0;
   public float radius = 0; 
   public Path path;
   
+  /**
+   * Creates a shape of another kind. See {@link #OTHER}.
+   */
+  public Shape() {
+    this(OTHER);
+  }
+  
+  /**
+   * Creates a shape of the given kind.
+   */
+  protected Shape(int kind) {
+    this.kind = kind;
+  }
+  
   /**
    * Transforms the shape by rotating it and scaling it. The scaled shape
    * is stored in the parameter "other". If other is null, a new copy is 
@@ -64,29 +64,68 @@ public class SimpleList<T> {
     size++;
   }
   
+  /**
+   * Adds a new object to the end of the list without checking whether it is
+   * already in the list.
+   */
+  public void append(T object) {
+    if (size == items.length) {
+      grow();
+    }
+    
+    items[size] = object;
+    size++;
+  }
+  
   public boolean contains(T object) {
+    return indexOf(object) != -1;
+  }
+  
+  /**
+   * Returns the index of the object in the list, or -1 if it is not in the
+   * list.
+   */
+  public int indexOf(T object) {
     for (int i = 0 ; i < size ; i++) {
       if (items[i] == object) {
-        return true;
+        return i;
       }
     }
-    return false;
+    return -1;
   }
   
   /**
    * Removes an object from the grid spot.
    */
   public boolean remove(T object) {
-    for (int i = 0 ; i < size ; i++) {
-      if (items[i] == object) {
-        for ( int j = i ; j < size - 1 ; j++) {
-          items[j] = items[j + 1];
-        }
-        size--;
-        return true;
-      }
+    int i = indexOf(object);
+    if (i == -1) {
+      return false;
     }
-    return false;
+    removeIndex(i);
+    return true;
+  }
+  
+  /**
+   * Removes the object at the given index, shifting later objects down to
+   * fill the gap.
+   */
+  public void removeIndex(int index) {
+    for ( int j = index ; j < size - 1 ; j++) {
+      items[j] = items[j + 1];
+    }
+    size--;
+    items[size] = null;
+  }
+  
+  /**
+   * Removes the object at the given index by moving the last object into
+   * its place. Faster than {@link #removeIndex}, but changes the order.
+   */
+  public void swapRemove(int index) {
+    size--;
+    items[index] = items[size];
+    items[size] = null;
   }
   
   /**
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2010 Geo Siege Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zeddic.game.common.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Passes data from a single writing thread to a single reading thread without
+ * locks. Three buffers are rotated: one owned by the writer, one owned by the
+ * reader, and one holding the latest published data. The writer fills its
+ * buffer and publishes it, the reader picks up whatever was published most
+ * recently. Neither side ever waits on the other and no objects are
+ * allocated after construction.
+ * 
+ * <p>Example:
+ * <code>
+ * // Writing thread.
+ * Snapshot snapshot = buffer.getWriteBuffer();
+ * snapshot.fill(...);
+ * buffer.publish();
+ * 
+ * // Reading thread.
+ * Snapshot latest = buffer.getReadBuffer();
+ * </code>
+ * 
+ * @author scott@zeddic.com (Scott Bailey)
+ */
+public class TripleBuffer<T> {
+  
+  private static final int INDEX_MASK = 3;
+  
+  /** Set on the shared index when it holds data the reader hasn't seen. */
+  private static final int FRESH = 4;
+  
+  private final Object[] buffers;
+  
+  /** Index of the buffer shared between the threads, plus the FRESH flag. */
+  private final AtomicInteger shared;
+  
+  /** Index of the buffer owned by the writer. Only touched by the writer. */
+  private int writeIndex = 0;
+  
+  /** Index of the buffer owned by the reader. Only touched by the reader. */
+  private int readIndex = 1;
+  
+  /**
+   * Creates a new triple buffer rotating between the three given instances.
+   */
+  public TripleBuffer(T first, T second, T third) {
+    buffers = new Object[] {first, second, third};
+    shared = new AtomicInteger(2);
+  }
+  
+  /**
+   * Returns the buffer that the writer may currently fill. 
+   */
+  @SuppressWarnings("unchecked")
+  public T getWriteBuffer() {
+    return (T) buffers[writeIndex];
+  }
+  
+  /**
+   * Makes the current write buffer available to the reader and hands the
+   * writer a new buffer to fill. Note that the new write buffer may contain
+   * stale data from a previous publish.
+   */
+  public void publish() {
+    int previous = shared.getAndSet(writeIndex | FRESH);
+    writeIndex = previous & INDEX_MASK;
+  }
+  
+  /**
+   * Returns true if data has been published since the reader last
+   * obtained a buffer.
+   */
+  public boolean hasUpdate() {
+    return (shared.get() & FRESH) != 0;
+  }
+  
+  /**
+   * Returns the most recently published buffer. If nothing new has been
+   * published since the last call, the same buffer is returned again.
+   */
+  @SuppressWarnings("unchecked")
+  public T getReadBuffer() {
+    if ((shared.get() & FRESH) != 0) {
+      int previous = shared.getAndSet(readIndex);
+      readIndex = previous & INDEX_MASK;
+    }
+    return (T) buffers[readIndex];
+  }
+}
@@ -0,0 +1,84 @@
+package com.zeddic.game.common;
+
+import junit.framework.TestCase;
+
+public class FrameProfilerTest extends TestCase {
+
+  private static final int CAPACITY = 10;
+  
+  FrameProfiler profiler;
+  
+  @Override
+  public void setUp() {
+    profiler = new FrameProfiler(CAPACITY);
+    profiler.setEnabled(true);
+  }
+  
+  public void testDisabledRecordsNothing() {
+    profiler.setEnabled(false);
+    profiler.beginFrame();
+    profiler.endFrame();
+    assertEquals(0, profiler.getFrameCount());
+    assertEquals(0, profiler.getFramePercentile(0.5f));
+  }
+  
+  public void testRingBufferWraps() {
+    for (int i = 0; i < CAPACITY * 2 + 3; i++) {
+      profiler.beginFrame();
+      profiler.endFrame();
+    }
+    assertEquals(CAPACITY, profiler.getFrameCount());
+  }
+  
+  public void testEnablingClearsWhenTheNextFrameBegins() {
+    for (int i = 0; i < 3; i++) {
+      profiler.beginFrame();
+      profiler.endFrame();
+    }
+    
+    // Turned back on while the recording thread is in the middle of a frame.
+    profiler.beginFrame();
+    profiler.setEnabled(false);
+    profiler.setEnabled(true);
+    assertEquals(3, profiler.getFrameCount());
+    profiler.endFrame();
+    assertEquals("The unfinished frame should be dropped.", 3, profiler.getFrameCount());
+    
+    profiler.beginFrame();
+    profiler.endFrame();
+    assertEquals(1, profiler.getFrameCount());
+  }
+  
+  public void testPhasesAreSummedWithinAFrame() throws InterruptedException {
+    profiler.beginFrame();
+    profiler.begin(FrameProfiler.PHASE_COLLISION);
+    Thread.sleep(2);
+    profiler.end(FrameProfiler.PHASE_COLLISION);
+    profiler.begin(FrameProfiler.PHASE_COLLISION);
+    Thread.sleep(2);
+    profiler.end(FrameProfiler.PHASE_COLLISION);
+    profiler.endFrame();
+    
+    long collision = profiler.getPhasePercentile(FrameProfiler.PHASE_COLLISION, 1);
+    assertTrue(collision >= 4000000);
+    assertTrue(profiler.getWorstFrame() >= collision);
+    assertEquals(0, profiler.getPhasePercentile(FrameProfiler.PHASE_PARTICLES, 1));
+  }
+  
+  public void testPercentiles() throws InterruptedException {
+    // One slow frame followed by several quick ones.
+    profiler.beginFrame();
+    Thread.sleep(20);
+    profiler.endFrame();
+    for (int i = 0; i < CAPACITY - 1; i++) {
+      profiler.beginFrame();
+      profiler.endFrame();
+    }
+    
+    long median = profiler.getFramePercentile(0.5f);
+    long worst = profiler.getFramePercentile(1);
+    assertTrue(median < 20000000);
+    assertTrue(worst >= 20000000);
+    assertEquals(worst, profiler.getWorstFrame());
+  }
+}
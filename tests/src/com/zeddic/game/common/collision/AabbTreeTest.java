@@ -0,0 +1,155 @@
+package com.zeddic.game.common.collision;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.SimpleList;
+
+public class AabbTreeTest extends TestCase {
+
+  AabbTree tree;
+  PairList pairs;
+  SimpleList<PhysicalObject> results;
+  
+  @Override
+  public void setUp() {
+    CollisionManager.setup(1000, 1000);
+    tree = new AabbTree(4);
+    pairs = new PairList();
+    results = new SimpleList<PhysicalObject>(PhysicalObject.class);
+  }
+  
+  public void testEmpty() {
+    assertEquals(-1, tree.getHeight());
+    tree.getObjectsInRegion(0, 0, 1000, 1000, results);
+    assertEquals(0, results.size);
+    tree.findPairs(pairs);
+    assertEquals(0, pairs.size);
+  }
+  
+  public void testRegionQueryFindsEverythingOverlapping() {
+    Random random = new Random(7);
+    CollisionComponent[] components = new CollisionComponent[200];
+    for (int i = 0; i < components.length; i++) {
+      components[i] = add(random.nextFloat() * 1000, random.nextFloat() * 1000,
+          2 + random.nextFloat() * 30, CollisionManager.TYPE_HIT_RECEIVE);
+    }
+    
+    for (int q = 0; q < 50; q++) {
+      float left = random.nextFloat() * 900;
+      float top = random.nextFloat() * 900;
+      float right = left + random.nextFloat() * 100;
+      float bottom = top + random.nextFloat() * 100;
+      
+      results.clear();
+      tree.getObjectsInRegion(left, top, right, bottom, results);
+      
+      for (int i = 0; i < components.length; i++) {
+        PhysicalObject object = components[i].object;
+        float radius = object.bounds.shape.radius;
+        boolean overlaps = object.x - radius <= right && object.x + radius >= left &&
+            object.y - radius <= bottom && object.y + radius >= top;
+        if (overlaps) {
+          assertTrue("Missing object " + i + " in query " + q, results.contains(object));
+        }
+      }
+    }
+  }
+  
+  public void testStaysBalanced() {
+    // Objects added in order are the worst case for an unbalanced tree.
+    for (int i = 0; i < 256; i++) {
+      add(i * 20, 0, 5, CollisionManager.TYPE_HIT_RECEIVE);
+    }
+    assertEquals(511, tree.getNodeCount());
+    assertTrue("Tree too tall: " + tree.getHeight(), tree.getHeight() <= 16);
+  }
+  
+  public void testMoveAndRemove() {
+    CollisionComponent a = add(100, 100, 5, CollisionManager.TYPE_HIT_RECEIVE);
+    add(500, 500, 5, CollisionManager.TYPE_HIT_RECEIVE);
+    
+    a.object.x = 800;
+    tree.updatePosition(a);
+    
+    tree.getObjectsInRegion(90, 90, 110, 110, results);
+    assertEquals("Object should have left its old spot.", 0, results.size);
+    tree.getObjectsInRegion(790, 90, 810, 110, results);
+    assertEquals(1, results.size);
+    assertEquals(a.object, results.items[0]);
+    
+    tree.removeObject(a);
+    assertEquals(-1, a.proxy);
+    assertEquals(1, tree.getNodeCount());
+    results.clear();
+    tree.getObjectsInRegion(790, 90, 810, 110, results);
+    assertEquals(0, results.size);
+  }
+  
+  public void testRay() {
+    CollisionComponent a = add(100, 100, 5, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent b = add(200, 100, 5, CollisionManager.TYPE_RECEIVE_ONLY);
+    add(200, 300, 5, CollisionManager.TYPE_HIT_RECEIVE);
+    add(150, 100, 5, CollisionManager.TYPE_HIT_ONLY);
+    
+    tree.getObjectsOnRay(0, 100, 300, 100, results);
+    assertEquals(2, results.size);
+    assertTrue(results.contains(a.object));
+    assertTrue(results.contains(b.object));
+    
+    results.clear();
+    tree.getObjectsOnRay(0, 0, 50, 50, results);
+    assertEquals("Ray stops short of the object.", 0, results.size);
+  }
+  
+  public void testFindPairs() {
+    CollisionComponent a = add(0, 0, 5, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent b = add(8, 0, 5, CollisionManager.TYPE_HIT_RECEIVE);
+    add(100, 0, 5, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent bullet = add(-8, 0, 1, CollisionManager.TYPE_HIT_ONLY);
+    
+    CollisionComponent wall = new CollisionComponent(
+        new PhysicalObject(0, 300), CollisionManager.TYPE_STATIONARY);
+    wall.object.bounds.shape.width = 1000;
+    wall.object.bounds.shape.height = 10;
+    tree.addStationaryObject(wall);
+    CollisionComponent c = add(450, 300, 5, CollisionManager.TYPE_HIT_RECEIVE);
+    
+    tree.findPairs(pairs);
+    assertEquals(3, pairs.size);
+    assertTrue(hasPair(a, b));
+    assertTrue(hasPair(bullet, a));
+    assertTrue(hasPair(c, wall));
+  }
+  
+  public void testFastMoverNearEdgeOfFatBox() {
+    CollisionComponent mover = add(0, 0, 5, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent target = add(40, 0, 5, CollisionManager.TYPE_HIT_RECEIVE);
+    
+    // Still inside its fat box, but about to travel 50 units into the target.
+    mover.object.x = 2;
+    mover.object.setVelocity(200, 0);
+    tree.updatePosition(mover);
+    
+    tree.findPairs(pairs);
+    assertTrue(hasPair(mover, target));
+  }
+  
+  private boolean hasPair(CollisionComponent a, CollisionComponent b) {
+    for (int i = 0; i < pairs.size; i++) {
+      if ((pairs.first[i] == a && pairs.second[i] == b) ||
+          (pairs.first[i] == b && pairs.second[i] == a)) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  private CollisionComponent add(float x, float y, float radius, int type) {
+    CollisionComponent component = CollisionTestUtil.circle(x, y, radius, type);
+    tree.addObject(component);
+    return component;
+  }
+}
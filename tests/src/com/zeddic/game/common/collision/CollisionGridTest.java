@@ -7,6 +7,9 @@ import com.zeddic.game.common.collision.CollisionComponent;
 import com.zeddic.game.common.collision.CollisionGrid;
 import com.zeddic.game.common.collision.CollisionManager;
 import com.zeddic.game.common.collision.GridSpot;
+import com.zeddic.game.common.util.Bounds;
+import com.zeddic.game.common.util.Circle;
+import com.zeddic.game.common.util.SimpleList;
 
 public class CollisionGridTest extends TestCase {
 
@@ -110,10 +113,12 @@ public class CollisionGridTest extends TestCase {
     grid.addObject(component2);
     grid.addObject(component3);
     
+    // The third object hangs over into the spot of the first two.
     GridSpot spot = grid.getObjectsAtWorldPosition(75, 75);
-    assertEquals(2, spot.items.size);
+    assertEquals(3, spot.items.size);
     assertEquals(object1, spot.items.items[0]);
     assertEquals(object2, spot.items.items[1]);
+    assertEquals(object3, spot.items.items[2]);
     
     spot = grid.getObjectsAtWorldPosition(101, 101);
     assertEquals(1, spot.items.size);
@@ -151,21 +156,22 @@ public class CollisionGridTest extends TestCase {
     
     // Get objects around component4
     GridSpot[] nearby = new GridSpot[9];
-    grid.getNearbyGridSpots(component4, nearby);
+    assertEquals(1, grid.getNearbyGridSpots(component4, nearby));
     
-    assertTrue(objectInGridSpots(nearby, object1));
+    assertFalse(objectInGridSpots(nearby, object1));
     assertFalse(objectInGridSpots(nearby, object2));
     assertFalse(objectInGridSpots(nearby, object3));
     assertTrue(objectInGridSpots(nearby, object4));
     
-    // Move the object and more nearby objects.
+    // Move the object and more nearby objects. The third object hangs over
+    // into the same spot.
     object4.x = 77;
     object4.y = 77;
     grid.getNearbyGridSpots(component4, nearby);
     
     assertTrue(objectInGridSpots(nearby, object1));
     assertTrue(objectInGridSpots(nearby, object2));
-    assertFalse(objectInGridSpots(nearby, object3));
+    assertTrue(objectInGridSpots(nearby, object3));
     assertTrue(objectInGridSpots(nearby, object4));
     
     // Move the object and more nearby objects.
@@ -179,6 +185,132 @@ public class CollisionGridTest extends TestCase {
     assertTrue(objectInGridSpots(nearby, object4));
   }
   
+  public void testFindPairs() {
+    CollisionGrid grid = new CollisionGrid(GRID_WIDTH, GRID_HEIGHT, 50);
+    
+    PhysicalObject bullet = new PhysicalObject(10, 10);
+    CollisionComponent bulletComponent = new CollisionComponent(
+        bullet, CollisionManager.TYPE_HIT_ONLY);
+    
+    PhysicalObject rock = new PhysicalObject(15, 10);
+    CollisionComponent rockComponent = new CollisionComponent(
+        rock, CollisionManager.TYPE_RECEIVE_ONLY);
+    
+    PhysicalObject farRock = new PhysicalObject(300, 10);
+    CollisionComponent farRockComponent = new CollisionComponent(
+        farRock, CollisionManager.TYPE_RECEIVE_ONLY);
+    
+    grid.addObject(bulletComponent);
+    grid.addObject(rockComponent);
+    grid.addObject(farRockComponent);
+    
+    // Objects that can only hit are not placed in the grid.
+    assertEquals(1, grid.grid[0][0].items.size);
+    
+    PairList pairs = new PairList();
+    grid.findPairs(pairs);
+    assertEquals(1, pairs.size);
+    assertEquals(bulletComponent, pairs.first[0]);
+    assertEquals(rockComponent, pairs.second[0]);
+    
+    // Objects that can hit each other are only paired once.
+    grid.addObject(new CollisionComponent(
+        new PhysicalObject(200, 200), CollisionManager.TYPE_HIT_RECEIVE));
+    grid.addObject(new CollisionComponent(
+        new PhysicalObject(205, 200), CollisionManager.TYPE_HIT_RECEIVE));
+    pairs.clear();
+    grid.findPairs(pairs);
+    assertEquals(2, pairs.size);
+  }
+  
+  public void testLargeObjectsCoverManySpots() {
+    CollisionGrid grid = new CollisionGrid(GRID_WIDTH, GRID_HEIGHT, 25);
+    
+    // The rock is diagonal to the ship's center spot, but within its bounds.
+    PhysicalObject ship = new PhysicalObject(112, 112);
+    ship.bounds = new Bounds(new Circle(40));
+    CollisionComponent shipComponent = new CollisionComponent(
+        ship, CollisionManager.TYPE_HIT_RECEIVE);
+    PhysicalObject rock = new PhysicalObject(140, 140);
+    rock.bounds = new Bounds(new Circle(5));
+    CollisionComponent rockComponent = new CollisionComponent(
+        rock, CollisionManager.TYPE_RECEIVE_ONLY);
+    
+    grid.addObject(shipComponent);
+    grid.addObject(rockComponent);
+    assertEquals(25, shipComponent.gridSpotCount);
+    
+    // Found once, though they share several spots.
+    PairList pairs = new PairList();
+    grid.findPairs(pairs);
+    assertEquals(1, pairs.size);
+    assertEquals(shipComponent, pairs.first[0]);
+    assertEquals(rockComponent, pairs.second[0]);
+    
+    SimpleList<PhysicalObject> nearby = new SimpleList<PhysicalObject>(PhysicalObject.class);
+    SimpleList<CollisionComponent> nearbyComponents =
+        new SimpleList<CollisionComponent>(CollisionComponent.class);
+    grid.getNearbyObjects(shipComponent, nearby, nearbyComponents);
+    assertEquals(2, nearby.size);
+    assertEquals(2, nearbyComponents.size);
+  }
+  
+  public void testFastObjectsCoverWhereTheyAreGoing() {
+    CollisionGrid grid = new CollisionGrid(GRID_WIDTH, GRID_HEIGHT, 25);
+    
+    PhysicalObject bullet = new PhysicalObject(10, 10);
+    bullet.bounds = new Bounds(new Circle(2));
+    bullet.setVelocity(400, 0);
+    PhysicalObject rock = new PhysicalObject(100, 10);
+    rock.bounds = new Bounds(new Circle(5));
+    grid.addObject(new CollisionComponent(bullet, CollisionManager.TYPE_HIT_ONLY));
+    grid.addObject(new CollisionComponent(rock, CollisionManager.TYPE_RECEIVE_ONLY));
+    
+    PairList pairs = new PairList();
+    grid.findPairs(pairs);
+    assertEquals(1, pairs.size);
+    
+    bullet.setVelocity(-400, 0);
+    pairs.clear();
+    grid.findPairs(pairs);
+    assertEquals(0, pairs.size);
+  }
+  
+  public void testMoveOnlyChangesSpotsLeftOrEntered() {
+    GridSpot.validate = true;
+    CollisionGrid grid = new CollisionGrid(GRID_WIDTH, GRID_HEIGHT, 25);
+    object.bounds = new Bounds(new Circle(20));
+    object.x = 50;
+    object.y = 50;
+    grid.addObject(component);
+    grid.grid[1][1].add(new CollisionComponent(
+        new PhysicalObject(40, 40), CollisionManager.TYPE_RECEIVE_ONLY));
+    assertEquals(4, component.gridSpotCount);
+    
+    // Stays in the spots it covered before, and joins the ones to its right.
+    object.x = 60;
+    grid.updatePosition(component);
+    assertEquals(6, component.gridSpotCount);
+    assertEquals(object, grid.grid[1][1].items.items[0]);
+    assertEquals(object, grid.grid[3][2].items.items[0]);
+    
+    object.x = 90;
+    grid.updatePosition(component);
+    assertEquals(6, component.gridSpotCount);
+    assertEquals(1, grid.grid[1][1].items.size);
+    assertFalse(grid.grid[1][1].contains(object));
+    assertTrue(grid.grid[4][2].contains(object));
+    
+    grid.removeObject(component);
+    assertEquals(0, component.gridSpotCount);
+    assertEquals(0, grid.grid[3][2].items.size);
+  }
+  
+  @Override
+  public void tearDown() {
+    GridSpot.validate = false;
+  }
+  
   private boolean objectInGridSpots(GridSpot[] nearby, PhysicalObject object) {
     boolean found = false;
     for ( int i = 0 ; i < nearby.length ; i++ ) {
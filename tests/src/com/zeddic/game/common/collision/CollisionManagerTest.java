@@ -1,12 +1,18 @@
 package com.zeddic.game.common.collision;
 
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import junit.framework.TestCase;
 
 import com.zeddic.game.common.PhysicalObject;
 import com.zeddic.game.common.collision.CollisionComponent;
 import com.zeddic.game.common.collision.CollisionManager;
+import com.zeddic.game.common.collision.CollisionRoutine;
+import com.zeddic.game.common.collision.NarrowPhase;
 import com.zeddic.game.common.util.Bounds;
 import com.zeddic.game.common.util.Circle;
+import com.zeddic.game.common.util.Shape;
 import com.zeddic.game.common.util.Vector2d;
 import com.zeddic.game.common.util.Polygon.PolygonBuilder;
 
@@ -61,8 +67,9 @@ public class CollisionManagerTest extends TestCase {
   }
   
   public void testGetNumAxis_withPolygon() {
-    assertEquals(4, manager.getNumAxis(square, triangle));
-    assertEquals(4, manager.getNumAxis(square, circle));
+    // Opposite sides of the square share an axis.
+    assertEquals(2, manager.getNumAxis(square, triangle));
+    assertEquals(2, manager.getNumAxis(square, circle));
     assertEquals(3, manager.getNumAxis(triangle, circle));
   }
   
@@ -128,11 +135,13 @@ public class CollisionManagerTest extends TestCase {
     square.x = 8;
     manager.checkForCollision(squareComponent, 1000l);
     assertTrue(square.collided);
+    assertFalse(triangle.collided);
+    manager.checkForCollision(triangleComponent, 1000l);
     assertTrue(triangle.collided);
     
     manager.checkForCollision(circleComponent, 1000l);
     assertTrue(circle.collided);
-    assertTrue(circle2.collided);
+    assertFalse(circle2.collided);
     
     square.collided = false;
     circle.collided = false;
@@ -140,18 +149,389 @@ public class CollisionManagerTest extends TestCase {
     circle.x = -7;
     square.x = 0;
     manager.checkForCollision(circleComponent, 1000l);
-    assertTrue(square.collided);
+    assertFalse(square.collided);
     assertTrue(circle.collided);
   }
   
+  public void testCheckForCollisionNotifiesEachObjectOnce() {
+    CollisionManager.setup(WORLD_WIDTH, WORLD_HEIGHT);
+    manager = CollisionManager.get();
+    final int[] reported = new int[1];
+    manager.setCollisionListener(new CollisionListener() {
+      public void onCollision(Contact contact) {
+        reported[0]++;
+      }
+    });
+    
+    MockPhysicalObject a = addCircle(100, 100, 5, CollisionManager.TYPE_HIT_RECEIVE);
+    MockPhysicalObject b = addCircle(108, 100, 5, CollisionManager.TYPE_HIT_RECEIVE);
+    MockPhysicalObject rock = addCircle(300, 100, 5, CollisionManager.TYPE_RECEIVE_ONLY);
+    MockPhysicalObject bullet = addCircle(308, 100, 5, CollisionManager.TYPE_HIT_ONLY);
+    a.pushable = true;
+    b.pushable = true;
+    
+    // One update, in which every object that can hit checks itself.
+    manager.checkForCollision(a.component, 16);
+    manager.checkForCollision(b.component, 16);
+    manager.checkForCollision(bullet.component, 16);
+    
+    assertEquals(1, a.collisions + b.collisions);
+    assertEquals(1, rock.collisions);
+    assertEquals(1, bullet.collisions);
+    assertEquals(2, reported[0]);
+  }
+  
+  public void testCheckForCollisionPushesApartByWeight() {
+    for (int i = 0; i < CollisionTestUtil.NUM_BROAD_PHASES; i++) {
+      manager = CollisionTestUtil.setupWorld(WORLD_WIDTH, i);
+      
+      // A rock won't check for itself, so is pushed now by its share.
+      MockPhysicalObject ship = addCircle(100, 100, 5, CollisionManager.TYPE_HIT_RECEIVE, 3);
+      MockPhysicalObject rock = addCircle(108, 100, 5, CollisionManager.TYPE_RECEIVE_ONLY, 1);
+      
+      // Another ship will, so the first takes the whole push.
+      MockPhysicalObject a = addCircle(300, 100, 5, CollisionManager.TYPE_HIT_RECEIVE, 3);
+      MockPhysicalObject b = addCircle(308, 100, 5, CollisionManager.TYPE_HIT_RECEIVE, 1);
+      
+      manager.checkForCollision(ship.component, 16);
+      manager.checkForCollision(a.component, 16);
+      
+      assertEquals(-0.5f, ship.avoidX, 0.001f);
+      assertEquals(1.5f, rock.avoidX, 0.001f);
+      assertEquals(-2f, a.avoidX, 0.001f);
+      assertEquals(0, b.collisions);
+    }
+  }
+  
+  public void testStep() {
+    BroadPhase[] broadPhases = new BroadPhase[] {
+        new CollisionGrid(WORLD_WIDTH, WORLD_HEIGHT, 25),
+        new SweepAndPrune(),
+        new AabbTree()};
+    
+    for (BroadPhase broadPhase : broadPhases) {
+      CollisionManager.setup(WORLD_WIDTH, WORLD_HEIGHT);
+      manager = CollisionManager.get();
+      manager.setBroadPhase(broadPhase);
+      manager.setMode(CollisionManager.MODE_STEP);
+      
+      MockPhysicalObject a = addCircle(100, 100, 5, CollisionManager.TYPE_HIT_RECEIVE);
+      MockPhysicalObject b = addCircle(108, 100, 5, CollisionManager.TYPE_HIT_RECEIVE);
+      MockPhysicalObject alone = addCircle(300, 100, 5, CollisionManager.TYPE_HIT_RECEIVE);
+      MockPhysicalObject rock = addCircle(500, 500, 10, CollisionManager.TYPE_RECEIVE_ONLY);
+      MockPhysicalObject bullet = addCircle(508, 500, 2, CollisionManager.TYPE_HIT_ONLY);
+      
+      manager.step(16);
+      
+      // Both objects are told of each collision, but only once.
+      assertEquals(1, a.collisions);
+      assertEquals(1, b.collisions);
+      assertEquals(0, alone.collisions);
+      assertEquals(1, bullet.collisions);
+      assertEquals(1, rock.collisions);
+    }
+  }
+  
+  public void testStepPushesApartByWeight() {
+    CollisionManager.setup(WORLD_WIDTH, WORLD_HEIGHT);
+    manager = CollisionManager.get();
+    manager.setMode(CollisionManager.MODE_STEP);
+    
+    final Contact seen = new Contact();
+    manager.setCollisionListener(new CollisionListener() {
+      public void onCollision(Contact contact) {
+        seen.first = contact.first;
+        seen.second = contact.second;
+        seen.depth = contact.depth;
+        seen.timeOfImpact = contact.timeOfImpact;
+      }
+    });
+    
+    // Overlapping by 2, with the heavy object three times the weight.
+    MockPhysicalObject heavy = addCircle(100, 100, 5, CollisionManager.TYPE_HIT_RECEIVE, 3);
+    MockPhysicalObject light = addCircle(108, 100, 5, CollisionManager.TYPE_HIT_RECEIVE, 1);
+    
+    // A wall never moves, so the object hitting it takes the whole push.
+    MockPhysicalObject ball = addCircle(300, 100, 5, CollisionManager.TYPE_HIT_RECEIVE, 1);
+    MockPhysicalObject wall = addCircle(308, 100, 5, CollisionManager.TYPE_STATIONARY, 100);
+    
+    manager.step(16);
+    
+    assertEquals(-0.5f, heavy.avoidX, 0.001f);
+    assertEquals(1.5f, light.avoidX, 0.001f);
+    assertEquals(-2f, ball.avoidX, 0.001f);
+    assertEquals(0f, wall.avoidX, 0.001f);
+    
+    assertEquals(1, wall.collisions);
+    assertEquals(ball, seen.first);
+    assertEquals(wall, seen.second);
+    assertEquals(2f, seen.depth, 0.001f);
+    assertEquals(0f, seen.timeOfImpact, 0.001f);
+  }
+  
+  public void testStepWithThreads() {
+    MockPhysicalObject[] serial = stepRandomWorld(1);
+    MockPhysicalObject[] parallel = stepRandomWorld(4);
+    
+    int collisions = 0;
+    for (int i = 0; i < serial.length; i++) {
+      assertEquals(serial[i].collisions, parallel[i].collisions);
+      assertEquals(serial[i].x, parallel[i].x);
+      assertEquals(serial[i].y, parallel[i].y);
+      collisions += serial[i].collisions;
+    }
+    assertTrue("Expected some collisions.", collisions > 0);
+    manager.setThreadCount(1);
+  }
+  
+  public void testSetRoutineReachesEveryThread() {
+    CollisionManager.setup(WORLD_WIDTH, WORLD_HEIGHT);
+    manager = CollisionManager.get();
+    manager.setMode(CollisionManager.MODE_STEP);
+    
+    // Set before the threads exist, then again once they do.
+    CountingRoutine before = new CountingRoutine();
+    manager.setRoutine(Shape.CIRCLE, Shape.CIRCLE, before);
+    manager.setThreadCount(4);
+    
+    MockPhysicalObject[] objects = new MockPhysicalObject[400];
+    for (int i = 0; i < objects.length; i += 2) {
+      float x = 20 + (i % 40) * 20;
+      float y = 20 + (i / 40) * 40;
+      objects[i] = addCircle(x, y, 5, CollisionManager.TYPE_HIT_RECEIVE);
+      objects[i + 1] = addCircle(x + 4, y, 5, CollisionManager.TYPE_HIT_RECEIVE);
+    }
+    
+    manager.step(16);
+    assertEquals(objects.length / 2, before.calls.get());
+    
+    CountingRoutine after = new CountingRoutine();
+    manager.setRoutine(Shape.CIRCLE, Shape.CIRCLE, after);
+    manager.step(16);
+    assertEquals(objects.length / 2, before.calls.get());
+    assertEquals(objects.length / 2, after.calls.get());
+    
+    for (int i = 0; i < objects.length; i++) {
+      assertFalse(objects[i].collided);
+    }
+    manager.setThreadCount(1);
+  }
+  
+  public void testObjectsFallAsleepWhenStill() {
+    manager.setMode(CollisionManager.MODE_STEP);
+    manager.setSleepThreshold(0.5f, 3);
+    
+    MockPhysicalObject ship = new MockPhysicalObject(300, 300);
+    ship.bounds = new Bounds(new Circle(5));
+    CollisionComponent component = new CollisionComponent(ship, CollisionManager.TYPE_HIT_RECEIVE);
+    ship.setVelocity(0.2f, 0);
+    
+    component.update(16);
+    component.update(16);
+    assertFalse(component.sleeping);
+    component.update(16);
+    assertTrue(component.sleeping);
+    
+    ship.setVelocity(1, 0);
+    component.update(16);
+    assertFalse("Speeding up wakes an object.", component.sleeping);
+    
+    ship.setVelocity(0, 0);
+    for (int i = 0; i < 3; i++) {
+      component.update(16);
+    }
+    assertTrue(component.sleeping);
+    ship.x += 20;
+    component.update(16);
+    assertFalse("Moving an object wakes it.", component.sleeping);
+    
+    for (int i = 0; i < 3; i++) {
+      component.update(16);
+    }
+    component.wake();
+    assertFalse(component.sleeping);
+    
+    manager.setSleepThreshold(0.5f, 0);
+    for (int i = 0; i < 5; i++) {
+      component.update(16);
+    }
+    assertFalse("Objects don't sleep unless enabled.", component.sleeping);
+  }
+  
+  public void testSlowObjectsStayAsleep() {
+    manager.setMode(CollisionManager.MODE_STEP);
+    manager.setSleepThreshold(0.5f, 3);
+    
+    MockPhysicalObject ship = new MockPhysicalObject(300, 300);
+    ship.bounds = new Bounds(new Circle(5));
+    CollisionComponent component = new CollisionComponent(ship, CollisionManager.TYPE_HIT_RECEIVE);
+    ship.setVelocity(0.2f, 0);
+    
+    for (int i = 0; i < 3; i++) {
+      ship.update(16);
+      component.update(16);
+    }
+    assertTrue(component.sleeping);
+    assertEquals("Sleeping stops the object.", 0f, ship.velocity.x);
+    
+    float x = ship.x;
+    for (int i = 0; i < 5; i++) {
+      ship.update(16);
+      component.update(16);
+      assertTrue("Still asleep after " + i + " updates.", component.sleeping);
+    }
+    assertEquals(x, ship.x);
+  }
+  
+  public void testSleepingObjectsAreStillHit() {
+    BroadPhase[] broadPhases = new BroadPhase[] {
+        new CollisionGrid(WORLD_WIDTH, WORLD_HEIGHT, 25),
+        new SparseCollisionGrid(25),
+        new LayeredCollisionGrid(WORLD_WIDTH, WORLD_HEIGHT, 25, 2),
+        new HierarchicalCollisionGrid(WORLD_WIDTH, WORLD_HEIGHT),
+        new SweepAndPrune(),
+        new AabbTree()};
+    
+    for (BroadPhase broadPhase : broadPhases) {
+      CollisionManager.setup(WORLD_WIDTH, WORLD_HEIGHT);
+      manager = CollisionManager.get();
+      manager.setBroadPhase(broadPhase);
+      manager.setMode(CollisionManager.MODE_STEP);
+      manager.setSleepThreshold(0.1f, 2);
+      
+      CollisionComponent[] components = new CollisionComponent[] {
+          create(100, 100, CollisionManager.TYPE_HIT_RECEIVE),
+          create(300, 100, CollisionManager.TYPE_HIT_RECEIVE),
+          create(100, 400, CollisionManager.TYPE_HIT_RECEIVE),
+          create(300, 400, CollisionManager.TYPE_RECEIVE_ONLY)};
+      MockPhysicalObject parked = (MockPhysicalObject) components[0].object;
+      MockPhysicalObject tower = (MockPhysicalObject) components[1].object;
+      MockPhysicalObject ship = (MockPhysicalObject) components[2].object;
+      MockPhysicalObject rock = (MockPhysicalObject) components[3].object;
+      
+      for (int frame = 0; frame < 3; frame++) {
+        update(components);
+      }
+      assertTrue(components[0].sleeping);
+      assertTrue(components[2].sleeping);
+      
+      // The ship and the rock move into the sleeping objects.
+      ship.x = 108;
+      ship.y = 100;
+      rock.x = 308;
+      rock.y = 100;
+      update(components);
+      
+      assertEquals(1, parked.collisions);
+      assertEquals(1, ship.collisions);
+      assertEquals(1, tower.collisions);
+      assertEquals(1, rock.collisions);
+      assertFalse(components[0].sleeping);
+      assertFalse(components[1].sleeping);
+    }
+  }
+  
+  /**
+   * Updates each component, then steps the world, as the Updater does.
+   */
+  private void update(CollisionComponent[] components) {
+    for (int i = 0; i < components.length; i++) {
+      components[i].update(16);
+    }
+    manager.step(16);
+  }
+  
+  private CollisionComponent create(float x, float y, int type) {
+    MockPhysicalObject object = new MockPhysicalObject(x, y);
+    object.bounds = new Bounds(new Circle(5));
+    return new CollisionComponent(object, type);
+  }
+  
+  /**
+   * Steps a world of randomly placed circles and squares once using the
+   * given number of threads.
+   */
+  private MockPhysicalObject[] stepRandomWorld(int threads) {
+    CollisionManager.setup(WORLD_WIDTH, WORLD_HEIGHT);
+    manager = CollisionManager.get();
+    manager.setMode(CollisionManager.MODE_STEP);
+    manager.setThreadCount(threads);
+    
+    Random random = new Random(3);
+    MockPhysicalObject[] objects = new MockPhysicalObject[400];
+    for (int i = 0; i < objects.length; i++) {
+      float x = random.nextFloat() * WORLD_WIDTH;
+      float y = random.nextFloat() * WORLD_HEIGHT;
+      if (i % 2 == 0) {
+        objects[i] = addCircle(x, y, 6, CollisionManager.TYPE_HIT_RECEIVE);
+      } else {
+        objects[i] = new MockPhysicalObject(x, y);
+        objects[i].bounds = new Bounds(new PolygonBuilder()
+            .add(-5, -5)
+            .add(5, -5)
+            .add(5, 5)
+            .add(-5, 5)
+            .build());
+        manager.addObject(new CollisionComponent(objects[i], CollisionManager.TYPE_HIT_RECEIVE));
+      }
+      objects[i].setVelocityBySpeed(random.nextFloat() * 360, 10);
+    }
+    
+    manager.step(16);
+    return objects;
+  }
+  
+  private MockPhysicalObject addCircle(float x, float y, float radius, int type) {
+    MockPhysicalObject object = new MockPhysicalObject(x, y);
+    object.bounds = new Bounds(new Circle(radius));
+    object.component = new CollisionComponent(object, type);
+    manager.addObject(object.component);
+    return object;
+  }
+  
+  private MockPhysicalObject addCircle(
+      float x, float y, float radius, int type, float weight) {
+    MockPhysicalObject object = new MockPhysicalObject(x, y);
+    object.bounds = new Bounds(new Circle(radius));
+    CollisionComponent component = new CollisionComponent(object, type, weight);
+    object.component = component;
+    if (type == CollisionManager.TYPE_STATIONARY) {
+      manager.addStationaryObject(component);
+    } else {
+      manager.addObject(component);
+    }
+    return object;
+  }
+  
+  /**
+   * Counts how often it is called, and never reports a collision.
+   */
+  static class CountingRoutine implements CollisionRoutine {
+    public final AtomicInteger calls = new AtomicInteger();
+    public boolean collide(
+        NarrowPhase narrowPhase, PhysicalObject src, PhysicalObject dest, long time) {
+      calls.incrementAndGet();
+      return false;
+    }
+  }
+  
   class MockPhysicalObject extends PhysicalObject {
     public boolean collided = false;
+    public int collisions = 0;
+    public float avoidX = 0;
+    public boolean pushable = false;
+    public CollisionComponent component;
     public MockPhysicalObject(float x, float y) {
       super(x, y);
     }
     
     public void collide(PhysicalObject object, Vector2d avoidVector) {
       collided = true;
+      collisions++;
+      avoidX += avoidVector.x;
+      if (pushable) {
+        super.collide(object, avoidVector);
+      }
     }
   }
 }
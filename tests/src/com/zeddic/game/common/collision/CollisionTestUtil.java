@@ -0,0 +1,56 @@
+package com.zeddic.game.common.collision;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.Bounds;
+import com.zeddic.game.common.util.Circle;
+
+/**
+ * Builds the objects and worlds shared by the collision tests.
+ */
+public class CollisionTestUtil {
+  
+  /** How many broad phases {@link #setupWorld} can start a world with. */
+  public static final int NUM_BROAD_PHASES = 5;
+  
+  /**
+   * Starts a new square world using one of the broad phases: the default
+   * grid, then sweep and prune, an AABB tree, a layered grid and a sparse
+   * grid.
+   */
+  public static CollisionManager setupWorld(int size, int broadPhase) {
+    CollisionManager manager = CollisionManager.setup(size, size);
+    switch (broadPhase) {
+      case 1:
+        manager.setBroadPhase(new SweepAndPrune());
+        break;
+      case 2:
+        manager.setBroadPhase(new AabbTree());
+        break;
+      case 3:
+        manager.setBroadPhase(new LayeredCollisionGrid(size, size, 25, 2));
+        break;
+      case 4:
+        manager.setBroadPhase(new SparseCollisionGrid(25));
+        break;
+    }
+    return manager;
+  }
+  
+  /**
+   * Creates the component of a new circular object. It isn't added to
+   * anything.
+   */
+  public static CollisionComponent circle(float x, float y, float radius, int type) {
+    PhysicalObject object = new PhysicalObject(x, y);
+    object.bounds = new Bounds(new Circle(radius));
+    return new CollisionComponent(object, type);
+  }
+  
+  /**
+   * Creates the component of a new object that can hit and be hit, with a
+   * radius of 5.
+   */
+  public static CollisionComponent circle(float x, float y) {
+    return circle(x, y, 5, CollisionManager.TYPE_HIT_RECEIVE);
+  }
+}
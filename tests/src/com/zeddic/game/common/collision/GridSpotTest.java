@@ -13,6 +13,8 @@ public class GridSpotTest extends AndroidTestCase {
   
   @Override
   public void setUp() {
+    CollisionManager.setup(100, 100);
+    GridSpot.validate = true;
     spot = new GridSpot();
     dummy = new PhysicalObject(0, 0);
     dummy2 = new PhysicalObject(2, 2);
@@ -63,4 +65,83 @@ public class GridSpotTest extends AndroidTestCase {
     
     assertEquals(dummy, spot.items.items[initialSize]);
   }
-}
+  
+  public void testRemoveMovesLastIntoGap() {
+    CollisionComponent a = CollisionTestUtil.circle(0, 0);
+    CollisionComponent b = CollisionTestUtil.circle(0, 0);
+    CollisionComponent c = CollisionTestUtil.circle(0, 0);
+    spot.add(a);
+    spot.add(b);
+    spot.add(c);
+    assertEquals(0, a.gridSlot);
+    assertEquals(2, c.gridSlot);
+    
+    spot.remove(a);
+    assertEquals(0, a.gridSpotCount);
+    assertEquals(-1, a.gridSlot);
+    assertEquals(c, spot.components.items[0]);
+    assertEquals(c.object, spot.items.items[0]);
+    assertEquals(0, c.gridSlot);
+    assertEquals(1, b.gridSlot);
+  }
+  
+  public void testMove() {
+    GridSpot other = new GridSpot();
+    CollisionComponent a = CollisionTestUtil.circle(0, 0);
+    CollisionComponent b = CollisionTestUtil.circle(0, 0);
+    spot.add(a);
+    spot.add(b);
+    other.add(CollisionTestUtil.circle(0, 0));
+    
+    spot.move(a, other);
+    assertEquals(1, spot.items.size);
+    assertEquals(0, b.gridSlot);
+    assertEquals(2, other.items.size);
+    assertEquals(1, a.gridSpotCount);
+    assertEquals(other, a.gridSpot);
+    assertEquals(1, a.gridSlot);
+    assertEquals(a, other.components.items[1]);
+  }
+  
+  public void testObjectInSeveralSpots() {
+    GridSpot other = new GridSpot();
+    CollisionComponent a = CollisionTestUtil.circle(0, 0);
+    CollisionComponent b = CollisionTestUtil.circle(0, 0);
+    spot.add(a);
+    spot.add(b);
+    other.add(b);
+    other.add(a);
+    assertEquals(2, a.gridSpotCount);
+    assertEquals(other, a.gridSpots[0]);
+    assertEquals(1, a.gridSlots[0]);
+    
+    // Removing from one spot leaves the object's slot in the other alone.
+    spot.remove(a);
+    assertEquals(1, a.gridSpotCount);
+    assertEquals(other, a.gridSpot);
+    assertEquals(1, a.gridSlot);
+    
+    other.remove(b);
+    assertEquals(0, a.gridSlot);
+    assertEquals(1, b.gridSpotCount);
+    assertEquals(spot, b.gridSpot);
+    assertEquals(0, b.gridSlot);
+  }
+  
+  public void testValidate() {
+    CollisionComponent a = CollisionTestUtil.circle(0, 0);
+    spot.add(a);
+    a.gridSlot = 3;
+    try {
+      spot.validate();
+      fail("Expected the wrong slot to be found.");
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+  }
+  
+  @Override
+  public void tearDown() {
+    GridSpot.validate = false;
+  }
+  }
@@ -0,0 +1,122 @@
+package com.zeddic.game.common.collision;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.SimpleList;
+
+public class HierarchicalCollisionGridTest extends TestCase {
+
+  HierarchicalCollisionGrid hierarchical;
+  PairList pairs;
+  SimpleList<PhysicalObject> nearby;
+  SimpleList<CollisionComponent> nearbyComponents;
+  
+  @Override
+  public void setUp() {
+    CollisionManager.setup(1000, 1000);
+    hierarchical = new HierarchicalCollisionGrid(1000, 1000);
+    pairs = new PairList();
+    nearby = new SimpleList<PhysicalObject>(PhysicalObject.class);
+    nearbyComponents = new SimpleList<CollisionComponent>(CollisionComponent.class);
+  }
+  
+  public void testObjectsArePlacedBySize() {
+    CollisionComponent bullet = add(110, 110, 2, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent ship = add(110, 110, 30, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent planet = add(500, 500, 150, CollisionManager.TYPE_RECEIVE_ONLY);
+    CollisionComponent moon = add(500, 500, 300, CollisionManager.TYPE_RECEIVE_ONLY);
+    
+    assertEquals(0, hierarchical.getLevel(bullet));
+    assertEquals(1, hierarchical.getLevel(ship));
+    assertEquals(2, hierarchical.getLevel(planet));
+    assertEquals("Objects too big for any level use the last.", 2, hierarchical.getLevel(moon));
+    
+    assertTrue(hierarchical.getLevel(0).grid[4][4].contains(bullet.object));
+    assertTrue(hierarchical.getLevel(1).grid[1][1].contains(ship.object));
+    assertFalse(hierarchical.getLevel(0).grid[4][4].contains(ship.object));
+    assertEquals(4, planet.gridSpotCount);
+  }
+  
+  public void testObjectsCollideAcrossLevels() {
+    CollisionComponent bullet = add(110, 110, 2, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent ship = add(130, 110, 30, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent wall = CollisionTestUtil.circle(
+        150, 110, 60, CollisionManager.TYPE_STATIONARY);
+    hierarchical.addStationaryObject(wall);
+    
+    hierarchical.findPairs(pairs);
+    
+    // The bullet and the ship each see the other and the wall. The pair
+    // between the bullet and the ship is only reported once.
+    assertEquals(3, pairs.size);
+    
+    hierarchical.getNearbyObjects(bullet, nearby, nearbyComponents);
+    assertTrue(nearby.contains(ship.object));
+    assertTrue(nearby.contains(wall.object));
+  }
+  
+  public void testRemoveObject() {
+    CollisionComponent ship = add(130, 110, 30, CollisionManager.TYPE_HIT_RECEIVE);
+    add(110, 110, 2, CollisionManager.TYPE_HIT_RECEIVE);
+    
+    hierarchical.removeObject(ship);
+    hierarchical.findPairs(pairs);
+    
+    assertEquals(0, pairs.size);
+    assertEquals(-1, ship.proxy);
+    assertFalse(hierarchical.getLevel(1).grid[1][1].contains(ship.object));
+  }
+  
+  public void testFindsEveryTouchingPairOnce() {
+    Random random = new Random(5);
+    SimpleList<CollisionComponent> components =
+        new SimpleList<CollisionComponent>(CollisionComponent.class);
+    for (int i = 0; i < 400; i++) {
+      float size = random.nextFloat();
+      float radius = 1 + size * size * size * 200;
+      components.add(add(
+          random.nextFloat() * 1000,
+          random.nextFloat() * 1000,
+          radius,
+          CollisionManager.TYPE_HIT_RECEIVE));
+    }
+    
+    hierarchical.findPairs(pairs);
+    
+    int touching = 0;
+    for (int i = 0; i < components.size; i++) {
+      for (int j = i + 1; j < components.size; j++) {
+        PhysicalObject a = components.items[i].object;
+        PhysicalObject b = components.items[j].object;
+        float reach = a.bounds.shape.radius + b.bounds.shape.radius;
+        float dX = a.x - b.x;
+        float dY = a.y - b.y;
+        if (dX * dX + dY * dY < reach * reach) {
+          touching++;
+          assertEquals(1, countPairs(components.items[i], components.items[j]));
+        }
+      }
+    }
+    assertTrue(touching > 0);
+  }
+  
+  private int countPairs(CollisionComponent a, CollisionComponent b) {
+    int count = 0;
+    for (int i = 0; i < pairs.size; i++) {
+      if ((pairs.first[i] == a && pairs.second[i] == b) ||
+          (pairs.first[i] == b && pairs.second[i] == a)) {
+        count++;
+      }
+    }
+    return count;
+  }
+  
+  private CollisionComponent add(float x, float y, float radius, int type) {
+    CollisionComponent component = CollisionTestUtil.circle(x, y, radius, type);
+    hierarchical.addObject(component);
+    return component;
+  }
+}
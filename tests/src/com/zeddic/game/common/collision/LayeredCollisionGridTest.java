@@ -0,0 +1,109 @@
+package com.zeddic.game.common.collision;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.SimpleList;
+
+public class LayeredCollisionGridTest extends TestCase {
+
+  private static final int PLAYER = 1;
+  private static final int ENEMY = 2;
+  private static final int BULLET = 4;
+  
+  LayeredCollisionGrid layered;
+  PairList pairs;
+  SimpleList<PhysicalObject> nearby;
+  SimpleList<CollisionComponent> nearbyComponents;
+  
+  @Override
+  public void setUp() {
+    CollisionManager.setup(500, 500);
+    layered = new LayeredCollisionGrid(500, 500, 50, 3);
+    pairs = new PairList();
+    nearby = new SimpleList<PhysicalObject>(PhysicalObject.class);
+    nearbyComponents = new SimpleList<CollisionComponent>(CollisionComponent.class);
+  }
+  
+  public void testObjectsArePlacedByCategory() {
+    CollisionComponent enemy = add(100, 100, CollisionManager.TYPE_HIT_RECEIVE, ENEMY, -1);
+    CollisionComponent rock = add(100, 100, CollisionManager.TYPE_RECEIVE_ONLY, 16, -1);
+    
+    assertEquals(1, layered.getLayer(enemy));
+    assertEquals("Categories past the last layer share it.", 2, layered.getLayer(rock));
+    assertTrue(layered.getLayer(1).grid[2][2].contains(enemy.object));
+    assertFalse(layered.getLayer(0).grid[2][2].contains(enemy.object));
+    assertTrue(layered.getLayer(2).grid[2][2].contains(rock.object));
+  }
+  
+  public void testBulletsSkipTheirOwnLayer() {
+    CollisionComponent enemy = add(100, 100, CollisionManager.TYPE_HIT_RECEIVE, ENEMY, -1);
+    CollisionComponent player = add(105, 100, CollisionManager.TYPE_HIT_RECEIVE, PLAYER, ~PLAYER);
+    CollisionComponent bullet = add(102, 100, CollisionManager.TYPE_HIT_RECEIVE, BULLET, ENEMY);
+    add(103, 100, CollisionManager.TYPE_HIT_RECEIVE, BULLET, ENEMY);
+    
+    layered.findPairs(pairs);
+    
+    // Enemy with player, and each bullet with the enemy.
+    assertEquals(3, pairs.size);
+    for (int i = 0; i < pairs.size; i++) {
+      assertTrue(pairs.first[i] == enemy || pairs.second[i] == enemy);
+    }
+    
+    layered.getNearbyObjects(bullet, nearby, nearbyComponents);
+    assertEquals(1, nearby.size);
+    assertEquals(enemy.object, nearby.items[0]);
+    
+    nearby.clear();
+    nearbyComponents.clear();
+    layered.getNearbyObjects(player, nearby, nearbyComponents);
+    assertTrue(nearby.contains(enemy.object));
+    assertFalse(nearby.contains(player.object));
+  }
+  
+  public void testMatchesSingleGrid() {
+    CollisionGrid grid = new CollisionGrid(500, 500, 50);
+    PairList gridPairs = new PairList();
+    
+    Random random = new Random(3);
+    int[] categories = {PLAYER, ENEMY, BULLET, BULLET | ENEMY};
+    for (int i = 0; i < 300; i++) {
+      int category = categories[random.nextInt(categories.length)];
+      int mask = random.nextBoolean() ? -1 : (~category | random.nextInt(8));
+      float x = random.nextFloat() * 500;
+      float y = random.nextFloat() * 500;
+      add(x, y, CollisionManager.TYPE_HIT_RECEIVE, category, mask);
+      
+      // Components track their own grid spot, so each grid needs its own.
+      CollisionComponent copy = create(x, y, CollisionManager.TYPE_HIT_RECEIVE, category, mask);
+      grid.addObject(copy);
+    }
+    
+    layered.findPairs(pairs);
+    grid.findPairs(gridPairs);
+    pairs.sort();
+    gridPairs.sort();
+    
+    assertEquals(gridPairs.size, pairs.size);
+    assertTrue(pairs.size > 0);
+    for (int i = 0; i < pairs.size; i++) {
+      assertEquals(gridPairs.first[i].object.x, pairs.first[i].object.x);
+      assertEquals(gridPairs.second[i].object.x, pairs.second[i].object.x);
+    }
+  }
+  
+  private CollisionComponent add(float x, float y, int type, int category, int mask) {
+    CollisionComponent component = create(x, y, type, category, mask);
+    layered.addObject(component);
+    return component;
+  }
+  
+  private CollisionComponent create(float x, float y, int type, int category, int mask) {
+    CollisionComponent component = CollisionTestUtil.circle(x, y, 5, type);
+    component.category = category;
+    component.mask = mask;
+    return component;
+  }
+}
@@ -0,0 +1,373 @@
+package com.zeddic.game.common.collision;
+
+import junit.framework.TestCase;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.Aabb;
+import com.zeddic.game.common.util.Bounds;
+import com.zeddic.game.common.util.Capsule;
+import com.zeddic.game.common.util.Circle;
+import com.zeddic.game.common.util.Shape;
+import com.zeddic.game.common.util.Span;
+import com.zeddic.game.common.util.Vector2d;
+import com.zeddic.game.common.util.Polygon.PolygonBuilder;
+
+public class NarrowPhaseTest extends TestCase {
+
+  /** With this time, an object moves exactly its velocity. */
+  private static final long TIME = (long) PhysicalObject.TIME_SCALER;
+  
+  private NarrowPhase narrowPhase;
+  
+  @Override
+  public void setUp() {
+    narrowPhase = new NarrowPhase();
+  }
+  
+  public void testCirclesTunnelWithoutSweep() {
+    PhysicalObject bullet = circle(0, 0, 1);
+    bullet.setVelocity(200, 0);
+    PhysicalObject target = circle(100, 0, 5);
+    
+    assertFalse(narrowPhase.collide(bullet, target, TIME));
+    
+    assertTrue(narrowPhase.sweep(bullet, target, TIME));
+    assertEquals(0.47f, narrowPhase.timeOfImpact, 0.001f);
+    assertEquals(-1f, narrowPhase.normal.x, 0.001f);
+    assertEquals(0f, narrowPhase.normal.y, 0.001f);
+    
+    // Pushed back to where it first touched the target.
+    assertEquals(106f, narrowPhase.depth, 0.01f);
+  }
+  
+  public void testSweepPolygons() {
+    PhysicalObject bullet = square(0, 0);
+    bullet.setVelocity(200, 0);
+    PhysicalObject wall = square(100, 0);
+    
+    assertTrue(narrowPhase.sweep(bullet, wall, TIME));
+    assertEquals(0.45f, narrowPhase.timeOfImpact, 0.001f);
+    assertEquals(-1f, narrowPhase.normal.x, 0.001f);
+    assertEquals(110f, narrowPhase.depth, 0.01f);
+  }
+  
+  public void testSweepMisses() {
+    PhysicalObject bullet = square(0, 0);
+    bullet.setVelocity(200, 0);
+    
+    assertFalse(narrowPhase.sweep(bullet, square(100, 20), TIME));
+    assertFalse(narrowPhase.sweep(bullet, square(-50, 0), TIME));
+    assertFalse(narrowPhase.sweep(bullet, square(250, 0), TIME));
+    assertFalse(narrowPhase.sweep(bullet, circle(100, 50, 5), TIME));
+  }
+  
+  public void testSweepUsesBothVelocities() {
+    PhysicalObject a = circle(0, 0, 5);
+    a.setVelocity(50, 0);
+    PhysicalObject b = circle(100, 0, 5);
+    b.setVelocity(-50, 0);
+    
+    assertTrue(narrowPhase.sweep(a, b, TIME));
+    assertEquals(0.9f, narrowPhase.timeOfImpact, 0.001f);
+  }
+  
+  public void testSweepAlreadyOverlapping() {
+    PhysicalObject a = square(0, 0);
+    PhysicalObject b = square(8, 0);
+    
+    assertTrue(narrowPhase.sweep(a, b, TIME));
+    assertEquals(0f, narrowPhase.timeOfImpact);
+    assertEquals(-1f, narrowPhase.normal.x, 0.001f);
+    assertEquals(2f, narrowPhase.depth, 0.001f);
+  }
+  
+  public void testSweepCirclePastCorner() {
+    // Along each of the box's axes the circle passes over the box, but it
+    // goes wide of the corner.
+    PhysicalObject bullet = circle(-20, 6, 2);
+    bullet.setVelocity(75, -75);
+    assertFalse(narrowPhase.sweep(bullet, square(0, 0), TIME));
+    assertFalse(narrowPhase.sweep(bullet, box(0, 0, 10, 10), TIME));
+    
+    PhysicalObject wall = square(0, 0);
+    wall.setVelocity(-75, 75);
+    assertFalse(narrowPhase.sweep(wall, circle(-20, 6, 2), TIME));
+  }
+  
+  public void testSweepCircleOntoCorner() {
+    PhysicalObject bullet = circle(20, 6, 2);
+    bullet.setVelocity(-20, 0);
+    
+    assertTrue(narrowPhase.sweep(bullet, square(0, 0), TIME));
+    assertEquals(0.6634f, narrowPhase.timeOfImpact, 0.001f);
+    assertEquals(0.866f, narrowPhase.normal.x, 0.001f);
+    assertEquals(0.5f, narrowPhase.normal.y, 0.001f);
+    assertEquals(5.83f, narrowPhase.depth, 0.01f);
+    
+    PhysicalObject wall = square(0, 0);
+    wall.setVelocity(20, 0);
+    assertTrue(narrowPhase.sweep(wall, circle(20, 6, 2), TIME));
+    assertEquals(0.6634f, narrowPhase.timeOfImpact, 0.001f);
+    assertEquals(-0.866f, narrowPhase.normal.x, 0.001f);
+    assertEquals(-0.5f, narrowPhase.normal.y, 0.001f);
+  }
+  
+  public void testRoutinesArePickedByShapeKind() {
+    PhysicalObject a = circle(0, 0, 5);
+    PhysicalObject b = square(8, 0);
+    assertTrue(narrowPhase.collide(a, b, 0));
+    assertTrue(narrowPhase.collide(a, circle(8, 0, 5), 0));
+    
+    narrowPhase.setRoutine(Shape.CIRCLE, Shape.POLYGON, new CollisionRoutine() {
+      public boolean collide(
+          NarrowPhase narrowPhase,
+          PhysicalObject src,
+          PhysicalObject dest,
+          long time) {
+        narrowPhase.depth = 42;
+        return true;
+      }
+    });
+    
+    assertTrue(narrowPhase.collide(a, square(500, 0), 0));
+    assertEquals(42f, narrowPhase.depth);
+    assertFalse("Other pairs keep their routines.", narrowPhase.collide(b, square(500, 0), 0));
+    assertFalse(narrowPhase.collide(a, circle(500, 0, 5), 0));
+  }
+  
+  public void testOtherKindsUseSeparatingAxes() {
+    PhysicalObject dot = new PhysicalObject(0, 0);
+    dot.bounds = new Bounds(new Dot());
+    assertEquals(Shape.OTHER, dot.bounds.shape.kind);
+    
+    // Their bounding circles touch, but the dot is only a point.
+    assertFalse(narrowPhase.collide(dot, circle(8, 0, 5), 0));
+    assertTrue(narrowPhase.collide(dot, circle(4, 0, 5), 0));
+  }
+  
+  public void testRoutinesForNewKinds() {
+    int newKind = Shape.NUM_KINDS + 2;
+    PhysicalObject dot = new PhysicalObject(0, 0);
+    dot.bounds = new Bounds(new Dot(newKind));
+    assertFalse(narrowPhase.collide(dot, circle(8, 0, 5), 0));
+    
+    narrowPhase.setRoutine(newKind, Shape.CIRCLE, new CollisionRoutine() {
+      public boolean collide(
+          NarrowPhase narrowPhase,
+          PhysicalObject src,
+          PhysicalObject dest,
+          long time) {
+        return true;
+      }
+    });
+    assertTrue(narrowPhase.collide(dot, circle(8, 0, 5), 0));
+    assertFalse(narrowPhase.collide(dot, square(12, 0), 0));
+    assertTrue("Existing kinds keep their routines.",
+        narrowPhase.collide(circle(0, 0, 5), circle(8, 0, 5), 0));
+  }
+  
+  public void testBoxes() {
+    PhysicalObject a = box(0, 0, 10, 10);
+    assertTrue(narrowPhase.collide(a, box(8, 1, 10, 10), 0));
+    assertEquals(-1f, narrowPhase.normal.x);
+    assertEquals(0f, narrowPhase.normal.y);
+    assertEquals(2f, narrowPhase.depth, 0.001f);
+    
+    // Same push as for the same boxes made from polygons.
+    assertTrue(narrowPhase.collide(square(0, 0), square(8, 1), 0));
+    assertEquals(-1f, narrowPhase.normal.x, 0.001f);
+    assertEquals(2f, narrowPhase.depth, 0.001f);
+    
+    assertFalse(narrowPhase.collide(a, box(10, 0, 10, 10), 0));
+  }
+  
+  public void testCircleAndBox() {
+    PhysicalObject box = box(8, 0, 10, 10);
+    assertTrue(narrowPhase.collide(circle(0, 0, 5), box, 0));
+    assertEquals(-1f, narrowPhase.normal.x);
+    assertEquals(2f, narrowPhase.depth, 0.001f);
+    
+    assertTrue(narrowPhase.collide(box, circle(0, 0, 5), 0));
+    assertEquals(1f, narrowPhase.normal.x);
+    assertEquals(2f, narrowPhase.depth, 0.001f);
+    
+    // Near a corner.
+    assertTrue(narrowPhase.collide(circle(17, 9, 6), box, 0));
+    assertEquals(0.7071f, narrowPhase.normal.x, 0.001f);
+    assertEquals(0.7071f, narrowPhase.normal.y, 0.001f);
+    assertEquals(0.343f, narrowPhase.depth, 0.001f);
+    
+    assertFalse("Bounding circles touch, but the box doesn't.",
+        narrowPhase.collide(circle(20, 3, 6.5f), box, 0));
+  }
+  
+  public void testCapsules() {
+    PhysicalObject a = capsule(0, 0, 0);
+    
+    // Side by side.
+    assertTrue(narrowPhase.collide(a, capsule(5, 3, 0), 0));
+    assertEquals(0f, narrowPhase.normal.x, 0.001f);
+    assertEquals(-1f, narrowPhase.normal.y, 0.001f);
+    assertEquals(1f, narrowPhase.depth, 0.001f);
+    
+    // End to side.
+    assertTrue(narrowPhase.collide(a, capsule(0, 8, 90), 0));
+    assertEquals(-1f, narrowPhase.normal.y, 0.001f);
+    assertEquals(1f, narrowPhase.depth, 0.001f);
+    assertFalse(narrowPhase.collide(a, capsule(0, 9, 90), 0));
+    
+    // End to circle.
+    assertTrue(narrowPhase.collide(a, circle(8, 0, 2), 0));
+    assertEquals(-1f, narrowPhase.normal.x, 0.001f);
+    assertEquals(1f, narrowPhase.depth, 0.001f);
+    assertTrue(narrowPhase.collide(circle(8, 0, 2), a, 0));
+    assertEquals(1f, narrowPhase.normal.x, 0.001f);
+    assertFalse(narrowPhase.collide(a, circle(0, 5, 2), 0));
+  }
+  
+  public void testCapsuleAndPolygon() {
+    PhysicalObject capsule = capsule(0, 0, 90);
+    assertTrue(narrowPhase.collide(capsule, square(6, 0), 0));
+    assertEquals(-1f, narrowPhase.normal.x, 0.001f);
+    assertEquals(1f, narrowPhase.depth, 0.001f);
+    
+    // The square's corner is past the rounded end.
+    assertFalse(narrowPhase.collide(capsule, square(6.8f, 11.8f), 0));
+    assertFalse(narrowPhase.collide(square(6.8f, 11.8f), capsule, 0));
+    assertTrue(narrowPhase.collide(capsule, square(6.5f, 11), 0));
+  }
+  
+  public void testCapsuleAndBox() {
+    PhysicalObject capsule = capsule(0, 0, 45);
+    
+    // The line crosses the box.
+    assertTrue(narrowPhase.collide(capsule, box(2, 0, 4, 4), 0));
+    assertEquals(-0.7071f, narrowPhase.normal.x, 0.001f);
+    assertEquals(0.7071f, narrowPhase.normal.y, 0.001f);
+    assertEquals(3.4142f, narrowPhase.depth, 0.001f);
+    
+    // A corner against the side.
+    PhysicalObject box = box(3, -3, 4, 4);
+    assertTrue(narrowPhase.collide(capsule, box, 0));
+    assertEquals(-0.7071f, narrowPhase.normal.x, 0.001f);
+    assertEquals(0.7071f, narrowPhase.normal.y, 0.001f);
+    assertEquals(0.5858f, narrowPhase.depth, 0.001f);
+    assertFalse(narrowPhase.collide(capsule, box(4, -4, 4, 4), 0));
+    assertTrue(narrowPhase.collide(box, capsule, 0));
+    assertEquals(0.7071f, narrowPhase.normal.x, 0.001f);
+    assertEquals(-0.7071f, narrowPhase.normal.y, 0.001f);
+    
+    // An end against a side.
+    assertTrue(narrowPhase.collide(capsule(0, 0, 0), box(8, 0, 4, 4), 0));
+    assertEquals(-1f, narrowPhase.normal.x, 0.001f);
+    assertEquals(1f, narrowPhase.depth, 0.001f);
+    assertFalse(narrowPhase.collide(capsule(0, 0, 0), box(9, 0, 4, 4), 0));
+  }
+  
+  public void testFastCapsuleStopsAtBox() {
+    PhysicalObject bullet = capsule(0, 0, 0);
+    bullet.setVelocity(100, 0);
+    PhysicalObject wall = box(100, 0, 4, 40);
+    
+    assertTrue(narrowPhase.collide(bullet, wall, TIME));
+    assertEquals(0.95f, narrowPhase.timeOfImpact, 0.001f);
+    assertEquals(-1f, narrowPhase.normal.x, 0.001f);
+    assertEquals(9f, narrowPhase.depth, 0.01f);
+    
+    bullet.setVelocity(200, 0);
+    assertTrue(narrowPhase.sweep(bullet, wall, TIME));
+    assertEquals(0.455f, narrowPhase.timeOfImpact, 0.001f);
+    assertEquals(-1f, narrowPhase.normal.x, 0.001f);
+  }
+  
+  public void testStillObjectsOnlyCollideWhenOverlapping() {
+    
+    // Their bounding circles touch, but the squares don't.
+    PhysicalObject a = square(0, 0);
+    PhysicalObject b = square(12, 0);
+    assertFalse(narrowPhase.collide(a, b, TIME));
+    
+    b.x = 8;
+    assertTrue(narrowPhase.collide(a, b, TIME));
+    assertEquals(2f, narrowPhase.depth, 0.001f);
+  }
+  
+  public void testCircleAndPolygonAwayFromOrigin() {
+    PhysicalObject wall = new PhysicalObject(100, 0);
+    wall.bounds = new Bounds(new PolygonBuilder()
+        .add(-20, -5)
+        .add(20, -5)
+        .add(20, 5)
+        .add(-20, 5)
+        .build());
+    
+    // Just off the wall's corner at (120, 5), and inside its bounding circle.
+    // Only the axis through the corner separates them, so it must use the
+    // corner's world position.
+    PhysicalObject ball = circle(121, 6, 1.3f);
+    assertFalse(narrowPhase.collide(ball, wall, TIME));
+    assertFalse(narrowPhase.collide(wall, ball, TIME));
+    
+    ball.bounds = new Bounds(new Circle(1.5f));
+    assertTrue(narrowPhase.collide(ball, wall, TIME));
+    assertEquals(0.707f, narrowPhase.normal.x, 0.001f);
+    assertEquals(0.707f, narrowPhase.normal.y, 0.001f);
+  }
+  
+  private PhysicalObject circle(float x, float y, float radius) {
+    PhysicalObject object = new PhysicalObject(x, y);
+    object.bounds = new Bounds(new Circle(radius));
+    return object;
+  }
+  
+  private PhysicalObject box(float x, float y, float width, float height) {
+    PhysicalObject object = new PhysicalObject(x, y);
+    object.bounds = new Bounds(new Aabb(width, height));
+    return object;
+  }
+  
+  /** A capsule with a line of length 10 and ends of radius 2. */
+  private PhysicalObject capsule(float x, float y, float rotation) {
+    PhysicalObject object = new PhysicalObject(x, y);
+    object.bounds = new Bounds(new Capsule(10, 2));
+    object.bounds.transform(rotation, 1);
+    return object;
+  }
+  
+  private PhysicalObject square(float x, float y) {
+    PhysicalObject object = new PhysicalObject(x, y);
+    object.bounds = new Bounds(new PolygonBuilder()
+        .add(-5, -5)
+        .add(5, -5)
+        .add(5, 5)
+        .add(-5, 5)
+        .build());
+    return object;
+  }
+  
+  /**
+   * A single point with a bounding radius, of any kind.
+   */
+  private static class Dot extends Shape {
+    public Dot() {
+      this.radius = 5;
+    }
+    
+    public Dot(int kind) {
+      super(kind);
+      this.radius = 5;
+    }
+    
+    @Override
+    public Shape copy() {
+      return new Dot(kind);
+    }
+    
+    @Override
+    public void projectOnAxis(float xOffset, float yOffset, Vector2d axis, Span span) {
+      float projection = axis.x * xOffset + axis.y * yOffset;
+      span.min = projection;
+      span.max = projection;
+    }
+  }
+}
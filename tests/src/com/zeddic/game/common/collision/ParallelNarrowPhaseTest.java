@@ -0,0 +1,131 @@
+package com.zeddic.game.common.collision;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.Shape;
+
+public class ParallelNarrowPhaseTest extends TestCase {
+
+  private static final int NUM_PAIRS = 100;
+  
+  private ParallelNarrowPhase parallel;
+  private PairList pairs;
+  
+  @Override
+  public void setUp() {
+    parallel = new ParallelNarrowPhase(4);
+    pairs = new PairList();
+    for (int i = 0; i < NUM_PAIRS; i++) {
+      pairs.add(CollisionTestUtil.circle(i * 100, 0),
+          CollisionTestUtil.circle(i * 100 + 5, 0));
+    }
+  }
+  
+  @Override
+  public void tearDown() {
+    parallel.shutdown();
+  }
+  
+  public void testFindsEveryContact() {
+    ContactBuffer contacts = new ContactBuffer();
+    parallel.findContacts(pairs, 0, contacts);
+    assertEquals(NUM_PAIRS, contacts.size);
+    for (int i = 0; i < NUM_PAIRS; i++) {
+      assertEquals("Contacts should be in pair order.", i, contacts.pairs[i]);
+    }
+  }
+  
+  public void testBrokenStartFallsBackToOneThread() throws InterruptedException {
+    final ContactBuffer first = new ContactBuffer();
+    final ContactBuffer second = new ContactBuffer();
+    Thread caller = new Thread() {
+      @Override
+      public void run() {
+        // Interrupting the caller breaks the start barrier.
+        interrupt();
+        parallel.findContacts(pairs, 0, first);
+        parallel.findContacts(pairs, 0, second);
+      }
+    };
+    caller.start();
+    caller.join(5000);
+    
+    assertFalse("Should not wait forever for the helpers.", caller.isAlive());
+    assertEquals(NUM_PAIRS, first.size);
+    assertEquals(NUM_PAIRS, second.size);
+  }
+  
+  public void testErrorsDontStopTheThreads() throws InterruptedException {
+    final AtomicBoolean failing = new AtomicBoolean(true);
+    parallel.setRoutine(Shape.CIRCLE, Shape.CIRCLE, new CollisionRoutine() {
+      public boolean collide(
+          NarrowPhase narrowPhase,
+          PhysicalObject src,
+          PhysicalObject dest,
+          long time) {
+        if (failing.get()) {
+          throw new AssertionError("Routine failed.");
+        }
+        return true;
+      }
+    });
+    
+    final ContactBuffer first = new ContactBuffer();
+    final ContactBuffer second = new ContactBuffer();
+    Thread caller = new Thread() {
+      @Override
+      public void run() {
+        parallel.findContacts(pairs, 0, first);
+        failing.set(false);
+        parallel.findContacts(pairs, 0, second);
+      }
+    };
+    caller.start();
+    caller.join(5000);
+    
+    assertFalse("Should not wait forever for the helpers.", caller.isAlive());
+    assertEquals(0, first.size);
+    assertEquals(NUM_PAIRS, second.size);
+  }
+  
+  public void testBrokenFinishFallsBackToOneThread() throws InterruptedException {
+    
+    // Whichever thread checks a pair first interrupts itself, which breaks
+    // the finish barrier.
+    final AtomicBoolean interrupted = new AtomicBoolean(false);
+    parallel.setRoutine(Shape.CIRCLE, Shape.CIRCLE, new CollisionRoutine() {
+      public boolean collide(
+          NarrowPhase narrowPhase,
+          PhysicalObject src,
+          PhysicalObject dest,
+          long time) {
+        if (!interrupted.getAndSet(true)) {
+          Thread.currentThread().interrupt();
+        }
+        return true;
+      }
+    });
+    
+    final ContactBuffer first = new ContactBuffer();
+    final ContactBuffer second = new ContactBuffer();
+    Thread caller = new Thread() {
+      @Override
+      public void run() {
+        parallel.findContacts(pairs, 0, first);
+        parallel.findContacts(pairs, 0, second);
+      }
+    };
+    caller.start();
+    caller.join(5000);
+    
+    assertFalse("Should not wait forever for the helpers.", caller.isAlive());
+    assertEquals(NUM_PAIRS, first.size);
+    assertEquals(NUM_PAIRS, second.size);
+    for (int i = 0; i < NUM_PAIRS; i++) {
+      assertEquals(i, first.pairs[i]);
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package com.zeddic.game.common.collision;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.Bounds;
+import com.zeddic.game.common.util.Circle;
+
+public class ShapeCastTest extends TestCase {
+
+  private static final int WORLD_SIZE = 1000;
+  
+  CollisionManager manager;
+  CastResult first;
+  CastResult all;
+  
+  @Override
+  public void setUp() {
+    manager = CollisionManager.setup(WORLD_SIZE, WORLD_SIZE);
+    first = new CastResult(1);
+    all = new CastResult(8);
+  }
+  
+  public void testRaycastFindsFirstHit() {
+    for (int b = 0; b < CollisionTestUtil.NUM_BROAD_PHASES; b++) {
+      manager = CollisionTestUtil.setupWorld(WORLD_SIZE, b);
+      CollisionComponent a = addCircle(100, 100, 5);
+      addCircle(200, 100, 5);
+      addCircle(300, 100, 5);
+      
+      assertEquals(1, manager.raycast(0, 100, 1, 0, 400, first));
+      assertEquals(a.object, first.objects[0]);
+      assertEquals(95 / 400f, first.fraction[0], 0.001f);
+      assertEquals(95, first.hitX[0], 0.01f);
+      assertEquals(100, first.hitY[0], 0.01f);
+      assertEquals(-1, first.normalX[0], 0.001f);
+      assertEquals(0, first.normalY[0], 0.001f);
+    }
+  }
+  
+  public void testSegmentCastFindsAllHitsInOrder() {
+    for (int b = 0; b < CollisionTestUtil.NUM_BROAD_PHASES; b++) {
+      manager = CollisionTestUtil.setupWorld(WORLD_SIZE, b);
+      CollisionComponent c = addCircle(300, 100, 5);
+      CollisionComponent a = addCircle(100, 100, 5);
+      CollisionComponent square = add(200, 100, CollisionManager.TYPE_RECEIVE_ONLY);
+      addCircle(200, 130, 5);
+      
+      assertEquals(3, manager.segmentCast(0, 100, 400, 100, all));
+      assertEquals(a.object, all.objects[0]);
+      assertEquals(square.object, all.objects[1]);
+      assertEquals(c.object, all.objects[2]);
+      assertEquals("Should hit the square's edge.", 195, all.hitX[1], 0.01f);
+      assertEquals(-1, all.normalX[1], 0.001f);
+      
+      assertEquals("Segment ends before the last object.",
+          2, manager.segmentCast(0, 100, 250, 100, all));
+    }
+  }
+  
+  public void testIgnoreAndMask() {
+    CollisionComponent shooter = addCircle(100, 100, 5);
+    CollisionComponent friend = addCircle(150, 100, 5);
+    CollisionComponent enemy = addCircle(200, 100, 5);
+    friend.category = 2;
+    enemy.category = 4;
+    
+    all.ignore = shooter.object;
+    all.mask = ~2;
+    assertEquals(1, manager.segmentCast(100, 100, 400, 100, all));
+    assertEquals(enemy.object, all.objects[0]);
+  }
+  
+  public void testShapeCast() {
+    for (int b = 0; b < CollisionTestUtil.NUM_BROAD_PHASES; b++) {
+      manager = CollisionTestUtil.setupWorld(WORLD_SIZE, b);
+      CollisionComponent target = addCircle(200, 100, 5);
+      CollisionComponent wall = new CollisionComponent(
+          new PhysicalObject(300, 100), CollisionManager.TYPE_STATIONARY);
+      wall.object.bounds.shape.width = 10;
+      wall.object.bounds.shape.height = 10;
+      wall.registerObject();
+      
+      assertEquals(2, manager.shapeCast(new Circle(10), 0, 100, 400, 100, all));
+      assertEquals(target.object, all.objects[0]);
+      assertEquals(185, all.hitX[0], 0.01f);
+      assertEquals(wall.object, all.objects[1]);
+      
+      assertEquals("A ray passes beside the target a shape hits.",
+          0, manager.segmentCast(0, 112, 250, 112, all));
+      assertEquals(1, manager.shapeCast(new Circle(10), 0, 112, 250, 112, all));
+    }
+  }
+  
+  public void testBroadPhasesMatchBruteForce() {
+    Random random = new Random(11);
+    NarrowPhase narrowPhase = new NarrowPhase();
+    PhysicalObject ray = new PhysicalObject();
+    ray.bounds = new Bounds(new Circle(0));
+    
+    for (int b = 0; b < CollisionTestUtil.NUM_BROAD_PHASES; b++) {
+      manager = CollisionTestUtil.setupWorld(WORLD_SIZE, b);
+      random.setSeed(11);
+      PhysicalObject[] objects = new PhysicalObject[300];
+      for (int i = 0; i < objects.length; i++) {
+        objects[i] = addCircle(random.nextFloat() * WORLD_SIZE, random.nextFloat() * WORLD_SIZE,
+            1 + random.nextFloat() * 10).object;
+      }
+      
+      for (int q = 0; q < 50; q++) {
+        float x1 = random.nextFloat() * WORLD_SIZE;
+        float y1 = random.nextFloat() * WORLD_SIZE;
+        float x2 = random.nextFloat() * WORLD_SIZE;
+        float y2 = random.nextFloat() * WORLD_SIZE;
+        manager.segmentCast(x1, y1, x2, y2, first);
+        
+        PhysicalObject closest = null;
+        float closestFraction = Float.MAX_VALUE;
+        ray.x = x1;
+        ray.y = y1;
+        for (int i = 0; i < objects.length; i++) {
+          if (narrowPhase.sweep(ray, objects[i], x2 - x1, y2 - y1) &&
+              narrowPhase.timeOfImpact < closestFraction) {
+            closest = objects[i];
+            closestFraction = narrowPhase.timeOfImpact;
+          }
+        }
+        
+        if (closest == null) {
+          assertEquals("Broad phase " + b + " query " + q, 0, first.hits);
+        } else {
+          assertEquals("Broad phase " + b + " query " + q, 1, first.hits);
+          assertEquals(closestFraction, first.fraction[0], 0.0001f);
+        }
+      }
+    }
+  }
+  
+  public void testCastsHitWalls() {
+    manager.setStaticGeometry(new StaticGeometry.StaticGeometryBuilder(50)
+        .addSegment(150, 0, 150, 200)
+        .setCategory(2)
+        .build());
+    CollisionComponent target = addCircle(200, 100, 5);
+    
+    assertEquals(1, manager.raycast(0, 100, 1, 0, 400, first));
+    assertEquals(manager.getStaticGeometry().object, first.objects[0]);
+    assertEquals(150, first.hitX[0], 0.01f);
+    assertEquals(-1, first.normalX[0], 0.001f);
+    
+    assertEquals(2, manager.shapeCast(new Circle(10), 0, 100, 400, 100, all));
+    assertEquals(140, all.hitX[0], 0.01f);
+    assertEquals(target.object, all.objects[1]);
+    
+    all.mask = ~2;
+    assertEquals(1, manager.segmentCast(0, 100, 400, 100, all));
+    assertEquals(target.object, all.objects[0]);
+  }
+  
+  private CollisionComponent addCircle(float x, float y, float radius) {
+    CollisionComponent component = CollisionTestUtil.circle(
+        x, y, radius, CollisionManager.TYPE_HIT_RECEIVE);
+    component.registerObject();
+    return component;
+  }
+  
+  private CollisionComponent add(float x, float y, int type) {
+    CollisionComponent component = new CollisionComponent(new PhysicalObject(x, y), type);
+    component.registerObject();
+    return component;
+  }
+}
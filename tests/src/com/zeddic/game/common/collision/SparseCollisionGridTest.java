@@ -0,0 +1,147 @@
+package com.zeddic.game.common.collision;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.Bounds;
+import com.zeddic.game.common.util.Circle;
+import com.zeddic.game.common.util.SimpleList;
+
+public class SparseCollisionGridTest extends TestCase {
+
+  SparseCollisionGrid grid;
+  PairList pairs;
+  SimpleList<PhysicalObject> results;
+  
+  @Override
+  public void setUp() {
+    CollisionManager.setupUnbounded(25);
+    grid = new SparseCollisionGrid(25);
+    pairs = new PairList();
+    results = new SimpleList<PhysicalObject>(PhysicalObject.class);
+  }
+  
+  public void testSetupUnbounded() {
+    CollisionManager manager = CollisionManager.get();
+    assertNull(manager.getGrid());
+    assertTrue(manager.getBroadPhase() instanceof SparseCollisionGrid);
+  }
+  
+  public void testSpotsOnlyExistWhileOccupied() {
+    CollisionComponent a = add(10, 10);
+    CollisionComponent b = add(-1000010, 5000010);
+    assertEquals(2, grid.getSpotCount());
+    assertTrue(grid.getObjectsAtWorldPosition(-1000010, 5000010).contains(b.object));
+    
+    a.object.x = 60;
+    grid.updatePosition(a);
+    assertEquals(2, grid.getSpotCount());
+    assertNull("Empty spots are released.", grid.getObjectsAtWorldPosition(10, 10));
+    assertTrue(grid.getObjectsAtWorldPosition(60, 10).contains(a.object));
+    
+    grid.removeObject(b);
+    assertEquals(1, grid.getSpotCount());
+    assertNull(grid.getObjectsAtWorldPosition(-1000010, 5000010));
+  }
+  
+  public void testNegativePositions() {
+    CollisionComponent a = add(-10, -10);
+    CollisionComponent b = add(-30, -10);
+    add(10, 10);
+    
+    grid.findPairs(pairs);
+    assertEquals("Only objects sharing a spot are paired.", 1, pairs.size);
+    
+    grid.getObjectsInRegion(-40, -20, -5, -5, results);
+    assertEquals(2, results.size);
+    assertTrue(results.contains(a.object));
+    assertTrue(results.contains(b.object));
+  }
+  
+  public void testStationaryObject() {
+    CollisionComponent wall = new CollisionComponent(
+        new PhysicalObject(0, 0), CollisionManager.TYPE_STATIONARY);
+    wall.object.bounds.shape.width = 100;
+    wall.object.bounds.shape.height = 10;
+    grid.addStationaryObject(wall);
+    assertEquals(10, grid.getSpotCount());
+    
+    CollisionComponent a = add(45, 0);
+    // Reported once, though the object shares several spots with the wall.
+    grid.findPairs(pairs);
+    assertEquals(1, pairs.size);
+    assertEquals(a, pairs.first[0]);
+    assertEquals(wall, pairs.second[0]);
+    
+    grid.removeObject(a);
+    grid.removeObject(wall);
+    assertEquals(0, grid.getSpotCount());
+  }
+  
+  public void testMatchesDenseGrid() {
+    GridSpot.validate = true;
+    CollisionGrid dense = new CollisionGrid(2000, 2000, 25);
+    PairList densePairs = new PairList();
+    CollisionComponent[] sparse = new CollisionComponent[1000];
+    CollisionComponent[] copies = new CollisionComponent[1000];
+    
+    // Objects of many sizes, some larger than a spot.
+    Random random = new Random(9);
+    for (int i = 0; i < sparse.length; i++) {
+      float x = random.nextFloat() * 2000;
+      float y = random.nextFloat() * 2000;
+      float radius = 2 + random.nextFloat() * random.nextFloat() * 40;
+      sparse[i] = CollisionTestUtil.circle(x, y);
+      sparse[i].object.bounds = new Bounds(new Circle(radius));
+      grid.addObject(sparse[i]);
+      copies[i] = CollisionTestUtil.circle(x, y);
+      copies[i].object.bounds = new Bounds(new Circle(radius));
+      dense.addObject(copies[i]);
+    }
+    
+    for (int frame = 0; frame < 10; frame++) {
+      for (int i = 0; i < sparse.length; i++) {
+        float x = Math.max(0, Math.min(1999, sparse[i].object.x + random.nextFloat() * 40 - 20));
+        float y = Math.max(0, Math.min(1999, sparse[i].object.y + random.nextFloat() * 40 - 20));
+        float vX = random.nextFloat() * 200 - 100;
+        float vY = random.nextFloat() * 200 - 100;
+        sparse[i].object.x = copies[i].object.x = x;
+        sparse[i].object.y = copies[i].object.y = y;
+        sparse[i].object.setVelocity(vX, vY);
+        copies[i].object.setVelocity(vX, vY);
+      }
+      
+      // Remove and re-add a few objects to exercise releasing spots.
+      for (int i = 0; i < 50; i++) {
+        grid.removeObject(sparse[i * 20]);
+        grid.addObject(sparse[i * 20]);
+      }
+      
+      pairs.clear();
+      densePairs.clear();
+      grid.findPairs(pairs);
+      dense.findPairs(densePairs);
+      assertEquals(densePairs.size, pairs.size);
+      
+      pairs.sort();
+      densePairs.sort();
+      for (int i = 0; i < pairs.size; i++) {
+        assertEquals(densePairs.first[i].object.x, pairs.first[i].object.x);
+        assertEquals(densePairs.second[i].object.x, pairs.second[i].object.x);
+      }
+    }
+  }
+  
+  @Override
+  public void tearDown() {
+    GridSpot.validate = false;
+  }
+  
+  private CollisionComponent add(float x, float y) {
+    CollisionComponent component = CollisionTestUtil.circle(x, y);
+    grid.addObject(component);
+    return component;
+  }
+}
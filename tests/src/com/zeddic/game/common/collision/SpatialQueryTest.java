@@ -0,0 +1,144 @@
+package com.zeddic.game.common.collision;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.zeddic.game.common.PhysicalObject;
+
+public class SpatialQueryTest extends TestCase {
+
+  private static final int WORLD_SIZE = 1000;
+  
+  /** A type of object queries can look for. */
+  static class Target extends PhysicalObject {
+    public Target(float x, float y) {
+      super(x, y);
+    }
+  }
+  
+  static final int TARGET = TypeTags.register(Target.class);
+  
+  CollisionManager manager;
+  SpatialQuery query;
+  
+  @Override
+  public void setUp() {
+    manager = CollisionManager.setup(WORLD_SIZE, WORLD_SIZE);
+    query = new SpatialQuery();
+  }
+  
+  public void testRegister() {
+    assertEquals(TARGET, TypeTags.register(Target.class));
+    int other = TypeTags.register(PhysicalObject.class);
+    assertTrue(other != TARGET);
+    assertEquals(TARGET | other, TypeTags.of(new Target(0, 0)));
+    assertEquals(other, TypeTags.of(new PhysicalObject(0, 0)));
+  }
+  
+  public void testNearestIsSortedAndKeepsClosest() {
+    add(new PhysicalObject(530, 500));
+    add(new PhysicalObject(505, 500));
+    add(new PhysicalObject(500, 580));
+    add(new PhysicalObject(500, 515));
+    
+    QueryResult result = new QueryResult(3);
+    assertEquals(3, query.nearest(500, 500, 1000, result));
+    assertEquals(25f, result.distanceSquared[0]);
+    assertEquals(225f, result.distanceSquared[1]);
+    assertEquals(900f, result.distanceSquared[2]);
+    
+    assertEquals("Limited by distance.", 2, query.nearest(500, 500, 20, result));
+  }
+  
+  public void testClosestByType() {
+    PhysicalObject self = add(new Target(100, 100));
+    add(new PhysicalObject(101, 100));
+    PhysicalObject target = add(new Target(160, 100));
+    add(new Target(300, 100));
+    
+    assertEquals(target, query.closest(100, 100, 500, TARGET, self));
+    assertNull(query.closest(100, 100, 50, TARGET, self));
+    assertEquals(self, query.closest(100, 100, 500, TypeTags.ANY, null));
+  }
+  
+  public void testStationaryObjectsFoundOnce() {
+    CollisionComponent wall = new CollisionComponent(
+        new PhysicalObject(500, 500), CollisionManager.TYPE_STATIONARY);
+    wall.object.bounds.shape.width = 200;
+    wall.object.bounds.shape.height = 200;
+    wall.registerObject();
+    
+    QueryResult result = new QueryResult(10);
+    assertEquals(1, query.nearest(500, 500, 100, result));
+  }
+  
+  public void testMatchesBruteForce() {
+    QueryResult result = new QueryResult(5);
+    for (int b = 0; b < CollisionTestUtil.NUM_BROAD_PHASES; b++) {
+      manager = CollisionTestUtil.setupWorld(WORLD_SIZE, b);
+      Random random = new Random(5);
+      PhysicalObject[] objects = new PhysicalObject[400];
+      for (int i = 0; i < objects.length; i++) {
+        float x = random.nextFloat() * WORLD_SIZE;
+        float y = random.nextFloat() * WORLD_SIZE;
+        objects[i] = add(random.nextBoolean() ? new Target(x, y) : new PhysicalObject(x, y));
+      }
+      
+      for (int q = 0; q < 100; q++) {
+        float x = random.nextFloat() * WORLD_SIZE;
+        float y = random.nextFloat() * WORLD_SIZE;
+        float distance = random.nextFloat() * 300;
+        result.types = q % 2 == 0 ? TARGET : TypeTags.ANY;
+        query.nearest(x, y, distance, result);
+        
+        // The fifth closest matching object, by brute force.
+        float[] closest = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+            Float.MAX_VALUE, Float.MAX_VALUE};
+        int expected = 0;
+        for (int i = 0; i < objects.length; i++) {
+          if (result.types == TARGET && !(objects[i] instanceof Target)) {
+            continue;
+          }
+          float dX = objects[i].x - x;
+          float dY = objects[i].y - y;
+          float d = dX * dX + dY * dY;
+          if (d > distance * distance) {
+            continue;
+          }
+          expected++;
+          for (int k = 0; k < closest.length; k++) {
+            if (d < closest[k]) {
+              System.arraycopy(closest, k, closest, k + 1, closest.length - k - 1);
+              closest[k] = d;
+              break;
+            }
+          }
+        }
+        
+        String message = "Broad phase " + b + " query " + q;
+        assertEquals(message, Math.min(expected, 5), result.hits);
+        for (int k = 0; k < result.hits; k++) {
+          assertEquals(message, closest[k], result.distanceSquared[k], 0.01f);
+        }
+      }
+    }
+  }
+  
+  public void testProximityUtil() {
+    add(new Target(100, 130));
+    add(new PhysicalObject(100, 101));
+    PhysicalObject near = add(new Target(100, 110));
+    
+    ProximityUtil.ProximityResult result =
+        ProximityUtil.getNearbyObjects(Target.class, 100, 100, 50);
+    assertEquals(2, result.hits);
+    assertEquals(near, result.objects[0]);
+    assertEquals(near, ProximityUtil.getClosest(Target.class, 100, 100, 50));
+  }
+  
+  private PhysicalObject add(PhysicalObject object) {
+    new CollisionComponent(object, CollisionManager.TYPE_RECEIVE_ONLY).registerObject();
+    return object;
+  }
+}
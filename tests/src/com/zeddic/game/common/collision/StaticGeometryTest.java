@@ -0,0 +1,184 @@
+package com.zeddic.game.common.collision;
+
+import junit.framework.TestCase;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.collision.StaticGeometry.StaticGeometryBuilder;
+import com.zeddic.game.common.util.Bounds;
+import com.zeddic.game.common.util.Circle;
+import com.zeddic.game.common.util.Polygon.PolygonBuilder;
+import com.zeddic.game.common.util.Vector2d;
+
+public class StaticGeometryTest extends TestCase {
+
+  private static final float DELTA = 0.001f;
+  
+  StaticGeometry room;
+  Vector2d push;
+  
+  @Override
+  public void setUp() {
+    // A square room 200 across, with a diagonal wall across its top left.
+    room = new StaticGeometryBuilder(50)
+        .addSegment(0, 0, 200, 0)
+        .addSegment(200, 0, 200, 200)
+        .addSegment(200, 200, 0, 200)
+        .addSegment(0, 200, 0, 0)
+        .addSegment(0, 100, 100, 0)
+        .build();
+    push = new Vector2d();
+  }
+  
+  public void testSegmentsAreOnlyInCellsTheyCross() {
+    assertEquals(5, room.getNumSegments());
+    assertEquals(25, room.getNumCells());
+    assertEquals("The diagonal misses this corner of its box.",
+        0, room.getNumSegmentsAt(125, 125));
+    assertEquals(1, room.getNumSegmentsAt(175, 10));
+    assertEquals(2, room.getNumSegmentsAt(200, 200));
+    assertEquals(1, room.getNumSegmentsAt(60, 60));
+  }
+  
+  public void testCircleAwayFromWalls() {
+    assertFalse(room.collide(125, 125, 10, push));
+    assertFalse(room.collide(300, 300, 10, push));
+  }
+  
+  public void testCircleIsPushedOutOfWall() {
+    assertTrue(room.collide(150, 196, 10, push));
+    assertEquals(0, push.x, DELTA);
+    assertEquals(-6, push.y, DELTA);
+  }
+  
+  public void testCircleIsPushedOutOfDiagonal() {
+    assertTrue(room.collide(53, 53, 5, push));
+    float depth = 5 - (float) Math.sqrt(18);
+    assertEquals(depth / Math.sqrt(2), push.x, DELTA);
+    assertEquals(depth / Math.sqrt(2), push.y, DELTA);
+  }
+  
+  public void testDeepestWallIsPushedFirst() {
+    assertTrue(room.collide(197, 192, 10, push));
+    assertEquals(-7, push.x, DELTA);
+    assertEquals(0, push.y, DELTA);
+  }
+  
+  public void testPolygonEdgesBecomeWalls() {
+    StaticGeometry box = new StaticGeometryBuilder(25)
+        .addPolygon(100, 100, new PolygonBuilder()
+            .add(-10, -10)
+            .add(10, -10)
+            .add(10, 10)
+            .add(-10, 10)
+            .build())
+        .build();
+    
+    assertEquals(4, box.getNumSegments());
+    assertTrue(box.collide(100, 85, 6, push));
+    assertEquals(-1, push.y, DELTA);
+  }
+  
+  public void testSweepFindsFirstWall() {
+    assertEquals(0.45f, room.sweep(150, 150, 5, 0, 100, push), DELTA);
+    assertEquals(0, push.x, DELTA);
+    assertEquals(-1, push.y, DELTA);
+    
+    assertEquals(-1f, room.sweep(125, 125, 5, 10, 0, push));
+    assertEquals("Walls already overlapped are left to collide.",
+        -1f, room.sweep(150, 197, 5, 0, 10, push));
+  }
+  
+  public void testSweepCatchesCenterCrossingWall() {
+    // Past the wall, the circle doesn't overlap it at all.
+    assertFalse(room.collide(150, 210, 5, push));
+    
+    assertEquals(0.5f, room.sweep(150, 180, 5, 0, 30, push), DELTA);
+    assertEquals(-1, push.y, DELTA);
+  }
+  
+  public void testSweepHitsEndOfWall() {
+    StaticGeometry post = new StaticGeometryBuilder(50)
+        .addSegment(100, 0, 100, 100)
+        .build();
+    assertEquals(0.4f, post.sweep(100, 150, 10, 0, -100, push), DELTA);
+    assertEquals(0, push.x, DELTA);
+    assertEquals(1, push.y, DELTA);
+  }
+  
+  public void testFastObjectsDontPassThroughWalls() {
+    CollisionManager manager = CollisionManager.setup(500, 500);
+    manager.setStaticGeometry(room);
+    
+    for (int mode = 0; mode < 2; mode++) {
+      manager.setMode(mode == 0 ? CollisionManager.MODE_PER_OBJECT : CollisionManager.MODE_STEP);
+      PhysicalObject bullet = create(150, 170, 5);
+      bullet.setVelocity(0, 30);
+      CollisionComponent component =
+          new CollisionComponent(bullet, CollisionManager.TYPE_HIT_RECEIVE);
+      manager.addObject(component);
+      
+      // Each frame moves the bullet 30 units towards the bottom wall.
+      for (int frame = 0; frame < 4; frame++) {
+        if (mode == 0) {
+          manager.checkForCollision(component, (long) PhysicalObject.TIME_SCALER);
+          bullet.update((long) PhysicalObject.TIME_SCALER);
+        } else {
+          bullet.update((long) PhysicalObject.TIME_SCALER);
+          manager.step((long) PhysicalObject.TIME_SCALER);
+        }
+        assertTrue("Passed the wall at " + bullet.y, bullet.y <= 195 + DELTA);
+      }
+      assertEquals(195, bullet.y, DELTA);
+      manager.removeObject(component);
+    }
+  }
+  
+  public void testManagerPushesObjectsOutOfWalls() {
+    CollisionManager manager = CollisionManager.setup(500, 500);
+    manager.setStaticGeometry(room);
+    manager.setMode(CollisionManager.MODE_STEP);
+    
+    PhysicalObject ship = create(197, 192, 10);
+    CollisionComponent shipComponent =
+        new CollisionComponent(ship, CollisionManager.TYPE_HIT_RECEIVE);
+    manager.addObject(shipComponent);
+    PhysicalObject rock = create(150, 100, 10);
+    manager.addObject(new CollisionComponent(rock, CollisionManager.TYPE_RECEIVE_ONLY));
+    
+    manager.step(0);
+    
+    assertEquals("Out of both walls in the corner.", 190, ship.x, DELTA);
+    assertEquals(190, ship.y, DELTA);
+    assertEquals("Objects that can't hit aren't checked.", 150, rock.x, DELTA);
+    
+    manager.removeObject(shipComponent);
+    ship.x = 197;
+    manager.step(0);
+    assertEquals(197, ship.x, DELTA);
+  }
+  
+  public void testWallsUseLayers() {
+    CollisionManager manager = CollisionManager.setup(500, 500);
+    manager.setStaticGeometry(new StaticGeometryBuilder(50)
+        .addSegment(0, 0, 200, 0)
+        .setCategory(2)
+        .build());
+    
+    PhysicalObject ghost = create(100, 5, 10);
+    CollisionComponent component = new CollisionComponent(ghost, CollisionManager.TYPE_HIT_RECEIVE);
+    component.mask = ~2;
+    manager.addObject(component);
+    manager.checkForCollision(component, 0);
+    assertEquals(5, ghost.y, DELTA);
+    
+    component.mask = -1;
+    manager.checkForCollision(component, 0);
+    assertEquals(10, ghost.y, DELTA);
+  }
+  
+  private PhysicalObject create(float x, float y, float radius) {
+    PhysicalObject object = new PhysicalObject(x, y);
+    object.bounds = new Bounds(new Circle(radius));
+    return object;
+  }
+}
@@ -0,0 +1,177 @@
+package com.zeddic.game.common.collision;
+
+import junit.framework.TestCase;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.util.SimpleList;
+
+public class SweepAndPruneTest extends TestCase {
+
+  SweepAndPrune sap;
+  PairList pairs;
+  SimpleList<PhysicalObject> nearby;
+  SimpleList<CollisionComponent> nearbyComponents;
+  
+  @Override
+  public void setUp() {
+    CollisionManager.setup(500, 500);
+    sap = new SweepAndPrune(2);
+    pairs = new PairList();
+    nearby = new SimpleList<PhysicalObject>(PhysicalObject.class);
+    nearbyComponents = new SimpleList<CollisionComponent>(CollisionComponent.class);
+  }
+  
+  public void testAddKeepsSorted() {
+    CollisionComponent a = add(100, 0, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent b = add(50, 0, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent c = add(75, 0, CollisionManager.TYPE_HIT_RECEIVE);
+    
+    assertEquals(3, sap.size());
+    assertEquals(0, b.proxy);
+    assertEquals(1, c.proxy);
+    assertEquals(2, a.proxy);
+  }
+  
+  public void testFindPairs() {
+    CollisionComponent a = add(0, 0, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent b = add(8, 0, CollisionManager.TYPE_HIT_RECEIVE);
+    add(100, 0, CollisionManager.TYPE_HIT_RECEIVE);
+    add(8, 100, CollisionManager.TYPE_HIT_RECEIVE);
+    
+    sap.findPairs(pairs);
+    assertEquals("Overlapping objects should be paired once.", 1, pairs.size);
+    assertPair(a, b, 0);
+  }
+  
+  public void testFindPairsAfterMoving() {
+    CollisionComponent a = add(0, 0, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent b = add(100, 0, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent c = add(200, 0, CollisionManager.TYPE_HIT_RECEIVE);
+    
+    sap.findPairs(pairs);
+    assertEquals(0, pairs.size);
+    
+    // Swap the order of a and c, with b now touching c.
+    a.object.x = 300;
+    c.object.x = 95;
+    sap.findPairs(pairs);
+    assertEquals(1, pairs.size);
+    assertEquals(0, c.proxy);
+    assertEquals(1, b.proxy);
+    assertEquals(2, a.proxy);
+    assertPair(c, b, 0);
+  }
+  
+  public void testFindPairsRespectsTypes() {
+    add(0, 0, CollisionManager.TYPE_HIT_ONLY);
+    add(2, 0, CollisionManager.TYPE_HIT_ONLY);
+    add(4, 0, CollisionManager.TYPE_RECEIVE_ONLY);
+    add(6, 0, CollisionManager.TYPE_RECEIVE_ONLY);
+    
+    sap.findPairs(pairs);
+    
+    // Each bullet hits each rock, but bullets don't hit each other and
+    // rocks don't hit each other.
+    assertEquals(4, pairs.size);
+    for (int i = 0; i < pairs.size; i++) {
+      assertEquals(CollisionManager.TYPE_HIT_ONLY, pairs.first[i].type);
+      assertEquals(CollisionManager.TYPE_RECEIVE_ONLY, pairs.second[i].type);
+    }
+
+  }
+  
+  public void testFindPairsRespectsLayers() {
+    CollisionComponent player = add(0, 0, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent enemy = add(2, 0, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent bullet = add(4, 0, CollisionManager.TYPE_HIT_ONLY);
+    add(6, 0, CollisionManager.TYPE_HIT_ONLY).category = bullet.category = 4;
+    player.category = 1;
+    enemy.category = 2;
+    bullet.mask = 2;
+    
+    sap.findPairs(pairs);
+    
+    // The bullets only hit the enemy; the other bullet still has the
+    // default mask, so it also hits the player.
+    assertEquals(4, pairs.size);
+    
+    pairs.clear();
+    enemy.mask = ~1;
+    player.mask = ~2;
+    sap.findPairs(pairs);
+    assertEquals(3, pairs.size);
+    for (int i = 0; i < pairs.size; i++) {
+      assertFalse(pairs.first[i] == player && pairs.second[i] == enemy);
+      assertFalse(pairs.first[i] == enemy && pairs.second[i] == player);
+    }
+    
+    sap.getNearbyObjects(bullet, nearby, nearbyComponents);
+    assertFalse(nearby.contains(player.object));
+    assertTrue(nearby.contains(enemy.object));
+  }
+  
+  public void testFindPairsWithLargeStationaryObject() {
+    CollisionComponent wall = new CollisionComponent(
+        new PhysicalObject(250, 0), CollisionManager.TYPE_STATIONARY);
+    wall.object.bounds.shape.width = 500;
+    wall.object.bounds.shape.height = 10;
+    sap.addStationaryObject(wall);
+    
+    CollisionComponent a = add(450, 5, CollisionManager.TYPE_HIT_RECEIVE);
+    
+    sap.findPairs(pairs);
+    assertEquals(1, pairs.size);
+    assertPair(a, wall, 0);
+  }
+  
+  public void testGetNearbyObjects() {
+    CollisionComponent wall = new CollisionComponent(
+        new PhysicalObject(0, 0), CollisionManager.TYPE_STATIONARY);
+    wall.object.bounds.shape.width = 400;
+    wall.object.bounds.shape.height = 10;
+    sap.addStationaryObject(wall);
+    
+    CollisionComponent a = add(190, 0, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent b = add(195, 5, CollisionManager.TYPE_HIT_RECEIVE);
+    add(300, 0, CollisionManager.TYPE_HIT_RECEIVE);
+    add(196, 0, CollisionManager.TYPE_HIT_ONLY);
+    
+    sap.getNearbyObjects(a, nearby, nearbyComponents);
+    assertEquals(3, nearby.size);
+    for (int i = 0; i < nearby.size; i++) {
+      assertEquals(nearby.items[i], nearbyComponents.items[i].object);
+    }
+    assertTrue("Wide objects that start far away should be found.",
+        nearby.contains(wall.object));
+    assertTrue(nearby.contains(a.object));
+    assertTrue(nearby.contains(b.object));
+  }
+  
+  public void testRemove() {
+    CollisionComponent a = add(0, 0, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent b = add(5, 0, CollisionManager.TYPE_HIT_RECEIVE);
+    CollisionComponent c = add(8, 0, CollisionManager.TYPE_HIT_RECEIVE);
+    
+    sap.removeObject(b);
+    assertEquals(2, sap.size());
+    assertEquals(-1, b.proxy);
+    assertEquals(0, a.proxy);
+    assertEquals(1, c.proxy);
+    
+    sap.findPairs(pairs);
+    assertEquals(1, pairs.size);
+    assertPair(a, c, 0);
+  }
+  
+  private void assertPair(CollisionComponent a, CollisionComponent b, int index) {
+    assertTrue("Expected pair at " + index,
+        (pairs.first[index] == a && pairs.second[index] == b) ||
+        (pairs.first[index] == b && pairs.second[index] == a));
+  }
+  
+  private CollisionComponent add(float x, float y, int type) {
+    CollisionComponent component = CollisionTestUtil.circle(x, y, 5, type);
+    sap.addObject(component);
+    return component;
+  }
+}
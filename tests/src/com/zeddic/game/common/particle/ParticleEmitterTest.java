@@ -0,0 +1,292 @@
+package com.zeddic.game.common.particle;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.test.AndroidTestCase;
+
+import com.zeddic.game.common.PhysicalObject;
+import com.zeddic.game.common.particle.ParticleEmitter.ParticleEmitterBuilder;
+import com.zeddic.game.common.util.Vector2d;
+
+public class ParticleEmitterTest extends AndroidTestCase {
+  
+  private static final int MAX_PARTICLES = 10;
+  
+  @Override
+  public void setUp() {
+    ParticleStore.setup(ParticleStore.DEFAULT_BUDGET);
+  }
+  
+  public void testEmitAll() {
+    ParticleEmitter emitter = new ParticleEmitterBuilder()
+        .at(100, 100)
+        .withMaxParticles(MAX_PARTICLES)
+        .withEmitRate(0)
+        .withParticleLife(1000)
+        .build();
+    
+    waitForEmit();
+    emitter.update(10);
+    assertEquals(MAX_PARTICLES, emitter.getParticleCount());
+  }
+  
+  public void testParticlesMoveAndDie() {
+    ParticleEmitter emitter = new ParticleEmitterBuilder()
+        .at(100, 100)
+        .withEmitAngle(0)
+        .withParticleSpeed(10)
+        .withParticleAlphaRate(-5)
+        .withMaxParticles(1)
+        .withEmitRate(0)
+        .withEmitCycle(false)
+        .withParticleLife(100)
+        .build();
+    
+    waitForEmit();
+    emitter.update(50);
+    assertEquals(1, emitter.getParticleCount());
+    assertTrue("Particle should move right.", emitter.store.x[emitter.slots[0]] > 100);
+    assertEquals(100f, emitter.store.y[emitter.slots[0]], 0.001f);
+    assertEquals(250f, emitter.store.alpha[emitter.slots[0]]);
+    
+    emitter.update(60);
+    assertEquals("Particle should have died.", 0, emitter.getParticleCount());
+    emitter.update(10);
+    assertFalse("Emitter should die with its last particle.", emitter.active);
+  }
+  
+  public void testGravityWellCollide() {
+    MockWell well = new MockWell(105, 100);
+    ParticleEmitter emitter = new ParticleEmitterBuilder()
+        .at(100, 100)
+        .withMaxParticles(1)
+        .withEmitRate(0)
+        .withGravityWell(well, 1)
+        .withGravityWellDispawnDistance(10)
+        .withGravityWellCollide(true)
+        .build();
+    
+    waitForEmit();
+    emitter.update(10);
+    assertEquals("Particle in the well should despawn.", 0, emitter.getParticleCount());
+    assertTrue("Well should be hit by a particle.", well.hitByParticle);
+  }
+  
+  public void testBatchedDrawGroupsByAlpha() {
+    ParticleEmitter emitter = new ParticleEmitterBuilder()
+        .withMaxParticles(3)
+        .withEmitRate(0)
+        .withParticleClass(PixelParticle.class)
+        .build();
+    waitForEmit();
+    emitter.update(10);
+    
+    emitter.store.alpha[emitter.slots[0]] = 255;
+    emitter.store.alpha[emitter.slots[1]] = 250;
+    emitter.store.alpha[emitter.slots[2]] = 0;
+    
+    RecordingCanvas canvas = new RecordingCanvas();
+    emitter.draw(canvas);
+    assertEquals("Similar alphas should share a draw call.", 1, canvas.calls);
+    assertEquals("Transparent particles should be skipped.", 4, canvas.floats);
+    assertEquals(255, canvas.lastAlpha);
+  }
+  
+  public void testLinesDrawnPerAlphaBucket() {
+    ParticleEmitter emitter = new ParticleEmitterBuilder()
+        .withMaxParticles(3)
+        .withEmitRate(0)
+        .build();
+    waitForEmit();
+    emitter.update(10);
+    
+    emitter.store.alpha[emitter.slots[0]] = 255;
+    emitter.store.alpha[emitter.slots[1]] = 100;
+    emitter.store.alpha[emitter.slots[2]] = 255;
+    
+    RecordingCanvas canvas = new RecordingCanvas();
+    emitter.draw(canvas);
+    assertEquals(2, canvas.calls);
+    assertEquals(12, canvas.floats);
+  }
+  
+  public void testParticlesReturnedToStore() {
+    ParticleEmitter emitter = new ParticleEmitterBuilder()
+        .withMaxParticles(MAX_PARTICLES)
+        .withEmitRate(0)
+        .withParticleLife(50)
+        .build();
+    waitForEmit();
+    emitter.update(10);
+    assertEquals(MAX_PARTICLES, ParticleStore.get().getUsed());
+    
+    emitter.update(100);
+    assertEquals(0, emitter.getParticleCount());
+    assertEquals(0, ParticleStore.get().getUsed());
+  }
+  
+  public void testKilledOrResetEmittersReturnSlots() {
+    ParticleEmitter emitter = new ParticleEmitterBuilder()
+        .withMaxParticles(MAX_PARTICLES)
+        .withEmitRate(0)
+        .withParticleLife(1000)
+        .build();
+    waitForEmit();
+    emitter.update(10);
+    assertEquals(MAX_PARTICLES, ParticleStore.get().getUsed());
+    
+    emitter.reset();
+    assertEquals(0, emitter.getParticleCount());
+    assertEquals(0, ParticleStore.get().getUsed());
+    assertTrue(emitter.active);
+    
+    waitForEmit();
+    emitter.update(10);
+    assertEquals(MAX_PARTICLES, ParticleStore.get().getUsed());
+    
+    emitter.kill();
+    assertEquals(0, emitter.getParticleCount());
+    assertEquals(0, ParticleStore.get().getUsed());
+  }
+  
+  public void testBudgetCullsOldestParticles() {
+    ParticleStore store = ParticleStore.setup(MAX_PARTICLES);
+    ParticleEmitter old = new ParticleEmitterBuilder()
+        .withMaxParticles(MAX_PARTICLES)
+        .withEmitRate(0)
+        .withParticleLife(1000)
+        .build();
+    waitForEmit();
+    old.update(500);
+    assertEquals(MAX_PARTICLES, store.getUsed());
+    
+    ParticleEmitter young = new ParticleEmitterBuilder()
+        .withMaxParticles(4)
+        .withEmitRate(0)
+        .withParticleLife(1000)
+        .build();
+    waitForEmit();
+    young.update(10);
+    
+    assertEquals("New particles should take over old slots.", 4, young.getParticleCount());
+    assertEquals(MAX_PARTICLES - 4, old.getParticleCount());
+    assertEquals(MAX_PARTICLES, store.getUsed());
+    assertEquals(4, store.getCulledCount());
+    
+    // The old emitter's remaining particles must still point at its slots.
+    for (int k = 0; k < old.getParticleCount(); k++) {
+      assertEquals(k, store.ownerIndexes[old.slots[k]]);
+    }
+  }
+  
+  public void testCustomParticlesUseTheirOwnMethods() {
+    CountingParticle.emits = 0;
+    CountingParticle.updates = 0;
+    ParticleEmitter emitter = new ParticleEmitterBuilder()
+        .at(100, 100)
+        .withMaxParticles(3)
+        .withEmitRate(0)
+        .withParticleLife(50)
+        .withParticleClass(CountingParticle.class)
+        .build();
+    waitForEmit();
+    emitter.update(10);
+    assertEquals(3, emitter.getParticleCount());
+    
+    RecordingCanvas canvas = new RecordingCanvas();
+    emitter.draw(canvas);
+    assertEquals("Each particle draws itself.", 3, canvas.particlesDrawn);
+    
+    // Each particle was emitted and updated once, and its own update moved
+    // it to where the store says it is.
+    for (int k = 0; k < emitter.getParticleCount(); k++) {
+      int slot = emitter.slots[k];
+      assertEquals(100f + 1, emitter.store.x[slot]);
+    }
+    assertEquals(3, CountingParticle.emits);
+    assertEquals(3, CountingParticle.updates);
+    
+    emitter.update(100);
+    assertEquals("Particles die through their own update.", 0, emitter.getParticleCount());
+    assertEquals(0, ParticleStore.get().getUsed());
+  }
+  
+  /**
+   * Emitters fire based on the wall clock, so make sure some time has passed
+   * since the emitter was reset.
+   */
+  private void waitForEmit() {
+    try {
+      Thread.sleep(5);
+    } catch (InterruptedException e) {
+      fail();
+    }
+  }
+  
+  private static class RecordingCanvas extends Canvas {
+    int calls = 0;
+    int floats = 0;
+    int lastAlpha;
+    int particlesDrawn = 0;
+    
+    @Override
+    public void drawLines(float[] pts, int offset, int count, Paint paint) {
+      record(count, paint);
+    }
+    
+    @Override
+    public void drawPoints(float[] pts, int offset, int count, Paint paint) {
+      record(count, paint);
+    }
+    
+    @Override
+    public void drawPoint(float x, float y, Paint paint) {
+      particlesDrawn++;
+    }
+    
+    private void record(int count, Paint paint) {
+      calls++;
+      floats += count;
+      lastAlpha = paint.getAlpha();
+    }
+  }
+  
+  /** A particle that counts calls to it and draws itself as a point. */
+  public static class CountingParticle extends Particle {
+    static int emits = 0;
+    static int updates = 0;
+    
+    @Override
+    public void onEmit(ParticleData data) {
+      emits++;
+    }
+    
+    @Override
+    public void update(long time) {
+      updates++;
+      x += 1;
+      life += time;
+      if (life > maxLife) {
+        kill();
+      }
+    }
+    
+    @Override
+    public void draw(Canvas canvas) {
+      canvas.drawPoint(x, y, paint);
+    }
+  }
+  
+  private static class MockWell extends PhysicalObject {
+    boolean hitByParticle = false;
+    
+    public MockWell(float x, float y) {
+      super(x, y);
+    }
+    
+    @Override
+    public void collide(PhysicalObject object, Vector2d avoidVector) {
+      hitByParticle = object instanceof Particle;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package com.zeddic.game.common.util;
+
+import junit.framework.TestCase;
+
+public class AabbTest extends TestCase {
+
+  public void testAabb() {
+    Aabb box = new Aabb(6, 8);
+    assertEquals(Shape.AABB, box.kind);
+    assertEquals(6f, box.width);
+    assertEquals(8f, box.height);
+    assertEquals(3f, box.halfWidth);
+    assertEquals(4f, box.halfHeight);
+    assertEquals(5f, box.radius, 0.0001f);
+    assertNotNull(box.path);
+  }
+  
+  public void testCopy() {
+    Aabb box = new Aabb(6, 8);
+    Aabb copy = (Aabb) box.copy();
+    
+    assertEquals(box.width, copy.width);
+    assertEquals(box.height, copy.height);
+    assertEquals(box.radius, copy.radius);
+  }
+  
+  public void testTransform() {
+    Aabb box = new Aabb(6, 8);
+    Aabb other = (Aabb) box.copy();
+    
+    // Stays aligned with the axes however it is rotated.
+    box.transform(90, 2, other);
+    assertEquals(6f, box.width);
+    assertEquals(12f, other.width);
+    assertEquals(16f, other.height);
+    assertEquals(6f, other.halfWidth);
+    assertEquals(8f, other.halfHeight);
+    assertEquals(10f, other.radius, 0.0001f);
+  }
+  
+  public void testProjectOnAxis() {
+    Aabb box = new Aabb(6, 8);
+    Span span = new Span();
+    Vector2d axis;
+    
+    // Horizontal Axis
+    axis = new Vector2d(1, 0);
+    box.projectOnAxis(0, 0, axis, span);
+    assertEquals(-3f, span.min);
+    assertEquals(3f, span.max);
+    
+    // Diagonal Axis, reaches the corners.
+    axis = new Vector2d(1, 1);
+    axis.normalize();
+    box.projectOnAxis(0, 0, axis, span);
+    assertEquals(-4.9497f, span.min, 0.001f);
+    assertEquals(4.9497f, span.max, 0.001f);
+    
+    // Translate
+    axis = new Vector2d(0, 1);
+    box.projectOnAxis(5, 5, axis, span);
+    assertEquals(1f, span.min);
+    assertEquals(9f, span.max);
+  }
+}
@@ -17,6 +17,7 @@ public class BoundsTest extends TestCase {
     assertNotNull(bound.shape);
     assertEquals(5f, bound.shape.radius);
     assertEquals(Bounds.CIRCLE, bound.type);
+    assertFalse(Bounds.CIRCLE == Bounds.POLYGON);
   }
   
   public void testPolygonBounds() {
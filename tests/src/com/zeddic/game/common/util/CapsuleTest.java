@@ -0,0 +1,73 @@
+package com.zeddic.game.common.util;
+
+import junit.framework.TestCase;
+
+public class CapsuleTest extends TestCase {
+
+  public void testCapsule() {
+    Capsule capsule = new Capsule(10, 2);
+    assertEquals(Shape.CAPSULE, capsule.kind);
+    assertEquals(5f, capsule.halfLength);
+    assertEquals(2f, capsule.capRadius);
+    assertEquals(7f, capsule.radius);
+    assertEquals(14f, capsule.width);
+    assertEquals(4f, capsule.height);
+    assertNotNull(capsule.path);
+  }
+  
+  public void testCopy() {
+    Capsule capsule = new Capsule(10, 2);
+    Capsule copy = (Capsule) capsule.copy();
+    
+    assertEquals(capsule.halfLength, copy.halfLength);
+    assertEquals(capsule.capRadius, copy.capRadius);
+    assertEquals(capsule.directionX, copy.directionX);
+    assertEquals(capsule.directionY, copy.directionY);
+    assertEquals(capsule.width, copy.width);
+    assertEquals(capsule.height, copy.height);
+  }
+  
+  public void testTransform() {
+    Capsule capsule = new Capsule(10, 2);
+    Capsule other = (Capsule) capsule.copy();
+    
+    capsule.transform(90, 2, other);
+    assertEquals(1f, capsule.directionX);
+    assertEquals(0f, other.directionX, 0.0001f);
+    assertEquals(1f, other.directionY, 0.0001f);
+    assertEquals(10f, other.halfLength);
+    assertEquals(4f, other.capRadius);
+    assertEquals(14f, other.radius);
+    assertEquals(8f, other.width, 0.0001f);
+    assertEquals(28f, other.height, 0.0001f);
+    
+    // Transforms always start from the original.
+    capsule.transform(0, 1, other);
+    assertEquals(1f, other.directionX, 0.0001f);
+    assertEquals(0f, other.directionY, 0.0001f);
+  }
+  
+  public void testProjectOnAxis() {
+    Capsule capsule = new Capsule(10, 2);
+    Span span = new Span();
+    Vector2d axis;
+    
+    // Along the line
+    axis = new Vector2d(1, 0);
+    capsule.projectOnAxis(0, 0, axis, span);
+    assertEquals(-7f, span.min);
+    assertEquals(7f, span.max);
+    
+    // Across the line
+    axis = new Vector2d(0, 1);
+    capsule.projectOnAxis(0, 0, axis, span);
+    assertEquals(-2f, span.min);
+    assertEquals(2f, span.max);
+    
+    // Translate
+    axis = new Vector2d(1, 0);
+    capsule.projectOnAxis(5, 5, axis, span);
+    assertEquals(-2f, span.min);
+    assertEquals(12f, span.max);
+  }
+}
@@ -48,6 +48,32 @@ public class PolygonTest extends AndroidTestCase {
     assertEquals(-10f, triangle.edges[2].y);
   }
   
+  public void testBuildAxes() {
+    assertEquals(3, triangle.numAxes);
+    for (int i = 0; i < triangle.numAxes; i++) {
+      Vector2d axis = triangle.axes[i];
+      assertEquals(1f, axis.x * axis.x + axis.y * axis.y, 0.0001f);
+      assertEquals(0f, axis.dotProduct(triangle.edges[i]), 0.0001f);
+    }
+  }
+  
+  public void testBuildAxes_parallelEdges() {
+    Polygon square = new PolygonBuilder()
+      .add(5, 5)
+      .add(5, -5)
+      .add(-5, -5)
+      .add(-5, 5)
+      .build();
+    assertEquals(2, square.numAxes);
+    
+    PolygonBuilder builder = new PolygonBuilder();
+    for (int i = 0; i < 8; i++) {
+      double radians = Math.PI * 2 * i / 8;
+      builder.add(10 * (float) Math.cos(radians), 10 * (float) Math.sin(radians));
+    }
+    assertEquals(4, builder.build().numAxes);
+  }
+  
   public void testBuildWidthHeight() {
     assertEquals(10f, triangle.width);
     assertEquals(10f, triangle.height);
@@ -120,6 +146,12 @@ public class PolygonTest extends AndroidTestCase {
     
     assertEquals(10f, other.width);
     assertEquals(10f, other.height);
+    
+    // The axes turn with the edges.
+    float diagonal = FloatMath.sqrt(0.5f);
+    assertEquals(2, other.numAxes);
+    assertEquals(diagonal, Math.abs(other.axes[0].x), 0.0001f);
+    assertEquals(diagonal, Math.abs(other.axes[0].y), 0.0001f);
   }
   
   public void testBuildPath() {
@@ -0,0 +1,59 @@
+package com.zeddic.game.common.util;
+
+import junit.framework.TestCase;
+
+public class TripleBufferTest extends TestCase {
+
+  Vector2d first;
+  Vector2d second;
+  Vector2d third;
+  TripleBuffer<Vector2d> buffer;
+  
+  @Override
+  public void setUp() {
+    first = new Vector2d();
+    second = new Vector2d();
+    third = new Vector2d();
+    buffer = new TripleBuffer<Vector2d>(first, second, third);
+  }
+  
+  public void testReadAndWriteBuffersDiffer() {
+    assertNotSame(buffer.getWriteBuffer(), buffer.getReadBuffer());
+    assertFalse(buffer.hasUpdate());
+  }
+  
+  public void testPublish() {
+    Vector2d written = buffer.getWriteBuffer();
+    written.x = 5;
+    buffer.publish();
+    
+    assertTrue(buffer.hasUpdate());
+    assertNotSame(written, buffer.getWriteBuffer());
+    assertSame(written, buffer.getReadBuffer());
+    assertFalse(buffer.hasUpdate());
+    
+    // Nothing new published, so the same buffer is read again.
+    assertSame(written, buffer.getReadBuffer());
+  }
+  
+  public void testReaderGetsLatestPublish() {
+    buffer.getWriteBuffer().x = 1;
+    buffer.publish();
+    buffer.getWriteBuffer().x = 2;
+    buffer.publish();
+    buffer.getWriteBuffer().x = 3;
+    buffer.publish();
+    
+    assertEquals(3f, buffer.getReadBuffer().x);
+  }
+  
+  public void testWriterNeverGetsReadersBuffer() {
+    for (int i = 0; i < 10; i++) {
+      buffer.getWriteBuffer().x = i;
+      buffer.publish();
+      Vector2d read = buffer.getReadBuffer();
+      assertEquals((float) i, read.x);
+      assertNotSame(read, buffer.getWriteBuffer());
+    }
+  }
+}